@@ -1,13 +1,15 @@
 package com.booksocialnetwork.auth;
 
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.mail.MessagingException;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("auth")
 @RequiredArgsConstructor
@@ -20,22 +22,24 @@ public class AuthenticationController {
     @ResponseStatus(HttpStatus.ACCEPTED)
     public ResponseEntity<?> register(
             @RequestBody @Valid RegistrationRequest request
-    ) throws MessagingException {
+    ) {
         authenticationService.register(request);
         return ResponseEntity.accepted().build();
     }
 
     @PostMapping("/authenticate")
-    public ResponseEntity<AuthenticationResponse> authenticate(
-            @RequestBody @Valid AuthenticationRequest request
+    public CompletableFuture<ResponseEntity<AuthenticationResponse>> authenticate(
+            @RequestBody @Valid AuthenticationRequest request,
+            HttpServletRequest servletRequest
     ){
-        return ResponseEntity.ok(authenticationService.authenticate(request));
+        //completes off the request thread once the login pipeline has checked the password
+        return authenticationService.authenticate(request,servletRequest.getRemoteAddr()).thenApply(ResponseEntity::ok);
     }
 
     @GetMapping("/activate-account")
     public void confirm(
             @RequestParam String token
-    ) throws MessagingException {
+    ) {
         authenticationService.activateAccount(token);
     }
 
@@ -2,18 +2,16 @@ package com.booksocialnetwork.auth;
 
 import com.booksocialnetwork.email.EmailService;
 import com.booksocialnetwork.email.EmailTemplateName;
-import com.booksocialnetwork.email.EmailService;
 import com.booksocialnetwork.entities.Token;
 import com.booksocialnetwork.entities.User;
 import com.booksocialnetwork.repositories.RoleRepository;
 import com.booksocialnetwork.repositories.TokenRepository;
 import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.security.AccountStatusCache;
 import com.booksocialnetwork.security.JwtService;
-import jakarta.mail.MessagingException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -24,6 +22,8 @@ import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 @RequiredArgsConstructor
@@ -34,8 +34,10 @@ public class AuthenticationService {
     private final UserRepository userRepository;
     private final TokenRepository tokenRepository;
     private final EmailService emailService;
-    private final AuthenticationManager authenticationManager;
+    private final LoginPipeline loginPipeline;
+    private final LoginAttemptLimiter loginAttemptLimiter;
     private final JwtService jwtService;
+    private final AccountStatusCache accountStatusCache;
 
     @Value("${application.mailing.activation-url}")
     private String activationUrl;
@@ -43,7 +45,9 @@ public class AuthenticationService {
     @Value("${application.activationCodeLength}")
     private Integer activationCodeLength;
     
-    public void register(RegistrationRequest request) throws MessagingException {
+    //the user, the activation token and the outbox row commit together, smtp is never on this path
+    @Transactional
+    public void register(RegistrationRequest request) {
         var userRole=roleRepository.findByName("USER").orElseThrow(()->new IllegalStateException("Role USER was not initialized"));
         var user= User
                 .builder()
@@ -56,14 +60,14 @@ public class AuthenticationService {
                 .roles(List.of(userRole))
                 .build();
         userRepository.save(user);
-        // sending validation email to user
+        // queueing validation email to user
         sendValidationEmail(user);
     }
 
-    private void sendValidationEmail(User user) throws MessagingException {
+    private void sendValidationEmail(User user) {
         var newToken=generateAndSaveActivationToken(user);
-        //send email
-        emailService.sendEmail(
+        //queue email
+        emailService.queueEmail(
                 user.getEmail(),
                 user.getFullName(),
                 EmailTemplateName.ACTIVATE_ACCOUNT,
@@ -98,31 +102,39 @@ public class AuthenticationService {
         return codebuilder.toString();
     }
 
-    public AuthenticationResponse authenticate(AuthenticationRequest request) {
-        var auth=authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        request.getEmail(),
-                        request.getPassword()
-                )
-        );
-        var claims=new HashMap<String,Object>();
-        var user=((User)auth.getPrincipal());
-        claims.put("fullname",user.getFullName());
-        var jwtToken=jwtService.generateToken(claims,user);
-        return AuthenticationResponse.builder()
-                .token(jwtToken)
-                .build();
+    public CompletableFuture<AuthenticationResponse> authenticate(AuthenticationRequest request, String clientAddress) {
+        loginAttemptLimiter.checkAllowed(request.getEmail(),clientAddress);
+        return loginPipeline.authenticate(request.getEmail(),request.getPassword())
+                .whenComplete((auth,failure)->{
+                    Throwable cause=failure instanceof CompletionException?failure.getCause():failure;
+                    if(cause instanceof BadCredentialsException){
+                        loginAttemptLimiter.recordFailure(request.getEmail(),clientAddress);
+                    }else if(cause==null){
+                        loginAttemptLimiter.recordSuccess(request.getEmail());
+                    }
+                })
+                .thenApply(auth->{
+                    var claims=new HashMap<String,Object>();
+                    var user=((User)auth.getPrincipal());
+                    claims.put(JwtService.USER_ID_CLAIM,user.getId());
+                    claims.put(JwtService.FULL_NAME_CLAIM,user.getFullName());
+                    var jwtToken=jwtService.generateToken(claims,user);
+                    return AuthenticationResponse.builder()
+                            .token(jwtToken)
+                            .build();
+                });
     }
     
-    public void activateAccount(String token) throws MessagingException {
+    public void activateAccount(String token) {
         Token savedToken=tokenRepository.findByToken(token).orElseThrow(()->new RuntimeException("Invalid Token"));
         if(LocalDateTime.now().isAfter(savedToken.getExpiresAt())){
             sendValidationEmail(savedToken.getUser());
             throw new RuntimeException(("Activation Token has expired. A new token has been sent ot the same email address"));
         }
-        var user=userRepository.findById(savedToken.getId()).orElseThrow(()->new UsernameNotFoundException("User not found"));
+        var user=userRepository.findById(savedToken.getUser().getId()).orElseThrow(()->new UsernameNotFoundException("User not found"));
         user.setEnabled(true);
         userRepository.save(user);
+        accountStatusCache.evict(user.getId());
         savedToken.setValidatedAt(LocalDateTime.now());
         tokenRepository.save(savedToken);
     }
@@ -0,0 +1,89 @@
+package com.booksocialnetwork.auth;
+
+import com.booksocialnetwork.exception.LoginThrottledException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//counts failed logins per email and per client address on this node; the window starts at the first failure,
+//so a blocked key is let through again once the window has passed since that failure
+@Service
+@RequiredArgsConstructor
+public class LoginAttemptLimiter {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.security.login.attempts.window}")
+    private Duration window;
+
+    @Value("${application.security.login.attempts.max-per-email}")
+    private int maxPerEmail;
+
+    @Value("${application.security.login.attempts.max-per-address}")
+    private int maxPerAddress;
+
+    @Value("${application.security.login.attempts.max-tracked}")
+    private long maxTracked;
+
+    private Cache<String,AtomicInteger> failuresByEmail;
+    private Cache<String,AtomicInteger> failuresByAddress;
+    private Counter emailBlockedCounter;
+    private Counter addressBlockedCounter;
+
+    @PostConstruct
+    void init(){
+        failuresByEmail=Caffeine.newBuilder()
+                .maximumSize(maxTracked)
+                .expireAfterWrite(window)
+                .build();
+        failuresByAddress=Caffeine.newBuilder()
+                .maximumSize(maxTracked)
+                .expireAfterWrite(window)
+                .build();
+        emailBlockedCounter=Counter.builder("auth.login.throttled").tag("reason","email-attempts").register(meterRegistry);
+        addressBlockedCounter=Counter.builder("auth.login.throttled").tag("reason","address-attempts").register(meterRegistry);
+    }
+
+    //checked before the password is queued for hashing, a blocked key costs no bcrypt time
+    public void checkAllowed(String email, String address){
+        if(failures(failuresByEmail,normalize(email))>=maxPerEmail){
+            emailBlockedCounter.increment();
+            throw new LoginThrottledException("Too many failed logins for this account",window);
+        }
+        if(address!=null && failures(failuresByAddress,address)>=maxPerAddress){
+            addressBlockedCounter.increment();
+            throw new LoginThrottledException("Too many failed logins from this address",window);
+        }
+    }
+
+    public void recordFailure(String email, String address){
+        failuresByEmail.get(normalize(email),key->new AtomicInteger()).incrementAndGet();
+        if(address!=null){
+            failuresByAddress.get(address,key->new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    //a successful login clears the account, the address keeps its count so one valid account cannot reset a spray
+    public void recordSuccess(String email){
+        failuresByEmail.invalidate(normalize(email));
+    }
+
+    private int failures(Cache<String,AtomicInteger> failures, String key){
+        AtomicInteger count=failures.getIfPresent(key);
+        return count==null?0:count.get();
+    }
+
+    private String normalize(String email){
+        return email==null?"":email.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.booksocialnetwork.auth;
+
+import com.booksocialnetwork.exception.LoginThrottledException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//bcrypt runs here instead of on the request thread: a fixed pool caps how many cores a login burst can take from
+//the catalog endpoints, and a full queue is turned away with a 429 instead of piling up
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LoginPipeline {
+
+    private final AuthenticationManager authenticationManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.security.login.threads}")
+    private int threads;
+
+    @Value("${application.security.login.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${application.security.login.max-queue-wait}")
+    private Duration maxQueueWait;
+
+    private ThreadPoolExecutor executor;
+    private Timer queueWaitTimer;
+    private Timer verificationTimer;
+    private Counter rejectedCounter;
+    private Counter expiredCounter;
+
+    @PostConstruct
+    void start(){
+        AtomicInteger threadCount=new AtomicInteger();
+        ThreadFactory threadFactory=runnable->{
+            Thread thread=new Thread(runnable,"login-"+threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor=new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        Gauge.builder("auth.login.queue.depth",executor,pool->pool.getQueue().size())
+                .description("Logins waiting for a password check")
+                .register(meterRegistry);
+        Gauge.builder("auth.login.active",executor,ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        queueWaitTimer=Timer.builder("auth.login.queue.wait")
+                .description("Time a login spent queued before its password check started")
+                .register(meterRegistry);
+        verificationTimer=Timer.builder("auth.login.verification")
+                .description("Time spent loading the user and checking the password hash")
+                .register(meterRegistry);
+        rejectedCounter=Counter.builder("auth.login.throttled").tag("reason","queue-full").register(meterRegistry);
+        expiredCounter=Counter.builder("auth.login.throttled").tag("reason","queue-wait").register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdown();
+        if(!executor.awaitTermination(10,TimeUnit.SECONDS)){
+            executor.shutdownNow();
+        }
+    }
+
+    public CompletableFuture<Authentication> authenticate(String email, String password){
+        long queuedAt=System.nanoTime();
+        try{
+            return CompletableFuture.supplyAsync(()->{
+                long waited=System.nanoTime()-queuedAt;
+                queueWaitTimer.record(waited,TimeUnit.NANOSECONDS);
+                //the caller has most likely given up by now, hashing for it would only lengthen the backlog
+                if(waited>maxQueueWait.toNanos()){
+                    expiredCounter.increment();
+                    throw new LoginThrottledException("Login service is busy, try again shortly",maxQueueWait);
+                }
+                return verificationTimer.record(()->authenticationManager.authenticate(
+                        new UsernamePasswordAuthenticationToken(email,password)
+                ));
+            },executor);
+        }catch(RejectedExecutionException e){
+            rejectedCounter.increment();
+            log.warn("Login queue is full, turning a login away");
+            throw new LoginThrottledException("Login service is busy, try again shortly",maxQueueWait);
+        }
+    }
+
+}
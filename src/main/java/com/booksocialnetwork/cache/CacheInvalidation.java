@@ -0,0 +1,25 @@
+package com.booksocialnetwork.cache;
+
+//a null key means the whole cache was cleared
+public record CacheInvalidation(
+        String nodeId,
+        String cacheName,
+        String key
+) {
+
+    private static final String SEPARATOR="|";
+
+    public String encode(){
+        return nodeId+SEPARATOR+cacheName+SEPARATOR+(key==null?"C":"E"+key);
+    }
+
+    public static CacheInvalidation decode(String message){
+        String[] parts=message.split("\\|",3);
+        if(parts.length!=3 || parts[2].isEmpty()){
+            throw new IllegalArgumentException("Malformed cache invalidation message: "+message);
+        }
+        String key=parts[2].charAt(0)=='E'?parts[2].substring(1):null;
+        return new CacheInvalidation(parts[0],parts[1],key);
+    }
+
+}
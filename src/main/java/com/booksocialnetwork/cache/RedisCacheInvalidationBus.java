@@ -0,0 +1,41 @@
+package com.booksocialnetwork.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+//fire and forget pub/sub, a lost message is bounded by the local tier's ttl
+@RequiredArgsConstructor
+@Slf4j
+public class RedisCacheInvalidationBus implements CacheInvalidationBus {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final String channel;
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        try{
+            redisTemplate.convertAndSend(channel,invalidation.encode());
+        }catch(RuntimeException e){
+            log.warn("Could not publish cache invalidation for {}::{}",invalidation.cacheName(),invalidation.key(),e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> listener) {
+        listenerContainer.addMessageListener((message,pattern)->{
+            try{
+                listener.accept(CacheInvalidation.decode(new String(message.getBody(),StandardCharsets.UTF_8)));
+            }catch(IllegalArgumentException e){
+                log.warn("Ignoring cache invalidation message",e);
+            }
+        },new ChannelTopic(channel));
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.booksocialnetwork.cache;
+
+import com.booksocialnetwork.common.PageResponse;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+//node local caffeine tier in front of the shared cache, local entries are dropped when any node evicts
+public class TwoTierCache implements Cache {
+
+    private final String name;
+    @Getter
+    private final com.github.benmanes.caffeine.cache.Cache<String,ValueWrapper> localCache;
+    @Getter
+    private final Cache remoteCache;
+    private final CacheInvalidationBus invalidationBus;
+    private final String nodeId;
+
+    public TwoTierCache(Cache remoteCache, long localMaximumWeight, Duration localTtl, CacheInvalidationBus invalidationBus, String nodeId) {
+        this.name=remoteCache.getName();
+        this.remoteCache=remoteCache;
+        this.invalidationBus=invalidationBus;
+        this.nodeId=nodeId;
+        this.localCache=Caffeine.newBuilder()
+                .maximumWeight(localMaximumWeight)
+                .weigher((String key,ValueWrapper value)->weigh(value.get()))
+                .expireAfterWrite(localTtl)
+                .recordStats()
+                .build();
+    }
+
+    //a cached listing page counts as many entries as the rows it holds
+    static int weigh(Object value){
+        if(value instanceof Weighted weighted){
+            return weighted.weight();
+        }
+        if(value instanceof PageResponse<?> page && page.getContent()!=null){
+            return 1+page.getContent().size();
+        }
+        return 1;
+    }
+
+    //keys are compared the way redis stores them, so invalidations coming off the bus as strings still match
+    private static String localKey(Object key){
+        return String.valueOf(key);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return localCache;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey=localKey(key);
+        ValueWrapper local=localCache.getIfPresent(localKey);
+        if(local!=null){
+            return local;
+        }
+        ValueWrapper remote=remoteCache.get(key);
+        if(remote!=null){
+            localCache.put(localKey,remote);
+        }
+        return remote;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper=get(key);
+        Object value=wrapper==null?null:wrapper.get();
+        if(value!=null && type!=null && !type.isInstance(value)){
+            throw new IllegalStateException("Cached value is not of required type ["+type.getName()+"]: "+value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper=get(key);
+        if(wrapper!=null){
+            return (T) wrapper.get();
+        }
+        T value;
+        try{
+            value=valueLoader.call();
+        }catch(Exception e){
+            throw new ValueRetrievalException(key,valueLoader,e);
+        }
+        put(key,value);
+        return value;
+    }
+
+    //puts are read-through fills of a value every node would load the same way, so only evictions are broadcast
+    @Override
+    public void put(Object key, Object value) {
+        remoteCache.put(key,value);
+        localCache.put(localKey(key),new SimpleValueWrapper(value));
+    }
+
+    @Override
+    public void evict(Object key) {
+        remoteCache.evict(key);
+        evictLocal(localKey(key));
+        invalidationBus.publish(new CacheInvalidation(nodeId,name,localKey(key)));
+    }
+
+    @Override
+    public void clear() {
+        remoteCache.clear();
+        clearLocal();
+        invalidationBus.publish(new CacheInvalidation(nodeId,name,null));
+    }
+
+    public void evictLocal(String key){
+        localCache.invalidate(key);
+    }
+
+    public void clearLocal(){
+        localCache.invalidateAll();
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.booksocialnetwork.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+public class TwoTierCacheManager extends AbstractTransactionSupportingCacheManager {
+
+    private final CacheManager remoteCacheManager;
+    private final CacheInvalidationBus invalidationBus;
+    private final Map<String,Long> localMaximumWeights;
+    private final long defaultLocalMaximumWeight;
+    private final Duration localTtl;
+    private final String nodeId=UUID.randomUUID().toString();
+
+    public TwoTierCacheManager(CacheManager remoteCacheManager, CacheInvalidationBus invalidationBus, Map<String,Long> localMaximumWeights, long defaultLocalMaximumWeight, Duration localTtl) {
+        this.remoteCacheManager=remoteCacheManager;
+        this.invalidationBus=invalidationBus;
+        this.localMaximumWeights=localMaximumWeights;
+        this.defaultLocalMaximumWeight=defaultLocalMaximumWeight;
+        this.localTtl=localTtl;
+    }
+
+    //subscribed once the manager is fully built, the constructor must not hand out a reference to itself
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        invalidationBus.subscribe(this::onInvalidation);
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        return remoteCacheManager.getCacheNames().stream()
+                .map(remoteCacheManager::getCache)
+                .filter(Objects::nonNull)
+                .map(this::twoTier)
+                .toList();
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        Cache remoteCache=remoteCacheManager.getCache(name);
+        return remoteCache==null?null:twoTier(remoteCache);
+    }
+
+    private TwoTierCache twoTier(Cache remoteCache){
+        long localMaximumWeight=localMaximumWeights.getOrDefault(remoteCache.getName(),defaultLocalMaximumWeight);
+        return new TwoTierCache(remoteCache,localMaximumWeight,localTtl,invalidationBus,nodeId);
+    }
+
+    //the shared tier was already updated by the publishing node, only our local copy is stale
+    private void onInvalidation(CacheInvalidation invalidation){
+        if(nodeId.equals(invalidation.nodeId())){
+            return;
+        }
+        Cache cache=lookupCache(invalidation.cacheName());
+        if(cache instanceof TransactionAwareCacheDecorator decorator){
+            cache=decorator.getTargetCache();
+        }
+        if(cache instanceof TwoTierCache twoTierCache){
+            if(invalidation.key()==null){
+                twoTierCache.clearLocal();
+            }else{
+                twoTierCache.evictLocal(invalidation.key());
+            }
+        }
+    }
+
+}
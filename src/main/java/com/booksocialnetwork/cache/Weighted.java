@@ -0,0 +1,8 @@
+package com.booksocialnetwork.cache;
+
+//cached values holding many rows, so the local tier can size them by what they hold
+public interface Weighted {
+
+    int weight();
+
+}
@@ -0,0 +1,139 @@
+package com.booksocialnetwork.common;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+//serves COUNT(*) results that are refreshed in the background instead of on the request path
+@Service
+@Slf4j
+public class ApproximateCountService {
+
+    private final Map<String,CountEntry> entries=new ConcurrentHashMap<>();
+
+    @Value("${application.pagination.approximate-count.max-entries}")
+    private int maxEntries;
+
+    @Value("${application.pagination.approximate-count.max-age}")
+    private Duration maxAge;
+
+    @Value("${application.pagination.approximate-count.idle-timeout}")
+    private Duration idleTimeout;
+
+    @Value("${application.pagination.approximate-count.refresh-threads}")
+    private int refreshThreads;
+
+    //the counts run here, the shared scheduler thread only hands them over
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start(){
+        AtomicInteger threadCount=new AtomicInteger();
+        ThreadFactory threadFactory=runnable->{
+            Thread thread=new Thread(runnable,"approximate-count-"+threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor=new ThreadPoolExecutor(
+                refreshThreads,
+                refreshThreads,
+                60,TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(maxEntries),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void stop(){
+        executor.shutdownNow();
+    }
+
+    //the first read of a key counts on the request path, later reads get the last count while it is refreshed in the background
+    public Long count(TotalsMode totalsMode, String key, Supplier<Long> counter){
+        if(totalsMode!=TotalsMode.APPROXIMATE){
+            return null;
+        }
+        CountEntry entry=entries.get(key);
+        if(entry==null){
+            if(entries.size()>=maxEntries){
+                //still answered when full, just not remembered
+                return counter.get();
+            }
+            entry=entries.computeIfAbsent(key,k->new CountEntry(counter));
+        }
+        entry.lastReadAt=System.currentTimeMillis();
+        Long value=entry.value;
+        return value!=null?value:entry.load();
+    }
+
+    @Scheduled(fixedDelayString = "${application.pagination.approximate-count.refresh-interval}")
+    public void refresh(){
+        long now=System.currentTimeMillis();
+        entries.entrySet().removeIf(entry->now-entry.getValue().lastReadAt>idleTimeout.toMillis());
+        entries.forEach((key,entry)->{
+            //a null value is still being loaded by its first reader
+            if(entry.value==null || now-entry.refreshedAt<maxAge.toMillis() || !entry.refreshing.compareAndSet(false,true)){
+                return;
+            }
+            try{
+                executor.execute(()->{
+                    try{
+                        entry.reload();
+                    }catch(RuntimeException e){
+                        log.warn("Could not refresh approximate count {}",key,e);
+                    }finally {
+                        entry.refreshing.set(false);
+                    }
+                });
+            }catch(RejectedExecutionException e){
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    private static final class CountEntry {
+
+        private final Supplier<Long> counter;
+        private final AtomicBoolean refreshing=new AtomicBoolean();
+        private volatile Long value;
+        private volatile long refreshedAt;
+        private volatile long lastReadAt=System.currentTimeMillis();
+
+        private CountEntry(Supplier<Long> counter){
+            this.counter=counter;
+        }
+
+        //concurrent first readers share one count
+        private synchronized Long load(){
+            if(value==null){
+                reload();
+            }
+            return value;
+        }
+
+        private void reload(){
+            Long counted=counter.get();
+            refreshedAt=System.currentTimeMillis();
+            value=counted;
+        }
+
+    }
+
+}
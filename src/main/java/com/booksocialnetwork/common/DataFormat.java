@@ -0,0 +1,30 @@
+package com.booksocialnetwork.common;
+
+import lombok.Getter;
+
+@Getter
+public enum DataFormat {
+
+    CSV("text/csv","csv"),
+    NDJSON("application/x-ndjson","ndjson");
+
+    private final String mediaType;
+    private final String extension;
+
+    DataFormat(String mediaType, String extension){
+        this.mediaType=mediaType;
+        this.extension=extension;
+    }
+
+    //parameters such as charset are ignored, bodies are always read as utf-8
+    public static DataFormat fromContentType(String contentType){
+        String mediaType=contentType==null?"":contentType.split(";")[0].trim();
+        for(DataFormat format:values()){
+            if(format.mediaType.equalsIgnoreCase(mediaType)){
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported content type: "+contentType);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.booksocialnetwork.common;
+
+import com.booksocialnetwork.search.FacetCount;
+import lombok.*;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FacetedPageResponse<T> {
+
+    private PageResponse<T> page;
+    private Map<String,List<FacetCount>> facets;
+
+}
@@ -0,0 +1,52 @@
+package com.booksocialnetwork.common;
+
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//opaque continuation token over the (createdDate, id) keyset every listing is ordered by
+public final class PageCursor {
+
+    private static final String CREATED_DATE="createdDate";
+    private static final String ID="id";
+    private static final String SEPARATOR="|";
+
+    public static final Sort SORT=Sort.by(Sort.Order.desc(CREATED_DATE),Sort.Order.desc(ID));
+
+    private PageCursor(){
+    }
+
+    public static ScrollPosition decode(String cursor){
+        if(StringUtils.isBlank(cursor)){
+            return ScrollPosition.keyset();
+        }
+        try{
+            String decoded=new String(Base64.getUrlDecoder().decode(cursor),StandardCharsets.UTF_8);
+            int separatorIndex=decoded.indexOf(SEPARATOR);
+            Map<String,Object> keys=new LinkedHashMap<>();
+            keys.put(CREATED_DATE,LocalDateTime.parse(decoded.substring(0,separatorIndex)));
+            keys.put(ID,Integer.valueOf(decoded.substring(separatorIndex+1)));
+            return ScrollPosition.forward(keys);
+        }catch(IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e){
+            throw new OperationNotPermittedException("The supplied cursor is invalid");
+        }
+    }
+
+    public static String encode(ScrollPosition position){
+        if(!(position instanceof KeysetScrollPosition keyset)){
+            throw new IllegalArgumentException("Only keyset positions can be turned into a cursor");
+        }
+        String raw=keyset.getKeys().get(CREATED_DATE)+SEPARATOR+keyset.getKeys().get(ID);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
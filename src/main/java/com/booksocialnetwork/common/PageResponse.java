@@ -1,7 +1,11 @@
 package com.booksocialnetwork.common;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
+import java.io.Serializable;
 import java.util.List;
 
 @Getter
@@ -9,14 +13,50 @@ import java.util.List;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-public class PageResponse<T> {
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PageResponse<T> implements Serializable {
 
     private List<T> content;
     private int number;
     private int size;
-    private long totalElements;
-    private int totalPages;
+    private Long totalElements;
+    private Integer totalPages;
     private boolean first;
     private boolean last;
+    private boolean hasNext;
+    private boolean approximateTotals;
+
+    public static <T> PageResponse<T> fromPage(List<T> content, Page<?> page){
+        return new PageResponse<T>(
+                content,
+                page.getNumber(),
+                page.getSize(),
+                page.getTotalElements(),
+                page.getTotalPages(),
+                page.isFirst(),
+                page.isLast(),
+                page.hasNext(),
+                false
+        );
+    }
+
+    //a Slice never runs a COUNT query, totals are either omitted or served from ApproximateCountService
+    public static <T> PageResponse<T> fromSlice(List<T> content, Slice<?> slice, Long approximateTotalElements){
+        Integer approximateTotalPages=null;
+        if(approximateTotalElements!=null && slice.getSize()>0){
+            approximateTotalPages=(int) Math.ceil((double) approximateTotalElements/slice.getSize());
+        }
+        return new PageResponse<T>(
+                content,
+                slice.getNumber(),
+                slice.getSize(),
+                approximateTotalElements,
+                approximateTotalPages,
+                slice.isFirst(),
+                slice.isLast(),
+                slice.hasNext(),
+                approximateTotalElements!=null
+        );
+    }
 
 }
@@ -0,0 +1,16 @@
+package com.booksocialnetwork.common;
+
+public enum TotalsMode {
+
+    EXACT,
+    NONE,
+    APPROXIMATE;
+
+    public static TotalsMode of(boolean withTotals, boolean approximateTotals){
+        if(approximateTotals){
+            return APPROXIMATE;
+        }
+        return withTotals?EXACT:NONE;
+    }
+
+}
@@ -1,6 +1,6 @@
 package com.booksocialnetwork.configurations;
 
-import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.security.AuthenticatedUser;
 import org.springframework.data.domain.AuditorAware;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -15,7 +15,7 @@ public class ApplicationAuditAware implements AuditorAware<Integer> {
         if(authentication==null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken){
             return Optional.empty();
         }
-        User userPrincipal=((User) authentication.getPrincipal());
-        return Optional.ofNullable(userPrincipal.getId());
+        AuthenticatedUser userPrincipal=((AuthenticatedUser) authentication.getPrincipal());
+        return Optional.ofNullable(userPrincipal.id());
     }
 }
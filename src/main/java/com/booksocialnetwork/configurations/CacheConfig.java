@@ -0,0 +1,114 @@
+package com.booksocialnetwork.configurations;
+
+import com.booksocialnetwork.cache.CacheInvalidationBus;
+import com.booksocialnetwork.cache.RedisCacheInvalidationBus;
+import com.booksocialnetwork.cache.TwoTierCache;
+import com.booksocialnetwork.cache.TwoTierCacheManager;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.actuate.metrics.cache.RedisCacheMetrics;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String BOOKS_CACHE="books";
+    public static final String DISPLAYABLE_BOOKS_CACHE="displayableBooks";
+
+    @Value("${application.cache.books.ttl}")
+    private Duration booksTtl;
+
+    @Value("${application.cache.books.local-max-weight}")
+    private long booksLocalMaxWeight;
+
+    @Value("${application.cache.displayable-books.ttl}")
+    private Duration displayableBooksTtl;
+
+    @Value("${application.cache.displayable-books.local-max-weight}")
+    private long displayableBooksLocalMaxWeight;
+
+    @Value("${application.cache.local.ttl}")
+    private Duration localTtl;
+
+    @Value("${application.cache.local.default-max-weight}")
+    private long defaultLocalMaxWeight;
+
+    @Value("${application.cache.invalidation-channel}")
+    private String invalidationChannel;
+
+    @Value("${application.cache.clear-batch-size}")
+    private int clearBatchSize;
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory){
+        RedisMessageListenerContainer container=new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(StringRedisTemplate redisTemplate, RedisMessageListenerContainer cacheInvalidationListenerContainer){
+        return new RedisCacheInvalidationBus(redisTemplate,cacheInvalidationListenerContainer,invalidationChannel);
+    }
+
+    //transaction aware so evictions issued inside a transaction only reach either tier after the commit
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, CacheInvalidationBus cacheInvalidationBus){
+        //clear() walks the keys with SCAN instead of a blocking KEYS over the whole keyspace
+        RedisCacheWriter cacheWriter=RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory,BatchStrategies.scan(clearBatchSize));
+        RedisCacheManager remoteCacheManager=RedisCacheManager.builder(cacheWriter)
+                .cacheDefaults(cacheConfiguration(booksTtl))
+                .withCacheConfiguration(BOOKS_CACHE,cacheConfiguration(booksTtl))
+                .withCacheConfiguration(DISPLAYABLE_BOOKS_CACHE,cacheConfiguration(displayableBooksTtl))
+                .enableStatistics()
+                .build();
+        remoteCacheManager.afterPropertiesSet();
+        TwoTierCacheManager cacheManager=new TwoTierCacheManager(
+                remoteCacheManager,
+                cacheInvalidationBus,
+                Map.of(
+                        BOOKS_CACHE,booksLocalMaxWeight,
+                        DISPLAYABLE_BOOKS_CACHE,displayableBooksLocalMaxWeight
+                ),
+                defaultLocalMaxWeight,
+                localTtl
+        );
+        cacheManager.setTransactionAware(true);
+        return cacheManager;
+    }
+
+    //picked up by actuator so cache.gets hit/miss is reported for both tiers
+    @Bean
+    public CacheMeterBinderProvider<TwoTierCache> twoTierCacheMeterBinderProvider(){
+        return (cache,tags)->registry->{
+            new CaffeineCacheMetrics<>(cache.getLocalCache(),cache.getName(),Tags.concat(tags,"tier","local")).bindTo(registry);
+            if(cache.getRemoteCache() instanceof RedisCache redisCache){
+                new RedisCacheMetrics(redisCache,Tags.concat(tags,"tier","remote")).bindTo(registry);
+            }
+        };
+    }
+
+    private RedisCacheConfiguration cacheConfiguration(Duration ttl){
+        return RedisCacheConfiguration.defaultCacheConfig(getClass().getClassLoader())
+                .entryTtl(ttl)
+                .disableCachingNullValues();
+    }
+
+}
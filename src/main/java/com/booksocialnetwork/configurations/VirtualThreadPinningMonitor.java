@@ -0,0 +1,96 @@
+package com.booksocialnetwork.configurations;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//a virtual thread that blocks inside a synchronized block holds on to its carrier, the mysql driver and javamail
+//both do that; every pin longer than the threshold is timed under jvm.threads.virtual.pinned and each new call site
+//is logged once so the culprit can be found without a flight recording
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@RequiredArgsConstructor
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    static final String PINNED_EVENT="jdk.VirtualThreadPinned";
+    static final String PINNED_METRIC="jvm.threads.virtual.pinned";
+
+    private final MeterRegistry meterRegistry;
+    private final Set<String> reportedSites=ConcurrentHashMap.newKeySet();
+
+    @Value("${application.threads.pinning.threshold}")
+    private Duration threshold;
+
+    @Value("${application.threads.pinning.max-reported-sites}")
+    private int maxReportedSites;
+
+    private RecordingStream recording;
+
+    @PostConstruct
+    void start(){
+        recording=new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT,this::onPinned);
+        recording.startAsync();
+    }
+
+    @PreDestroy
+    void stop(){
+        recording.close();
+    }
+
+    private void onPinned(RecordedEvent event){
+        List<String> frames=frames(event.getStackTrace());
+        String source=source(frames);
+        Timer.builder(PINNED_METRIC)
+                .description("Time virtual threads spent blocked while pinned to their carrier")
+                .tag("source",source)
+                .register(meterRegistry)
+                .record(event.getDuration());
+        String site=frames.stream().filter(frame->frame.startsWith("com.booksocialnetwork.")).findFirst().orElse(frames.isEmpty()?"unknown":frames.get(0));
+        if(reportedSites.size()<maxReportedSites && reportedSites.add(site)){
+            log.warn("Virtual thread pinned for {} ms in {} code, called from {}",event.getDuration().toMillis(),source,site);
+        }
+    }
+
+    private List<String> frames(RecordedStackTrace stackTrace){
+        if(stackTrace==null){
+            return List.of();
+        }
+        return stackTrace.getFrames().stream()
+                .map(RecordedFrame::getMethod)
+                .map(method->method.getType().getName()+"."+method.getName())
+                .toList();
+    }
+
+    //the innermost recognisable library wins, whatever of ours sits further up the stack
+    static String source(List<String> frames){
+        for(String frame:frames){
+            if(frame.startsWith("com.mysql.") || frame.startsWith("java.sql.") || frame.startsWith("com.zaxxer.hikari.")){
+                return "jdbc";
+            }
+            if(frame.startsWith("jakarta.mail.") || frame.startsWith("org.eclipse.angus.mail.") || frame.startsWith("com.sun.mail.")){
+                return "smtp";
+            }
+        }
+        return "other";
+    }
+
+}
@@ -1,19 +1,45 @@
 package com.booksocialnetwork.controller;
 
+import com.booksocialnetwork.common.CursorPageResponse;
+import com.booksocialnetwork.common.DataFormat;
+import com.booksocialnetwork.common.FacetedPageResponse;
 import com.booksocialnetwork.common.PageResponse;
+import com.booksocialnetwork.common.TotalsMode;
+import com.booksocialnetwork.exports.BookExportService;
+import com.booksocialnetwork.file.CoverVariant;
+import com.booksocialnetwork.file.FileStreamingService;
+import com.booksocialnetwork.holds.HoldResponse;
+import com.booksocialnetwork.holds.HoldService;
+import com.booksocialnetwork.imports.BookImportResponse;
+import com.booksocialnetwork.imports.BookImportService;
+import com.booksocialnetwork.search.BookSearchService;
+import com.booksocialnetwork.search.Completion;
+import com.booksocialnetwork.services.BookFilter;
 import com.booksocialnetwork.services.BookRequest;
 import com.booksocialnetwork.services.BookResponse;
 import com.booksocialnetwork.services.BookService;
 import com.booksocialnetwork.services.BorrowedBookResponse;
+import com.booksocialnetwork.services.LoanBatchService;
+import com.booksocialnetwork.services.LoanCounterService;
+import com.booksocialnetwork.services.LoanOutcome;
+import com.booksocialnetwork.services.LoanSummaryResponse;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
 
 @RestController
 @RequestMapping("books")
@@ -22,6 +48,13 @@ import org.springframework.web.multipart.MultipartFile;
 public class BookController {
 
     private final BookService bookService;
+    private final FileStreamingService fileStreamingService;
+    private final BookSearchService bookSearchService;
+    private final BookImportService bookImportService;
+    private final BookExportService bookExportService;
+    private final HoldService holdService;
+    private final LoanBatchService loanBatchService;
+    private final LoanCounterService loanCounterService;
 
     @PostMapping
     public ResponseEntity<Integer> save(
@@ -31,6 +64,43 @@ public class BookController {
         return ResponseEntity.ok(bookService.save(request,connectedUser));
     }
 
+    //the body is read straight off the request stream; pass the jobId of a failed import with the same body to resume it
+    @PostMapping(value = "/imports",consumes = {"text/csv","application/x-ndjson"})
+    public ResponseEntity<BookImportResponse> importBooks(
+            @RequestParam(name="jobId",required = false) Integer jobId,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            HttpServletRequest request,
+            Authentication connectedUser
+    ) throws IOException {
+        return ResponseEntity.ok(bookImportService.importBooks(request.getInputStream(),DataFormat.fromContentType(contentType),jobId,connectedUser));
+    }
+
+    @GetMapping("/imports/{job-id}")
+    public ResponseEntity<BookImportResponse> findImportJob(
+            @PathVariable("job-id") Integer jobId,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(bookImportService.findJob(jobId,connectedUser));
+    }
+
+    @GetMapping("/exports/owner")
+    public void exportOwnerBooks(
+            @RequestParam(name="format",defaultValue = "CSV",required = false) DataFormat format,
+            HttpServletResponse response,
+            Authentication connectedUser
+    ) throws IOException {
+        bookExportService.exportOwnerBooks(format,response,connectedUser);
+    }
+
+    @GetMapping("/exports/history")
+    public void exportTransactionHistory(
+            @RequestParam(name="format",defaultValue = "CSV",required = false) DataFormat format,
+            HttpServletResponse response,
+            Authentication connectedUser
+    ) throws IOException {
+        bookExportService.exportTransactionHistory(format,response,connectedUser);
+    }
+
     @GetMapping("/{book-id}")
     public ResponseEntity<BookResponse> findBookById(
             @PathVariable("book-id") Integer bookId
@@ -38,40 +108,130 @@ public class BookController {
         return ResponseEntity.ok(bookService.findById(bookId));
     }
 
+    @GetMapping("/{book-id}/cover")
+    public void findBookCover(
+            @PathVariable("book-id") Integer bookId,
+            @RequestParam(name="variant",defaultValue = "ORIGINAL",required = false) CoverVariant variant,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        fileStreamingService.stream(bookService.findBookCoverPath(bookId,variant),request,response);
+    }
+
     @GetMapping
     public ResponseEntity<PageResponse<BookResponse>> findAllBooks(
         @RequestParam(name="page",defaultValue = "0",required = false) int page,
         @RequestParam(name="size",defaultValue = "10",required = false) int size,
+        @RequestParam(name="withTotals",defaultValue = "true",required = false) boolean withTotals,
+        @RequestParam(name="approximateTotals",defaultValue = "false",required = false) boolean approximateTotals,
         Authentication connectedUser
         ){
-        return ResponseEntity.ok(bookService.findAllBooks(page,size,connectedUser));
+        return ResponseEntity.ok(bookService.findAllBooks(page,size,TotalsMode.of(withTotals,approximateTotals),connectedUser));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<PageResponse<BookResponse>> searchBooks(
+            @RequestParam(name="q") String query,
+            @RequestParam(name="page",defaultValue = "0",required = false) int page,
+            @RequestParam(name="size",defaultValue = "10",required = false) int size,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(bookSearchService.search(query,page,size,connectedUser));
+    }
+
+    @GetMapping("/filter")
+    public ResponseEntity<FacetedPageResponse<BookResponse>> filterBooks(
+            @RequestParam(name="author",required = false) String authorName,
+            @RequestParam(name="isbnPrefix",required = false) String isbnPrefix,
+            @RequestParam(name="minRating",required = false) Double minRating,
+            @RequestParam(name="available",required = false) Boolean available,
+            @RequestParam(name="createdFrom",required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate createdFrom,
+            @RequestParam(name="createdTo",required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate createdTo,
+            @RequestParam(name="page",defaultValue = "0",required = false) int page,
+            @RequestParam(name="size",defaultValue = "10",required = false) int size,
+            Authentication connectedUser
+    ){
+        BookFilter filter=new BookFilter(authorName,isbnPrefix,minRating,available,createdFrom,createdTo);
+        return ResponseEntity.ok(bookSearchService.filter(filter,page,size,connectedUser));
+    }
+
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<Completion>> autocomplete(
+            @RequestParam(name="prefix") String prefix,
+            @RequestParam(name="limit",defaultValue = "10",required = false) int limit
+    ){
+        return ResponseEntity.ok(bookSearchService.autocomplete(prefix,limit));
     }
 
     @GetMapping("/owner")
     public ResponseEntity<PageResponse<BookResponse>> findAllBooksByOwner(
             @RequestParam(name="page",defaultValue = "0",required = false) int page,
             @RequestParam(name="size",defaultValue = "10",required = false) int size,
+            @RequestParam(name="withTotals",defaultValue = "true",required = false) boolean withTotals,
+            @RequestParam(name="approximateTotals",defaultValue = "false",required = false) boolean approximateTotals,
             Authentication connectedUser
     ){
-        return ResponseEntity.ok(bookService.findAllBooksByOwner(page,size,connectedUser));
+        return ResponseEntity.ok(bookService.findAllBooksByOwner(page,size,TotalsMode.of(withTotals,approximateTotals),connectedUser));
     }
 
     @GetMapping("/borrowed")
     public ResponseEntity<PageResponse<BorrowedBookResponse>> findAllBorrowedBooks(
             @RequestParam(name="page",defaultValue = "0",required = false) int page,
             @RequestParam(name="size",defaultValue = "10",required = false) int size,
+            @RequestParam(name="withTotals",defaultValue = "true",required = false) boolean withTotals,
+            @RequestParam(name="approximateTotals",defaultValue = "false",required = false) boolean approximateTotals,
+            @RequestParam(name="includeArchive",defaultValue = "false",required = false) boolean includeArchive,
             Authentication connectedUser
     ){
-        return ResponseEntity.ok(bookService.findAllBorrowedBooks(page,size,connectedUser));
+        return ResponseEntity.ok(bookService.findAllBorrowedBooks(page,size,TotalsMode.of(withTotals,approximateTotals),includeArchive,connectedUser));
     }
 
     @GetMapping("/returned")
     public ResponseEntity<PageResponse<BorrowedBookResponse>> findAllReturnedBooks(
             @RequestParam(name="page",defaultValue = "0",required = false) int page,
             @RequestParam(name="size",defaultValue = "10",required = false) int size,
+            @RequestParam(name="withTotals",defaultValue = "true",required = false) boolean withTotals,
+            @RequestParam(name="approximateTotals",defaultValue = "false",required = false) boolean approximateTotals,
+            @RequestParam(name="includeArchive",defaultValue = "false",required = false) boolean includeArchive,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(bookService.findAllReturnedBooks(page,size,TotalsMode.of(withTotals,approximateTotals),includeArchive,connectedUser));
+    }
+
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPageResponse<BookResponse>> findAllBooksByCursor(
+            @RequestParam(name="cursor",required = false) String cursor,
+            @RequestParam(name="size",defaultValue = "10",required = false) int size,
             Authentication connectedUser
     ){
-        return ResponseEntity.ok(bookService.findAllReturnedBooks(page,size,connectedUser));
+        return ResponseEntity.ok(bookService.findAllBooksByCursor(cursor,size,connectedUser));
+    }
+
+    @GetMapping("/owner/cursor")
+    public ResponseEntity<CursorPageResponse<BookResponse>> findAllBooksByOwnerAndCursor(
+            @RequestParam(name="cursor",required = false) String cursor,
+            @RequestParam(name="size",defaultValue = "10",required = false) int size,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(bookService.findAllBooksByOwnerAndCursor(cursor,size,connectedUser));
+    }
+
+    @GetMapping("/borrowed/cursor")
+    public ResponseEntity<CursorPageResponse<BorrowedBookResponse>> findAllBorrowedBooksByCursor(
+            @RequestParam(name="cursor",required = false) String cursor,
+            @RequestParam(name="size",defaultValue = "10",required = false) int size,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(bookService.findAllBorrowedBooksByCursor(cursor,size,connectedUser));
+    }
+
+    @GetMapping("/returned/cursor")
+    public ResponseEntity<CursorPageResponse<BorrowedBookResponse>> findAllReturnedBooksByCursor(
+            @RequestParam(name="cursor",required = false) String cursor,
+            @RequestParam(name="size",defaultValue = "10",required = false) int size,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(bookService.findAllReturnedBooksByCursor(cursor,size,connectedUser));
     }
 
     @PatchMapping("/shareable/{book-id}")
@@ -114,6 +274,65 @@ public class BookController {
         return ResponseEntity.ok(bookService.approveReturnBorrowedBook(bookId,connectedUser));
     }
 
+    @GetMapping("/loans/summary")
+    public ResponseEntity<LoanSummaryResponse> findLoanSummary(
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(loanCounterService.findSummary(connectedUser));
+    }
+
+    //batch variants of the two endpoints above, each book id gets its own outcome
+    @PatchMapping("/borrow/return")
+    public ResponseEntity<List<LoanOutcome>> returnBorrowBooks(
+            @RequestBody List<Integer> bookIds,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(loanBatchService.returnBorrowedBooks(bookIds,connectedUser));
+    }
+
+    @PatchMapping("/borrow/return/approve")
+    public ResponseEntity<List<LoanOutcome>> approveReturnBorrowBooks(
+            @RequestBody List<Integer> bookIds,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(loanBatchService.approveReturnBorrowedBooks(bookIds,connectedUser));
+    }
+
+    @PostMapping("/holds/{book-id}")
+    public ResponseEntity<HoldResponse> placeHold(
+            @PathVariable(name="book-id") int bookId,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(holdService.enqueue(bookId,connectedUser));
+    }
+
+    @GetMapping("/holds")
+    public ResponseEntity<List<HoldResponse>> findMyHolds(
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(holdService.findLiveHolds(connectedUser));
+    }
+
+    @PatchMapping("/holds/cancel/{hold-id}")
+    public ResponseEntity<?> cancelHold(
+            @PathVariable(name="hold-id") int holdId,
+            Authentication connectedUser
+    ){
+        holdService.cancel(holdId,connectedUser);
+        return ResponseEntity.noContent().build();
+    }
+
+    //owner only, higher priority is served first
+    @PatchMapping("/holds/priority/{hold-id}")
+    public ResponseEntity<?> changeHoldPriority(
+            @PathVariable(name="hold-id") int holdId,
+            @RequestParam(name="priority") int priority,
+            Authentication connectedUser
+    ){
+        holdService.changePriority(holdId,priority,connectedUser);
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping(value = "/cover/{book-id}",consumes = "multipart/form-data")
     public ResponseEntity<?> uploadBookCoverPicture(
             @PathVariable("book-id") Integer bookId,
@@ -1,6 +1,7 @@
 package com.booksocialnetwork.controller;
 
 import com.booksocialnetwork.common.PageResponse;
+import com.booksocialnetwork.common.TotalsMode;
 import com.booksocialnetwork.services.FeedbackRequest;
 import com.booksocialnetwork.services.FeedbackResponse;
 import com.booksocialnetwork.services.FeedbackService;
@@ -32,9 +33,11 @@ public class FeedbackController {
         @PathVariable("book-id") Integer bookId,
         @RequestParam(name = "page",defaultValue = "0",required = false) int page,
         @RequestParam(name="size",defaultValue = "10",required = false) int size,
+        @RequestParam(name="withTotals",defaultValue = "true",required = false) boolean withTotals,
+        @RequestParam(name="approximateTotals",defaultValue = "false",required = false) boolean approximateTotals,
         Authentication connectedUser
     ){
-        return ResponseEntity.ok(feedbackService.findAllFeedbacksByBook(bookId,page,size,connectedUser));
+        return ResponseEntity.ok(feedbackService.findAllFeedbacksByBook(bookId,page,size,TotalsMode.of(withTotals,approximateTotals),connectedUser));
     }
 
 }
@@ -1,63 +1,70 @@
 package com.booksocialnetwork.email;
 
+import com.booksocialnetwork.entities.EmailOutboxMessage;
+import com.booksocialnetwork.entities.OutboxStatus;
+import com.booksocialnetwork.repositories.EmailOutboxRepository;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.thymeleaf.context.Context;
-import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.LocalDateTime;
 
 @Service
 @RequiredArgsConstructor
 public class EmailService {
 
     private final JavaMailSender javaMailSender;
-    private final SpringTemplateEngine templateEngine;
+    private final EmailTemplateRenderer emailTemplateRenderer;
+    private final EmailOutboxRepository emailOutboxRepository;
 
-    @Async
-    public void sendEmail(
+    //joins the caller's transaction: the email exists exactly when what it announces was committed
+    @Transactional
+    public void queueEmail(
             String to,
             String userName,
             EmailTemplateName emailTemplate,
             String confirmationUrl,
             String activationCode,
             String subject
-    ) throws MessagingException {
-        String templateName;
-        if(emailTemplate==null){
-            templateName="confirm-email";
-        }else{
-            templateName= emailTemplate.name();
+    ) {
+        LocalDateTime now=LocalDateTime.now();
+        emailOutboxRepository.save(EmailOutboxMessage.builder()
+                .recipient(to)
+                .recipientName(userName)
+                .template(emailTemplate)
+                .confirmationUrl(confirmationUrl)
+                .activationCode(activationCode)
+                .subject(subject)
+                .status(OutboxStatus.PENDING)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+    }
+
+    public MimeMessage compose(EmailOutboxMessage message) throws MessagingException {
+        if(message.getTemplate()==null){
+            throw new IllegalArgumentException("Email "+message.getId()+" has no template");
         }
         MimeMessage mimeMessage=javaMailSender.createMimeMessage();
-        MimeMessageHelper helper=new MimeMessageHelper(
-                mimeMessage,
-                MimeMessageHelper.MULTIPART_MODE_MIXED,
-                StandardCharsets.UTF_8.name()
-        );
-        Map<String,Object> properties=new HashMap<>();
-        properties.put("username",userName);
-        properties.put("confirmationUrl",confirmationUrl);
-        properties.put("activationCode",activationCode);
-
-        Context context=new Context();
-        context.setVariables(properties);
+        MimeMessageHelper helper=new MimeMessageHelper(mimeMessage,StandardCharsets.UTF_8.name());
 
         helper.setFrom("contact@arpitrathore.com");
-        helper.setTo(to);
-        helper.setSubject(subject);
+        helper.setTo(message.getRecipient());
+        helper.setSubject(message.getSubject());
 
-        String template=templateEngine.process(templateName,context);
+        String template=emailTemplateRenderer.render(message.getTemplate(),new EmailVariables(
+                message.getRecipientName(),
+                message.getConfirmationUrl(),
+                message.getActivationCode()
+        ));
 
         helper.setText(template,true);
-        javaMailSender.send(mimeMessage);
+        return mimeMessage;
     }
 
 }
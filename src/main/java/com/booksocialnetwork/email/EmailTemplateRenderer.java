@@ -0,0 +1,97 @@
+package com.booksocialnetwork.email;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+//each template goes through thymeleaf once at startup with a unique marker in every variable; the output is cut at the
+//markers, so rendering a message is only joining the static parts with the escaped values. a template whose output
+//does not come back identical from the compiled form (conditionals, unescaped text) keeps being processed in full
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailTemplateRenderer {
+
+    //markers and probes only use characters every html escaper leaves alone, or escapes the same way
+    private static final String PROBE="probe<&>";
+
+    private final SpringTemplateEngine templateEngine;
+    private final Map<EmailTemplateName,CompiledTemplate> compiled=new EnumMap<>(EmailTemplateName.class);
+
+    @PostConstruct
+    void compileAll(){
+        for(EmailTemplateName template:EmailTemplateName.values()){
+            CompiledTemplate compiledTemplate=compile(template);
+            EmailVariables probe=new EmailVariables(PROBE+"username",PROBE+"confirmationUrl",PROBE+"activationCode");
+            if(compiledTemplate!=null && compiledTemplate.render(probe).equals(process(template,probe))){
+                compiled.put(template,compiledTemplate);
+            }else{
+                log.warn("Email template {} cannot be precompiled, it will be processed for every message",template.getName());
+            }
+        }
+    }
+
+    public String render(EmailTemplateName template, EmailVariables variables){
+        CompiledTemplate compiledTemplate=compiled.get(template);
+        return compiledTemplate!=null?compiledTemplate.render(variables):process(template,variables);
+    }
+
+    boolean isPrecompiled(EmailTemplateName template){
+        return compiled.containsKey(template);
+    }
+
+    String process(EmailTemplateName template, EmailVariables variables){
+        Context context=new Context();
+        for(String name:EmailVariables.NAMES){
+            context.setVariable(name,variables.get(name));
+        }
+        return templateEngine.process(template.getName(),context);
+    }
+
+    private CompiledTemplate compile(EmailTemplateName template){
+        String marker="emailvar"+UUID.randomUUID().toString().replace("-","");
+        EmailVariables markers=new EmailVariables(marker+"0x",marker+"1x",marker+"2x");
+        String output=process(template,markers);
+        List<String> parts=new ArrayList<>();
+        List<String> slots=new ArrayList<>();
+        int from=0;
+        int at;
+        while((at=output.indexOf(marker,from))>=0){
+            int end=output.indexOf('x',at+marker.length());
+            if(end<0){
+                return null;
+            }
+            parts.add(output.substring(from,at));
+            slots.add(EmailVariables.NAMES.get(Integer.parseInt(output.substring(at+marker.length(),end))));
+            from=end+1;
+        }
+        parts.add(output.substring(from));
+        return new CompiledTemplate(parts.toArray(String[]::new),slots.toArray(String[]::new),parts.stream().mapToInt(String::length).sum());
+    }
+
+    private record CompiledTemplate(String[] parts, String[] slots, int staticLength){
+
+        String render(EmailVariables variables){
+            StringBuilder html=new StringBuilder(staticLength+64*slots.length);
+            for(int i=0;i<slots.length;i++){
+                html.append(parts[i]);
+                String value=variables.get(slots[i]);
+                if(value!=null){
+                    html.append(HtmlUtils.htmlEscape(value));
+                }
+            }
+            return html.append(parts[slots.length]).toString();
+        }
+    }
+
+}
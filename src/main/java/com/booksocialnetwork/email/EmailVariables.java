@@ -0,0 +1,19 @@
+package com.booksocialnetwork.email;
+
+import java.util.List;
+
+//everything a template can reference, by the names the templates use
+public record EmailVariables(String username, String confirmationUrl, String activationCode) {
+
+    static final List<String> NAMES=List.of("username","confirmationUrl","activationCode");
+
+    String get(String name){
+        return switch(name){
+            case "username"->username;
+            case "confirmationUrl"->confirmationUrl;
+            case "activationCode"->activationCode;
+            default->throw new IllegalArgumentException("Unknown email variable "+name);
+        };
+    }
+
+}
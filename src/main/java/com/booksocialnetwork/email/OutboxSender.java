@@ -0,0 +1,202 @@
+package com.booksocialnetwork.email;
+
+import com.booksocialnetwork.entities.EmailOutboxMessage;
+import com.booksocialnetwork.entities.OutboxStatus;
+import com.booksocialnetwork.repositories.EmailOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+//drains the outbox in batches, each batch goes out over a single smtp connection; a message that fails is retried with
+//exponential backoff and dead-lettered after max-attempts, the rest of its batch is unaffected
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxSender {
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final EmailService emailService;
+    private final JavaMailSender javaMailSender;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.mailing.outbox.batch-size}")
+    private int batchSize;
+
+    @Value("${application.mailing.outbox.max-batches-per-run}")
+    private int maxBatchesPerRun;
+
+    @Value("${application.mailing.outbox.lease}")
+    private Duration lease;
+
+    @Value("${application.mailing.outbox.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${application.mailing.outbox.initial-backoff}")
+    private Duration initialBackoff;
+
+    @Value("${application.mailing.outbox.max-backoff}")
+    private Duration maxBackoff;
+
+    @Value("${application.mailing.outbox.retention}")
+    private Duration retention;
+
+    private final AtomicLong pending=new AtomicLong();
+    private final AtomicLong lagSeconds=new AtomicLong();
+    private Timer batchTimer;
+    private Counter sentCounter;
+    private Counter retriedCounter;
+    private Counter deadCounter;
+
+    @PostConstruct
+    void init(){
+        Gauge.builder("mail.outbox.pending",pending,AtomicLong::get)
+                .description("Emails waiting in the outbox, as of the last drain")
+                .register(meterRegistry);
+        Gauge.builder("mail.outbox.lag",lagSeconds,AtomicLong::get)
+                .description("Age of the oldest undelivered email, as of the last drain")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        batchTimer=Timer.builder("mail.outbox.batch")
+                .description("Time spent delivering one batch over a single smtp connection")
+                .register(meterRegistry);
+        sentCounter=Counter.builder("mail.outbox.sent").register(meterRegistry);
+        retriedCounter=Counter.builder("mail.outbox.retried").register(meterRegistry);
+        deadCounter=Counter.builder("mail.outbox.dead").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${application.mailing.outbox.poll-interval}",initialDelayString = "${application.mailing.outbox.poll-interval}")
+    public void drain(){
+        int batches=0;
+        int sent=0;
+        int failed=0;
+        while(batches<maxBatchesPerRun){
+            LocalDateTime now=LocalDateTime.now();
+            List<Integer> due=emailOutboxRepository.findDueIds(now,Limit.of(batchSize));
+            if(due.isEmpty()){
+                break;
+            }
+            String claimToken=UUID.randomUUID().toString();
+            int claimed=emailOutboxRepository.claim(due,claimToken,now,now.plus(lease));
+            if(claimed>0){
+                int delivered=deliver(claimToken);
+                sent+=delivered;
+                failed+=claimed-delivered;
+            }
+            batches++;
+            if(due.size()<batchSize){
+                break;
+            }
+        }
+        refreshBacklog();
+        if(failed>0){
+            log.warn("Outbox drain delivered {} emails in {} batches, {} failed",sent,batches,failed);
+        }else if(sent>0){
+            log.info("Outbox drain delivered {} emails in {} batches",sent,batches);
+        }
+    }
+
+    //returns how many were delivered; whatever is not delivered is rescheduled or dead-lettered here
+    private int deliver(String claimToken){
+        List<EmailOutboxMessage> messages=emailOutboxRepository.findByClaimToken(claimToken);
+        Map<MimeMessage,EmailOutboxMessage> composed=new LinkedHashMap<>();
+        for(EmailOutboxMessage message:messages){
+            try{
+                composed.put(emailService.compose(message),message);
+            }catch(MessagingException | RuntimeException e){
+                //nothing a retry would change
+                deadLetter(message,claimToken,e);
+            }
+        }
+        if(composed.isEmpty()){
+            return 0;
+        }
+        Map<Object,Exception> failures=new HashMap<>();
+        Timer.Sample sample=Timer.start(meterRegistry);
+        try{
+            javaMailSender.send(composed.keySet().toArray(MimeMessage[]::new));
+        }catch(MailSendException e){
+            failures.putAll(e.getFailedMessages());
+            if(failures.isEmpty()){
+                composed.keySet().forEach(mimeMessage->failures.put(mimeMessage,e));
+            }
+        }catch(MailException e){
+            //connecting or authenticating failed, nothing went out
+            composed.keySet().forEach(mimeMessage->failures.put(mimeMessage,e));
+        }finally{
+            sample.stop(batchTimer);
+        }
+        List<Integer> delivered=new ArrayList<>();
+        composed.forEach((mimeMessage,message)->{
+            Exception failure=failures.get(mimeMessage);
+            if(failure==null){
+                delivered.add(message.getId());
+            }else if(message.getAttempts()+1>=maxAttempts){
+                deadLetter(message,claimToken,failure);
+            }else{
+                retriedCounter.increment();
+                emailOutboxRepository.markFailed(message.getId(),claimToken,OutboxStatus.PENDING,LocalDateTime.now().plus(backoff(message.getAttempts()+1)),error(failure));
+            }
+        });
+        if(!delivered.isEmpty()){
+            emailOutboxRepository.markSent(delivered,claimToken,LocalDateTime.now());
+            sentCounter.increment(delivered.size());
+        }
+        return delivered.size();
+    }
+
+    private void deadLetter(EmailOutboxMessage message, String claimToken, Exception e){
+        deadCounter.increment();
+        emailOutboxRepository.markFailed(message.getId(),claimToken,OutboxStatus.DEAD,null,error(e));
+        log.error("Email {} to {} dead-lettered after {} attempts",message.getId(),message.getRecipient(),message.getAttempts()+1,e);
+    }
+
+    //initial-backoff doubled per failed attempt, capped at max-backoff
+    Duration backoff(int attempts){
+        Duration backoff=initialBackoff.multipliedBy(1L<<Math.min(attempts-1,20));
+        return backoff.compareTo(maxBackoff)>0?maxBackoff:backoff;
+    }
+
+    private void refreshBacklog(){
+        pending.set(emailOutboxRepository.countByStatus(OutboxStatus.PENDING));
+        lagSeconds.set(emailOutboxRepository.findOldestPendingCreatedAt()
+                .map(oldest->Math.max(0,Duration.between(oldest,LocalDateTime.now()).toSeconds()))
+                .orElse(0L));
+    }
+
+    @Scheduled(cron = "${application.mailing.outbox.purge-cron}")
+    public void purge(){
+        int purged=emailOutboxRepository.deleteSentBefore(LocalDateTime.now().minus(retention));
+        if(purged>0){
+            log.info("Purged {} delivered emails from the outbox",purged);
+        }
+    }
+
+    private static String error(Exception e){
+        return StringUtils.abbreviate(String.valueOf(e.getMessage()),1000);
+    }
+
+}
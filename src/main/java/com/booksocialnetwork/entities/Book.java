@@ -14,6 +14,12 @@ import java.util.List;
 @SuperBuilder
 @AllArgsConstructor
 @NoArgsConstructor
+@Table(indexes = {
+        @Index(name = "idx_book_created_date_id",columnList = "created_date, id"),
+        @Index(name = "idx_book_owner_created_date_id",columnList = "owner_id, created_date, id"),
+        @Index(name = "idx_book_author_name",columnList = "author_name"),
+        @Index(name = "idx_book_isbn",columnList = "isbn")
+})
 public class Book extends BaseEntity{
 
     private String title;
@@ -24,6 +30,10 @@ public class Book extends BaseEntity{
     private boolean archived;
     private boolean shareable;
 
+    @Embedded
+    @Builder.Default
+    private BookRating rating=new BookRating();
+
     @ManyToOne
     @JoinColumn(name = "owner_id")
     private User owner;
@@ -36,12 +46,10 @@ public class Book extends BaseEntity{
 
     @Transient
     public double getrate(){
-        if(feedbacks == null || feedbacks.isEmpty()){
+        if(rating == null){
             return 0.0;
         }
-        var rate=this.feedbacks.stream().mapToDouble(Feedback::getNote).average().orElse(0.0);
-        double roundedRate=Math.round(rate*10.0)/10.0;
-        return roundedRate;
+        return rating.getAverage();
     }
 
 }
@@ -0,0 +1,56 @@
+package com.booksocialnetwork.entities;
+
+import com.booksocialnetwork.entities.base.BaseEntity;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@Setter
+@SuperBuilder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(indexes = {
+        @Index(name = "idx_hold_book_status",columnList = "book_id, status"),
+        @Index(name = "idx_hold_status_expires_at",columnList = "status, expires_at"),
+        @Index(name = "idx_hold_user_status",columnList = "user_id, status")
+},uniqueConstraints = {
+        @UniqueConstraint(name = BookHold.LIVE_HOLD_CONSTRAINT,columnNames = "live_key"),
+        @UniqueConstraint(name = BookHold.READY_HOLD_CONSTRAINT,columnNames = "ready_book_id")
+})
+public class BookHold extends BaseEntity {
+
+    public static final String LIVE_HOLD_CONSTRAINT="uk_hold_live_key";
+    public static final String READY_HOLD_CONSTRAINT="uk_hold_ready_book";
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "book_id",nullable = false)
+    private Book book;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id",nullable = false)
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    private HoldStatus status;
+
+    //set by the book owner, higher is served first; equal priorities are served in queue order
+    private int priority;
+
+    private LocalDateTime readyAt;
+    private LocalDateTime expiresAt;
+
+    //"bookId:userId" while WAITING or READY, null afterwards; unique, so a reader holds a book at most once
+    private String liveKey;
+
+    //the book id while READY, null otherwise; unique, so a copy is reserved for one reader at a time
+    private Integer readyBookId;
+
+    public static String liveKey(Integer bookId, Integer userId){
+        return bookId+":"+userId;
+    }
+
+}
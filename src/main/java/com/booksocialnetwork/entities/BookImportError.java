@@ -0,0 +1,30 @@
+package com.booksocialnetwork.entities;
+
+import com.booksocialnetwork.entities.base.BaseEntity;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+@Entity
+@Getter
+@Setter
+@SuperBuilder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(indexes = {
+        @Index(name = "idx_import_error_job_row",columnList = "job_id, source_row")
+})
+public class BookImportError extends BaseEntity {
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "job_id",nullable = false)
+    private BookImportJob job;
+
+    //row_number is reserved on mysql 8
+    @Column(name = "source_row")
+    private long rowNumber;
+
+    @Column(length = 1000)
+    private String message;
+
+}
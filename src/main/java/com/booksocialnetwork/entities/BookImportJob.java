@@ -0,0 +1,37 @@
+package com.booksocialnetwork.entities;
+
+import com.booksocialnetwork.common.DataFormat;
+import com.booksocialnetwork.entities.base.BaseEntity;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+//progress is committed together with each batch, processedRows is the exact resume point
+@Entity
+@Getter
+@Setter
+@SuperBuilder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookImportJob extends BaseEntity {
+
+    @Enumerated(EnumType.STRING)
+    private DataFormat format;
+
+    @Enumerated(EnumType.STRING)
+    private BookImportStatus status;
+
+    private long processedRows;
+    private long importedRows;
+    private long failedRows;
+
+    //crc32 of the raw rows already processed, a resumed upload must replay the same prefix
+    private long processedChecksum;
+
+    //replaced on every resume, progress is only written by the upload holding the current token
+    private String claimToken;
+
+    @Column(length = 1000)
+    private String lastError;
+
+}
@@ -0,0 +1,7 @@
+package com.booksocialnetwork.entities;
+
+public enum BookImportStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
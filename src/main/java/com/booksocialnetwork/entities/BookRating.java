@@ -0,0 +1,56 @@
+package com.booksocialnetwork.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+//aggregate columns are only written through BookRepository bulk updates so a stale Book merge never overwrites them
+@Embeddable
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookRating {
+
+    @Column(nullable = false,updatable = false)
+    private long ratingCount;
+
+    @Column(nullable = false,updatable = false)
+    private double ratingSum;
+
+    @Column(nullable = false,updatable = false)
+    private long oneStarCount;
+
+    @Column(nullable = false,updatable = false)
+    private long twoStarCount;
+
+    @Column(nullable = false,updatable = false)
+    private long threeStarCount;
+
+    @Column(nullable = false,updatable = false)
+    private long fourStarCount;
+
+    @Column(nullable = false,updatable = false)
+    private long fiveStarCount;
+
+    public double getAverage(){
+        return average(ratingCount,ratingSum);
+    }
+
+    public static double average(long ratingCount, double ratingSum){
+        if(ratingCount==0){
+            return 0.0;
+        }
+        return Math.round(ratingSum/ratingCount*10.0)/10.0;
+    }
+
+    public static int starBucket(double note){
+        return (int) Math.max(1,Math.min(5,Math.round(note)));
+    }
+
+}
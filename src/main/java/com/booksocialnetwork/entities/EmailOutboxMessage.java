@@ -0,0 +1,60 @@
+package com.booksocialnetwork.entities;
+
+import com.booksocialnetwork.email.EmailTemplateName;
+import com.booksocialnetwork.entities.base.IdGeneration;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+//written in the same transaction as whatever the email is about, delivered later by OutboxSender;
+//not a BaseEntity since registration writes it without an authenticated auditor
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+@Table(name = "email_outbox",indexes = {
+        @Index(name = "idx_outbox_status_next_attempt",columnList = "status, next_attempt_at"),
+        @Index(name = "idx_outbox_claim_token",columnList = "claim_token")
+})
+public class EmailOutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,generator = IdGeneration.GENERATOR)
+    @SequenceGenerator(name = IdGeneration.GENERATOR,sequenceName = IdGeneration.SEQUENCE,allocationSize = IdGeneration.ALLOCATION_SIZE)
+    private Integer id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    private String recipientName;
+
+    @Enumerated(EnumType.STRING)
+    private EmailTemplateName template;
+
+    private String confirmationUrl;
+    private String activationCode;
+    private String subject;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private OutboxStatus status;
+
+    private int attempts;
+
+    //due time while PENDING; a claim pushes it out by the lease, so a sender that dies mid batch only delays its messages
+    private LocalDateTime nextAttemptAt;
+
+    private String claimToken;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Column(nullable = false,updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime sentAt;
+
+}
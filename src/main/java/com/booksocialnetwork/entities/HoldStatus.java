@@ -0,0 +1,9 @@
+package com.booksocialnetwork.entities;
+
+public enum HoldStatus {
+    WAITING,
+    READY,
+    CLAIMED,
+    EXPIRED,
+    CANCELLED
+}
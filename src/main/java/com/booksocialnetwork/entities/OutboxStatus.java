@@ -0,0 +1,7 @@
+package com.booksocialnetwork.entities;
+
+public enum OutboxStatus {
+    PENDING,
+    SENT,
+    DEAD
+}
@@ -1,5 +1,6 @@
 package com.booksocialnetwork.entities;
 
+import com.booksocialnetwork.entities.base.IdGeneration;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
@@ -21,7 +22,8 @@ import java.util.List;
 public class Role {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,generator = IdGeneration.GENERATOR)
+    @SequenceGenerator(name = IdGeneration.GENERATOR,sequenceName = IdGeneration.SEQUENCE,allocationSize = IdGeneration.ALLOCATION_SIZE)
     private Integer id;
 
     @Column(unique = true)
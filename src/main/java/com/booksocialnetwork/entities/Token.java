@@ -1,5 +1,6 @@
 package com.booksocialnetwork.entities;
 
+import com.booksocialnetwork.entities.base.IdGeneration;
 import jakarta.persistence.*;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import lombok.*;
@@ -15,7 +16,8 @@ import java.time.LocalDateTime;
 public class Token {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,generator = IdGeneration.GENERATOR)
+    @SequenceGenerator(name = IdGeneration.GENERATOR,sequenceName = IdGeneration.SEQUENCE,allocationSize = IdGeneration.ALLOCATION_SIZE)
     private Integer id;
 
     private String token;
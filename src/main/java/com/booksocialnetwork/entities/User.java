@@ -1,5 +1,6 @@
 package com.booksocialnetwork.entities;
 
+import com.booksocialnetwork.entities.base.IdGeneration;
 import com.booksocialnetwork.entities.history.BookTransactionHistory;
 import jakarta.persistence.*;
 import lombok.*;
@@ -27,7 +28,8 @@ import java.util.stream.Collectors;
 public class User implements UserDetails, Principal {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,generator = IdGeneration.GENERATOR)
+    @SequenceGenerator(name = IdGeneration.GENERATOR,sequenceName = IdGeneration.SEQUENCE,allocationSize = IdGeneration.ALLOCATION_SIZE)
     private Integer id;
 
     private String firstname;
@@ -0,0 +1,34 @@
+package com.booksocialnetwork.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+//dashboard counts kept next to the loans they describe, moved by LoanCounterService in the same transaction as the loan;
+//a user without a row yet gets one computed from history the first time the summary is read
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@Builder
+@NoArgsConstructor
+public class UserLoanCounters {
+
+    @Id
+    private Integer userId;
+
+    //as a borrower
+    private long borrowedActive;
+    private long returnedPendingApproval;
+    private long lifetimeBorrowed;
+
+    //as an owner
+    private long lentOut;
+    private long awaitingMyApproval;
+    private long lifetimeLent;
+
+    private LocalDateTime reconciledAt;
+
+}
@@ -24,7 +24,8 @@ import java.time.LocalDateTime;
 public class BaseEntity {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE,generator = IdGeneration.GENERATOR)
+    @SequenceGenerator(name = IdGeneration.GENERATOR,sequenceName = IdGeneration.SEQUENCE,allocationSize = IdGeneration.ALLOCATION_SIZE)
     private Integer id;
 
     //auditing fields
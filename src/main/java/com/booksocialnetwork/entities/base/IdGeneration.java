@@ -0,0 +1,14 @@
+package com.booksocialnetwork.entities.base;
+
+//every entity draws its ids from one pooled sequence (a single-row table on mysql), a round trip hands out ALLOCATION_SIZE ids
+//so inserts can be batched; keep it in line with hibernate.jdbc.batch_size
+public final class IdGeneration {
+
+    public static final String GENERATOR="pooled_id";
+    public static final String SEQUENCE="pooled_id_seq";
+    public static final int ALLOCATION_SIZE=50;
+
+    private IdGeneration(){
+    }
+
+}
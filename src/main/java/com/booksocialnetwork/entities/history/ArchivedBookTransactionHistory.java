@@ -0,0 +1,58 @@
+package com.booksocialnetwork.entities.history;
+
+import com.booksocialnetwork.entities.Book;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+//closed loans moved out of book_transaction_history by HistoryArchiveService, written only by its INSERT ... SELECT,
+//so the id and audit columns are copied from the hot row instead of being generated
+@Entity
+@Setter
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(indexes = {
+        @Index(name = "idx_history_archive_user_created_date_id",columnList = "user_id, created_date, id"),
+        @Index(name = "idx_history_archive_book_created_date_id",columnList = "book_id, created_date, id")
+})
+public class ArchivedBookTransactionHistory {
+
+    @Id
+    private Integer id;
+
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "book_id")
+    private Integer bookId;
+
+    //read-only view of book_id for the listing joins
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "book_id",insertable = false,updatable = false)
+    private Book book;
+
+    private Boolean returned;
+    private Boolean returnApproved;
+
+    private LocalDateTime createdDate;
+    private LocalDateTime lastModifiedDate;
+    private Integer createdBy;
+    private Integer lastModifiedBy;
+
+    private LocalDateTime archivedAt;
+
+}
@@ -4,8 +4,11 @@ import com.booksocialnetwork.entities.Book;
 import com.booksocialnetwork.entities.User;
 import com.booksocialnetwork.entities.base.BaseEntity;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -18,8 +21,16 @@ import lombok.experimental.SuperBuilder;
 @SuperBuilder
 @AllArgsConstructor
 @NoArgsConstructor
+@Table(indexes = {
+        @Index(name = "idx_history_user_created_date_id",columnList = "user_id, created_date, id"),
+        @Index(name = "idx_history_book_created_date_id",columnList = "book_id, created_date, id")
+},uniqueConstraints = {
+        @UniqueConstraint(name = BookTransactionHistory.ACTIVE_LOAN_CONSTRAINT,columnNames = "active_book_id")
+})
 public class BookTransactionHistory extends BaseEntity {
 
+    public static final String ACTIVE_LOAN_CONSTRAINT="uk_history_active_book";
+
     @ManyToOne
     @JoinColumn(name = "user_id")
     private User user;
@@ -31,4 +42,7 @@ public class BookTransactionHistory extends BaseEntity {
     private Boolean returned;
     private Boolean returnApproved;
 
+    //the book id while the loan is open, null once the return is approved; unique, so a copy has at most one open loan
+    private Integer activeBookId;
+
 }
@@ -0,0 +1,17 @@
+package com.booksocialnetwork.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class LoginThrottledException extends RuntimeException{
+
+    private final Duration retryAfter;
+
+    public LoginThrottledException(String msg, Duration retryAfter){
+        super(msg);
+        this.retryAfter=retryAfter;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.booksocialnetwork.exports;
+
+import com.booksocialnetwork.entities.BookRating;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+public record BookExportRow(
+        Integer id,
+        String title,
+        String authorName,
+        String isbn,
+        String synopsis,
+        boolean archived,
+        boolean shareable,
+        long ratingCount,
+        double ratingSum,
+        LocalDateTime createdDate
+) implements ExportRow {
+
+    public static final List<String> COLUMNS=List.of("id","title","authorName","isbn","synopsis","archived","shareable","ratingCount","rate","createdDate");
+
+    @JsonProperty("rate")
+    public double rate(){
+        return BookRating.average(ratingCount,ratingSum);
+    }
+
+    @Override
+    public List<Object> csvValues() {
+        return Arrays.asList(id,title,authorName,isbn,synopsis,archived,shareable,ratingCount,rate(),createdDate);
+    }
+}
@@ -0,0 +1,88 @@
+package com.booksocialnetwork.exports;
+
+import com.booksocialnetwork.common.DataFormat;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+//rows come off a forward-only cursor and go straight to the response, memory stays flat whatever the row count
+@Service
+@RequiredArgsConstructor
+public class BookExportService {
+
+    //rows per round trip of the server-side cursor (useCursorFetch on mysql), referenced by the streaming queries
+    public static final String FETCH_SIZE="500";
+
+    private final BookRepository bookRepository;
+    private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${application.export.flush-interval}")
+    private int flushInterval;
+
+    @Transactional(readOnly = true)
+    public void exportOwnerBooks(DataFormat format, HttpServletResponse response, Authentication connectedUser) throws IOException {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        ExportWriter exportWriter=open(BookExportRow.COLUMNS,"books",format,response);
+        try(Stream<BookExportRow> rows=bookRepository.streamBooksByOwner(user.id())){
+            write(rows,exportWriter,response);
+        }
+    }
+
+    //every loan the user took part in, as borrower or as owner of the book, archived loans included;
+    //the two cursors are read one after the other so a single connection never has both open
+    @Transactional(readOnly = true)
+    public void exportTransactionHistory(DataFormat format, HttpServletResponse response, Authentication connectedUser) throws IOException {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        ExportWriter exportWriter=open(HistoryExportRow.COLUMNS,"history",format,response);
+        try(Stream<HistoryExportRow> rows=bookTransactionHistoryRepository.streamArchivedHistoryOfUser(user.id())){
+            write(rows,exportWriter,response);
+        }
+        try(Stream<HistoryExportRow> rows=bookTransactionHistoryRepository.streamHistoryOfUser(user.id())){
+            write(rows,exportWriter,response);
+        }
+    }
+
+    private ExportWriter open(List<String> columns, String name, DataFormat format, HttpServletResponse response) throws IOException {
+        response.setContentType(format.getMediaType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,ContentDisposition.attachment().filename(name+"."+format.getExtension()).build().toString());
+        ExportWriter exportWriter=new ExportWriter(response.getWriter(),format,objectMapper);
+        exportWriter.header(columns);
+        return exportWriter;
+    }
+
+    private void write(Stream<? extends ExportRow> rows, ExportWriter exportWriter, HttpServletResponse response) throws IOException {
+        Writer writer=response.getWriter();
+        long written=0;
+        Iterator<? extends ExportRow> iterator=rows.iterator();
+        while(iterator.hasNext()){
+            exportWriter.write(iterator.next());
+            if(++written%flushInterval==0){
+                writer.flush();
+                //projections never enter the persistence context, the clear keeps it bounded should a row ever resolve an entity
+                entityManager.clear();
+            }
+        }
+        writer.flush();
+    }
+
+}
@@ -0,0 +1,10 @@
+package com.booksocialnetwork.exports;
+
+import java.util.List;
+
+//ndjson lines are the record serialized by jackson, csv lines are these values in the order of the row's COLUMNS
+public interface ExportRow {
+
+    List<Object> csvValues();
+
+}
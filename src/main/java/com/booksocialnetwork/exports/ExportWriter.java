@@ -0,0 +1,63 @@
+package com.booksocialnetwork.exports;
+
+import com.booksocialnetwork.common.DataFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+//one row in, one line out, nothing is kept between rows; flushing is left to the caller
+public class ExportWriter {
+
+    private final Writer writer;
+    private final DataFormat format;
+    private final ObjectWriter objectWriter;
+
+    public ExportWriter(Writer writer, DataFormat format, ObjectMapper objectMapper) {
+        this.writer=writer;
+        this.format=format;
+        this.objectWriter=objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    public void header(List<String> columns) throws IOException {
+        if(format==DataFormat.CSV){
+            line(List.copyOf(columns));
+        }
+    }
+
+    public void write(ExportRow row) throws IOException {
+        if(format==DataFormat.CSV){
+            line(row.csvValues());
+            return;
+        }
+        objectWriter.writeValue(writer,row);
+        writer.write('\n');
+    }
+
+    private void line(List<?> values) throws IOException {
+        for(int i=0;i<values.size();i++){
+            if(i>0){
+                writer.write(',');
+            }
+            Object value=values.get(i);
+            if(value!=null){
+                writer.write(escape(value.toString()));
+            }
+        }
+        writer.write('\n');
+    }
+
+    //same quoting rules the csv import reads back
+    static String escape(String value){
+        if(value.indexOf(',')<0 && value.indexOf('"')<0 && value.indexOf('\n')<0 && value.indexOf('\r')<0){
+            return value;
+        }
+        return '"'+value.replace("\"","\"\"")+'"';
+    }
+
+}
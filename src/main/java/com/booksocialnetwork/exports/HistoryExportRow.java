@@ -0,0 +1,26 @@
+package com.booksocialnetwork.exports;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+public record HistoryExportRow(
+        Integer id,
+        Integer bookId,
+        String title,
+        String isbn,
+        Integer ownerId,
+        Integer borrowerId,
+        Boolean returned,
+        Boolean returnApproved,
+        LocalDateTime borrowedDate,
+        LocalDateTime lastModifiedDate
+) implements ExportRow {
+
+    public static final List<String> COLUMNS=List.of("id","bookId","title","isbn","ownerId","borrowerId","returned","returnApproved","borrowedDate","lastModifiedDate");
+
+    @Override
+    public List<Object> csvValues() {
+        return Arrays.asList(id,bookId,title,isbn,ownerId,borrowerId,returned,returnApproved,borrowedDate,lastModifiedDate);
+    }
+}
@@ -0,0 +1,40 @@
+package com.booksocialnetwork.file;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+@Getter
+public enum CoverVariant {
+
+    THUMBNAIL("thumbnail",240,0.75f),
+    DETAIL("detail",960,0.85f),
+    ORIGINAL("original",0,1.0f);
+
+    private final String suffix;
+    private final int maxDimension;
+    private final float quality;
+
+    CoverVariant(String suffix,int maxDimension,float quality){
+        this.suffix=suffix;
+        this.maxDimension=maxDimension;
+        this.quality=quality;
+    }
+
+    public boolean isResized(){
+        return maxDimension>0;
+    }
+
+    //resized variants live next to the original upload, e.g. 1718000000000.png -> 1718000000000_thumbnail.jpg
+    public Path resolve(String originalPath){
+        Path original=Path.of(originalPath);
+        if(!isResized()){
+            return original;
+        }
+        String fileName=original.getFileName().toString();
+        int lastDotIndex=fileName.lastIndexOf(".");
+        String baseName=lastDotIndex==-1?fileName:fileName.substring(0,lastDotIndex);
+        return original.resolveSibling(baseName+"_"+suffix+".jpg");
+    }
+
+}
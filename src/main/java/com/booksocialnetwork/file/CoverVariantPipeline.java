@@ -0,0 +1,244 @@
+package com.booksocialnetwork.file;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CoverVariantPipeline {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.file.covers.pipeline-threads}")
+    private int pipelineThreads;
+
+    @Value("${application.file.covers.pipeline-queue-capacity}")
+    private int pipelineQueueCapacity;
+
+    @Value("${application.file.covers.failure-retry-after}")
+    private Duration failureRetryAfter;
+
+    private ThreadPoolExecutor executor;
+    private Timer processingTimer;
+    private Counter rejectedCounter;
+    private Counter failedCounter;
+    private Counter requeuedCounter;
+
+    //an upload is queued at most once at a time, however many requests notice its missing variants
+    private final Set<String> queued=ConcurrentHashMap.newKeySet();
+    //uploads that could not be turned into variants are not retried on every request
+    private Cache<String,Boolean> recentFailures;
+
+    @PostConstruct
+    void start(){
+        AtomicInteger threadCount=new AtomicInteger();
+        ThreadFactory threadFactory=runnable->{
+            Thread thread=new Thread(runnable,"cover-pipeline-"+threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor=new ThreadPoolExecutor(
+                pipelineThreads,
+                pipelineThreads,
+                60,TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(pipelineQueueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        Gauge.builder("covers.pipeline.queue.depth",executor,pool->pool.getQueue().size())
+                .description("Uploaded covers waiting for variant generation")
+                .register(meterRegistry);
+        Gauge.builder("covers.pipeline.active",executor,ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        processingTimer=Timer.builder("covers.pipeline.processing")
+                .description("Time spent decoding an upload and writing all of its variants")
+                .register(meterRegistry);
+        rejectedCounter=Counter.builder("covers.pipeline.rejected").register(meterRegistry);
+        failedCounter=Counter.builder("covers.pipeline.failed").register(meterRegistry);
+        requeuedCounter=Counter.builder("covers.pipeline.requeued").register(meterRegistry);
+        recentFailures=Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(failureRetryAfter)
+                .build();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdown();
+        if(!executor.awaitTermination(10,TimeUnit.SECONDS)){
+            executor.shutdownNow();
+        }
+    }
+
+    public void submit(String originalPath){
+        if(!queued.add(originalPath)){
+            return;
+        }
+        try{
+            executor.execute(()->{
+                try{
+                    processingTimer.record(()->generateVariants(originalPath));
+                }finally{
+                    queued.remove(originalPath);
+                }
+            });
+        }catch(RejectedExecutionException e){
+            queued.remove(originalPath);
+            rejectedCounter.increment();
+            log.warn("Cover pipeline is full, variants for {} will be generated when they are next requested",originalPath);
+        }
+    }
+
+    //called when a variant is requested but missing on disk: covers uploaded before variants existed,
+    //uploads the full pipeline turned away, and anything still in flight (deduplicated above)
+    public void requeue(String originalPath){
+        if(recentFailures.getIfPresent(originalPath)!=null || queued.contains(originalPath)){
+            return;
+        }
+        requeuedCounter.increment();
+        submit(originalPath);
+    }
+
+    private void generateVariants(String originalPath){
+        try{
+            BufferedImage source=decode(Path.of(originalPath));
+            if(source==null){
+                recentFailures.put(originalPath,Boolean.TRUE);
+                log.warn("Uploaded cover {} is not a readable image",originalPath);
+                return;
+            }
+            for(CoverVariant variant:CoverVariant.values()){
+                if(variant.isResized()){
+                    write(scale(source,variant.getMaxDimension()),variant.resolve(originalPath),variant.getQuality());
+                }
+            }
+        }catch(IOException | RuntimeException e){
+            failedCounter.increment();
+            recentFailures.put(originalPath,Boolean.TRUE);
+            log.error("Failed to generate cover variants for {}",originalPath,e);
+        }
+    }
+
+    //decodes once, subsampling huge uploads so the decoded raster is never much larger than the biggest variant
+    private BufferedImage decode(Path original) throws IOException {
+        try(ImageInputStream input=ImageIO.createImageInputStream(original.toFile())){
+            if(input==null){
+                return null;
+            }
+            Iterator<ImageReader> readers=ImageIO.getImageReaders(input);
+            if(!readers.hasNext()){
+                return null;
+            }
+            ImageReader reader=readers.next();
+            try{
+                reader.setInput(input,true,true);
+                int largestSide=Math.max(reader.getWidth(0),reader.getHeight(0));
+                int subsampling=Math.max(1,largestSide/(2*largestVariantDimension()));
+                ImageReadParam param=reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling,subsampling,0,0);
+                return reader.read(0,param);
+            }finally{
+                reader.dispose();
+            }
+        }
+    }
+
+    private int largestVariantDimension(){
+        int largest=1;
+        for(CoverVariant variant:CoverVariant.values()){
+            largest=Math.max(largest,variant.getMaxDimension());
+        }
+        return largest;
+    }
+
+    private BufferedImage scale(BufferedImage source, int maxDimension){
+        double ratio=Math.min(1.0,(double) maxDimension/Math.max(source.getWidth(),source.getHeight()));
+        int targetWidth=Math.max(1,(int) Math.round(source.getWidth()*ratio));
+        int targetHeight=Math.max(1,(int) Math.round(source.getHeight()*ratio));
+        BufferedImage current=source;
+        int width=source.getWidth();
+        int height=source.getHeight();
+        //halve step by step, a single bilinear pass over a large factor aliases badly
+        do{
+            width=Math.max(targetWidth,width/2);
+            height=Math.max(targetHeight,height/2);
+            if(width<targetWidth*2 && height<targetHeight*2){
+                width=targetWidth;
+                height=targetHeight;
+            }
+            BufferedImage step=new BufferedImage(width,height,BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics=step.createGraphics();
+            try{
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING,RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0,0,width,height);
+                graphics.drawImage(current,0,0,width,height,null);
+            }finally{
+                graphics.dispose();
+            }
+            current=step;
+        }while(width!=targetWidth || height!=targetHeight);
+        return current;
+    }
+
+    private void write(BufferedImage image, Path target, float quality) throws IOException {
+        Path temporary=Files.createTempFile(target.getParent(),target.getFileName().toString(),".tmp");
+        ImageWriter writer=ImageIO.getImageWritersByFormatName("jpeg").next();
+        try(ImageOutputStream output=ImageIO.createImageOutputStream(temporary.toFile())){
+            ImageWriteParam param=writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.setOutput(output);
+            writer.write(null,new IIOImage(image,null,null),param);
+        }catch(IOException | RuntimeException e){
+            Files.deleteIfExists(temporary);
+            throw e;
+        }finally{
+            writer.dispose();
+        }
+        //readers only ever see a complete file
+        Files.move(temporary,target,StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.booksocialnetwork.file;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+@Service
+@Slf4j
+public class FileStreamingService {
+
+    //request attributes understood by Tomcat's NIO/NIO2 connectors to hand the file to sendfile(2)
+    private static final String SENDFILE_SUPPORT="org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME="org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START="org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END="org.apache.tomcat.sendfile.end";
+
+    public void stream(Path file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if(!Files.isRegularFile(file)){
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final long length=Files.size(file);
+        final long lastModified=Files.getLastModifiedTime(file).toMillis();
+        final String eTag=eTagOf(file,length,lastModified);
+
+        ServletWebRequest webRequest=new ServletWebRequest(request,response);
+        if(webRequest.checkNotModified(eTag,lastModified)){
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES,"bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL,"private, max-age=86400, must-revalidate");
+        response.setContentType(MediaTypeFactory.getMediaType(file.getFileName().toString()).orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        long start=0;
+        long end=length-1;
+        HttpRange range=requestedRange(request,eTag,lastModified);
+        if(range!=null){
+            if(length==0 || !isSatisfiable(range,length)){
+                response.setHeader(HttpHeaders.CONTENT_RANGE,"bytes */"+length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start=range.getRangeStart(length);
+            end=range.getRangeEnd(length);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE,"bytes "+start+"-"+end+"/"+length);
+        }
+        final long count=length==0?0:end-start+1;
+        response.setContentLengthLong(count);
+        if("HEAD".equalsIgnoreCase(request.getMethod()) || count==0){
+            return;
+        }
+
+        if(Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))){
+            request.setAttribute(SENDFILE_FILENAME,file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START,start);
+            request.setAttribute(SENDFILE_END,end+1);
+            return;
+        }
+        transfer(file,start,count,response);
+    }
+
+    private void transfer(Path file, long start, long count, HttpServletResponse response) throws IOException {
+        try(FileChannel channel=FileChannel.open(file,StandardOpenOption.READ)){
+            WritableByteChannel target=Channels.newChannel(response.getOutputStream());
+            long position=start;
+            long remaining=count;
+            while(remaining>0){
+                long transferred=channel.transferTo(position,remaining,target);
+                if(transferred<=0){
+                    break;
+                }
+                position+=transferred;
+                remaining-=transferred;
+            }
+        }
+    }
+
+    //a Range is only honoured when If-Range (if present) still matches the current representation
+    private HttpRange requestedRange(HttpServletRequest request, String eTag, long lastModified){
+        String rangeHeader=request.getHeader(HttpHeaders.RANGE);
+        if(rangeHeader==null){
+            return null;
+        }
+        String ifRange=request.getHeader(HttpHeaders.IF_RANGE);
+        if(ifRange!=null && !ifRange.equals(eTag)){
+            try{
+                if(request.getDateHeader(HttpHeaders.IF_RANGE)/1000!=lastModified/1000){
+                    return null;
+                }
+            }catch(IllegalArgumentException e){
+                return null;
+            }
+        }
+        try{
+            List<HttpRange> ranges=HttpRange.parseRanges(rangeHeader);
+            //multipart/byteranges responses are not worth it for images, so several ranges fall back to a full 200
+            return ranges.size()==1?ranges.get(0):null;
+        }catch(IllegalArgumentException e){
+            log.debug("Ignoring malformed Range header {}",rangeHeader);
+            return null;
+        }
+    }
+
+    private boolean isSatisfiable(HttpRange range, long length){
+        try{
+            return range.getRangeStart(length)<length;
+        }catch(IllegalArgumentException e){
+            return false;
+        }
+    }
+
+    //uploads are written once under a unique name and never modified, so path, size and mtime identify the bytes
+    private String eTagOf(Path file, long length, long lastModified){
+        try{
+            MessageDigest digest=MessageDigest.getInstance("SHA-256");
+            digest.update((file.toAbsolutePath()+"|"+length+"|"+lastModified).getBytes(StandardCharsets.UTF_8));
+            return "\""+HexFormat.of().formatHex(digest.digest(),0,16)+"\"";
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -10,6 +10,7 @@ public enum BusinessErrorCodes {
     NEW_PASSWORD_DOES_NOT_MATCH(301,"Current password does not match previous password",HttpStatus.BAD_REQUEST),
     ACCOUNT_DISABLED(303,"User account is disabled",HttpStatus.FORBIDDEN),
     BAD_CREDENTIALS(302,"Login and/or password is incorrect",HttpStatus.FORBIDDEN),
+    LOGIN_THROTTLED(304,"Too many login attempts, try again later",HttpStatus.TOO_MANY_REQUESTS),
     ;
     @Getter
     private final int code;
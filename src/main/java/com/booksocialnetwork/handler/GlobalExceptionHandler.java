@@ -1,7 +1,10 @@
 package com.booksocialnetwork.handler;
 
+import com.booksocialnetwork.exception.LoginThrottledException;
 import com.booksocialnetwork.exception.OperationNotPermittedException;
 import jakarta.mail.MessagingException;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -50,6 +53,18 @@ public class GlobalExceptionHandler {
                         .build());
     }
 
+    @ExceptionHandler(LoginThrottledException.class)
+    public ResponseEntity<ExceptionResponse> handleException(LoginThrottledException exp){
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER,String.valueOf(exp.getRetryAfter().toSeconds()))
+                .body(ExceptionResponse.builder()
+                        .businessErrorCode(BusinessErrorCodes.LOGIN_THROTTLED.getCode())
+                        .businessErrorDescription(BusinessErrorCodes.LOGIN_THROTTLED.getDescription())
+                        .error(exp.getMessage())
+                        .build());
+    }
+
     @ExceptionHandler(MessagingException.class)
     public ResponseEntity<ExceptionResponse> handleException(MessagingException exp){
         return ResponseEntity
@@ -59,6 +74,15 @@ public class GlobalExceptionHandler {
                         .build());
     }
 
+    @ExceptionHandler(EntityNotFoundException.class)
+    public ResponseEntity<ExceptionResponse> handleException(EntityNotFoundException exp){
+        return ResponseEntity
+                .status(HttpStatus.NOT_FOUND)
+                .body(ExceptionResponse.builder()
+                        .error(exp.getMessage())
+                        .build());
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ExceptionResponse> handleException(MethodArgumentNotValidException exp){
         Set<String> errors=new HashSet<>();
@@ -0,0 +1,75 @@
+package com.booksocialnetwork.holds;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+//waiting holds per book, ordered the way they are served: enqueue, cancel, re-prioritise and promotion are O(log n)
+public class HoldIndex {
+
+    public record Entry(
+            int holdId,
+            int bookId,
+            int userId,
+            int priority,
+            LocalDateTime enqueuedAt
+    ) {
+    }
+
+    static final Comparator<Entry> SERVICE_ORDER=Comparator.comparingInt(Entry::priority).reversed()
+            .thenComparing(Entry::enqueuedAt)
+            .thenComparingInt(Entry::holdId);
+
+    private final Map<Integer,NavigableSet<Entry>> byBook=new HashMap<>();
+    private final Map<Integer,Entry> byHold=new HashMap<>();
+
+    public synchronized void add(Entry entry){
+        remove(entry.holdId());
+        byBook.computeIfAbsent(entry.bookId(),bookId->new TreeSet<>(SERVICE_ORDER)).add(entry);
+        byHold.put(entry.holdId(),entry);
+    }
+
+    public synchronized void remove(int holdId){
+        Entry entry=byHold.remove(holdId);
+        if(entry==null){
+            return;
+        }
+        NavigableSet<Entry> queue=byBook.get(entry.bookId());
+        queue.remove(entry);
+        if(queue.isEmpty()){
+            byBook.remove(entry.bookId());
+        }
+    }
+
+    public synchronized Entry next(int bookId){
+        NavigableSet<Entry> queue=byBook.get(bookId);
+        return queue==null?null:queue.first();
+    }
+
+    public synchronized Entry get(int holdId){
+        return byHold.get(holdId);
+    }
+
+    //1-based place in the queue, only computed when a reader asks for it
+    public synchronized int position(int holdId){
+        Entry entry=byHold.get(holdId);
+        if(entry==null){
+            return 0;
+        }
+        return byBook.get(entry.bookId()).headSet(entry,false).size()+1;
+    }
+
+    //swaps a whole book's queue for the database's view of it
+    public synchronized void replace(int bookId, Collection<Entry> entries){
+        NavigableSet<Entry> queue=byBook.remove(bookId);
+        if(queue!=null){
+            queue.forEach(entry->byHold.remove(entry.holdId()));
+        }
+        entries.forEach(this::add);
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.booksocialnetwork.holds;
+
+import com.booksocialnetwork.entities.HoldStatus;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HoldResponse {
+
+    private Integer id;
+    private Integer bookId;
+    private String title;
+    private HoldStatus status;
+    private int priority;
+    private int position;
+    private LocalDateTime expiresAt;
+
+}
@@ -0,0 +1,240 @@
+package com.booksocialnetwork.holds;
+
+import com.booksocialnetwork.cache.CacheInvalidation;
+import com.booksocialnetwork.cache.CacheInvalidationBus;
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.BookHold;
+import com.booksocialnetwork.entities.HoldStatus;
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.repositories.BookHoldRepository;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+//the table is the record of every hold, HoldIndex decides who is next without touching it;
+//other nodes learn about queue changes over the cache invalidation bus and reload that one book
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HoldService {
+
+    static final String HOLDS_TOPIC="bookHolds";
+    private static final List<HoldStatus> LIVE=List.of(HoldStatus.WAITING,HoldStatus.READY);
+
+    private final BookHoldRepository bookHoldRepository;
+    private final BookRepository bookRepository;
+    private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final HoldIndex holdIndex=new HoldIndex();
+    private final String nodeId=UUID.randomUUID().toString();
+
+    @Value("${application.holds.claim-window}")
+    private Duration claimWindow;
+
+    @Value("${application.holds.expiry-batch-size}")
+    private int expiryBatchSize;
+
+    @PostConstruct
+    public void start(){
+        bookHoldRepository.findByStatus(HoldStatus.WAITING).forEach(hold->holdIndex.add(entry(hold)));
+        cacheInvalidationBus.subscribe(this::onInvalidation);
+    }
+
+    public HoldResponse enqueue(Integer bookId, Authentication connectedUser) {
+        Book book=bookRepository.findById(bookId).orElseThrow(()->new EntityNotFoundException("No book found with Id: "+bookId));
+        if(book.isArchived() || !book.isShareable()){
+            throw new OperationNotPermittedException("The requested book cannot be held since it is archived or not shareable");
+        }
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(Objects.equals(book.getOwner().getId(),user.id())){
+            throw new OperationNotPermittedException("You cannot hold your own book");
+        }
+        if(bookTransactionHistoryRepository.isAlreadyBorrowedByUser(bookId,user.id())){
+            throw new OperationNotPermittedException("You already borrowed this book");
+        }
+        BookHold hold;
+        try{
+            hold=bookHoldRepository.saveAndFlush(BookHold.builder()
+                    .book(book)
+                    .user(userRepository.getReferenceById(user.id()))
+                    .status(HoldStatus.WAITING)
+                    .liveKey(BookHold.liveKey(bookId,user.id()))
+                    .build());
+        }catch(DataIntegrityViolationException e){
+            if(!isConstraint(e,BookHold.LIVE_HOLD_CONSTRAINT)){
+                throw e;
+            }
+            throw new OperationNotPermittedException("You already hold this book");
+        }
+        holdIndex.add(entry(hold));
+        publish(bookId);
+        //a hold on a copy nobody has becomes a reservation straight away
+        promoteIfFree(bookId);
+        return bookHoldRepository.findById(hold.getId()).map(saved->toResponse(saved,book)).orElseThrow();
+    }
+
+    public List<HoldResponse> findLiveHolds(Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        return bookHoldRepository.findLiveHoldsOfUser(user.id()).stream()
+                .map(hold->toResponse(hold,hold.getBook()))
+                .toList();
+    }
+
+    public void cancel(Integer holdId, Authentication connectedUser) {
+        BookHold hold=bookHoldRepository.findWithBookById(holdId).orElseThrow(()->new EntityNotFoundException("No hold found with Id: "+holdId));
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(!Objects.equals(hold.getUser().getId(),user.id())){
+            throw new OperationNotPermittedException("You cannot cancel the hold of another user");
+        }
+        if(bookHoldRepository.close(holdId,HoldStatus.CANCELLED,LIVE,LocalDateTime.now())==0){
+            throw new OperationNotPermittedException("The hold is no longer active");
+        }
+        holdIndex.remove(holdId);
+        publish(hold.getBook().getId());
+        if(hold.getStatus()==HoldStatus.READY){
+            promoteIfFree(hold.getBook().getId());
+        }
+    }
+
+    public void changePriority(Integer holdId, int priority, Authentication connectedUser) {
+        BookHold hold=bookHoldRepository.findWithBookById(holdId).orElseThrow(()->new EntityNotFoundException("No hold found with Id: "+holdId));
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(!Objects.equals(hold.getBook().getOwner().getId(),user.id())){
+            throw new OperationNotPermittedException("Only the owner of the book can change the priority of a hold");
+        }
+        if(bookHoldRepository.updatePriority(holdId,priority,LocalDateTime.now())==0){
+            throw new OperationNotPermittedException("Only a waiting hold can be re-prioritised");
+        }
+        hold.setPriority(priority);
+        holdIndex.add(entry(hold));
+        publish(hold.getBook().getId());
+    }
+
+    //called while the returned copy's loan still holds the active slot, so the copy is never free without its reservation.
+    //joins the caller's approval when there is one: promotions of a copy queue up on its book row, and a reservation
+    //already in place ends the promotion before markReady could clash on the ready slot and doom that approval
+    public void promoteNext(Integer bookId){
+        transactionTemplate.executeWithoutResult(status->{
+            if(bookRepository.lockById(bookId).isEmpty() || !bookHoldRepository.findReadyHoldsForUpdate(bookId).isEmpty()){
+                return;
+            }
+            LocalDateTime now=LocalDateTime.now();
+            for(HoldIndex.Entry next=holdIndex.next(bookId);next!=null;next=holdIndex.next(bookId)){
+                if(bookHoldRepository.markReady(next.holdId(),bookId,now,now.plus(claimWindow))==0){
+                    //cancelled or promoted through another node since we indexed it
+                    holdIndex.remove(next.holdId());
+                    continue;
+                }
+                //the entry only leaves the queue once the promotion is committed, a rolled back approval keeps it waiting
+                HoldIndex.Entry promoted=next;
+                afterCommit(()->{
+                    holdIndex.remove(promoted.holdId());
+                    publish(bookId);
+                });
+                log.info("Hold {} of user {} is ready to claim until {}",promoted.holdId(),promoted.userId(),now.plus(claimWindow));
+                return;
+            }
+        });
+    }
+
+    private void promoteIfFree(Integer bookId){
+        if(!bookTransactionHistoryRepository.existsByActiveBookId(bookId) && bookHoldRepository.findByBookIdAndStatus(bookId,HoldStatus.READY).isEmpty()){
+            promoteNext(bookId);
+        }
+    }
+
+    //runs inside the borrow transaction after the loan row is written, see BorrowEngine
+    public void claimForBorrow(Integer bookId, Integer userId){
+        for(BookHold ready:bookHoldRepository.findByBookIdAndStatus(bookId,HoldStatus.READY)){
+            if(!Objects.equals(ready.getUser().getId(),userId)){
+                throw new OperationNotPermittedException("The requested book is reserved for another reader until "+ready.getExpiresAt());
+            }
+        }
+        bookHoldRepository.findByLiveKey(BookHold.liveKey(bookId,userId)).ifPresent(hold->{
+            bookHoldRepository.close(hold.getId(),HoldStatus.CLAIMED,LIVE,LocalDateTime.now());
+            afterCommit(()->{
+                holdIndex.remove(hold.getId());
+                publish(bookId);
+            });
+        });
+    }
+
+    //an unclaimed reservation lapses and the copy moves on down the queue
+    @Scheduled(fixedDelayString = "${application.holds.expiry-interval}")
+    public void expire(){
+        LocalDateTime now=LocalDateTime.now();
+        for(Integer holdId:bookHoldRepository.findExpiredReadyHolds(now,Limit.of(expiryBatchSize))){
+            Integer bookId=bookHoldRepository.findById(holdId).map(hold->hold.getBook().getId()).orElse(null);
+            if(bookId!=null && bookHoldRepository.close(holdId,HoldStatus.EXPIRED,List.of(HoldStatus.READY),now)==1){
+                log.info("Hold {} expired unclaimed",holdId);
+                publish(bookId);
+                promoteIfFree(bookId);
+            }
+        }
+    }
+
+    private void onInvalidation(CacheInvalidation invalidation){
+        if(nodeId.equals(invalidation.nodeId()) || !HOLDS_TOPIC.equals(invalidation.cacheName()) || invalidation.key()==null){
+            return;
+        }
+        int bookId=Integer.parseInt(invalidation.key());
+        holdIndex.replace(bookId,bookHoldRepository.findByBookIdAndStatus(bookId,HoldStatus.WAITING).stream().map(this::entry).toList());
+    }
+
+    private void afterCommit(Runnable action){
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void publish(Integer bookId){
+        cacheInvalidationBus.publish(new CacheInvalidation(nodeId,HOLDS_TOPIC,String.valueOf(bookId)));
+    }
+
+    private HoldIndex.Entry entry(BookHold hold){
+        return new HoldIndex.Entry(hold.getId(),hold.getBook().getId(),hold.getUser().getId(),hold.getPriority(),hold.getCreatedDate());
+    }
+
+    private HoldResponse toResponse(BookHold hold, Book book){
+        return HoldResponse.builder()
+                .id(hold.getId())
+                .bookId(book.getId())
+                .title(book.getTitle())
+                .status(hold.getStatus())
+                .priority(hold.getPriority())
+                .position(hold.getStatus()==HoldStatus.WAITING?holdIndex.position(hold.getId()):0)
+                .expiresAt(hold.getExpiresAt())
+                .build();
+    }
+
+    private static boolean isConstraint(DataIntegrityViolationException e, String constraint){
+        return StringUtils.containsIgnoreCase(e.getMostSpecificCause().getMessage(),constraint);
+    }
+
+}
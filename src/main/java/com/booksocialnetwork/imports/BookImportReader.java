@@ -0,0 +1,12 @@
+package com.booksocialnetwork.imports;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+//pulls one row at a time off the request stream, nothing is buffered beyond the current row
+public interface BookImportReader extends Closeable {
+
+    //null once the body is exhausted
+    ImportRow next() throws IOException;
+
+}
@@ -0,0 +1,25 @@
+package com.booksocialnetwork.imports;
+
+import com.booksocialnetwork.common.DataFormat;
+import com.booksocialnetwork.entities.BookImportStatus;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BookImportResponse {
+
+    private Integer jobId;
+    private DataFormat format;
+    private BookImportStatus status;
+    private long processedRows;
+    private long importedRows;
+    private long failedRows;
+    private String lastError;
+    private List<BookImportRowError> errors;
+
+}
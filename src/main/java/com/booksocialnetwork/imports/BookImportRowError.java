@@ -0,0 +1,7 @@
+package com.booksocialnetwork.imports;
+
+public record BookImportRowError(
+        long rowNumber,
+        String message
+) {
+}
@@ -0,0 +1,234 @@
+package com.booksocialnetwork.imports;
+
+import com.booksocialnetwork.common.DataFormat;
+import com.booksocialnetwork.configurations.CacheConfig;
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.BookImportError;
+import com.booksocialnetwork.entities.BookImportJob;
+import com.booksocialnetwork.entities.BookImportStatus;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.repositories.BookImportErrorRepository;
+import com.booksocialnetwork.repositories.BookImportJobRepository;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.booksocialnetwork.services.BookMapper;
+import com.booksocialnetwork.services.BookRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+//each batch of rows, its row errors and the job progress commit together, so a failed upload resumes exactly after the last committed batch
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookImportService {
+
+    private static final int MAX_MESSAGE_LENGTH=1000;
+
+    private final BookImportJobRepository bookImportJobRepository;
+    private final BookImportErrorRepository bookImportErrorRepository;
+    private final BookMapper bookMapper;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+
+    @Value("${application.import.batch-size}")
+    private int batchSize;
+
+    @Value("${application.import.max-reported-errors}")
+    private int maxReportedErrors;
+
+    @Value("${application.import.stale-after}")
+    private Duration staleAfter;
+
+    //new books reach the search indexes through the indexer's periodic catch-up, one reload per row would defeat the batching
+    @CacheEvict(cacheNames = CacheConfig.DISPLAYABLE_BOOKS_CACHE,key = "T(com.booksocialnetwork.services.DisplayableBookCatalog).HEAD_KEY")
+    public BookImportResponse importBooks(InputStream body, DataFormat format, Integer jobId, Authentication connectedUser) throws IOException {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        try(BookImportReader reader=open(body,format)){
+            BookImportJob job=jobId==null?start(format):claim(jobId,format,user);
+            CRC32 checksum=new CRC32();
+            try{
+                skipProcessedRows(job,reader,checksum);
+                List<ImportRow> batch=new ArrayList<>(batchSize);
+                ImportRow row;
+                while((row=reader.next())!=null){
+                    checksum.update(row.raw().getBytes(StandardCharsets.UTF_8));
+                    batch.add(row);
+                    if(batch.size()==batchSize){
+                        job=writeBatch(job,batch,user.id(),checksum.getValue());
+                        batch.clear();
+                    }
+                }
+                if(!batch.isEmpty()){
+                    job=writeBatch(job,batch,user.id(),checksum.getValue());
+                }
+                job=finish(job,BookImportStatus.COMPLETED,null);
+            }catch(OperationNotPermittedException e){
+                finish(job,BookImportStatus.FAILED,e.getMessage());
+                throw e;
+            }catch(IOException | RuntimeException e){
+                log.warn("Book import {} stopped after {} rows",job.getId(),job.getProcessedRows(),e);
+                job=finish(job,BookImportStatus.FAILED,e.getMessage());
+            }
+            return toResponse(job);
+        }
+    }
+
+    public BookImportResponse findJob(Integer jobId, Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        BookImportJob job=bookImportJobRepository.findById(jobId).orElseThrow(()->new EntityNotFoundException("No import job found with Id: "+jobId));
+        if(!Objects.equals(job.getCreatedBy(),user.id())){
+            throw new OperationNotPermittedException("You cannot see the import job of another user");
+        }
+        return toResponse(job);
+    }
+
+    private BookImportReader open(InputStream body, DataFormat format) throws IOException {
+        BufferedReader reader=new BufferedReader(new InputStreamReader(body,StandardCharsets.UTF_8));
+        return switch (format){
+            case CSV -> new CsvBookImportReader(reader);
+            case NDJSON -> new NdjsonBookImportReader(reader,objectMapper.reader());
+        };
+    }
+
+    private BookImportJob start(DataFormat format){
+        return bookImportJobRepository.save(BookImportJob.builder()
+                .format(format)
+                .status(BookImportStatus.RUNNING)
+                .claimToken(UUID.randomUUID().toString())
+                .build());
+    }
+
+    private BookImportJob claim(Integer jobId, DataFormat format, AuthenticatedUser user){
+        BookImportJob job=bookImportJobRepository.findById(jobId).orElseThrow(()->new EntityNotFoundException("No import job found with Id: "+jobId));
+        if(!Objects.equals(job.getCreatedBy(),user.id())){
+            throw new OperationNotPermittedException("You cannot resume the import job of another user");
+        }
+        if(job.getFormat()!=format){
+            throw new OperationNotPermittedException("The import job "+jobId+" was started with a "+job.getFormat().getMediaType()+" body");
+        }
+        LocalDateTime now=LocalDateTime.now();
+        if(bookImportJobRepository.claimForResume(jobId,user.id(),UUID.randomUUID().toString(),now,now.minus(staleAfter))==0){
+            throw new OperationNotPermittedException("The import job "+jobId+" is completed or still running");
+        }
+        return bookImportJobRepository.findById(jobId).orElseThrow();
+    }
+
+    //the client replays the whole body, the committed prefix is only read to check it is the same upload
+    private void skipProcessedRows(BookImportJob job, BookImportReader reader, CRC32 checksum) throws IOException {
+        for(long skipped=0;skipped<job.getProcessedRows();skipped++){
+            ImportRow row=reader.next();
+            if(row==null){
+                throw new OperationNotPermittedException("The body ends before the "+job.getProcessedRows()+" rows already processed by job "+job.getId());
+            }
+            checksum.update(row.raw().getBytes(StandardCharsets.UTF_8));
+        }
+        if(checksum.getValue()!=job.getProcessedChecksum()){
+            throw new OperationNotPermittedException("The body does not match the rows already processed by job "+job.getId());
+        }
+    }
+
+    //the progress update goes first: if another upload took the job over it matches no row and the whole batch rolls back
+    private BookImportJob writeBatch(BookImportJob claimed, List<ImportRow> batch, Integer ownerId, long checksum){
+        return transactionTemplate.execute(status->{
+            entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+            List<String> rowErrors=batch.stream().map(row->row.error()!=null?row.error():validate(row.request())).toList();
+            long failed=rowErrors.stream().filter(Objects::nonNull).count();
+            if(bookImportJobRepository.advance(claimed.getId(),claimed.getClaimToken(),batch.size(),batch.size()-failed,failed,checksum,LocalDateTime.now())==0){
+                throw new OperationNotPermittedException("The import job "+claimed.getId()+" was taken over by another upload");
+            }
+            BookImportJob job=entityManager.find(BookImportJob.class,claimed.getId());
+            User owner=entityManager.getReference(User.class,ownerId);
+            List<BookImportError> errors=new ArrayList<>();
+            long reported=job.getFailedRows()-failed;
+            for(int i=0;i<batch.size();i++){
+                ImportRow row=batch.get(i);
+                String error=rowErrors.get(i);
+                if(error==null){
+                    Book book=bookMapper.toBook(row.request());
+                    book.setId(null);
+                    book.setOwner(owner);
+                    entityManager.persist(book);
+                    continue;
+                }
+                if(++reported<=maxReportedErrors){
+                    errors.add(BookImportError.builder()
+                            .job(job)
+                            .rowNumber(row.rowNumber())
+                            .message(StringUtils.abbreviate(error,MAX_MESSAGE_LENGTH))
+                            .build());
+                }
+            }
+            //errors go last so the book inserts stay one uninterrupted jdbc batch
+            errors.forEach(entityManager::persist);
+            entityManager.flush();
+            entityManager.clear();
+            return job;
+        });
+    }
+
+    private String validate(BookRequest request){
+        Set<ConstraintViolation<BookRequest>> violations=validator.validate(request);
+        if(violations.isEmpty()){
+            return null;
+        }
+        return violations.stream()
+                .map(violation->violation.getPropertyPath()+": "+violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    //a job taken over by another upload is left alone, the response then shows the new owner's progress
+    private BookImportJob finish(BookImportJob claimed, BookImportStatus status, String lastError){
+        return transactionTemplate.execute(transactionStatus->{
+            bookImportJobRepository.finish(claimed.getId(),claimed.getClaimToken(),status,StringUtils.abbreviate(lastError,MAX_MESSAGE_LENGTH),LocalDateTime.now());
+            return entityManager.find(BookImportJob.class,claimed.getId());
+        });
+    }
+
+    private BookImportResponse toResponse(BookImportJob job){
+        List<BookImportRowError> errors=bookImportErrorRepository.findByJobIdOrderByRowNumber(job.getId(),Limit.of(maxReportedErrors)).stream()
+                .map(error->new BookImportRowError(error.getRowNumber(),error.getMessage()))
+                .toList();
+        return BookImportResponse.builder()
+                .jobId(job.getId())
+                .format(job.getFormat())
+                .status(job.getStatus())
+                .processedRows(job.getProcessedRows())
+                .importedRows(job.getImportedRows())
+                .failedRows(job.getFailedRows())
+                .lastError(job.getLastError())
+                .errors(errors)
+                .build();
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.booksocialnetwork.imports;
+
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.services.BookRequest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//rfc 4180: comma separated, double quoted fields may hold commas, doubled quotes and line breaks; the header names the columns
+public class CsvBookImportReader implements BookImportReader {
+
+    private static final List<String> REQUIRED_COLUMNS=List.of("title","authorname","isbn","synopsis");
+
+    private final BufferedReader reader;
+    private final Map<String,Integer> columns=new HashMap<>();
+    private long rowNumber;
+
+    public CsvBookImportReader(BufferedReader reader) throws IOException {
+        this.reader=reader;
+        CsvRecord header=readRecord();
+        if(header==null){
+            throw new OperationNotPermittedException("The CSV body is empty, a header row is expected");
+        }
+        for(int i=0;i<header.fields().size();i++){
+            columns.put(header.fields().get(i).trim().toLowerCase(Locale.ROOT),i);
+        }
+        List<String> missing=REQUIRED_COLUMNS.stream().filter(column->!columns.containsKey(column)).toList();
+        if(!missing.isEmpty()){
+            throw new OperationNotPermittedException("The CSV header is missing the columns "+missing);
+        }
+    }
+
+    @Override
+    public ImportRow next() throws IOException {
+        CsvRecord record;
+        do{
+            record=readRecord();
+            if(record==null){
+                return null;
+            }
+        }while(record.raw().isBlank());
+        rowNumber++;
+        if(record.error()!=null){
+            return new ImportRow(rowNumber,record.raw(),null,record.error());
+        }
+        String shareable=field(record,"shareable");
+        if(shareable!=null && !shareable.isBlank() && !shareable.equalsIgnoreCase("true") && !shareable.equalsIgnoreCase("false")){
+            return new ImportRow(rowNumber,record.raw(),null,"shareable must be true or false");
+        }
+        BookRequest request=new BookRequest(
+                null,
+                field(record,"title"),
+                field(record,"authorname"),
+                field(record,"isbn"),
+                field(record,"synopsis"),
+                Boolean.parseBoolean(shareable)
+        );
+        return new ImportRow(rowNumber,record.raw(),request,null);
+    }
+
+    private String field(CsvRecord record, String column){
+        Integer index=columns.get(column);
+        if(index==null || index>=record.fields().size()){
+            return null;
+        }
+        return record.fields().get(index);
+    }
+
+    private CsvRecord readRecord() throws IOException {
+        List<String> fields=new ArrayList<>();
+        StringBuilder field=new StringBuilder();
+        StringBuilder raw=new StringBuilder();
+        boolean quoted=false;
+        boolean read=false;
+        while(true){
+            int c=reader.read();
+            if(c==-1){
+                if(!read){
+                    return null;
+                }
+                fields.add(field.toString());
+                return new CsvRecord(fields,raw.toString(),quoted?"Unterminated quoted field":null);
+            }
+            read=true;
+            if(quoted){
+                raw.append((char) c);
+                if(c!='"'){
+                    field.append((char) c);
+                    continue;
+                }
+                reader.mark(1);
+                if(reader.read()=='"'){
+                    raw.append('"');
+                    field.append('"');
+                }else{
+                    reader.reset();
+                    quoted=false;
+                }
+                continue;
+            }
+            if(c=='\n'){
+                fields.add(field.toString());
+                return new CsvRecord(fields,raw.toString(),null);
+            }
+            if(c=='\r'){
+                continue;
+            }
+            raw.append((char) c);
+            if(c==','){
+                fields.add(field.toString());
+                field.setLength(0);
+            }else if(c=='"' && field.isEmpty()){
+                quoted=true;
+            }else{
+                field.append((char) c);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private record CsvRecord(List<String> fields, String raw, String error){
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.booksocialnetwork.imports;
+
+import com.booksocialnetwork.services.BookRequest;
+
+//raw is the row exactly as uploaded, it feeds the resume checksum; error is set when the row could not be parsed
+public record ImportRow(
+        long rowNumber,
+        String raw,
+        BookRequest request,
+        String error
+) {
+}
@@ -0,0 +1,43 @@
+package com.booksocialnetwork.imports;
+
+import com.booksocialnetwork.services.BookRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+public class NdjsonBookImportReader implements BookImportReader {
+
+    private final BufferedReader reader;
+    private final ObjectReader objectReader;
+    private long rowNumber;
+
+    public NdjsonBookImportReader(BufferedReader reader, ObjectReader objectReader) {
+        this.reader=reader;
+        this.objectReader=objectReader.forType(BookRequest.class);
+    }
+
+    @Override
+    public ImportRow next() throws IOException {
+        String line;
+        do{
+            line=reader.readLine();
+            if(line==null){
+                return null;
+            }
+        }while(line.isBlank());
+        rowNumber++;
+        try{
+            return new ImportRow(rowNumber,line,objectReader.readValue(line),null);
+        }catch(JsonProcessingException e){
+            return new ImportRow(rowNumber,line,null,"Malformed JSON: "+e.getOriginalMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
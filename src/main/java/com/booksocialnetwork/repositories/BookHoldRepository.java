@@ -0,0 +1,76 @@
+package com.booksocialnetwork.repositories;
+
+import com.booksocialnetwork.entities.BookHold;
+import com.booksocialnetwork.entities.HoldStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface BookHoldRepository extends JpaRepository<BookHold,Integer> {
+
+    @Query("""
+        SELECT hold FROM BookHold hold JOIN FETCH hold.book WHERE hold.user.id = :userId AND hold.status IN (com.booksocialnetwork.entities.HoldStatus.WAITING, com.booksocialnetwork.entities.HoldStatus.READY)
+        ORDER BY hold.createdDate
+    """)
+    List<BookHold> findLiveHoldsOfUser(Integer userId);
+
+    @Query("""
+        SELECT hold FROM BookHold hold JOIN FETCH hold.book book JOIN FETCH book.owner WHERE hold.id = :holdId
+    """)
+    Optional<BookHold> findWithBookById(Integer holdId);
+
+    List<BookHold> findByStatus(HoldStatus status);
+
+    List<BookHold> findByBookIdAndStatus(Integer bookId, HoldStatus status);
+
+    Optional<BookHold> findByLiveKey(String liveKey);
+
+    @Query("""
+        SELECT hold.id FROM BookHold hold WHERE hold.status = com.booksocialnetwork.entities.HoldStatus.READY AND hold.expiresAt < :now ORDER BY hold.expiresAt
+    """)
+    List<Integer> findExpiredReadyHolds(LocalDateTime now, Limit limit);
+
+    //a locking read, sees the latest committed reservation even when the transaction's snapshot is older
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+        SELECT hold FROM BookHold hold WHERE hold.readyBookId = :bookId
+    """)
+    List<BookHold> findReadyHoldsForUpdate(Integer bookId);
+
+    //conditional transitions: the row only moves if nobody moved it first, callers check the returned count
+
+    //callers serialise on the book row and check readyHoldsForUpdate first, see HoldService.promoteNext: a clash on the
+    //ready slot would mark the surrounding approval rollback-only, catching it is not enough
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE BookHold hold SET hold.status = com.booksocialnetwork.entities.HoldStatus.READY, hold.readyBookId = :bookId,
+            hold.readyAt = :now, hold.expiresAt = :expiresAt, hold.lastModifiedDate = :now
+        WHERE hold.id = :holdId AND hold.status = com.booksocialnetwork.entities.HoldStatus.WAITING
+    """)
+    int markReady(Integer holdId, Integer bookId, LocalDateTime now, LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE BookHold hold SET hold.status = :status, hold.liveKey = null, hold.readyBookId = null, hold.lastModifiedDate = :now
+        WHERE hold.id = :holdId AND hold.status IN :from
+    """)
+    int close(Integer holdId, HoldStatus status, List<HoldStatus> from, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE BookHold hold SET hold.priority = :priority, hold.lastModifiedDate = :now
+        WHERE hold.id = :holdId AND hold.status = com.booksocialnetwork.entities.HoldStatus.WAITING
+    """)
+    int updatePriority(Integer holdId, int priority, LocalDateTime now);
+}
@@ -0,0 +1,12 @@
+package com.booksocialnetwork.repositories;
+
+import com.booksocialnetwork.entities.BookImportError;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface BookImportErrorRepository extends JpaRepository<BookImportError,Integer> {
+
+    List<BookImportError> findByJobIdOrderByRowNumber(Integer jobId, Limit limit);
+}
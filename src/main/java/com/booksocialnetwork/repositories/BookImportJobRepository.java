@@ -0,0 +1,44 @@
+package com.booksocialnetwork.repositories;
+
+import com.booksocialnetwork.entities.BookImportJob;
+import com.booksocialnetwork.entities.BookImportStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface BookImportJobRepository extends JpaRepository<BookImportJob,Integer> {
+
+    //a failed job, or a running one whose node stopped heart-beating, can be taken over by exactly one resume request
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE BookImportJob job SET job.status = com.booksocialnetwork.entities.BookImportStatus.RUNNING, job.claimToken = :claimToken, job.lastModifiedDate = :now
+        WHERE job.id = :jobId AND job.createdBy = :userId
+        AND (job.status = com.booksocialnetwork.entities.BookImportStatus.FAILED
+            OR (job.status = com.booksocialnetwork.entities.BookImportStatus.RUNNING AND COALESCE(job.lastModifiedDate, job.createdDate) < :staleBefore))
+    """)
+    int claimForResume(Integer jobId, Integer userId, String claimToken, LocalDateTime now, LocalDateTime staleBefore);
+
+    //joins the batch transaction and keeps the job row locked until it commits, a takeover waits and then sees the fresh heartbeat
+    @Modifying
+    @Query("""
+        UPDATE BookImportJob job SET
+            job.processedRows = job.processedRows + :processedRows,
+            job.importedRows = job.importedRows + :importedRows,
+            job.failedRows = job.failedRows + :failedRows,
+            job.processedChecksum = :processedChecksum,
+            job.lastModifiedDate = :now
+        WHERE job.id = :jobId AND job.claimToken = :claimToken AND job.status = com.booksocialnetwork.entities.BookImportStatus.RUNNING
+    """)
+    int advance(Integer jobId, String claimToken, long processedRows, long importedRows, long failedRows, long processedChecksum, LocalDateTime now);
+
+    @Modifying
+    @Query("""
+        UPDATE BookImportJob job SET job.status = :status, job.lastError = :lastError, job.lastModifiedDate = :now
+        WHERE job.id = :jobId AND job.claimToken = :claimToken AND job.status = com.booksocialnetwork.entities.BookImportStatus.RUNNING
+    """)
+    int finish(Integer jobId, String claimToken, BookImportStatus status, String lastError, LocalDateTime now);
+}
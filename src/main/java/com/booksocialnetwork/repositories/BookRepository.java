@@ -1,17 +1,213 @@
 package com.booksocialnetwork.repositories;
 
 import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.exports.BookExportRow;
+import com.booksocialnetwork.exports.BookExportService;
+import com.booksocialnetwork.search.BookSearchSource;
+import com.booksocialnetwork.search.CatalogFingerprint;
+import com.booksocialnetwork.services.BookListingView;
+import com.booksocialnetwork.services.BookRatingSnapshot;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface BookRepository extends JpaRepository<Book,Integer>, JpaSpecificationExecutor<Book> {
 
+    //serialises hold promotions of one copy, see HoldService.promoteNext
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+        SELECT book FROM Book book WHERE book.id = :bookId
+    """)
+    Optional<Book> lockById(Integer bookId);
+
+    @Query(value = """
+        SELECT new com.booksocialnetwork.services.BookListingView(
+            book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover, book.archived, book.shareable,
+            owner.id, owner.firstname, owner.lastname, book.rating.ratingCount, book.rating.ratingSum
+        )
+        FROM Book book JOIN book.owner owner WHERE book.archived = false AND book.shareable = true AND owner.id != :userId
+    """, countQuery = """
+        SELECT COUNT(book) FROM Book book WHERE book.archived = false AND book.shareable = true AND book.owner.id != :userId
+    """)
+    Page<BookListingView> findAllDisplayableBooks(Pageable pageable, Integer userId);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BookListingView(
+            book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover, book.archived, book.shareable,
+            owner.id, owner.firstname, owner.lastname, book.rating.ratingCount, book.rating.ratingSum
+        )
+        FROM Book book JOIN book.owner owner WHERE book.archived = false AND book.shareable = true AND owner.id != :userId
+    """)
+    Slice<BookListingView> findDisplayableBooksSlice(Pageable pageable, Integer userId);
+
+    //the newest displayable books of the whole catalog, shared by every reader through the displayable books cache
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BookListingView(
+            book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover, book.archived, book.shareable,
+            owner.id, owner.firstname, owner.lastname, book.rating.ratingCount, book.rating.ratingSum
+        )
+        FROM Book book JOIN book.owner owner WHERE book.archived = false AND book.shareable = true
+        ORDER BY book.createdDate DESC, book.id DESC
+    """)
+    List<BookListingView> findDisplayableHead(Limit limit);
+
+    @Query("""
+        SELECT COUNT(book) FROM Book book WHERE book.archived = false AND book.shareable = true
+    """)
+    long countAllDisplayableBooks();
+
+    @Query("""
+        SELECT COUNT(book) FROM Book book WHERE book.archived = false AND book.shareable = true AND book.owner.id = :ownerId
+    """)
+    long countDisplayableBooksOfOwner(Integer ownerId);
+
+    @Query(value = """
+        SELECT new com.booksocialnetwork.services.BookListingView(
+            book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover, book.archived, book.shareable,
+            owner.id, owner.firstname, owner.lastname, book.rating.ratingCount, book.rating.ratingSum
+        )
+        FROM Book book JOIN book.owner owner WHERE owner.id = :ownerId
+    """, countQuery = """
+        SELECT COUNT(book) FROM Book book WHERE book.owner.id = :ownerId
+    """)
+    Page<BookListingView> findAllBooksByOwner(Pageable pageable, Integer ownerId);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BookListingView(
+            book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover, book.archived, book.shareable,
+            owner.id, owner.firstname, owner.lastname, book.rating.ratingCount, book.rating.ratingSum
+        )
+        FROM Book book JOIN book.owner owner WHERE owner.id = :ownerId
+    """)
+    Slice<BookListingView> findBooksByOwnerSlice(Pageable pageable, Integer ownerId);
+
+    @Modifying
+    @Query("""
+        UPDATE Book book SET
+            book.rating.ratingCount = book.rating.ratingCount + 1,
+            book.rating.ratingSum = book.rating.ratingSum + :note,
+            book.rating.oneStarCount = book.rating.oneStarCount + CASE WHEN :bucket = 1 THEN 1 ELSE 0 END,
+            book.rating.twoStarCount = book.rating.twoStarCount + CASE WHEN :bucket = 2 THEN 1 ELSE 0 END,
+            book.rating.threeStarCount = book.rating.threeStarCount + CASE WHEN :bucket = 3 THEN 1 ELSE 0 END,
+            book.rating.fourStarCount = book.rating.fourStarCount + CASE WHEN :bucket = 4 THEN 1 ELSE 0 END,
+            book.rating.fiveStarCount = book.rating.fiveStarCount + CASE WHEN :bucket = 5 THEN 1 ELSE 0 END,
+            book.lastModifiedDate = :modifiedAt
+        WHERE book.id = :bookId
+    """)
+    int incrementRating(Integer bookId, double note, int bucket, LocalDateTime modifiedAt);
+
+    @Modifying
+    @Query("""
+        UPDATE Book book SET
+            book.rating.ratingCount = :ratingCount,
+            book.rating.ratingSum = :ratingSum,
+            book.rating.oneStarCount = :oneStarCount,
+            book.rating.twoStarCount = :twoStarCount,
+            book.rating.threeStarCount = :threeStarCount,
+            book.rating.fourStarCount = :fourStarCount,
+            book.rating.fiveStarCount = :fiveStarCount,
+            book.lastModifiedDate = :modifiedAt
+        WHERE book.id = :bookId
+    """)
+    int overwriteRating(Integer bookId, long ratingCount, double ratingSum, long oneStarCount, long twoStarCount, long threeStarCount, long fourStarCount, long fiveStarCount, LocalDateTime modifiedAt);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BookRatingSnapshot(
+            book.id, book.rating.ratingCount, book.rating.ratingSum, book.rating.oneStarCount, book.rating.twoStarCount,
+            book.rating.threeStarCount, book.rating.fourStarCount, book.rating.fiveStarCount
+        )
+        FROM Book book WHERE book.id > :afterId ORDER BY book.id
+    """)
+    List<BookRatingSnapshot> findRatingsAfter(Integer afterId, Limit limit);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BookListingView(
+            book.id, book.title, book.authorName, book.isbn, book.synopsis, book.bookCover, book.archived, book.shareable,
+            owner.id, owner.firstname, owner.lastname, book.rating.ratingCount, book.rating.ratingSum
+        )
+        FROM Book book JOIN book.owner owner WHERE book.id IN :bookIds AND book.archived = false AND book.shareable = true AND owner.id != :userId
+    """)
+    List<BookListingView> findDisplayableBooksByIds(Collection<Integer> bookIds, Integer userId);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.search.BookSearchSource(
+            book.id, book.owner.id, book.title, book.authorName, book.isbn, book.synopsis, book.archived, book.shareable,
+            book.rating.ratingCount, book.rating.ratingSum,
+            CASE WHEN EXISTS (SELECT history.id FROM BookTransactionHistory history WHERE history.book.id = book.id AND history.returnApproved = false) THEN true ELSE false END,
+            book.createdDate, book.lastModifiedDate
+        )
+        FROM Book book WHERE book.id > :afterId ORDER BY book.id
+    """)
+    List<BookSearchSource> findSearchSourcesAfter(Integer afterId, Limit limit);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.search.BookSearchSource(
+            book.id, book.owner.id, book.title, book.authorName, book.isbn, book.synopsis, book.archived, book.shareable,
+            book.rating.ratingCount, book.rating.ratingSum,
+            CASE WHEN EXISTS (SELECT history.id FROM BookTransactionHistory history WHERE history.book.id = book.id AND history.returnApproved = false) THEN true ELSE false END,
+            book.createdDate, book.lastModifiedDate
+        )
+        FROM Book book WHERE book.createdDate >= :since OR book.lastModifiedDate >= :since
+            OR EXISTS (SELECT history.id FROM BookTransactionHistory history WHERE history.book.id = book.id AND (history.createdDate >= :since OR history.lastModifiedDate >= :since))
+        ORDER BY book.id
+    """)
+    List<BookSearchSource> findSearchSourcesChangedSince(LocalDateTime since);
+
+    //books are never deleted, so for a given watermark the result only changes if the database was replaced
+    @Query("""
+        SELECT new com.booksocialnetwork.search.CatalogFingerprint(COUNT(book), COALESCE(MAX(book.id), 0))
+        FROM Book book WHERE book.createdDate <= :upTo
+    """)
+    CatalogFingerprint fingerprintUpTo(LocalDateTime upTo);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.search.BookSearchSource(
+            book.id, book.owner.id, book.title, book.authorName, book.isbn, book.synopsis, book.archived, book.shareable,
+            book.rating.ratingCount, book.rating.ratingSum,
+            CASE WHEN EXISTS (SELECT history.id FROM BookTransactionHistory history WHERE history.book.id = book.id AND history.returnApproved = false) THEN true ELSE false END,
+            book.createdDate, book.lastModifiedDate
+        )
+        FROM Book book WHERE book.id = :bookId
+    """)
+    Optional<BookSearchSource> findSearchSourceById(Integer bookId);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.search.BookSearchSource(
+            book.id, book.owner.id, book.title, book.authorName, book.isbn, book.synopsis, book.archived, book.shareable,
+            book.rating.ratingCount, book.rating.ratingSum,
+            CASE WHEN EXISTS (SELECT history.id FROM BookTransactionHistory history WHERE history.book.id = book.id AND history.returnApproved = false) THEN true ELSE false END,
+            book.createdDate, book.lastModifiedDate
+        )
+        FROM Book book WHERE book.id IN :bookIds
+    """)
+    List<BookSearchSource> findSearchSourcesByIds(Collection<Integer> bookIds);
 
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE,value = BookExportService.FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY,value = "true")
+    })
     @Query("""
-        SELECT book FROM Book book WHERE book.archived = false AND book.shareable = true AND book.owner.id != :userId
+        SELECT new com.booksocialnetwork.exports.BookExportRow(
+            book.id, book.title, book.authorName, book.isbn, book.synopsis, book.archived, book.shareable,
+            book.rating.ratingCount, book.rating.ratingSum, book.createdDate
+        )
+        FROM Book book WHERE book.owner.id = :ownerId ORDER BY book.id
     """)
-    Page<Book> findAllDisplayableBooks(Pageable pageable, Integer userId);
+    Stream<BookExportRow> streamBooksByOwner(Integer ownerId);
 }
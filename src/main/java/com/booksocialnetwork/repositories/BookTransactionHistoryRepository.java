@@ -1,30 +1,167 @@
 package com.booksocialnetwork.repositories;
 
 import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.exports.BookExportService;
+import com.booksocialnetwork.exports.HistoryExportRow;
+import com.booksocialnetwork.services.BorrowedBookView;
+import com.booksocialnetwork.services.LoanCandidate;
+import com.booksocialnetwork.services.LoanTally;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface BookTransactionHistoryRepository extends JpaRepository<BookTransactionHistory,Integer> {
+public interface BookTransactionHistoryRepository extends JpaRepository<BookTransactionHistory,Integer>, JpaSpecificationExecutor<BookTransactionHistory> {
+
+    @Query(value = """
+        SELECT new com.booksocialnetwork.services.BorrowedBookView(
+            book.id, book.title, book.authorName, book.isbn, book.rating.ratingCount, book.rating.ratingSum, history.returned, history.returnApproved, history.createdDate
+        )
+        FROM BookTransactionHistory history JOIN history.book book WHERE history.user.id = :userId
+    """, countQuery = """
+        SELECT COUNT(history) FROM BookTransactionHistory history WHERE history.user.id = :userId
+    """)
+    Page<BorrowedBookView> findAllBorrowedBooks(Pageable pageable, Integer userId);
+
+    @Query(value = """
+        SELECT new com.booksocialnetwork.services.BorrowedBookView(
+            book.id, book.title, book.authorName, book.isbn, book.rating.ratingCount, book.rating.ratingSum, history.returned, history.returnApproved, history.createdDate
+        )
+        FROM BookTransactionHistory history JOIN history.book book WHERE book.owner.id = :userId
+    """, countQuery = """
+        SELECT COUNT(history) FROM BookTransactionHistory history WHERE history.book.owner.id = :userId
+    """)
+    Page<BorrowedBookView> findAllReturnedBooks(Pageable pageable, Integer userId);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BorrowedBookView(
+            book.id, book.title, book.authorName, book.isbn, book.rating.ratingCount, book.rating.ratingSum, history.returned, history.returnApproved, history.createdDate
+        )
+        FROM BookTransactionHistory history JOIN history.book book WHERE history.user.id = :userId
+    """)
+    Slice<BorrowedBookView> findBorrowedBooksSlice(Pageable pageable, Integer userId);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BorrowedBookView(
+            book.id, book.title, book.authorName, book.isbn, book.rating.ratingCount, book.rating.ratingSum, history.returned, history.returnApproved, history.createdDate
+        )
+        FROM BookTransactionHistory history JOIN history.book book WHERE book.owner.id = :userId
+    """)
+    Slice<BorrowedBookView> findReturnedBooksSlice(Pageable pageable, Integer userId);
+
+    @Query("""
+        SELECT COUNT(history) FROM BookTransactionHistory history WHERE history.user.id = :userId
+    """)
+    long countBorrowedBooks(Integer userId);
+
+    //the includeArchive variants read both stores up to the end of the requested page and merge them; the hot store
+    //alone keeps serving the plain variants, so only callers that ask for old loans pay for the archive
+
+    default Page<BorrowedBookView> findAllBorrowedBooks(Pageable pageable, Integer userId, boolean includeArchive){
+        if(!includeArchive){
+            return findAllBorrowedBooks(pageable,userId);
+        }
+        Limit limit=Limit.of((int) pageable.getOffset()+pageable.getPageSize());
+        return mergePage(
+                findBorrowedBooksNewestFirst(userId,limit),
+                findArchivedBorrowedBooksNewestFirst(userId,limit),
+                pageable,
+                countBorrowedBooks(userId)+countArchivedBorrowedBooks(userId)
+        );
+    }
+
+    default Page<BorrowedBookView> findAllReturnedBooks(Pageable pageable, Integer userId, boolean includeArchive){
+        if(!includeArchive){
+            return findAllReturnedBooks(pageable,userId);
+        }
+        Limit limit=Limit.of((int) pageable.getOffset()+pageable.getPageSize());
+        return mergePage(
+                findReturnedBooksNewestFirst(userId,limit),
+                findArchivedReturnedBooksNewestFirst(userId,limit),
+                pageable,
+                countReturnedBooks(userId)+countArchivedReturnedBooks(userId)
+        );
+    }
+
+    private static Page<BorrowedBookView> mergePage(List<BorrowedBookView> hot, List<BorrowedBookView> archived, Pageable pageable, long total){
+        List<BorrowedBookView> merged=Stream.concat(hot.stream(),archived.stream())
+                .sorted(Comparator.comparing(BorrowedBookView::createdDate,Comparator.nullsLast(Comparator.reverseOrder())))
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .toList();
+        return new PageImpl<>(merged,pageable,total);
+    }
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BorrowedBookView(
+            book.id, book.title, book.authorName, book.isbn, book.rating.ratingCount, book.rating.ratingSum, history.returned, history.returnApproved, history.createdDate
+        )
+        FROM BookTransactionHistory history JOIN history.book book WHERE history.user.id = :userId ORDER BY history.createdDate DESC
+    """)
+    List<BorrowedBookView> findBorrowedBooksNewestFirst(Integer userId, Limit limit);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BorrowedBookView(
+            book.id, book.title, book.authorName, book.isbn, book.rating.ratingCount, book.rating.ratingSum, history.returned, history.returnApproved, history.createdDate
+        )
+        FROM BookTransactionHistory history JOIN history.book book WHERE book.owner.id = :userId ORDER BY history.createdDate DESC
+    """)
+    List<BorrowedBookView> findReturnedBooksNewestFirst(Integer userId, Limit limit);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BorrowedBookView(
+            book.id, book.title, book.authorName, book.isbn, book.rating.ratingCount, book.rating.ratingSum, history.returned, history.returnApproved, history.createdDate
+        )
+        FROM ArchivedBookTransactionHistory history JOIN history.book book WHERE history.userId = :userId ORDER BY history.createdDate DESC
+    """)
+    List<BorrowedBookView> findArchivedBorrowedBooksNewestFirst(Integer userId, Limit limit);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BorrowedBookView(
+            book.id, book.title, book.authorName, book.isbn, book.rating.ratingCount, book.rating.ratingSum, history.returned, history.returnApproved, history.createdDate
+        )
+        FROM ArchivedBookTransactionHistory history JOIN history.book book WHERE book.owner.id = :userId ORDER BY history.createdDate DESC
+    """)
+    List<BorrowedBookView> findArchivedReturnedBooksNewestFirst(Integer userId, Limit limit);
 
     @Query("""
-        SELECT history FROM BookTransactionHistory history WHERE history.user.id = :userId
+        SELECT COUNT(history) FROM ArchivedBookTransactionHistory history WHERE history.userId = :userId
     """)
-    Page<BookTransactionHistory> findAllBorrowedBooks(Pageable pageable, Integer userId);
+    long countArchivedBorrowedBooks(Integer userId);
 
     @Query("""
-        SELECT history FROM BookTransactionHistory history WHERE history.book.owner.id = :userId
+        SELECT COUNT(history) FROM ArchivedBookTransactionHistory history WHERE history.book.owner.id = :userId
     """)
-    Page<BookTransactionHistory> findAllReturnedBooks(Pageable pageable, Integer userId);
+    long countArchivedReturnedBooks(Integer userId);
+
+    @Query("""
+        SELECT COUNT(history) FROM BookTransactionHistory history WHERE history.book.owner.id = :userId
+    """)
+    long countReturnedBooks(Integer userId);
 
     @Query("""
         SELECT (COUNT(*) > 0) AS isBorrowed FROM BookTransactionHistory bookTransactionHistory WHERE bookTransactionHistory.user.id = :userId AND bookTransactionHistory.book.id = :bookId AND bookTransactionHistory.returnApproved = false
     """)
     boolean isAlreadyBorrowedByUser(int bookId, Integer userId);
 
+    boolean existsByActiveBookId(Integer bookId);
+
     @Query("""
         SELECT transaction FROM BookTransactionHistory transaction WHERE transaction.user.id = :userId AND transaction.book.id = :bookId AND transaction.returned = false AND transaction.returnApproved = false
     """)
@@ -34,4 +171,128 @@ public interface BookTransactionHistoryRepository extends JpaRepository<BookTran
         SELECT transaction FROM BookTransactionHistory transaction WHERE transaction.book.owner.id = :userId AND transaction.book.id = :bookId AND transaction.returned = true AND transaction.returnApproved = false
     """)
     Optional<BookTransactionHistory> findByBookIdAndOwnerId(int bookId, Integer userId);
+
+    //one row per requested book that exists, history is null when the book has no loan in the state the batch step expects
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.LoanCandidate(book.id, book.owner.id, book.archived, book.shareable, history.id, history.user.id)
+        FROM Book book LEFT JOIN BookTransactionHistory history
+            ON history.book = book AND history.user.id = :userId AND history.returned = false AND history.returnApproved = false
+        WHERE book.id IN :bookIds
+    """)
+    List<LoanCandidate> findReturnCandidates(Collection<Integer> bookIds, Integer userId);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.LoanCandidate(book.id, book.owner.id, book.archived, book.shareable, history.id, history.user.id)
+        FROM Book book LEFT JOIN BookTransactionHistory history
+            ON history.book = book AND history.returned = true AND history.returnApproved = false
+        WHERE book.id IN :bookIds
+    """)
+    List<LoanCandidate> findApprovalCandidates(Collection<Integer> bookIds);
+
+    //guarded like the single-book queries, a row another request already moved is left as it is
+
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE BookTransactionHistory history SET history.returned = true, history.lastModifiedBy = :userId, history.lastModifiedDate = :now
+        WHERE history.id IN :historyIds AND history.returned = false AND history.returnApproved = false
+    """)
+    int markReturned(Collection<Integer> historyIds, Integer userId, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE BookTransactionHistory history SET history.returnApproved = true, history.activeBookId = null, history.lastModifiedBy = :userId, history.lastModifiedDate = :now
+        WHERE history.id IN :historyIds AND history.returned = true AND history.returnApproved = false
+    """)
+    int approveReturns(Collection<Integer> historyIds, Integer userId, LocalDateTime now);
+
+    //LoanCounterService recomputes the counters from these, the archive only ever adds to the lifetime totals
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.LoanTally(
+            history.user.id,
+            SUM(CASE WHEN history.returned = false THEN 1 ELSE 0 END),
+            SUM(CASE WHEN history.returned = true AND history.returnApproved = false THEN 1 ELSE 0 END),
+            COUNT(history)
+        )
+        FROM BookTransactionHistory history WHERE history.user.id IN :userIds GROUP BY history.user.id
+    """)
+    List<LoanTally> tallyBorrowers(Collection<Integer> userIds);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.LoanTally(
+            history.book.owner.id,
+            SUM(CASE WHEN history.returnApproved = false THEN 1 ELSE 0 END),
+            SUM(CASE WHEN history.returned = true AND history.returnApproved = false THEN 1 ELSE 0 END),
+            COUNT(history)
+        )
+        FROM BookTransactionHistory history WHERE history.book.owner.id IN :userIds GROUP BY history.book.owner.id
+    """)
+    List<LoanTally> tallyOwners(Collection<Integer> userIds);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.LoanTally(history.userId, 0L, 0L, COUNT(history))
+        FROM ArchivedBookTransactionHistory history WHERE history.userId IN :userIds GROUP BY history.userId
+    """)
+    List<LoanTally> tallyArchivedBorrowers(Collection<Integer> userIds);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.services.LoanTally(history.book.owner.id, 0L, 0L, COUNT(history))
+        FROM ArchivedBookTransactionHistory history WHERE history.book.owner.id IN :userIds GROUP BY history.book.owner.id
+    """)
+    List<LoanTally> tallyArchivedOwners(Collection<Integer> userIds);
+
+    //only approved returns are archived, an open loan stays hot however old it is
+
+    @Query("""
+        SELECT history.id FROM BookTransactionHistory history
+        WHERE history.returnApproved = true AND history.lastModifiedDate < :closedBefore ORDER BY history.id
+    """)
+    List<Integer> findArchivableIds(LocalDateTime closedBefore, Limit limit);
+
+    @Modifying
+    @Query("""
+        INSERT INTO ArchivedBookTransactionHistory (id, userId, bookId, returned, returnApproved, createdDate, lastModifiedDate, createdBy, lastModifiedBy, archivedAt)
+        SELECT history.id, history.user.id, history.book.id, history.returned, history.returnApproved,
+            history.createdDate, history.lastModifiedDate, history.createdBy, history.lastModifiedBy, :archivedAt
+        FROM BookTransactionHistory history WHERE history.id IN :historyIds
+    """)
+    int copyToArchive(Collection<Integer> historyIds, LocalDateTime archivedAt);
+
+    @Modifying
+    @Query("""
+        DELETE FROM BookTransactionHistory history WHERE history.id IN :historyIds AND history.returnApproved = true
+    """)
+    int deleteArchived(Collection<Integer> historyIds);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE,value = BookExportService.FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY,value = "true")
+    })
+    @Query("""
+        SELECT new com.booksocialnetwork.exports.HistoryExportRow(
+            history.id, book.id, book.title, book.isbn, book.owner.id, history.user.id,
+            history.returned, history.returnApproved, history.createdDate, history.lastModifiedDate
+        )
+        FROM BookTransactionHistory history JOIN history.book book
+        WHERE history.user.id = :userId OR book.owner.id = :userId ORDER BY history.id
+    """)
+    Stream<HistoryExportRow> streamHistoryOfUser(Integer userId);
+
+    //loans moved out by HistoryArchiveService, same columns as streamHistoryOfUser
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE,value = BookExportService.FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY,value = "true")
+    })
+    @Query("""
+        SELECT new com.booksocialnetwork.exports.HistoryExportRow(
+            history.id, book.id, book.title, book.isbn, book.owner.id, history.userId,
+            history.returned, history.returnApproved, history.createdDate, history.lastModifiedDate
+        )
+        FROM ArchivedBookTransactionHistory history JOIN history.book book
+        WHERE history.userId = :userId OR book.owner.id = :userId ORDER BY history.id
+    """)
+    Stream<HistoryExportRow> streamArchivedHistoryOfUser(Integer userId);
 }
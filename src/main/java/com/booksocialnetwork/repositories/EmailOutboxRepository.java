@@ -0,0 +1,68 @@
+package com.booksocialnetwork.repositories;
+
+import com.booksocialnetwork.entities.EmailOutboxMessage;
+import com.booksocialnetwork.entities.OutboxStatus;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage,Integer> {
+
+    @Query("""
+        SELECT message.id FROM EmailOutboxMessage message
+        WHERE message.status = com.booksocialnetwork.entities.OutboxStatus.PENDING AND message.nextAttemptAt <= :now
+        ORDER BY message.nextAttemptAt
+    """)
+    List<Integer> findDueIds(LocalDateTime now, Limit limit);
+
+    //only rows still due are taken, so two senders polling the same ids split them instead of sending twice
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE EmailOutboxMessage message SET message.claimToken = :claimToken, message.nextAttemptAt = :leaseUntil
+        WHERE message.id IN :ids AND message.status = com.booksocialnetwork.entities.OutboxStatus.PENDING AND message.nextAttemptAt <= :now
+    """)
+    int claim(Collection<Integer> ids, String claimToken, LocalDateTime now, LocalDateTime leaseUntil);
+
+    List<EmailOutboxMessage> findByClaimToken(String claimToken);
+
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE EmailOutboxMessage message SET message.status = com.booksocialnetwork.entities.OutboxStatus.SENT,
+            message.sentAt = :now, message.attempts = message.attempts + 1, message.claimToken = null, message.lastError = null
+        WHERE message.id IN :ids AND message.claimToken = :claimToken
+    """)
+    int markSent(Collection<Integer> ids, String claimToken, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE EmailOutboxMessage message SET message.status = :status, message.nextAttemptAt = :nextAttemptAt,
+            message.attempts = message.attempts + 1, message.claimToken = null, message.lastError = :error
+        WHERE message.id = :id AND message.claimToken = :claimToken
+    """)
+    int markFailed(Integer id, String claimToken, OutboxStatus status, LocalDateTime nextAttemptAt, String error);
+
+    long countByStatus(OutboxStatus status);
+
+    @Query("""
+        SELECT MIN(message.createdAt) FROM EmailOutboxMessage message WHERE message.status = com.booksocialnetwork.entities.OutboxStatus.PENDING
+    """)
+    Optional<LocalDateTime> findOldestPendingCreatedAt();
+
+    @Transactional
+    @Modifying
+    @Query("""
+        DELETE FROM EmailOutboxMessage message WHERE message.status = com.booksocialnetwork.entities.OutboxStatus.SENT AND message.sentAt < :sentBefore
+    """)
+    int deleteSentBefore(LocalDateTime sentBefore);
+
+}
@@ -1,14 +1,45 @@
 package com.booksocialnetwork.repositories;
 
 import com.booksocialnetwork.entities.Feedback;
+import com.booksocialnetwork.services.BookRatingSnapshot;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface FeedbackRepository extends JpaRepository<Feedback,Integer> {
     @Query("""
         SELECT feedback FROM Feedback feedback WHERE feedback.book.id = :bookId
     """)
     Page<Feedback> findAllByBookId(Integer bookId, Pageable pageable);
+
+    @Query("""
+        SELECT feedback FROM Feedback feedback WHERE feedback.book.id = :bookId
+    """)
+    Slice<Feedback> findSliceByBookId(Integer bookId, Pageable pageable);
+
+    @Query("""
+        SELECT COUNT(feedback) FROM Feedback feedback WHERE feedback.book.id = :bookId
+    """)
+    long countByBookId(Integer bookId);
+
+    //buckets mirror BookRating.starBucket, i.e. notes are rounded half up and clamped to 1..5
+    @Query("""
+        SELECT new com.booksocialnetwork.services.BookRatingSnapshot(
+            feedback.book.id,
+            COUNT(feedback),
+            SUM(feedback.note),
+            SUM(CASE WHEN feedback.note < 1.5 THEN 1L ELSE 0L END),
+            SUM(CASE WHEN feedback.note >= 1.5 AND feedback.note < 2.5 THEN 1L ELSE 0L END),
+            SUM(CASE WHEN feedback.note >= 2.5 AND feedback.note < 3.5 THEN 1L ELSE 0L END),
+            SUM(CASE WHEN feedback.note >= 3.5 AND feedback.note < 4.5 THEN 1L ELSE 0L END),
+            SUM(CASE WHEN feedback.note >= 4.5 THEN 1L ELSE 0L END)
+        )
+        FROM Feedback feedback WHERE feedback.note IS NOT NULL AND feedback.book.id IN :bookIds GROUP BY feedback.book.id
+    """)
+    List<BookRatingSnapshot> aggregateRatingsByBookIds(Collection<Integer> bookIds);
 }
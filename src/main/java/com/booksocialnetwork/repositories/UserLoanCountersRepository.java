@@ -0,0 +1,32 @@
+package com.booksocialnetwork.repositories;
+
+import com.booksocialnetwork.entities.UserLoanCounters;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface UserLoanCountersRepository extends JpaRepository<UserLoanCounters,Integer> {
+
+    //relative update so concurrent loans of one user never overwrite each other's change
+    @Modifying
+    @Query("""
+        UPDATE UserLoanCounters counters SET
+            counters.borrowedActive = counters.borrowedActive + :borrowedActive,
+            counters.returnedPendingApproval = counters.returnedPendingApproval + :returnedPendingApproval,
+            counters.lifetimeBorrowed = counters.lifetimeBorrowed + :lifetimeBorrowed,
+            counters.lentOut = counters.lentOut + :lentOut,
+            counters.awaitingMyApproval = counters.awaitingMyApproval + :awaitingMyApproval,
+            counters.lifetimeLent = counters.lifetimeLent + :lifetimeLent
+        WHERE counters.userId = :userId
+    """)
+    int applyDelta(Integer userId, long borrowedActive, long returnedPendingApproval, long lifetimeBorrowed, long lentOut, long awaitingMyApproval, long lifetimeLent);
+
+    //locks in the same ascending user id order as LoanCounterService applies its deltas
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<UserLoanCounters> findByUserIdInOrderByUserId(Collection<Integer> userIds);
+}
@@ -1,10 +1,24 @@
 package com.booksocialnetwork.repositories;
 
 import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.security.AccountStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User,Integer> {
     Optional<User> findByEmail(String email);
+
+    @Query("""
+        SELECT new com.booksocialnetwork.security.AccountStatus(user.enabled, user.accountLocked) FROM User user WHERE user.id = :userId
+    """)
+    Optional<AccountStatus> findAccountStatus(Integer userId);
+
+    @Query("""
+        SELECT user.id FROM User user WHERE user.id > :afterId ORDER BY user.id
+    """)
+    List<Integer> findIdsAfter(Integer afterId, Limit limit);
 }
@@ -0,0 +1,229 @@
+package com.booksocialnetwork.search;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//type-ahead over titles and author names of the books anyone can borrow, ranked by how many feedbacks the books collected
+@Component
+@Slf4j
+public class AutocompleteIndex implements BookIndex {
+
+    private static final int SNAPSHOT_MAGIC=0x424B4143;
+    private static final int SNAPSHOT_VERSION=1;
+    private static final String SNAPSHOT_FILE="books-autocomplete.idx";
+
+    @Value("${application.search.autocomplete.top-k}")
+    private int topK;
+
+    @Value("${application.search.snapshot-dir}")
+    private Path snapshotDir;
+
+    private final ReadWriteLock lock=new ReentrantReadWriteLock();
+    private final Map<String,Suggestion> suggestions=new HashMap<>();
+    private final Map<Integer,List<Contribution>> contributionsByBook=new HashMap<>();
+    private CompletionTrie trie;
+
+    //what a single book adds to a suggestion
+    private record Contribution(Completion.CompletionType type, String text, long popularity) {
+    }
+
+    private static final class Suggestion {
+        private final Completion.CompletionType type;
+        private final String key;
+        private final String text;
+        private final Map<Integer,Long> popularityByBook=new HashMap<>();
+
+        private Suggestion(Completion.CompletionType type, String key, String text) {
+            this.type=type;
+            this.key=key;
+            this.text=text;
+        }
+
+        private Completion toCompletion(){
+            long popularity=0;
+            for(long bookPopularity:popularityByBook.values()){
+                popularity+=bookPopularity;
+            }
+            return new Completion(key,type,text,popularity);
+        }
+    }
+
+    @PostConstruct
+    void start(){
+        trie=new CompletionTrie(topK);
+    }
+
+    static String toKey(String text){
+        return TextAnalyzer.normalize(text).strip().replaceAll("\\s+"," ");
+    }
+
+    @Override
+    public void index(BookSearchSource book) {
+        List<Contribution> contributions=new ArrayList<>(2);
+        if(!book.archived() && book.shareable()){
+            //every copy counts once even before anyone rated it
+            long popularity=1+book.ratingCount();
+            if(book.title()!=null){
+                contributions.add(new Contribution(Completion.CompletionType.TITLE,book.title().strip(),popularity));
+            }
+            if(book.authorName()!=null){
+                contributions.add(new Contribution(Completion.CompletionType.AUTHOR,book.authorName().strip(),popularity));
+            }
+        }
+        lock.writeLock().lock();
+        try{
+            apply(book.id(),contributions);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //caller holds the write lock
+    private void apply(Integer bookId, List<Contribution> contributions){
+        Set<String> touched=new LinkedHashSet<>();
+        List<Contribution> previous=contributionsByBook.remove(bookId);
+        if(previous!=null){
+            for(Contribution contribution:previous){
+                String id=Completion.idOf(contribution.type(),toKey(contribution.text()));
+                Suggestion suggestion=suggestions.get(id);
+                if(suggestion!=null){
+                    suggestion.popularityByBook.remove(bookId);
+                    touched.add(id);
+                }
+            }
+        }
+        List<Contribution> kept=new ArrayList<>(contributions.size());
+        for(Contribution contribution:contributions){
+            String key=toKey(contribution.text());
+            if(key.isEmpty()){
+                continue;
+            }
+            String id=Completion.idOf(contribution.type(),key);
+            Suggestion suggestion=suggestions.computeIfAbsent(id,k->new Suggestion(contribution.type(),key,contribution.text()));
+            suggestion.popularityByBook.put(bookId,contribution.popularity());
+            touched.add(id);
+            kept.add(contribution);
+        }
+        if(!kept.isEmpty()){
+            contributionsByBook.put(bookId,kept);
+        }
+        for(String id:touched){
+            Suggestion suggestion=suggestions.get(id);
+            if(suggestion.popularityByBook.isEmpty()){
+                suggestions.remove(id);
+                wordStarts(suggestion.key).forEach(suffix->trie.remove(suffix,id));
+            }else{
+                Completion completion=suggestion.toCompletion();
+                wordStarts(suggestion.key).forEach(suffix->trie.put(suffix,completion));
+            }
+        }
+    }
+
+    //"children of dune" is reachable from "chi", "of" and "du"
+    private static Set<String> wordStarts(String key){
+        Set<String> suffixes=new LinkedHashSet<>();
+        suffixes.add(key);
+        for(int i=key.indexOf(' ');i>=0;i=key.indexOf(' ',i+1)){
+            if(i+1<key.length()){
+                suffixes.add(key.substring(i+1));
+            }
+        }
+        return suffixes;
+    }
+
+    public List<Completion> complete(String prefix, int limit){
+        String key=TextAnalyzer.normalize(prefix).stripLeading().replaceAll("\\s+"," ");
+        if(key.isEmpty()){
+            return List.of();
+        }
+        List<Completion> top;
+        lock.readLock().lock();
+        try{
+            top=trie.top(key);
+        }finally {
+            lock.readLock().unlock();
+        }
+        return top.size()<=limit?top:top.subList(0,limit);
+    }
+
+    @Override
+    public LocalDateTime restore() {
+        Path snapshot=snapshotDir.resolve(SNAPSHOT_FILE);
+        lock.writeLock().lock();
+        try{
+            LocalDateTime watermark=IndexSnapshots.read(snapshot,SNAPSHOT_MAGIC,SNAPSHOT_VERSION,input->{
+                int bookCount=input.readInt();
+                for(int i=0;i<bookCount;i++){
+                    int bookId=input.readInt();
+                    int contributionCount=input.readInt();
+                    List<Contribution> contributions=new ArrayList<>(contributionCount);
+                    for(int j=0;j<contributionCount;j++){
+                        contributions.add(new Contribution(Completion.CompletionType.valueOf(input.readUTF()),input.readUTF(),input.readLong()));
+                    }
+                    apply(bookId,contributions);
+                }
+            });
+            if(watermark!=null){
+                log.info("Restored {} books into the autocomplete index from {}",contributionsByBook.size(),snapshot);
+            }
+            return watermark;
+        }catch(IOException | RuntimeException e){
+            log.warn("Could not restore the autocomplete snapshot {}, rebuilding",snapshot,e);
+            clear();
+            return null;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try{
+            suggestions.clear();
+            contributionsByBook.clear();
+            trie=new CompletionTrie(topK);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void snapshot(LocalDateTime watermark) {
+        Path snapshot=snapshotDir.resolve(SNAPSHOT_FILE);
+        lock.readLock().lock();
+        try{
+            IndexSnapshots.write(snapshot,SNAPSHOT_MAGIC,SNAPSHOT_VERSION,watermark,output->{
+                output.writeInt(contributionsByBook.size());
+                for(Map.Entry<Integer,List<Contribution>> entry:contributionsByBook.entrySet()){
+                    output.writeInt(entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for(Contribution contribution:entry.getValue()){
+                        output.writeUTF(contribution.type().name());
+                        output.writeUTF(contribution.text());
+                        output.writeLong(contribution.popularity());
+                    }
+                }
+            });
+        }catch(IOException e){
+            log.warn("Could not write the autocomplete snapshot {}",snapshot,e);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.booksocialnetwork.search;
+
+import java.time.LocalDateTime;
+
+//an in-memory view of the catalog kept current by BookIndexer
+public interface BookIndex {
+
+    //inserts or replaces the book, must be idempotent since catch-up passes overlap
+    void index(BookSearchSource book);
+
+    //returns the change time the restored state is current up to, or null when the index has to be rebuilt
+    default LocalDateTime restore(){
+        return null;
+    }
+
+    default void snapshot(LocalDateTime watermark){
+    }
+
+    //drops everything, used when a restored snapshot turns out not to match the catalog
+    default void clear(){
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.booksocialnetwork.search;
+
+import com.booksocialnetwork.repositories.BookRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+//feeds every BookIndex: a restore or rebuild at startup, the hooks in BookService, and a periodic catch-up for rows written by other nodes
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookIndexer {
+
+    private static final int FINGERPRINT_MAGIC=0x424B4650;
+    private static final int FINGERPRINT_VERSION=1;
+    private static final String FINGERPRINT_FILE="catalog.fingerprint";
+
+    private final BookRepository bookRepository;
+    private final List<BookIndex> indexes;
+
+    @Value("${application.search.rebuild-batch-size}")
+    private int rebuildBatchSize;
+
+    @Value("${application.search.snapshot-dir}")
+    private Path snapshotDir;
+
+    //absorbs clock skew between the nodes stamping createdDate/lastModifiedDate
+    @Value("${application.search.catch-up-overlap}")
+    private Duration catchUpOverlap;
+
+    private volatile LocalDateTime watermark;
+    private volatile boolean ready;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize(){
+        LocalDateTime verifiedUpTo=verifiedSnapshotWatermark();
+        List<BookIndex> stale=new ArrayList<>();
+        LocalDateTime restoredUpTo=null;
+        for(BookIndex index:indexes){
+            LocalDateTime restored=verifiedUpTo==null?null:index.restore();
+            if(restored!=null && restored.equals(verifiedUpTo)){
+                restoredUpTo=restored;
+            }else{
+                //a snapshot the fingerprint does not vouch for may hold books the database no longer has
+                index.clear();
+                stale.add(index);
+            }
+        }
+        if(!stale.isEmpty()){
+            rebuild(stale);
+        }
+        if(restoredUpTo!=null){
+            catchUp(restoredUpTo);
+        }
+        //an empty catalog leaves nothing to take the watermark from, without one refresh would never catch up
+        seedWatermark();
+        ready=true;
+        log.info("Book indexes ready, current up to {}",watermark);
+    }
+
+    //the watermark of the last snapshot pass, or null when the database is not the one that pass saw (ddl-auto create-drop, a restored dump)
+    private LocalDateTime verifiedSnapshotWatermark(){
+        Path file=snapshotDir.resolve(FINGERPRINT_FILE);
+        try{
+            CatalogFingerprint[] saved=new CatalogFingerprint[1];
+            LocalDateTime upTo=IndexSnapshots.read(file,FINGERPRINT_MAGIC,FINGERPRINT_VERSION,input->{
+                saved[0]=new CatalogFingerprint(input.readLong(),input.readInt());
+            });
+            if(upTo==null){
+                return null;
+            }
+            CatalogFingerprint current=bookRepository.fingerprintUpTo(upTo);
+            if(!current.equals(saved[0])){
+                log.warn("The database no longer matches the index snapshots up to {} (saved {}, now {}), rebuilding",upTo,saved[0],current);
+                return null;
+            }
+            return upTo;
+        }catch(IOException | RuntimeException e){
+            log.warn("Could not verify the index snapshots against {}, rebuilding",file,e);
+            return null;
+        }
+    }
+
+    private void rebuild(List<BookIndex> stale){
+        int afterId=0;
+        int indexed=0;
+        while(true){
+            List<BookSearchSource> batch=bookRepository.findSearchSourcesAfter(afterId,Limit.of(rebuildBatchSize));
+            if(batch.isEmpty()){
+                break;
+            }
+            for(BookSearchSource book:batch){
+                stale.forEach(index->index.index(book));
+                advanceWatermark(book);
+            }
+            afterId=batch.get(batch.size()-1).id();
+            indexed+=batch.size();
+        }
+        log.info("Rebuilt {} book indexes from {} books",stale.size(),indexed);
+    }
+
+    //inclusive on purpose, re-indexing a book twice is harmless while skipping one is not
+    private void catchUp(LocalDateTime since){
+        for(BookSearchSource book:bookRepository.findSearchSourcesChangedSince(since.minus(catchUpOverlap))){
+            indexes.forEach(index->index.index(book));
+            advanceWatermark(book);
+        }
+        if(watermark==null){
+            watermark=since;
+        }
+    }
+
+    private synchronized void seedWatermark(){
+        if(watermark==null){
+            watermark=LocalDateTime.now().minus(catchUpOverlap);
+        }
+    }
+
+    private synchronized void advanceWatermark(BookSearchSource book){
+        LocalDateTime changedAt=book.changedAt();
+        if(changedAt!=null && (watermark==null || changedAt.isAfter(watermark))){
+            watermark=changedAt;
+        }
+    }
+
+    //re-read after the write committed, the saved entity may carry stale rating columns
+    public void onBookChanged(Integer bookId){
+        if(bookId==null){
+            return;
+        }
+        bookRepository.findSearchSourceById(bookId).ifPresent(this::indexLocalChange);
+    }
+
+    public void onBooksChanged(Collection<Integer> bookIds){
+        if(bookIds.isEmpty()){
+            return;
+        }
+        bookRepository.findSearchSourcesByIds(bookIds).forEach(this::indexLocalChange);
+    }
+
+    //a local write only starts the watermark when there is none yet: moving it past rows other nodes wrote meanwhile would make the catch-up skip them
+    private void indexLocalChange(BookSearchSource book){
+        indexes.forEach(index->index.index(book));
+        if(watermark==null){
+            advanceWatermark(book);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${application.search.refresh-interval}",initialDelayString = "${application.search.refresh-interval}")
+    public void refresh(){
+        if(!ready){
+            return;
+        }
+        LocalDateTime since=watermark;
+        if(since!=null){
+            catchUp(since);
+        }
+        snapshot();
+    }
+
+    @PreDestroy
+    public void snapshot(){
+        if(!ready){
+            return;
+        }
+        LocalDateTime upTo=watermark;
+        indexes.forEach(index->index.snapshot(upTo));
+        //written last, a pass that dies half way leaves index snapshots with a watermark the fingerprint does not carry
+        if(upTo!=null){
+            writeFingerprint(upTo);
+        }
+    }
+
+    private void writeFingerprint(LocalDateTime upTo){
+        Path file=snapshotDir.resolve(FINGERPRINT_FILE);
+        try{
+            CatalogFingerprint fingerprint=bookRepository.fingerprintUpTo(upTo);
+            IndexSnapshots.write(file,FINGERPRINT_MAGIC,FINGERPRINT_VERSION,upTo,output->{
+                output.writeLong(fingerprint.bookCount());
+                output.writeInt(fingerprint.maxBookId());
+            });
+        }catch(IOException | RuntimeException e){
+            log.warn("Could not write the catalog fingerprint {}",file,e);
+        }
+    }
+
+    public boolean isReady(){
+        return ready;
+    }
+
+}
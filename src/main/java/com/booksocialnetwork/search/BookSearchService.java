@@ -0,0 +1,99 @@
+package com.booksocialnetwork.search;
+
+import com.booksocialnetwork.common.FacetedPageResponse;
+import com.booksocialnetwork.common.PageResponse;
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.booksocialnetwork.services.BookFilter;
+import com.booksocialnetwork.services.BookListingView;
+import com.booksocialnetwork.services.BookMapper;
+import com.booksocialnetwork.services.BookResponse;
+import com.booksocialnetwork.services.BookSpecification;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class BookSearchService {
+
+    private final FullTextBookIndex fullTextBookIndex;
+    private final AutocompleteIndex autocompleteIndex;
+    private final FacetIndex facetIndex;
+    private final BookIndexer bookIndexer;
+    private final BookRepository bookRepository;
+    private final BookMapper bookMapper;
+
+    @Value("${application.search.max-query-length}")
+    private int maxQueryLength;
+
+    @Value("${application.search.autocomplete.top-k}")
+    private int autocompleteTopK;
+
+    public PageResponse<BookResponse> search(String query, int page, int size, Authentication connectedUser) {
+        if(StringUtils.isBlank(query) || query.length()>maxQueryLength){
+            throw new OperationNotPermittedException("The search query must contain between 1 and "+maxQueryLength+" characters");
+        }
+        if(!bookIndexer.isReady()){
+            throw new OperationNotPermittedException("The search index is still loading, please retry shortly");
+        }
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        SearchHits hits=fullTextBookIndex.search(query,user.id(),page*size,size);
+        //the index only ranks, rows are re-read so a book changed on another node since the last catch-up is never shown stale
+        Map<Integer,BookListingView> books=hits.bookIds().isEmpty()
+                ? Map.of()
+                : bookRepository.findDisplayableBooksByIds(hits.bookIds(),user.id()).stream().collect(Collectors.toMap(BookListingView::id,Function.identity()));
+        List<BookResponse> bookResponses=hits.bookIds().stream()
+                .map(books::get)
+                .filter(Objects::nonNull)
+                .map(bookMapper::toBookReponse)
+                .toList();
+        return PageResponse.fromPage(bookResponses,new PageImpl<>(bookResponses,PageRequest.of(page,size),hits.totalHits()));
+    }
+
+    //served straight from memory, no database round trip on the keystroke path
+    public List<Completion> autocomplete(String prefix, int limit) {
+        if(prefix==null || prefix.length()>maxQueryLength){
+            throw new OperationNotPermittedException("The prefix must contain at most "+maxQueryLength+" characters");
+        }
+        if(limit<1 || limit>autocompleteTopK){
+            throw new OperationNotPermittedException("The limit must be between 1 and "+autocompleteTopK);
+        }
+        return autocompleteIndex.complete(prefix,limit);
+    }
+
+    //rows come from the indexed predicates in the database, the facet counts from the in-memory bitsets
+    public FacetedPageResponse<BookResponse> filter(BookFilter filter, int page, int size, Authentication connectedUser) {
+        if(filter.minRating()!=null && (filter.minRating()<1 || filter.minRating()>5)){
+            throw new OperationNotPermittedException("The minimum rating must be between 1 and 5");
+        }
+        if(filter.createdFrom()!=null && filter.createdTo()!=null && filter.createdFrom().isAfter(filter.createdTo())){
+            throw new OperationNotPermittedException("The creation date range is inverted");
+        }
+        if(!bookIndexer.isReady()){
+            throw new OperationNotPermittedException("The search index is still loading, please retry shortly");
+        }
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        Sort sort=Sort.by("createdDate").descending();
+        Pageable pageable=PageRequest.of(page,size,sort);
+        Page<Book> books=bookRepository.findBy(BookSpecification.matching(filter,user.id()),query->query.project("owner").sortBy(sort).page(pageable));
+        List<BookResponse> bookResponses=books.stream().map(bookMapper::toBookReponse).toList();
+        return new FacetedPageResponse<>(PageResponse.fromPage(bookResponses,books),facetIndex.facets(filter,user.id()));
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.booksocialnetwork.search;
+
+import java.time.LocalDateTime;
+
+//the columns the in-memory indexes are built from, loaded without touching the owner row
+public record BookSearchSource(
+        Integer id,
+        Integer ownerId,
+        String title,
+        String authorName,
+        String isbn,
+        String synopsis,
+        boolean archived,
+        boolean shareable,
+        long ratingCount,
+        double ratingSum,
+        boolean borrowed,
+        LocalDateTime createdDate,
+        LocalDateTime lastModifiedDate
+) {
+
+    //same rule as BookRepository.findAllDisplayableBooks
+    public boolean isDisplayableFor(Integer userId){
+        return !archived && shareable && (ownerId==null || !ownerId.equals(userId));
+    }
+
+    public LocalDateTime changedAt(){
+        if(lastModifiedDate==null || (createdDate!=null && createdDate.isAfter(lastModifiedDate))){
+            return createdDate;
+        }
+        return lastModifiedDate;
+    }
+
+}
@@ -0,0 +1,8 @@
+package com.booksocialnetwork.search;
+
+//how many books existed up to a watermark and the highest id among them, a reset database cannot reproduce both
+public record CatalogFingerprint(
+        Long bookCount,
+        Integer maxBookId
+) {
+}
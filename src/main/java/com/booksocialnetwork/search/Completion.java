@@ -0,0 +1,34 @@
+package com.booksocialnetwork.search;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Comparator;
+
+public record Completion(
+        @JsonIgnore
+        String key,
+        CompletionType type,
+        String text,
+        long popularity
+) {
+
+    static final Comparator<Completion> RANKING=Comparator.comparingLong(Completion::popularity).reversed()
+            .thenComparing(Completion::key)
+            .thenComparing(Completion::type);
+
+    public enum CompletionType {
+        TITLE,
+        AUTHOR
+    }
+
+    //a title and an author spelled the same are still two suggestions
+    @JsonIgnore
+    public String id(){
+        return idOf(type,key);
+    }
+
+    static String idOf(CompletionType type, String key){
+        return type.name()+":"+key;
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.booksocialnetwork.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//radix tree where every node keeps the top-k completions of its subtree, so a lookup is one walk down the prefix
+//not thread safe, AutocompleteIndex guards it
+class CompletionTrie {
+
+    private final int topK;
+    private final Node root=new Node("");
+
+    private static final class Node {
+        private String label;
+        private final Map<Character,Node> children=new HashMap<>(4);
+        private final Map<String,Completion> terminals=new HashMap<>(2);
+        private List<Completion> top=List.of();
+
+        private Node(String label) {
+            this.label=label;
+        }
+    }
+
+    CompletionTrie(int topK) {
+        this.topK=topK;
+    }
+
+    List<Completion> top(String prefix){
+        Node node=root;
+        int i=0;
+        while(i<prefix.length()){
+            Node child=node.children.get(prefix.charAt(i));
+            if(child==null){
+                return List.of();
+            }
+            int common=commonPrefix(child.label,prefix,i);
+            if(i+common==prefix.length()){
+                //the prefix ends on this edge, everything below the child extends it
+                return child.top;
+            }
+            if(common<child.label.length()){
+                return List.of();
+            }
+            node=child;
+            i+=common;
+        }
+        return node.top;
+    }
+
+    void put(String key, Completion completion){
+        List<Node> path=new ArrayList<>();
+        path.add(root);
+        Node node=root;
+        int i=0;
+        while(i<key.length()){
+            char next=key.charAt(i);
+            Node child=node.children.get(next);
+            if(child==null){
+                child=new Node(key.substring(i));
+                node.children.put(next,child);
+                node=child;
+                path.add(node);
+                break;
+            }
+            int common=commonPrefix(child.label,key,i);
+            if(common<child.label.length()){
+                Node middle=new Node(child.label.substring(0,common));
+                child.label=child.label.substring(common);
+                middle.children.put(child.label.charAt(0),child);
+                middle.top=child.top;
+                node.children.put(next,middle);
+                child=middle;
+            }
+            node=child;
+            path.add(node);
+            i+=common;
+        }
+        node.terminals.put(completion.id(),completion);
+        recompute(path);
+    }
+
+    void remove(String key, String completionId){
+        List<Node> path=new ArrayList<>();
+        path.add(root);
+        Node node=root;
+        int i=0;
+        while(i<key.length()){
+            Node child=node.children.get(key.charAt(i));
+            if(child==null || !key.startsWith(child.label,i)){
+                return;
+            }
+            node=child;
+            path.add(node);
+            i+=child.label.length();
+        }
+        if(node.terminals.remove(completionId)==null){
+            return;
+        }
+        for(int depth=path.size()-1;depth>0;depth--){
+            Node current=path.get(depth);
+            Node parent=path.get(depth-1);
+            if(!current.terminals.isEmpty()){
+                break;
+            }
+            if(current.children.isEmpty()){
+                parent.children.remove(current.label.charAt(0));
+                path.remove(depth);
+                continue;
+            }
+            if(current.children.size()==1){
+                //fold the single child back into this edge to keep the tree compressed
+                Node only=current.children.values().iterator().next();
+                only.label=current.label+only.label;
+                parent.children.put(only.label.charAt(0),only);
+                path.set(depth,only);
+            }
+            break;
+        }
+        recompute(path);
+    }
+
+    private void recompute(List<Node> path){
+        for(int depth=path.size()-1;depth>=0;depth--){
+            Node node=path.get(depth);
+            List<Completion> candidates=new ArrayList<>(node.terminals.values());
+            node.children.values().forEach(child->candidates.addAll(child.top));
+            candidates.sort(Completion.RANKING);
+            List<Completion> top=new ArrayList<>(Math.min(topK,candidates.size()));
+            Set<String> seen=new HashSet<>();
+            for(Completion candidate:candidates){
+                if(top.size()==topK){
+                    break;
+                }
+                if(seen.add(candidate.id())){
+                    top.add(candidate);
+                }
+            }
+            node.top=List.copyOf(top);
+        }
+    }
+
+    private static int commonPrefix(String label, String key, int offset){
+        int length=0;
+        while(length<label.length() && offset+length<key.length() && label.charAt(length)==key.charAt(offset+length)){
+            length++;
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,7 @@
+package com.booksocialnetwork.search;
+
+public record FacetCount(
+        String value,
+        long count
+) {
+}
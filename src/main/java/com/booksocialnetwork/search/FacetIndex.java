@@ -0,0 +1,323 @@
+package com.booksocialnetwork.search;
+
+import com.booksocialnetwork.services.BookFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+//one bit per book for every facet value, counts are bitset intersections instead of a GROUP BY per facet
+@Component
+@Slf4j
+public class FacetIndex implements BookIndex {
+
+    public static final String AUTHOR_FACET="author";
+    public static final String RATING_FACET="minRating";
+    public static final String AVAILABILITY_FACET="availability";
+    public static final String CREATED_FACET="createdMonth";
+
+    private static final int SNAPSHOT_MAGIC=0x424B4643;
+    private static final int SNAPSHOT_VERSION=1;
+    private static final String SNAPSHOT_FILE="books-facets.idx";
+    private static final DateTimeFormatter MONTH=DateTimeFormatter.ofPattern("yyyy-MM");
+
+    @Value("${application.search.facets.max-values}")
+    private int maxFacetValues;
+
+    @Value("${application.search.snapshot-dir}")
+    private Path snapshotDir;
+
+    private final ReadWriteLock lock=new ReentrantReadWriteLock();
+    private final Map<Integer,Integer> ordinals=new HashMap<>();
+    private final List<BookSearchSource> books=new ArrayList<>();
+    private final BitSet displayable=new BitSet();
+    private final BitSet borrowed=new BitSet();
+    private final Map<Integer,BitSet> byOwner=new HashMap<>();
+    private final Map<String,BitSet> byAuthor=new HashMap<>();
+    private final Map<String,BitSet> byCreatedMonth=new HashMap<>();
+    //byMinimumRating[k] holds the books whose average is at least k
+    private final BitSet[] byMinimumRating=new BitSet[6];
+
+    public FacetIndex() {
+        for(int stars=1;stars<byMinimumRating.length;stars++){
+            byMinimumRating[stars]=new BitSet();
+        }
+    }
+
+    @Override
+    public void index(BookSearchSource book) {
+        lock.writeLock().lock();
+        try{
+            put(book);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //caller holds the write lock
+    private void put(BookSearchSource book){
+        Integer ordinal=ordinals.get(book.id());
+        if(ordinal==null){
+            ordinal=books.size();
+            ordinals.put(book.id(),ordinal);
+            books.add(book);
+        }else{
+            clear(ordinal,books.get(ordinal));
+            books.set(ordinal,book);
+        }
+        displayable.set(ordinal,!book.archived() && book.shareable());
+        borrowed.set(ordinal,book.borrowed());
+        if(book.ownerId()!=null){
+            byOwner.computeIfAbsent(book.ownerId(),owner->new BitSet()).set(ordinal);
+        }
+        if(book.authorName()!=null){
+            byAuthor.computeIfAbsent(book.authorName(),author->new BitSet()).set(ordinal);
+        }
+        if(book.createdDate()!=null){
+            byCreatedMonth.computeIfAbsent(MONTH.format(book.createdDate()),month->new BitSet()).set(ordinal);
+        }
+        for(int stars=1;stars<byMinimumRating.length;stars++){
+            byMinimumRating[stars].set(ordinal,hasMinimumRating(book,stars));
+        }
+    }
+
+    private void clear(int ordinal, BookSearchSource previous){
+        clear(byOwner,previous.ownerId(),ordinal);
+        clear(byAuthor,previous.authorName(),ordinal);
+        if(previous.createdDate()!=null){
+            clear(byCreatedMonth,MONTH.format(previous.createdDate()),ordinal);
+        }
+    }
+
+    private static <K> void clear(Map<K,BitSet> facet, K value, int ordinal){
+        if(value==null){
+            return;
+        }
+        BitSet bits=facet.get(value);
+        if(bits!=null){
+            bits.clear(ordinal);
+            if(bits.isEmpty()){
+                facet.remove(value);
+            }
+        }
+    }
+
+    //same rule as BookSpecification.withMinimumRating
+    private static boolean hasMinimumRating(BookSearchSource book, double minRating){
+        return book.ratingCount()>0 && book.ratingSum()>=minRating*book.ratingCount();
+    }
+
+    //each dimension is counted under every filter except its own, so the client can still widen that dimension
+    public Map<String,List<FacetCount>> facets(BookFilter filter, Integer userId){
+        lock.readLock().lock();
+        try{
+            BitSet base=(BitSet) displayable.clone();
+            BitSet owned=byOwner.get(userId);
+            if(owned!=null){
+                base.andNot(owned);
+            }
+            BitSet authorMatch=StringUtils.isNotBlank(filter.authorName())?byAuthor.getOrDefault(filter.authorName(),new BitSet()):null;
+            BitSet isbnMatch=StringUtils.isNotBlank(filter.isbnPrefix())?scan(base,book->book.isbn()!=null && book.isbn().startsWith(filter.isbnPrefix())):null;
+            BitSet ratingMatch=filter.minRating()!=null?scan(base,book->hasMinimumRating(book,filter.minRating())):null;
+            BitSet availabilityMatch=availability(base,filter.available());
+            BitSet createdMatch=filter.createdFrom()!=null || filter.createdTo()!=null?scan(base,book->isCreatedBetween(book,filter.createdFrom(),filter.createdTo())):null;
+
+            Map<String,List<FacetCount>> facets=new LinkedHashMap<>();
+            facets.put(AUTHOR_FACET,tally(intersect(base,isbnMatch,ratingMatch,availabilityMatch,createdMatch),BookSearchSource::authorName,Comparator.comparingLong(FacetCount::count).reversed().thenComparing(FacetCount::value)));
+            facets.put(RATING_FACET,ratingCounts(intersect(base,authorMatch,isbnMatch,availabilityMatch,createdMatch)));
+            facets.put(AVAILABILITY_FACET,availabilityCounts(intersect(base,authorMatch,isbnMatch,ratingMatch,createdMatch)));
+            facets.put(CREATED_FACET,tally(intersect(base,authorMatch,isbnMatch,ratingMatch,availabilityMatch),book->book.createdDate()==null?null:MONTH.format(book.createdDate()),Comparator.comparing(FacetCount::value).reversed()));
+            return facets;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet availability(BitSet base, Boolean available){
+        if(available==null){
+            return null;
+        }
+        BitSet match=(BitSet) base.clone();
+        if(available){
+            match.andNot(borrowed);
+        }else{
+            match.and(borrowed);
+        }
+        return match;
+    }
+
+    private static BitSet intersect(BitSet base, BitSet... filters){
+        BitSet result=(BitSet) base.clone();
+        for(BitSet filter:filters){
+            if(filter!=null){
+                result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    //range and prefix criteria have no precomputed bitset, they are evaluated once over the candidate books
+    private BitSet scan(BitSet candidates, Predicate<BookSearchSource> predicate){
+        BitSet match=new BitSet();
+        for(int ordinal=candidates.nextSetBit(0);ordinal>=0;ordinal=candidates.nextSetBit(ordinal+1)){
+            if(predicate.test(books.get(ordinal))){
+                match.set(ordinal);
+            }
+        }
+        return match;
+    }
+
+    private static boolean isCreatedBetween(BookSearchSource book, LocalDate from, LocalDate to){
+        if(book.createdDate()==null){
+            return false;
+        }
+        LocalDate created=book.createdDate().toLocalDate();
+        return (from==null || !created.isBefore(from)) && (to==null || !created.isAfter(to));
+    }
+
+    //high cardinality dimensions walk the matching bits once instead of intersecting every value's bitset
+    private List<FacetCount> tally(BitSet matching, Function<BookSearchSource,String> value, Comparator<FacetCount> order){
+        Map<String,Long> counts=new HashMap<>();
+        for(int ordinal=matching.nextSetBit(0);ordinal>=0;ordinal=matching.nextSetBit(ordinal+1)){
+            String facetValue=value.apply(books.get(ordinal));
+            if(facetValue!=null){
+                counts.merge(facetValue,1L,Long::sum);
+            }
+        }
+        return counts.entrySet().stream()
+                .map(entry->new FacetCount(entry.getKey(),entry.getValue()))
+                .sorted(order)
+                .limit(maxFacetValues)
+                .toList();
+    }
+
+    private List<FacetCount> ratingCounts(BitSet matching){
+        List<FacetCount> counts=new ArrayList<>(byMinimumRating.length-1);
+        for(int stars=byMinimumRating.length-1;stars>=1;stars--){
+            BitSet bits=(BitSet) matching.clone();
+            bits.and(byMinimumRating[stars]);
+            counts.add(new FacetCount(String.valueOf(stars),bits.cardinality()));
+        }
+        return counts;
+    }
+
+    private List<FacetCount> availabilityCounts(BitSet matching){
+        BitSet out=(BitSet) matching.clone();
+        out.and(borrowed);
+        return List.of(
+                new FacetCount("available",matching.cardinality()-out.cardinality()),
+                new FacetCount("borrowed",out.cardinality())
+        );
+    }
+
+    @Override
+    public LocalDateTime restore() {
+        Path snapshot=snapshotDir.resolve(SNAPSHOT_FILE);
+        lock.writeLock().lock();
+        try{
+            LocalDateTime watermark=IndexSnapshots.read(snapshot,SNAPSHOT_MAGIC,SNAPSHOT_VERSION,input->{
+                int bookCount=input.readInt();
+                for(int i=0;i<bookCount;i++){
+                    int bookId=input.readInt();
+                    Integer ownerId=input.readBoolean()?input.readInt():null;
+                    String authorName=input.readBoolean()?input.readUTF():null;
+                    String isbn=input.readBoolean()?input.readUTF():null;
+                    boolean archived=input.readBoolean();
+                    boolean shareable=input.readBoolean();
+                    long ratingCount=input.readLong();
+                    double ratingSum=input.readDouble();
+                    boolean bookBorrowed=input.readBoolean();
+                    LocalDateTime createdDate=input.readBoolean()?LocalDateTime.parse(input.readUTF()):null;
+                    put(new BookSearchSource(bookId,ownerId,null,authorName,isbn,null,archived,shareable,ratingCount,ratingSum,bookBorrowed,createdDate,null));
+                }
+            });
+            if(watermark!=null){
+                log.info("Restored {} books into the facet index from {}",books.size(),snapshot);
+            }
+            return watermark;
+        }catch(IOException | RuntimeException e){
+            log.warn("Could not restore the facet snapshot {}, rebuilding",snapshot,e);
+            clear();
+            return null;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //only the facet columns are kept, title and synopsis live in the full-text index
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try{
+            ordinals.clear();
+            books.clear();
+            displayable.clear();
+            borrowed.clear();
+            byOwner.clear();
+            byAuthor.clear();
+            byCreatedMonth.clear();
+            for(int stars=1;stars<byMinimumRating.length;stars++){
+                byMinimumRating[stars].clear();
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void snapshot(LocalDateTime watermark) {
+        Path snapshot=snapshotDir.resolve(SNAPSHOT_FILE);
+        lock.readLock().lock();
+        try{
+            IndexSnapshots.write(snapshot,SNAPSHOT_MAGIC,SNAPSHOT_VERSION,watermark,output->{
+                output.writeInt(books.size());
+                for(BookSearchSource book:books){
+                    output.writeInt(book.id());
+                    output.writeBoolean(book.ownerId()!=null);
+                    if(book.ownerId()!=null){
+                        output.writeInt(book.ownerId());
+                    }
+                    output.writeBoolean(book.authorName()!=null);
+                    if(book.authorName()!=null){
+                        output.writeUTF(book.authorName());
+                    }
+                    output.writeBoolean(book.isbn()!=null);
+                    if(book.isbn()!=null){
+                        output.writeUTF(book.isbn());
+                    }
+                    output.writeBoolean(book.archived());
+                    output.writeBoolean(book.shareable());
+                    output.writeLong(book.ratingCount());
+                    output.writeDouble(book.ratingSum());
+                    output.writeBoolean(book.borrowed());
+                    output.writeBoolean(book.createdDate()!=null);
+                    if(book.createdDate()!=null){
+                        output.writeUTF(book.createdDate().toString());
+                    }
+                }
+            });
+        }catch(IOException e){
+            log.warn("Could not write the facet snapshot {}",snapshot,e);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+}
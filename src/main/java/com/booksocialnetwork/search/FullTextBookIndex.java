@@ -0,0 +1,221 @@
+package com.booksocialnetwork.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//inverted index over title, author and synopsis ranked with BM25
+@Component
+@Slf4j
+public class FullTextBookIndex implements BookIndex {
+
+    private static final int SNAPSHOT_MAGIC=0x424B4958;
+    private static final int SNAPSHOT_VERSION=1;
+    private static final String SNAPSHOT_FILE="books-fulltext.idx";
+
+    //a title match outranks the same word buried in a synopsis
+    private static final float TITLE_WEIGHT=3f;
+    private static final float AUTHOR_WEIGHT=2f;
+    private static final float SYNOPSIS_WEIGHT=1f;
+
+    private static final double K1=1.2;
+    private static final double B=0.75;
+
+    @Value("${application.search.snapshot-dir}")
+    private Path snapshotDir;
+
+    private final ReadWriteLock lock=new ReentrantReadWriteLock();
+    private final Map<String,Map<Integer,Float>> postings=new HashMap<>();
+    private final Map<Integer,IndexedBook> books=new HashMap<>();
+    private double totalLength;
+
+    private record IndexedBook(Integer ownerId, boolean archived, boolean shareable, float length, Map<String,Float> termFrequencies) {
+
+        boolean isDisplayableFor(Integer userId){
+            return !archived && shareable && (ownerId==null || !ownerId.equals(userId));
+        }
+
+    }
+
+    @Override
+    public void index(BookSearchSource book) {
+        Map<String,Float> termFrequencies=new HashMap<>();
+        addTerms(termFrequencies,book.title(),TITLE_WEIGHT);
+        addTerms(termFrequencies,book.authorName(),AUTHOR_WEIGHT);
+        addTerms(termFrequencies,book.synopsis(),SYNOPSIS_WEIGHT);
+        float length=0;
+        for(float frequency:termFrequencies.values()){
+            length+=frequency;
+        }
+        IndexedBook indexedBook=new IndexedBook(book.ownerId(),book.archived(),book.shareable(),length,termFrequencies);
+        lock.writeLock().lock();
+        try{
+            put(book.id(),indexedBook);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void addTerms(Map<String,Float> termFrequencies, String text, float weight){
+        for(String term:TextAnalyzer.analyze(text)){
+            termFrequencies.merge(term,weight,Float::sum);
+        }
+    }
+
+    //caller holds the write lock
+    private void put(Integer bookId, IndexedBook indexedBook){
+        IndexedBook previous=books.put(bookId,indexedBook);
+        if(previous!=null){
+            totalLength-=previous.length();
+            previous.termFrequencies().keySet().forEach(term->{
+                Map<Integer,Float> posting=postings.get(term);
+                if(posting!=null){
+                    posting.remove(bookId);
+                    if(posting.isEmpty()){
+                        postings.remove(term);
+                    }
+                }
+            });
+        }
+        totalLength+=indexedBook.length();
+        indexedBook.termFrequencies().forEach((term,frequency)->postings.computeIfAbsent(term,t->new HashMap<>()).put(bookId,frequency));
+    }
+
+    public SearchHits search(String query, Integer userId, int offset, int limit){
+        LinkedHashSet<String> terms=new LinkedHashSet<>(TextAnalyzer.analyze(query));
+        if(terms.isEmpty()){
+            return new SearchHits(List.of(),0);
+        }
+        Map<Integer,Double> scores=new HashMap<>();
+        lock.readLock().lock();
+        try{
+            int documentCount=books.size();
+            double averageLength=documentCount==0?1:Math.max(totalLength/documentCount,1);
+            for(String term:terms){
+                Map<Integer,Float> posting=postings.get(term);
+                if(posting==null){
+                    continue;
+                }
+                double idf=Math.log(1+(documentCount-posting.size()+0.5)/(posting.size()+0.5));
+                posting.forEach((bookId,frequency)->{
+                    IndexedBook indexedBook=books.get(bookId);
+                    if(!indexedBook.isDisplayableFor(userId)){
+                        return;
+                    }
+                    double norm=K1*(1-B+B*indexedBook.length()/averageLength);
+                    scores.merge(bookId,idf*frequency*(K1+1)/(frequency+norm),Double::sum);
+                });
+            }
+        }finally {
+            lock.readLock().unlock();
+        }
+        if(offset>=scores.size()){
+            return new SearchHits(List.of(),scores.size());
+        }
+        List<Integer> ranked=scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer,Double>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.<Integer,Double>comparingByKey(Comparator.reverseOrder())))
+                .skip(offset)
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+        return new SearchHits(ranked,scores.size());
+    }
+
+    public int size(){
+        lock.readLock().lock();
+        try{
+            return books.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public LocalDateTime restore() {
+        Path snapshot=snapshotDir.resolve(SNAPSHOT_FILE);
+        lock.writeLock().lock();
+        try{
+            LocalDateTime watermark=IndexSnapshots.read(snapshot,SNAPSHOT_MAGIC,SNAPSHOT_VERSION,input->{
+                int bookCount=input.readInt();
+                for(int i=0;i<bookCount;i++){
+                    int bookId=input.readInt();
+                    Integer ownerId=input.readBoolean()?input.readInt():null;
+                    boolean archived=input.readBoolean();
+                    boolean shareable=input.readBoolean();
+                    float length=input.readFloat();
+                    int termCount=input.readInt();
+                    Map<String,Float> termFrequencies=new HashMap<>(termCount*2);
+                    for(int j=0;j<termCount;j++){
+                        termFrequencies.put(input.readUTF(),input.readFloat());
+                    }
+                    put(bookId,new IndexedBook(ownerId,archived,shareable,length,termFrequencies));
+                }
+            });
+            if(watermark!=null){
+                log.info("Restored {} books into the full-text index from {}",books.size(),snapshot);
+            }
+            return watermark;
+        }catch(IOException | RuntimeException e){
+            log.warn("Could not restore the full-text snapshot {}, rebuilding",snapshot,e);
+            clear();
+            return null;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try{
+            books.clear();
+            postings.clear();
+            totalLength=0;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void snapshot(LocalDateTime watermark) {
+        Path snapshot=snapshotDir.resolve(SNAPSHOT_FILE);
+        lock.readLock().lock();
+        try{
+            IndexSnapshots.write(snapshot,SNAPSHOT_MAGIC,SNAPSHOT_VERSION,watermark,output->{
+                output.writeInt(books.size());
+                for(Map.Entry<Integer,IndexedBook> entry:books.entrySet()){
+                    IndexedBook indexedBook=entry.getValue();
+                    output.writeInt(entry.getKey());
+                    output.writeBoolean(indexedBook.ownerId()!=null);
+                    if(indexedBook.ownerId()!=null){
+                        output.writeInt(indexedBook.ownerId());
+                    }
+                    output.writeBoolean(indexedBook.archived());
+                    output.writeBoolean(indexedBook.shareable());
+                    output.writeFloat(indexedBook.length());
+                    output.writeInt(indexedBook.termFrequencies().size());
+                    for(Map.Entry<String,Float> term:indexedBook.termFrequencies().entrySet()){
+                        output.writeUTF(term.getKey());
+                        output.writeFloat(term.getValue());
+                    }
+                }
+            });
+        }catch(IOException e){
+            log.warn("Could not write the full-text snapshot {}",snapshot,e);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+}
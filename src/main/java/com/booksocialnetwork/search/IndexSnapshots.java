@@ -0,0 +1,61 @@
+package com.booksocialnetwork.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+
+//shared framing for the index snapshot files: magic, version, watermark, then the index's own body
+final class IndexSnapshots {
+
+    interface BodyWriter {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    interface BodyReader {
+        void read(DataInputStream input) throws IOException;
+    }
+
+    private IndexSnapshots() {
+    }
+
+    //written next to the target and moved into place so a crash never leaves a torn snapshot
+    static void write(Path snapshot, int magic, int version, LocalDateTime watermark, BodyWriter body) throws IOException {
+        Files.createDirectories(snapshot.getParent());
+        Path temporary=Files.createTempFile(snapshot.getParent(),snapshot.getFileName().toString(),".tmp");
+        try(DataOutputStream output=new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))){
+            output.writeInt(magic);
+            output.writeInt(version);
+            output.writeUTF(watermark==null?"":watermark.toString());
+            body.write(output);
+        }catch(IOException e){
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary,snapshot,StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //returns the watermark, or null when there is nothing usable and the index has to be rebuilt
+    static LocalDateTime read(Path snapshot, int magic, int version, BodyReader body) throws IOException {
+        if(!Files.isRegularFile(snapshot)){
+            return null;
+        }
+        try(DataInputStream input=new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))){
+            if(input.readInt()!=magic || input.readInt()!=version){
+                return null;
+            }
+            String watermark=input.readUTF();
+            if(watermark.isEmpty()){
+                return null;
+            }
+            body.read(input);
+            return LocalDateTime.parse(watermark);
+        }
+    }
+
+}
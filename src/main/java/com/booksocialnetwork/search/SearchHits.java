@@ -0,0 +1,10 @@
+package com.booksocialnetwork.search;
+
+import java.util.List;
+
+//book ids of the requested window in rank order, plus how many books matched overall
+public record SearchHits(
+        List<Integer> bookIds,
+        int totalHits
+) {
+}
@@ -0,0 +1,89 @@
+package com.booksocialnetwork.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+//the same analysis runs at index and at query time, so both sides agree on every term
+public final class TextAnalyzer {
+
+    private static final Pattern DIACRITICS=Pattern.compile("\\p{M}+");
+
+    private static final Set<String> STOP_WORDS=Set.of(
+            "a","an","and","are","as","at","be","by","for","from","in","into","is","it",
+            "of","on","or","that","the","this","to","was","were","with"
+    );
+
+    private TextAnalyzer() {
+    }
+
+    //lower case ascii folded text, used by every in-memory book index
+    public static String normalize(String text){
+        if(text==null){
+            return "";
+        }
+        return DIACRITICS.matcher(Normalizer.normalize(text,Normalizer.Form.NFKD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    public static List<String> analyze(String text){
+        String normalized=normalize(text);
+        List<String> terms=new ArrayList<>();
+        int start=-1;
+        for(int i=0;i<=normalized.length();i++){
+            boolean tokenChar=i<normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if(tokenChar && start<0){
+                start=i;
+            }else if(!tokenChar && start>=0){
+                String token=normalized.substring(start,i);
+                if(!STOP_WORDS.contains(token)){
+                    terms.add(stem(token));
+                }
+                start=-1;
+            }
+        }
+        return terms;
+    }
+
+    //light english suffix stripping, enough to match plurals and simple verb forms
+    static String stem(String token){
+        int length=token.length();
+        if(length<=3 || Character.isDigit(token.charAt(length-1))){
+            return token;
+        }
+        if(token.endsWith("sses")){
+            return token.substring(0,length-2);
+        }
+        if(token.endsWith("ies") && length>4){
+            return token.substring(0,length-3)+"y";
+        }
+        if(token.endsWith("ing") && length>5){
+            return undouble(token.substring(0,length-3));
+        }
+        if(token.endsWith("ed") && length>4){
+            return undouble(token.substring(0,length-2));
+        }
+        if(token.endsWith("es") && length>4 && endsWithSibilant(token.substring(0,length-2))){
+            return token.substring(0,length-2);
+        }
+        if(token.endsWith("s") && !token.endsWith("ss") && !token.endsWith("us") && !token.endsWith("is")){
+            return token.substring(0,length-1);
+        }
+        return token;
+    }
+
+    private static boolean endsWithSibilant(String stem){
+        return stem.endsWith("sh") || stem.endsWith("ch") || stem.endsWith("x") || stem.endsWith("z");
+    }
+
+    private static String undouble(String stem){
+        int length=stem.length();
+        if(length>2 && stem.charAt(length-1)==stem.charAt(length-2) && "lsz".indexOf(stem.charAt(length-1))<0){
+            return stem.substring(0,length-1);
+        }
+        return stem;
+    }
+
+}
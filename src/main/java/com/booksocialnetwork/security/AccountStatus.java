@@ -0,0 +1,14 @@
+package com.booksocialnetwork.security;
+
+public record AccountStatus(
+        boolean enabled,
+        boolean accountLocked
+) {
+
+    static final AccountStatus MISSING=new AccountStatus(false,true);
+
+    public boolean isActive(){
+        return enabled && !accountLocked;
+    }
+
+}
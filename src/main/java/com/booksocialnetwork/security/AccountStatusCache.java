@@ -0,0 +1,66 @@
+package com.booksocialnetwork.security;
+
+import com.booksocialnetwork.cache.CacheInvalidation;
+import com.booksocialnetwork.cache.CacheInvalidationBus;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.UUID;
+
+//the only per-request account lookup left in JwtFilter: enabled and locked cannot ride in the token since they change
+//under a live token, so they are read by id and kept per node for a short ttl; evict() drops them on every node at once
+@Service
+@RequiredArgsConstructor
+public class AccountStatusCache {
+
+    static final String ACCOUNT_STATUS_TOPIC="accountStatus";
+
+    private final UserRepository userRepository;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final String nodeId=UUID.randomUUID().toString();
+
+    @Value("${application.security.account-status.ttl}")
+    private Duration ttl;
+
+    @Value("${application.security.account-status.max-size}")
+    private long maxSize;
+
+    private Cache<Integer,AccountStatus> statuses;
+
+    @PostConstruct
+    public void init(){
+        statuses=Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        cacheInvalidationBus.subscribe(this::onInvalidation);
+    }
+
+    public boolean isActive(Integer userId){
+        return statuses.get(userId,id->userRepository.findAccountStatus(id).orElse(AccountStatus.MISSING)).isActive();
+    }
+
+    //call after a user is enabled, disabled, locked or unlocked
+    public void evict(Integer userId){
+        statuses.invalidate(userId);
+        cacheInvalidationBus.publish(new CacheInvalidation(nodeId,ACCOUNT_STATUS_TOPIC,String.valueOf(userId)));
+    }
+
+    private void onInvalidation(CacheInvalidation invalidation){
+        if(nodeId.equals(invalidation.nodeId()) || !ACCOUNT_STATUS_TOPIC.equals(invalidation.cacheName())){
+            return;
+        }
+        if(invalidation.key()==null){
+            statuses.invalidateAll();
+        }else{
+            statuses.invalidate(Integer.parseInt(invalidation.key()));
+        }
+    }
+
+}
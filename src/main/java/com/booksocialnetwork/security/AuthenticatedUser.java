@@ -0,0 +1,38 @@
+package com.booksocialnetwork.security;
+
+import com.booksocialnetwork.entities.User;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.security.Principal;
+import java.util.Collection;
+import java.util.List;
+
+//the principal JwtFilter puts in the SecurityContext, built from the verified token so a request never loads the User entity;
+//code that needs the entity for an association takes a reference by id
+public record AuthenticatedUser(
+        Integer id,
+        String email,
+        String fullName,
+        List<String> authorities
+) implements Principal {
+
+    public static AuthenticatedUser of(User user){
+        return new AuthenticatedUser(
+                user.getId(),
+                user.getEmail(),
+                user.getFullName(),
+                user.getRoles()==null?List.of():user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList()
+        );
+    }
+
+    @Override
+    public String getName() {
+        return email;
+    }
+
+    public Collection<? extends GrantedAuthority> grantedAuthorities(){
+        return authorities.stream().map(SimpleGrantedAuthority::new).toList();
+    }
+
+}
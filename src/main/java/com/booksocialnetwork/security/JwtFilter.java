@@ -8,7 +8,6 @@ import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -20,7 +19,7 @@ import java.io.IOException;
 public class JwtFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserDetailsServiceImpl userDetailsServiceImpl;
+    private final AccountStatusCache accountStatusCache;
 
     @Override
     protected void doFilterInternal(@NotNull HttpServletRequest request,@NotNull HttpServletResponse response,@NotNull FilterChain filterChain) throws ServletException, IOException {
@@ -34,20 +33,19 @@ public class JwtFilter extends OncePerRequestFilter {
             return;
         }
         final String jwt=authHeader.substring(7);
-        final String userEmail=jwtService.extractUsername(jwt);
-        if(userEmail!=null && SecurityContextHolder.getContext().getAuthentication() == null){
-            UserDetails userDetails=userDetailsServiceImpl.loadUserByUsername(userEmail);
-            if(jwtService.isTokenValid(jwt,userDetails)){
-                UsernamePasswordAuthenticationToken authToken=new UsernamePasswordAuthenticationToken(
-                        userDetails,
-                        null,
-                        userDetails.getAuthorities()
-                );
-                authToken.setDetails(
-                        new WebAuthenticationDetailsSource().buildDetails(request)
-                );
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+        //parsed and verified once for the whole request, the principal comes from the claims instead of the database
+        final VerifiedToken token=jwtService.verify(jwt);
+        if(token.userId()!=null && SecurityContextHolder.getContext().getAuthentication() == null && accountStatusCache.isActive(token.userId())){
+            AuthenticatedUser principal=token.toPrincipal();
+            UsernamePasswordAuthenticationToken authToken=new UsernamePasswordAuthenticationToken(
+                    principal,
+                    null,
+                    principal.grantedAuthorities()
+            );
+            authToken.setDetails(
+                    new WebAuthenticationDetailsSource().buildDetails(request)
+            );
+            SecurityContextHolder.getContext().setAuthentication(authToken);
         }
         filterChain.doFilter(request,response);
     }
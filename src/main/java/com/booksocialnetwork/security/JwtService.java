@@ -1,31 +1,112 @@
 package com.booksocialnetwork.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
-import java.security.Key;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
 @Service
 public class JwtService {
 
+    public static final String USER_ID_CLAIM="uid";
+    public static final String FULL_NAME_CLAIM="fullname";
+    public static final String AUTHORITIES_CLAIM="authorities";
+
     @Value("${application.security.jwt.expiration}")
     private long jwtExpiration;
 
     @Value("${application.security.jwt.secret-key}")
     private String secretKey;
 
+    @Value("${application.security.jwt.verified-cache.max-size}")
+    private long verifiedCacheMaxSize;
+
+    @Value("${application.security.jwt.verified-cache.max-ttl}")
+    private Duration verifiedCacheMaxTtl;
+
+    //the key and the parser are immutable and thread safe, so they are built once instead of on every parse
+    private SecretKey signInKey;
+    private JwtParser parser;
+
+    //tokens whose signature already checked out, keyed by a digest so the cache never holds a usable bearer token;
+    //an entry never outlives its token
+    private Cache<String,VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    public void init(){
+        signInKey=Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        parser=Jwts.parser().verifyWith(signInKey).build();
+        verifiedTokens=Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .expireAfter(new Expiry<String,VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+                        return ttl(token).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return ttl(token).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    //one signature check per token, then served from the cache until it expires; parse failures propagate as before
+    public VerifiedToken verify(String jwtToken){
+        String digest=digest(jwtToken);
+        VerifiedToken token=verifiedTokens.getIfPresent(digest);
+        if(token==null){
+            token=parse(jwtToken);
+            if(!token.isExpired(Instant.now())){
+                verifiedTokens.put(digest,token);
+            }
+        }
+        return token;
+    }
+
+    VerifiedToken parse(String jwtToken){
+        Claims claims=extractAllClaims(jwtToken);
+        Number userId=claims.get(USER_ID_CLAIM,Number.class);
+        List<?> authorities=claims.get(AUTHORITIES_CLAIM,List.class);
+        return new VerifiedToken(
+                claims.getSubject(),
+                claims.getExpiration()==null?null:claims.getExpiration().toInstant(),
+                userId==null?null:userId.intValue(),
+                claims.get(FULL_NAME_CLAIM,String.class),
+                authorities==null?List.of():authorities.stream().map(String::valueOf).toList()
+        );
+    }
+
     public String extractUsername(String jwtToken){
-        return extractClaims(jwtToken,Claims::getSubject);
+        return verify(jwtToken).username();
     }
 
     public <T> T extractClaims(String jwtToken, Function<Claims,T> claimsResolver){
@@ -34,10 +115,7 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String jwtToken){
-        return Jwts
-                .parser()
-                .setSigningKey(getSignInKey())
-                .build()
+        return parser
                 .parseSignedClaims(jwtToken)
                 .getPayload();
     }
@@ -57,27 +135,34 @@ public class JwtService {
                 .subject(userDetails.getUsername())
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + jwtExpiration))
-                .claim("authorities",authorities)
-                .signWith(getSignInKey())
+                .claim(AUTHORITIES_CLAIM,authorities)
+                .signWith(signInKey)
                 .compact();
     }
 
     public boolean isTokenValid(String jwtToken,UserDetails userDetails){
-        final String userEmail=extractUsername(jwtToken);
-        return (userEmail.equals(userDetails.getUsername())) && !isTokenExpired(jwtToken);
+        return isTokenValid(verify(jwtToken),userDetails);
     }
 
-    private boolean isTokenExpired(String jwtToken){
-        return extractExpiration(jwtToken).before(new Date());
+    public boolean isTokenValid(VerifiedToken token,UserDetails userDetails){
+        return token.username().equals(userDetails.getUsername()) && !token.isExpired(Instant.now());
     }
 
-    private Date extractExpiration(String jwtToken) {
-        return extractClaims(jwtToken,Claims::getExpiration);
+    private Duration ttl(VerifiedToken token){
+        Duration untilExpiry=Duration.between(Instant.now(),token.expiresAt());
+        if(untilExpiry.isNegative()){
+            return Duration.ZERO;
+        }
+        return untilExpiry.compareTo(verifiedCacheMaxTtl)<0?untilExpiry:verifiedCacheMaxTtl;
     }
 
-    private Key getSignInKey(){
-        byte[] keyBytes= Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static String digest(String jwtToken){
+        try{
+            byte[] hash=MessageDigest.getInstance("SHA-256").digest(jwtToken.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException("SHA-256 is not available",e);
+        }
     }
 
 }
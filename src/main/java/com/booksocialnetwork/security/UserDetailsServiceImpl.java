@@ -1,16 +1,18 @@
 package com.booksocialnetwork.security;
 
+import com.booksocialnetwork.entities.User;
 import com.booksocialnetwork.repositories.UserRepository;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
 @RequiredArgsConstructor
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
 
@@ -19,4 +21,13 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         return userRepository.findByEmail(username).orElseThrow(()->new UsernameNotFoundException("User not found"));
     }
+
+    //called by the authentication provider with the already encoded password when the stored hash needs upgrading
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        User savedUser=userRepository.findByEmail(user.getUsername()).orElseThrow(()->new UsernameNotFoundException("User not found"));
+        savedUser.setPassword(newPassword);
+        return userRepository.save(savedUser);
+    }
 }
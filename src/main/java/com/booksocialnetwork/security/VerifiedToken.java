@@ -0,0 +1,23 @@
+package com.booksocialnetwork.security;
+
+import java.time.Instant;
+import java.util.List;
+
+//what JwtFilter needs from a token whose signature has already been checked
+public record VerifiedToken(
+        String username,
+        Instant expiresAt,
+        Integer userId,
+        String fullName,
+        List<String> authorities
+) {
+
+    public AuthenticatedUser toPrincipal(){
+        return new AuthenticatedUser(userId,username,fullName,authorities);
+    }
+
+    public boolean isExpired(Instant now){
+        return expiresAt==null || !expiresAt.isAfter(now);
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.booksocialnetwork.services;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+//only the first pages of the listing are hot enough to be worth caching
+@Component
+public class BookCachePolicy {
+
+    @Value("${application.cache.displayable-books.max-page}")
+    private int maxPage;
+
+    @Value("${application.cache.displayable-books.max-page-size}")
+    private int maxPageSize;
+
+    //rows kept in the shared head, above max-page*max-page-size so a reader's own books can be filtered out and still fill the pages
+    @Getter
+    @Value("${application.cache.displayable-books.head-size}")
+    private int headSize;
+
+    public boolean isCacheablePage(int page, int size){
+        return page>=0 && page<maxPage && size<=maxPageSize;
+    }
+
+}
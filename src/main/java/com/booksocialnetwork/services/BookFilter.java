@@ -0,0 +1,14 @@
+package com.booksocialnetwork.services;
+
+import java.time.LocalDate;
+
+//every criterion is optional, null means the dimension is not filtered
+public record BookFilter(
+        String authorName,
+        String isbnPrefix,
+        Double minRating,
+        Boolean available,
+        LocalDate createdFrom,
+        LocalDate createdTo
+) {
+}
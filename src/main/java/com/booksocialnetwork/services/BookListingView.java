@@ -0,0 +1,19 @@
+package com.booksocialnetwork.services;
+
+//flat row for book listings: owner name is joined in and the rating comes from the pre-aggregated columns
+public record BookListingView(
+        Integer id,
+        String title,
+        String authorName,
+        String isbn,
+        String synopsis,
+        String bookCover,
+        boolean archived,
+        boolean shareable,
+        Integer ownerId,
+        String ownerFirstname,
+        String ownerLastname,
+        long ratingCount,
+        double ratingSum
+) {
+}
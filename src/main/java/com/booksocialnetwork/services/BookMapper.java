@@ -1,8 +1,10 @@
 package com.booksocialnetwork.services;
 
 import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.BookRating;
 import com.booksocialnetwork.entities.history.BookTransactionHistory;
-import com.booksocialnetwork.file.FileUtils;
+import com.booksocialnetwork.file.CoverVariant;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -12,6 +14,7 @@ public class BookMapper {
         return Book.builder()
                 .id(request.id())
                 .title(request.title())
+                .authorName(request.authorName())
                 .isbn(request.isbn())
                 .synopsis(request.synopsis())
                 .archived(false)
@@ -30,10 +33,37 @@ public class BookMapper {
                 .archived(book.isArchived())
                 .shareable(book.isShareable())
                 .owner(book.getOwner().getFullName())
-                .cover(FileUtils.readFileFromLocation(book.getBookCover()))
+                .coverUrl(toCoverUrl(book))
                 .build();
     }
 
+    public BookResponse toBookReponse(BookListingView view) {
+        return BookResponse.builder()
+                .id(view.id())
+                .title(view.title())
+                .authorName(view.authorName())
+                .isbn(view.isbn())
+                .synopsis(view.synopsis())
+                .rate(BookRating.average(view.ratingCount(),view.ratingSum()))
+                .archived(view.archived())
+                .shareable(view.shareable())
+                .owner(view.ownerFirstname()+" "+view.ownerLastname())
+                .coverUrl(toCoverUrl(view.id(),view.bookCover()))
+                .build();
+    }
+
+    public String toCoverUrl(Book book){
+        return toCoverUrl(book.getId(),book.getBookCover());
+    }
+
+    public String toCoverUrl(Integer bookId, String bookCover){
+        if(StringUtils.isBlank(bookCover)){
+            return null;
+        }
+        //listings only ever reference the small variant, clients ask for DETAIL or ORIGINAL explicitly
+        return "/books/"+bookId+"/cover?variant="+CoverVariant.THUMBNAIL.name();
+    }
+
     public BorrowedBookResponse toBorrowedBookResponse(BookTransactionHistory history) {
         return BorrowedBookResponse.builder()
                 .id(history.getBook().getId())
@@ -45,4 +75,16 @@ public class BookMapper {
                 .returnApproved(history.getReturnApproved())
                 .build();
     }
+
+    public BorrowedBookResponse toBorrowedBookResponse(BorrowedBookView view) {
+        return BorrowedBookResponse.builder()
+                .id(view.id())
+                .title(view.title())
+                .authorName(view.authorName())
+                .isbn(view.isbn())
+                .rate(BookRating.average(view.ratingCount(),view.ratingSum()))
+                .returned(view.returned())
+                .returnApproved(view.returnApproved())
+                .build();
+    }
 }
@@ -0,0 +1,111 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.BookRating;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.repositories.FeedbackRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BookRatingService {
+
+    private final BookRepository bookRepository;
+    private final FeedbackRepository feedbackRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BookIndexer bookIndexer;
+
+    @Value("${application.rating.reconcile-batch-size}")
+    private int reconcileBatchSize;
+
+    //must join the caller's transaction so the aggregate commits or rolls back together with the feedback row
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordFeedback(Integer bookId, Double note){
+        if(note==null){
+            return;
+        }
+        bookRepository.incrementRating(bookId,note,BookRating.starBucket(note),LocalDateTime.now());
+        reindexAfterCommit(bookId);
+    }
+
+    //the local indexes are refreshed right away, other nodes pick the change up through lastModifiedDate on their catch-up
+    private void reindexAfterCommit(Integer bookId){
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                bookIndexer.onBookChanged(bookId);
+            }
+        });
+    }
+
+    @Scheduled(cron = "${application.rating.reconcile-cron}")
+    public void reconcile(){
+        int afterId=0;
+        int corrected=0;
+        while(true){
+            final int lastId=afterId;
+            BatchResult result=transactionTemplate.execute(status->reconcileBatch(lastId));
+            if(result==null || result.lastBookId()==null){
+                break;
+            }
+            afterId=result.lastBookId();
+            corrected+=result.corrected();
+        }
+        if(corrected>0){
+            log.warn("Rating reconciliation corrected {} book aggregates",corrected);
+        }else{
+            log.info("Rating reconciliation found no drift");
+        }
+    }
+
+    private BatchResult reconcileBatch(int afterId){
+        List<BookRatingSnapshot> stored=bookRepository.findRatingsAfter(afterId,Limit.of(reconcileBatchSize));
+        if(stored.isEmpty()){
+            return new BatchResult(null,0);
+        }
+        Map<Integer,BookRatingSnapshot> expected=feedbackRepository.aggregateRatingsByBookIds(stored.stream().map(BookRatingSnapshot::bookId).toList())
+                .stream()
+                .collect(Collectors.toMap(BookRatingSnapshot::bookId,Function.identity()));
+        int corrected=0;
+        for(BookRatingSnapshot current:stored){
+            BookRatingSnapshot actual=expected.getOrDefault(current.bookId(),BookRatingSnapshot.empty(current.bookId()));
+            if(!current.matches(actual)){
+                bookRepository.overwriteRating(
+                        actual.bookId(),
+                        actual.ratingCount(),
+                        actual.ratingSum(),
+                        actual.oneStarCount(),
+                        actual.twoStarCount(),
+                        actual.threeStarCount(),
+                        actual.fourStarCount(),
+                        actual.fiveStarCount(),
+                        LocalDateTime.now()
+                );
+                reindexAfterCommit(actual.bookId());
+                corrected++;
+            }
+        }
+        return new BatchResult(stored.get(stored.size()-1).bookId(),corrected);
+    }
+
+    private record BatchResult(Integer lastBookId, int corrected) {
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.booksocialnetwork.services;
+
+import java.util.Objects;
+
+public record BookRatingSnapshot(
+        Integer bookId,
+        Long ratingCount,
+        Double ratingSum,
+        Long oneStarCount,
+        Long twoStarCount,
+        Long threeStarCount,
+        Long fourStarCount,
+        Long fiveStarCount
+) {
+
+    public static BookRatingSnapshot empty(Integer bookId){
+        return new BookRatingSnapshot(bookId,0L,0.0,0L,0L,0L,0L,0L);
+    }
+
+    public boolean matches(BookRatingSnapshot other){
+        return Objects.equals(ratingCount,other.ratingCount)
+                && Math.abs(valueOf(ratingSum)-valueOf(other.ratingSum))<0.0001
+                && Objects.equals(oneStarCount,other.oneStarCount)
+                && Objects.equals(twoStarCount,other.twoStarCount)
+                && Objects.equals(threeStarCount,other.threeStarCount)
+                && Objects.equals(fourStarCount,other.fourStarCount)
+                && Objects.equals(fiveStarCount,other.fiveStarCount);
+    }
+
+    private static double valueOf(Double value){
+        return value==null?0.0:value;
+    }
+
+}
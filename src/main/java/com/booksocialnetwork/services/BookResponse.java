@@ -2,12 +2,14 @@ package com.booksocialnetwork.services;
 
 import lombok.*;
 
+import java.io.Serializable;
+
 @Getter
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-public class BookResponse {
+public class BookResponse implements Serializable {
 
     private Integer id;
     private String title;
@@ -15,7 +17,7 @@ public class BookResponse {
     private String isbn;
     private String synopsis;
     private String owner;
-    private byte[] cover;
+    private String coverUrl;
     private double rate;
     private Boolean archived;
     private Boolean shareable;
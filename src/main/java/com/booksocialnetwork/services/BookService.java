@@ -1,26 +1,46 @@
 package com.booksocialnetwork.services;
 
+import com.booksocialnetwork.common.ApproximateCountService;
+import com.booksocialnetwork.common.CursorPageResponse;
+import com.booksocialnetwork.common.PageCursor;
 import com.booksocialnetwork.common.PageResponse;
+import com.booksocialnetwork.common.TotalsMode;
+import com.booksocialnetwork.configurations.CacheConfig;
 import com.booksocialnetwork.entities.Book;
-import com.booksocialnetwork.entities.User;
 import com.booksocialnetwork.entities.history.BookTransactionHistory;
 import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.file.CoverVariant;
+import com.booksocialnetwork.file.CoverVariantPipeline;
 import com.booksocialnetwork.file.FileStorageService;
 import com.booksocialnetwork.repositories.BookRepository;
 import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import com.booksocialnetwork.security.AuthenticatedUser;
 import jakarta.mail.Multipart;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -30,100 +50,243 @@ public class BookService {
     private final BookRepository bookRepository;
     private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
     private final FileStorageService fileStorageService;
+    private final CoverVariantPipeline coverVariantPipeline;
+    private final ApproximateCountService approximateCountService;
+    private final BookIndexer bookIndexer;
+    private final BorrowEngine borrowEngine;
+    private final LoanCounterService loanCounterService;
+    private final UserRepository userRepository;
+    private final DisplayableBookCatalog displayableBookCatalog;
+    private final BookCachePolicy bookCachePolicy;
 
+    @Value("${application.pagination.cursor.max-size}")
+    private int maxCursorSize;
+
+    @CacheEvict(cacheNames = CacheConfig.DISPLAYABLE_BOOKS_CACHE,key = "T(com.booksocialnetwork.services.DisplayableBookCatalog).HEAD_KEY")
     public Integer save(BookRequest request, Authentication connectedUser){
-        User user=((User)connectedUser.getPrincipal());
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
         Book book=bookMapper.toBook(request);
-        book.setOwner(user);
-        return bookRepository.save(book).getId();
+        book.setOwner(userRepository.getReferenceById(user.id()));
+        Book savedBook=bookRepository.save(book);
+        bookIndexer.onBookChanged(savedBook.getId());
+        return savedBook.getId();
     }
 
+    @Cacheable(cacheNames = CacheConfig.BOOKS_CACHE,key = "#bookId")
     public BookResponse findById(Integer bookId) {
         return bookRepository.findById(bookId).map(bookMapper::toBookReponse).orElseThrow(()->new EntityNotFoundException("No book found with the ID:: "+bookId));
     }
 
-    public PageResponse<BookResponse> findAllBooks(int page, int size, Authentication connectedUser) {
-        User user=((User)connectedUser.getPrincipal());
+    public Path findBookCoverPath(Integer bookId, CoverVariant variant) {
+        Book book=bookRepository.findById(bookId).orElseThrow(()->new EntityNotFoundException("No book found with Id: "+bookId));
+        if(StringUtils.isBlank(book.getBookCover())){
+            throw new EntityNotFoundException("No cover found for the book with Id: "+bookId);
+        }
+        //variants are written asynchronously and may be missing (older uploads, a full or failed pipeline):
+        //serve the next larger one that exists and have the missing ones generated
+        for(CoverVariant candidate:CoverVariant.values()){
+            if(candidate.ordinal()<variant.ordinal()){
+                continue;
+            }
+            Path path=candidate.resolve(book.getBookCover());
+            if(Files.exists(path)){
+                if(candidate!=variant){
+                    coverVariantPipeline.requeue(book.getBookCover());
+                }
+                return path;
+            }
+        }
+        throw new EntityNotFoundException("No cover found for the book with Id: "+bookId);
+    }
+
+    //the first pages come out of the shared head, deeper pages and readers owning much of the head go to the database
+    public PageResponse<BookResponse> findAllBooks(int page, int size, TotalsMode totalsMode, Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(bookCachePolicy.isCacheablePage(page,size)){
+            PageResponse<BookResponse> cached=fromHead(displayableBookCatalog.head(),page,size,totalsMode,user.id());
+            if(cached!=null){
+                return cached;
+            }
+        }
         Pageable pageable= PageRequest.of(page,size, Sort.by("createdDate").descending());
-        Page<Book> books=bookRepository.findAllDisplayableBooks(pageable,user.getId());
+        if(totalsMode==TotalsMode.EXACT){
+            Page<BookListingView> books=bookRepository.findAllDisplayableBooks(pageable,user.id());
+            List<BookResponse> bookResponses=books.stream().map(bookMapper::toBookReponse).toList();
+            return PageResponse.fromPage(bookResponses,books);
+        }
+        Slice<BookListingView> books=bookRepository.findDisplayableBooksSlice(pageable,user.id());
         List<BookResponse> bookResponses=books.stream().map(bookMapper::toBookReponse).toList();
-        return new PageResponse<BookResponse>(
-                bookResponses,
-                books.getNumber(),
-                books.getSize(),
-                books.getTotalElements(),
-                books.getTotalPages(),
-                books.isFirst(),
-                books.isLast()
-        );
+        //one count for every reader, the caller's own books are left in since the total is approximate anyway
+        Long totalElements=approximateCountService.count(totalsMode,"displayable-books",bookRepository::countAllDisplayableBooks);
+        return PageResponse.fromSlice(bookResponses,books,totalElements);
+    }
+
+    //null when the head runs out before the requested page and its next row, the caller then reads the database
+    private PageResponse<BookResponse> fromHead(DisplayableBooksHead head, int page, int size, TotalsMode totalsMode, Integer userId){
+        List<BookResponse> visible=head.visibleTo(userId);
+        int from=page*size;
+        if(!head.complete() && visible.size()<=from+size){
+            return null;
+        }
+        Long totalElements=switch (totalsMode){
+            case NONE -> null;
+            case EXACT -> head.complete()?visible.size():Math.max(0,head.totalDisplayable()-bookRepository.countDisplayableBooksOfOwner(userId));
+            case APPROXIMATE -> head.totalDisplayable();
+        };
+        List<BookResponse> content=visible.subList(Math.min(from,visible.size()),Math.min(from+size,visible.size()));
+        boolean hasNext=from+size<visible.size();
+        return PageResponse.<BookResponse>builder()
+                .content(content)
+                .number(page)
+                .size(size)
+                .totalElements(totalElements)
+                .totalPages(totalElements==null?null:(int) Math.ceil((double) totalElements/size))
+                .first(page==0)
+                .last(!hasNext)
+                .hasNext(hasNext)
+                .approximateTotals(totalsMode==TotalsMode.APPROXIMATE)
+                .build();
     }
 
-    public PageResponse<BookResponse> findAllBooksByOwner(int page, int size, Authentication connectedUser) {
-        User user=((User)connectedUser.getPrincipal());
+    public PageResponse<BookResponse> findAllBooksByOwner(int page, int size, TotalsMode totalsMode, Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
         Pageable pageable= PageRequest.of(page,size, Sort.by("createdDate").descending());
-        Page<Book> books=bookRepository.findAll(BookSpecification.withOwnerId(user.getId()),pageable);
+        if(totalsMode==TotalsMode.EXACT){
+            Page<BookListingView> books=bookRepository.findAllBooksByOwner(pageable,user.id());
+            List<BookResponse> bookResponses=books.stream().map(bookMapper::toBookReponse).toList();
+            return PageResponse.fromPage(bookResponses,books);
+        }
+        Slice<BookListingView> books=bookRepository.findBooksByOwnerSlice(pageable,user.id());
         List<BookResponse> bookResponses=books.stream().map(bookMapper::toBookReponse).toList();
-        return new PageResponse<BookResponse>(
-                bookResponses,
-                books.getNumber(),
-                books.getSize(),
-                books.getTotalElements(),
-                books.getTotalPages(),
-                books.isFirst(),
-                books.isLast()
-        );
+        Long totalElements=approximateCountService.count(totalsMode,"owner-books:"+user.id(),()->bookRepository.count(BookSpecification.withOwnerId(user.id())));
+        return PageResponse.fromSlice(bookResponses,books,totalElements);
     }
 
-    public PageResponse<BorrowedBookResponse> findAllBorrowedBooks(int page, int size, Authentication connectedUser) {
-        User user=((User)connectedUser.getPrincipal());
+    public PageResponse<BorrowedBookResponse> findAllBorrowedBooks(int page, int size, TotalsMode totalsMode, Authentication connectedUser) {
+        return findAllBorrowedBooks(page,size,totalsMode,false,connectedUser);
+    }
+
+    public PageResponse<BorrowedBookResponse> findAllBorrowedBooks(int page, int size, TotalsMode totalsMode, boolean includeArchive, Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
         Pageable pageable= PageRequest.of(page,size, Sort.by("createdDate").descending());
-        Page<BookTransactionHistory> allBorrowedBooks=bookTransactionHistoryRepository.findAllBorrowedBooks(pageable,user.getId());
+        //archived loans are only counted exactly, they are read rarely enough not to need a cached total
+        if(includeArchive){
+            Page<BorrowedBookView> allBorrowedBooks=bookTransactionHistoryRepository.findAllBorrowedBooks(pageable,user.id(),true);
+            List<BorrowedBookResponse> booksResponse=allBorrowedBooks.stream().map(bookMapper::toBorrowedBookResponse).toList();
+            return PageResponse.fromPage(booksResponse,allBorrowedBooks);
+        }
+        if(totalsMode==TotalsMode.EXACT){
+            Page<BorrowedBookView> allBorrowedBooks=bookTransactionHistoryRepository.findAllBorrowedBooks(pageable,user.id());
+            List<BorrowedBookResponse> booksResponse=allBorrowedBooks.stream().map(bookMapper::toBorrowedBookResponse).toList();
+            return PageResponse.fromPage(booksResponse,allBorrowedBooks);
+        }
+        Slice<BorrowedBookView> allBorrowedBooks=bookTransactionHistoryRepository.findBorrowedBooksSlice(pageable,user.id());
         List<BorrowedBookResponse> booksResponse=allBorrowedBooks.stream().map(bookMapper::toBorrowedBookResponse).toList();
-        return new PageResponse<BorrowedBookResponse>(
-                booksResponse,
-                allBorrowedBooks.getNumber(),
-                allBorrowedBooks.getSize(),
-                allBorrowedBooks.getTotalElements(),
-                allBorrowedBooks.getTotalPages(),
-                allBorrowedBooks.isFirst(),
-                allBorrowedBooks.isLast()
-        );
+        Long totalElements=approximateCountService.count(totalsMode,"borrowed-books:"+user.id(),()->bookTransactionHistoryRepository.countBorrowedBooks(user.id()));
+        return PageResponse.fromSlice(booksResponse,allBorrowedBooks,totalElements);
     }
 
-    public PageResponse<BorrowedBookResponse> findAllReturnedBooks(int page, int size, Authentication connectedUser) {
-        User user=((User)connectedUser.getPrincipal());
+    public PageResponse<BorrowedBookResponse> findAllReturnedBooks(int page, int size, TotalsMode totalsMode, Authentication connectedUser) {
+        return findAllReturnedBooks(page,size,totalsMode,false,connectedUser);
+    }
+
+    public PageResponse<BorrowedBookResponse> findAllReturnedBooks(int page, int size, TotalsMode totalsMode, boolean includeArchive, Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
         Pageable pageable= PageRequest.of(page,size, Sort.by("createdDate").descending());
-        Page<BookTransactionHistory> allBorrowedBooks=bookTransactionHistoryRepository.findAllReturnedBooks(pageable,user.getId());
+        //archived loans are only counted exactly, they are read rarely enough not to need a cached total
+        if(includeArchive){
+            Page<BorrowedBookView> allReturnedBooks=bookTransactionHistoryRepository.findAllReturnedBooks(pageable,user.id(),true);
+            List<BorrowedBookResponse> booksResponse=allReturnedBooks.stream().map(bookMapper::toBorrowedBookResponse).toList();
+            return PageResponse.fromPage(booksResponse,allReturnedBooks);
+        }
+        if(totalsMode==TotalsMode.EXACT){
+            Page<BorrowedBookView> allBorrowedBooks=bookTransactionHistoryRepository.findAllReturnedBooks(pageable,user.id());
+            List<BorrowedBookResponse> booksResponse=allBorrowedBooks.stream().map(bookMapper::toBorrowedBookResponse).toList();
+            return PageResponse.fromPage(booksResponse,allBorrowedBooks);
+        }
+        Slice<BorrowedBookView> allBorrowedBooks=bookTransactionHistoryRepository.findReturnedBooksSlice(pageable,user.id());
         List<BorrowedBookResponse> booksResponse=allBorrowedBooks.stream().map(bookMapper::toBorrowedBookResponse).toList();
-        return new PageResponse<BorrowedBookResponse>(
-                booksResponse,
-                allBorrowedBooks.getNumber(),
-                allBorrowedBooks.getSize(),
-                allBorrowedBooks.getTotalElements(),
-                allBorrowedBooks.getTotalPages(),
-                allBorrowedBooks.isFirst(),
-                allBorrowedBooks.isLast()
+        Long totalElements=approximateCountService.count(totalsMode,"returned-books:"+user.id(),()->bookTransactionHistoryRepository.countReturnedBooks(user.id()));
+        return PageResponse.fromSlice(booksResponse,allBorrowedBooks,totalElements);
+    }
+
+    public CursorPageResponse<BookResponse> findAllBooksByCursor(String cursor, int size, Authentication connectedUser) {
+        validateCursorSize(size);
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        Window<Book> books=bookRepository.findBy(BookSpecification.isDisplayableFor(user.id()),query->query.project("owner").sortBy(PageCursor.SORT).limit(size).scroll(PageCursor.decode(cursor)));
+        return toCursorPageResponse(books,bookMapper::toBookReponse);
+    }
+
+    public CursorPageResponse<BookResponse> findAllBooksByOwnerAndCursor(String cursor, int size, Authentication connectedUser) {
+        validateCursorSize(size);
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        Window<Book> books=bookRepository.findBy(BookSpecification.withOwnerId(user.id()),query->query.project("owner").sortBy(PageCursor.SORT).limit(size).scroll(PageCursor.decode(cursor)));
+        return toCursorPageResponse(books,bookMapper::toBookReponse);
+    }
+
+    public CursorPageResponse<BorrowedBookResponse> findAllBorrowedBooksByCursor(String cursor, int size, Authentication connectedUser) {
+        validateCursorSize(size);
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        Window<BookTransactionHistory> allBorrowedBooks=bookTransactionHistoryRepository.findBy(BookTransactionHistorySpecification.withUserId(user.id()),query->query.project("book").sortBy(PageCursor.SORT).limit(size).scroll(PageCursor.decode(cursor)));
+        return toCursorPageResponse(allBorrowedBooks,bookMapper::toBorrowedBookResponse);
+    }
+
+    public CursorPageResponse<BorrowedBookResponse> findAllReturnedBooksByCursor(String cursor, int size, Authentication connectedUser) {
+        validateCursorSize(size);
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        Window<BookTransactionHistory> allReturnedBooks=bookTransactionHistoryRepository.findBy(BookTransactionHistorySpecification.withBookOwnerId(user.id()),query->query.project("book").sortBy(PageCursor.SORT).limit(size).scroll(PageCursor.decode(cursor)));
+        return toCursorPageResponse(allReturnedBooks,bookMapper::toBorrowedBookResponse);
+    }
+
+    //a negative size would fail deep in the scroll query, an unbounded one would read the whole table into one window
+    private void validateCursorSize(int size){
+        if(size<1 || size>maxCursorSize){
+            throw new OperationNotPermittedException("The size must be between 1 and "+maxCursorSize);
+        }
+    }
+
+    //the cursor points at the last row handed out, so rows inserted meanwhile never shift the next window
+    private <E,R> CursorPageResponse<R> toCursorPageResponse(Window<E> window, Function<E,R> mapper){
+        List<R> content=window.stream().map(mapper).toList();
+        String nextCursor=window.hasNext() && !window.isEmpty() ? PageCursor.encode(window.positionAt(window.size()-1)) : null;
+        return new CursorPageResponse<R>(
+                content,
+                content.size(),
+                nextCursor,
+                window.hasNext()
         );
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS_CACHE,key = "#bookId"),
+            @CacheEvict(cacheNames = CacheConfig.DISPLAYABLE_BOOKS_CACHE,key = "T(com.booksocialnetwork.services.DisplayableBookCatalog).HEAD_KEY")
+    })
     public Integer updateShareableStatus(int bookId, Authentication connectedUser) {
         Book book=bookRepository.findById(bookId).orElseThrow(()->new EntityNotFoundException("No book found with Id: "+bookId));
-        User user=((User)connectedUser.getPrincipal());
-        if(!Objects.equals(book.getOwner().getId(),user.getId())){
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(!Objects.equals(book.getOwner().getId(),user.id())){
             throw new OperationNotPermittedException("You cannot update books shareable status");
         }
         book.setShareable(!book.isShareable());
-        return bookRepository.save(book).getId();
+        Book savedBook=bookRepository.save(book);
+        bookIndexer.onBookChanged(savedBook.getId());
+        return savedBook.getId();
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS_CACHE,key = "#bookId"),
+            @CacheEvict(cacheNames = CacheConfig.DISPLAYABLE_BOOKS_CACHE,key = "T(com.booksocialnetwork.services.DisplayableBookCatalog).HEAD_KEY")
+    })
     public Integer updateArchivedStatus(int bookId, Authentication connectedUser) {
         Book book=bookRepository.findById(bookId).orElseThrow(()->new EntityNotFoundException("No book found with Id: "+bookId));
-        User user=((User)connectedUser.getPrincipal());
-        if(!Objects.equals(book.getOwner().getId(),user.getId())){
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(!Objects.equals(book.getOwner().getId(),user.id())){
             throw new OperationNotPermittedException("You cannot update books shareable status");
         }
         book.setArchived(!book.isArchived());
-        return bookRepository.save(book).getId();
+        Book savedBook=bookRepository.save(book);
+        bookIndexer.onBookChanged(savedBook.getId());
+        return savedBook.getId();
     }
 
     public Integer borrowBook(int bookId, Authentication connectedUser) {
@@ -131,56 +294,68 @@ public class BookService {
         if(book.isArchived() || !book.isShareable()){
             throw new OperationNotPermittedException("The requested book cannot be borrowed since it is archived or not shareable");
         }
-        User user=((User)connectedUser.getPrincipal());
-        if(Objects.equals(book.getOwner().getId(),user.getId())){
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(Objects.equals(book.getOwner().getId(),user.id())){
             throw new OperationNotPermittedException("You cannot borrow your own book");
         }
-        final boolean isAlreadyBorrowed=bookTransactionHistoryRepository.isAlreadyBorrowedByUser(bookId,user.getId());
+        //cheap early answer for a repeated borrow, correctness comes from the insert in BorrowEngine
+        final boolean isAlreadyBorrowed=bookTransactionHistoryRepository.isAlreadyBorrowedByUser(bookId,user.id());
         if(isAlreadyBorrowed){
             throw new OperationNotPermittedException("The requested book is already borrowed");
         }
-        BookTransactionHistory bookTransactionHistory=BookTransactionHistory.builder()
-                .user(user)
-                .book(book)
-                .returned(false)
-                .returnApproved(false)
-                .build();
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        Integer savedId=borrowEngine.borrow(book,userRepository.getReferenceById(user.id())).getId();
+        bookIndexer.onBookChanged(bookId);
+        return savedId;
     }
 
+    @Transactional
     public Integer returnBorrowedBook(int bookId, Authentication connectedUser) {
         Book book=bookRepository.findById(bookId).orElseThrow(()->new EntityNotFoundException("No book found with Id: "+bookId));
         if(book.isArchived() || !book.isShareable()){
             throw new OperationNotPermittedException("The requested book cannot be borrowed since it is archived or not shareable");
         }
-        User user=((User)connectedUser.getPrincipal());
-        if(Objects.equals(book.getOwner().getId(),user.getId())){
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(Objects.equals(book.getOwner().getId(),user.id())){
             throw new OperationNotPermittedException("You cannot borrow or return your own book");
         }
-        BookTransactionHistory bookTransactionHistory=bookTransactionHistoryRepository.findByBookIdAndUserId(bookId,user.getId()).orElseThrow(()-> new OperationNotPermittedException("You didn't borrow this book"));
+        BookTransactionHistory bookTransactionHistory=bookTransactionHistoryRepository.findByBookIdAndUserId(bookId,user.id()).orElseThrow(()-> new OperationNotPermittedException("You didn't borrow this book"));
         bookTransactionHistory.setReturned(true);
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        Integer savedId=bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        loanCounterService.onReturned(user.id(),book.getOwner().getId(),1);
+        return savedId;
     }
 
+    @Transactional
     public Integer approveReturnBorrowedBook(int bookId, Authentication connectedUser) {
         Book book=bookRepository.findById(bookId).orElseThrow(()->new EntityNotFoundException("No book found with Id: "+bookId));
         if(book.isArchived() || !book.isShareable()){
             throw new OperationNotPermittedException("The requested book cannot be borrowed since it is archived or not shareable");
         }
-        User user=((User)connectedUser.getPrincipal());
-        if(Objects.equals(book.getOwner().getId(),user.getId())){
-            throw new OperationNotPermittedException("You cannot borrow or return your own book");
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(!Objects.equals(book.getOwner().getId(),user.id())){
+            throw new OperationNotPermittedException("You cannot approve the return of a book you do not own");
         }
-        BookTransactionHistory bookTransactionHistory=bookTransactionHistoryRepository.findByBookIdAndOwnerId(bookId,user.getId()).orElseThrow(()-> new OperationNotPermittedException("The book is not returned yet. You cannot approve it's return"));
+        BookTransactionHistory bookTransactionHistory=bookTransactionHistoryRepository.findByBookIdAndOwnerId(bookId,user.id()).orElseThrow(()-> new OperationNotPermittedException("The book is not returned yet. You cannot approve it's return"));
         bookTransactionHistory.setReturnApproved(true);
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        borrowEngine.release(bookTransactionHistory);
+        Integer savedId=bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        loanCounterService.onApproved(bookTransactionHistory.getUser().getId(),user.id(),1);
+        bookIndexer.onBookChanged(bookId);
+        return savedId;
     }
 
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS_CACHE,key = "#bookId"),
+            @CacheEvict(cacheNames = CacheConfig.DISPLAYABLE_BOOKS_CACHE,key = "T(com.booksocialnetwork.services.DisplayableBookCatalog).HEAD_KEY")
+    })
     public void uploadBookCoverPicture(Integer bookId, MultipartFile file, Authentication connectedUser) {
         Book book=bookRepository.findById(bookId).orElseThrow(()->new EntityNotFoundException("No book found with Id: "+bookId));
-        User user=((User)connectedUser.getPrincipal());
-        var bookCover=fileStorageService.saveFile(file,user.getId());
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        var bookCover=fileStorageService.saveFile(file,user.id());
         book.setBookCover(bookCover);
         bookRepository.save(book);
+        if(bookCover!=null){
+            coverVariantPipeline.submit(bookCover);
+        }
     }
 }
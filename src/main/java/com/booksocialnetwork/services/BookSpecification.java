@@ -1,12 +1,99 @@
 package com.booksocialnetwork.services;
 
 import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.time.LocalDate;
+
 public class BookSpecification {
 
     public static Specification<Book> withOwnerId(Integer ownerId){
         return (root,query,criteriaBuilder) -> criteriaBuilder.equal(root.get("owner").get("id"),ownerId);
     }
 
+    //same predicate as BookRepository.findAllDisplayableBooks
+    public static Specification<Book> isDisplayableFor(Integer userId){
+        return (root,query,criteriaBuilder) -> criteriaBuilder.and(
+                criteriaBuilder.isFalse(root.get("archived")),
+                criteriaBuilder.isTrue(root.get("shareable")),
+                criteriaBuilder.notEqual(root.get("owner").get("id"),userId)
+        );
+    }
+
+    public static Specification<Book> withAuthorName(String authorName){
+        return (root,query,criteriaBuilder) -> criteriaBuilder.equal(root.get("authorName"),authorName);
+    }
+
+    //a leading-anchored LIKE can still walk the isbn index
+    public static Specification<Book> withIsbnPrefix(String isbnPrefix){
+        String escaped=isbnPrefix.replace("\\","\\\\").replace("%","\\%").replace("_","\\_");
+        return (root,query,criteriaBuilder) -> criteriaBuilder.like(root.get("isbn"),escaped+"%",'\\');
+    }
+
+    //average >= minRating written without a division so unrated books simply drop out
+    public static Specification<Book> withMinimumRating(double minRating){
+        return (root,query,criteriaBuilder) -> criteriaBuilder.and(
+                criteriaBuilder.greaterThan(root.get("rating").get("ratingCount"),0L),
+                criteriaBuilder.ge(
+                        root.get("rating").get("ratingSum"),
+                        criteriaBuilder.prod(criteriaBuilder.toDouble(root.get("rating").get("ratingCount")),minRating)
+                )
+        );
+    }
+
+    //a book is out while any borrow of it has not been approved as returned
+    public static Specification<Book> isAvailable(boolean available){
+        return (root,query,criteriaBuilder) -> {
+            Subquery<Integer> activeBorrow=query.subquery(Integer.class);
+            Root<BookTransactionHistory> history=activeBorrow.from(BookTransactionHistory.class);
+            activeBorrow.select(history.get("id")).where(
+                    criteriaBuilder.equal(history.get("book"),root),
+                    criteriaBuilder.isFalse(history.get("returnApproved"))
+            );
+            return available?criteriaBuilder.not(criteriaBuilder.exists(activeBorrow)):criteriaBuilder.exists(activeBorrow);
+        };
+    }
+
+    public static Specification<Book> createdBetween(LocalDate from, LocalDate to){
+        return (root,query,criteriaBuilder) -> {
+            if(from==null && to==null){
+                return criteriaBuilder.conjunction();
+            }
+            if(from==null){
+                return criteriaBuilder.lessThan(root.get("createdDate"),to.plusDays(1).atStartOfDay());
+            }
+            if(to==null){
+                return criteriaBuilder.greaterThanOrEqualTo(root.get("createdDate"),from.atStartOfDay());
+            }
+            return criteriaBuilder.and(
+                    criteriaBuilder.greaterThanOrEqualTo(root.get("createdDate"),from.atStartOfDay()),
+                    criteriaBuilder.lessThan(root.get("createdDate"),to.plusDays(1).atStartOfDay())
+            );
+        };
+    }
+
+    public static Specification<Book> matching(BookFilter filter, Integer userId){
+        Specification<Book> specification=isDisplayableFor(userId);
+        if(StringUtils.isNotBlank(filter.authorName())){
+            specification=specification.and(withAuthorName(filter.authorName()));
+        }
+        if(StringUtils.isNotBlank(filter.isbnPrefix())){
+            specification=specification.and(withIsbnPrefix(filter.isbnPrefix()));
+        }
+        if(filter.minRating()!=null){
+            specification=specification.and(withMinimumRating(filter.minRating()));
+        }
+        if(filter.available()!=null){
+            specification=specification.and(isAvailable(filter.available()));
+        }
+        if(filter.createdFrom()!=null || filter.createdTo()!=null){
+            specification=specification.and(createdBetween(filter.createdFrom(),filter.createdTo()));
+        }
+        return specification;
+    }
+
 }
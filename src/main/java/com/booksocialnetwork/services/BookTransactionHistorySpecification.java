@@ -0,0 +1,16 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import org.springframework.data.jpa.domain.Specification;
+
+public class BookTransactionHistorySpecification {
+
+    public static Specification<BookTransactionHistory> withUserId(Integer userId){
+        return (root,query,criteriaBuilder) -> criteriaBuilder.equal(root.get("user").get("id"),userId);
+    }
+
+    public static Specification<BookTransactionHistory> withBookOwnerId(Integer ownerId){
+        return (root,query,criteriaBuilder) -> criteriaBuilder.equal(root.get("book").get("owner").get("id"),ownerId);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.holds.HoldService;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+//no read-then-write: the loan is a single insert and the unique active_book_id index decides the winner,
+//every other borrower of the same copy gets the duplicate key back as soon as the winner commits;
+//a reservation held by another reader rolls the insert back with it
+@Service
+@RequiredArgsConstructor
+public class BorrowEngine {
+
+    private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final HoldService holdService;
+    private final LoanCounterService loanCounterService;
+
+    @Transactional
+    public BookTransactionHistory borrow(Book book, User user){
+        BookTransactionHistory loan=BookTransactionHistory.builder()
+                .user(user)
+                .book(book)
+                .returned(false)
+                .returnApproved(false)
+                .activeBookId(book.getId())
+                .build();
+        try{
+            loan=bookTransactionHistoryRepository.saveAndFlush(loan);
+        }catch(DataIntegrityViolationException e){
+            if(!isActiveLoanConflict(e)){
+                throw e;
+            }
+            throw new OperationNotPermittedException("The requested book is already borrowed");
+        }catch(ConcurrencyFailureException e){
+            //innodb can pick a deadlock victim among waiters on the same key when the holder rolls back
+            throw new OperationNotPermittedException("The requested book is being borrowed by another user, please retry");
+        }
+        holdService.claimForBorrow(book.getId(),user.getId());
+        loanCounterService.onBorrowed(user.getId(),book.getOwner().getId());
+        return loan;
+    }
+
+    //the loan stays open through the return until the owner approves it, and the next hold is
+    //promoted before the slot is cleared so the copy is never free without its reservation
+    public void release(BookTransactionHistory loan){
+        promoteHold(loan.getBook().getId());
+        loan.setActiveBookId(null);
+    }
+
+    //for callers that clear the active slot themselves, see LoanBatchService
+    public void promoteHold(Integer bookId){
+        holdService.promoteNext(bookId);
+    }
+
+    private static boolean isActiveLoanConflict(DataIntegrityViolationException e){
+        return StringUtils.containsIgnoreCase(e.getMostSpecificCause().getMessage(),BookTransactionHistory.ACTIVE_LOAN_CONSTRAINT);
+    }
+
+}
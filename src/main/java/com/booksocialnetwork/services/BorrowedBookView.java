@@ -0,0 +1,16 @@
+package com.booksocialnetwork.services;
+
+import java.time.LocalDateTime;
+
+public record BorrowedBookView(
+        Integer id,
+        String title,
+        String authorName,
+        String isbn,
+        long ratingCount,
+        double ratingSum,
+        Boolean returned,
+        Boolean returnApproved,
+        LocalDateTime createdDate
+) {
+}
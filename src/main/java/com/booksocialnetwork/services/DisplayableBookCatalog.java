@@ -0,0 +1,36 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.configurations.CacheConfig;
+import com.booksocialnetwork.repositories.BookRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+//one cached entry for all readers instead of one per user and page, so a book write evicts a single key
+@Service
+@RequiredArgsConstructor
+public class DisplayableBookCatalog {
+
+    public static final String HEAD_KEY="head";
+
+    private final BookRepository bookRepository;
+    private final BookMapper bookMapper;
+    private final BookCachePolicy bookCachePolicy;
+
+    @Cacheable(cacheNames = CacheConfig.DISPLAYABLE_BOOKS_CACHE,key = "T(com.booksocialnetwork.services.DisplayableBookCatalog).HEAD_KEY")
+    public DisplayableBooksHead head(){
+        int headSize=bookCachePolicy.getHeadSize();
+        List<BookListingView> rows=bookRepository.findDisplayableHead(Limit.of(headSize+1));
+        boolean complete=rows.size()<=headSize;
+        List<DisplayableBooksHead.Entry> entries=rows.stream()
+                .limit(headSize)
+                .map(row->new DisplayableBooksHead.Entry(row.ownerId(),bookMapper.toBookReponse(row)))
+                .toList();
+        long totalDisplayable=complete?entries.size():bookRepository.countAllDisplayableBooks();
+        return new DisplayableBooksHead(entries,complete,totalDisplayable);
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.cache.Weighted;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Objects;
+
+//the newest displayable books of the catalog, the same for every reader; each reader's own books are filtered out after the lookup
+public record DisplayableBooksHead(
+        List<Entry> entries,
+        boolean complete,
+        long totalDisplayable
+) implements Serializable, Weighted {
+
+    public record Entry(Integer ownerId, BookResponse book) implements Serializable {
+    }
+
+    public List<BookResponse> visibleTo(Integer userId){
+        return entries.stream()
+                .filter(entry->!Objects.equals(entry.ownerId(),userId))
+                .map(Entry::book)
+                .toList();
+    }
+
+    @Override
+    public int weight() {
+        return 1+entries.size();
+    }
+
+}
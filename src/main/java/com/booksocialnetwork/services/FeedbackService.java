@@ -1,19 +1,26 @@
 package com.booksocialnetwork.services;
 
+import com.booksocialnetwork.common.ApproximateCountService;
 import com.booksocialnetwork.common.PageResponse;
+import com.booksocialnetwork.common.TotalsMode;
+import com.booksocialnetwork.configurations.CacheConfig;
 import com.booksocialnetwork.entities.Book;
 import com.booksocialnetwork.entities.Feedback;
-import com.booksocialnetwork.entities.User;
 import com.booksocialnetwork.exception.OperationNotPermittedException;
 import com.booksocialnetwork.repositories.BookRepository;
 import com.booksocialnetwork.repositories.FeedbackRepository;
+import com.booksocialnetwork.security.AuthenticatedUser;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Objects;
@@ -25,33 +32,41 @@ public class FeedbackService {
     private final BookRepository bookRepository;
     private final FeedbackMapper feedbackMapper;
     private final FeedbackRepository feedbackRepository;
+    private final BookRatingService bookRatingService;
+    private final ApproximateCountService approximateCountService;
 
+    //the new note changes the rating shown on the detail and on every listing page
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.BOOKS_CACHE,key = "#request.bookId()"),
+            @CacheEvict(cacheNames = CacheConfig.DISPLAYABLE_BOOKS_CACHE,key = "T(com.booksocialnetwork.services.DisplayableBookCatalog).HEAD_KEY")
+    })
+    @Transactional
     public Integer save(FeedbackRequest request, Authentication connectedUser) {
         Book book=bookRepository.findById(request.bookId()).orElseThrow(()->new EntityNotFoundException("No book found with Id: "+request.bookId()));
         if(book.isArchived() || !book.isShareable()){
             throw new OperationNotPermittedException("You cannot give a feedback for an archived or non-shareable book");
         }
-        User user=((User)connectedUser.getPrincipal());
-        if(Objects.equals(book.getOwner().getId(),user.getId())){
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(Objects.equals(book.getOwner().getId(),user.id())){
             throw new OperationNotPermittedException("You cannot give a feedback to your own book");
         }
         Feedback feedback=feedbackMapper.toFeedback(request);
-        return feedbackRepository.save(feedback).getId();
+        Integer feedbackId=feedbackRepository.save(feedback).getId();
+        bookRatingService.recordFeedback(book.getId(),feedback.getNote());
+        return feedbackId;
     }
 
-    public PageResponse<FeedbackResponse> findAllFeedbacksByBook(Integer bookId, int page, int size, Authentication connectedUser) {
+    public PageResponse<FeedbackResponse> findAllFeedbacksByBook(Integer bookId, int page, int size, TotalsMode totalsMode, Authentication connectedUser) {
         Pageable pageable= PageRequest.of(page,size);
-        User user=((User)connectedUser.getPrincipal());
-        Page<Feedback> feedbacks=feedbackRepository.findAllByBookId(bookId,pageable);
-        List<FeedbackResponse> feedbackResponse=feedbacks.stream().map(feedback -> feedbackMapper.toFeedbackResponse(feedback,user.getId())).toList();
-        return new PageResponse<FeedbackResponse>(
-                feedbackResponse,
-                feedbacks.getNumber(),
-                feedbacks.getSize(),
-                feedbacks.getTotalElements(),
-                feedbacks.getTotalPages(),
-                feedbacks.isFirst(),
-                feedbacks.isLast()
-        );
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        if(totalsMode==TotalsMode.EXACT){
+            Page<Feedback> feedbacks=feedbackRepository.findAllByBookId(bookId,pageable);
+            List<FeedbackResponse> feedbackResponse=feedbacks.stream().map(feedback -> feedbackMapper.toFeedbackResponse(feedback,user.id())).toList();
+            return PageResponse.fromPage(feedbackResponse,feedbacks);
+        }
+        Slice<Feedback> feedbacks=feedbackRepository.findSliceByBookId(bookId,pageable);
+        List<FeedbackResponse> feedbackResponse=feedbacks.stream().map(feedback -> feedbackMapper.toFeedbackResponse(feedback,user.id())).toList();
+        Long totalElements=approximateCountService.count(totalsMode,"book-feedbacks:"+bookId,()->feedbackRepository.countByBookId(bookId));
+        return PageResponse.fromSlice(feedbackResponse,feedbacks,totalElements);
     }
 }
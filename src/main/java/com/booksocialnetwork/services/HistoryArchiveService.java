@@ -0,0 +1,57 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+//keeps book_transaction_history down to open and recently closed loans: each batch is copied into the archive
+//and deleted from the hot table in one transaction, so a row is always in exactly one of the two
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HistoryArchiveService {
+
+    private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${application.history.archive.closed-for}")
+    private Duration closedFor;
+
+    @Value("${application.history.archive.batch-size}")
+    private int batchSize;
+
+    @Scheduled(cron = "${application.history.archive.cron}")
+    public void archive(){
+        LocalDateTime closedBefore=LocalDateTime.now().minus(closedFor);
+        int archived=0;
+        while(true){
+            Integer moved=transactionTemplate.execute(status->archiveBatch(closedBefore));
+            if(moved==null || moved==0){
+                break;
+            }
+            archived+=moved;
+        }
+        if(archived>0){
+            log.info("Archived {} loans closed before {}",archived,closedBefore);
+        }
+    }
+
+    private int archiveBatch(LocalDateTime closedBefore){
+        List<Integer> historyIds=bookTransactionHistoryRepository.findArchivableIds(closedBefore,Limit.of(batchSize));
+        if(historyIds.isEmpty()){
+            return 0;
+        }
+        bookTransactionHistoryRepository.copyToArchive(historyIds,LocalDateTime.now());
+        return bookTransactionHistoryRepository.deleteArchived(historyIds);
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+//the batch counterparts of BookService.returnBorrowedBook and approveReturnBorrowedBook: one select resolves every
+//requested loan, one guarded update moves them all, and each book id gets its own outcome instead of failing the batch;
+//counters move in the same transaction, recomputed for everyone involved when a concurrent request moved some loans first
+@Service
+@RequiredArgsConstructor
+public class LoanBatchService {
+
+    private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final BorrowEngine borrowEngine;
+    private final BookIndexer bookIndexer;
+    private final LoanCounterService loanCounterService;
+
+    @Value("${application.loans.max-batch-size}")
+    private int maxBatchSize;
+
+    @Transactional
+    public List<LoanOutcome> returnBorrowedBooks(List<Integer> bookIds, Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        Set<Integer> requested=requested(bookIds);
+        Map<Integer,LoanCandidate> candidates=byBookId(bookTransactionHistoryRepository.findReturnCandidates(requested,user.id()));
+        Map<Integer,LoanOutcome> outcomes=new HashMap<>();
+        List<Integer> historyIds=new ArrayList<>();
+        Map<Integer,Integer> loansByOwner=new HashMap<>();
+        for(Integer bookId:requested){
+            LoanCandidate candidate=candidates.get(bookId);
+            String error=null;
+            if(candidate==null){
+                error="No book found with Id: "+bookId;
+            }else if(candidate.archived() || !candidate.shareable()){
+                error="The requested book cannot be borrowed since it is archived or not shareable";
+            }else if(Objects.equals(candidate.ownerId(),user.id())){
+                error="You cannot borrow or return your own book";
+            }else if(candidate.historyId()==null){
+                error="You didn't borrow this book";
+            }
+            if(error==null){
+                historyIds.add(candidate.historyId());
+                loansByOwner.merge(candidate.ownerId(),1,Integer::sum);
+                outcomes.put(bookId,LoanOutcome.succeeded(bookId,candidate.historyId()));
+            }else{
+                outcomes.put(bookId,LoanOutcome.failed(bookId,error));
+            }
+        }
+        //a row that lost a race to a concurrent single return already ends where the batch wanted it
+        if(!historyIds.isEmpty()){
+            int returned=bookTransactionHistoryRepository.markReturned(historyIds,user.id(),LocalDateTime.now());
+            if(returned==historyIds.size()){
+                loanCounterService.onReturned(user.id(),loansByOwner);
+            }else{
+                loanCounterService.recompute(withUser(loansByOwner.keySet(),user.id()));
+            }
+        }
+        return inRequestOrder(requested,outcomes);
+    }
+
+    @Transactional
+    public List<LoanOutcome> approveReturnBorrowedBooks(List<Integer> bookIds, Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        Set<Integer> requested=requested(bookIds);
+        Map<Integer,LoanCandidate> candidates=byBookId(bookTransactionHistoryRepository.findApprovalCandidates(requested));
+        Map<Integer,LoanOutcome> outcomes=new HashMap<>();
+        List<Integer> historyIds=new ArrayList<>();
+        List<Integer> approvedBookIds=new ArrayList<>();
+        Map<Integer,Integer> loansByBorrower=new HashMap<>();
+        for(Integer bookId:requested){
+            LoanCandidate candidate=candidates.get(bookId);
+            String error=null;
+            if(candidate==null){
+                error="No book found with Id: "+bookId;
+            }else if(candidate.archived() || !candidate.shareable()){
+                error="The requested book cannot be borrowed since it is archived or not shareable";
+            }else if(!Objects.equals(candidate.ownerId(),user.id())){
+                error="You cannot approve the return of a book you do not own";
+            }else if(candidate.historyId()==null){
+                error="The book is not returned yet. You cannot approve it's return";
+            }
+            if(error==null){
+                historyIds.add(candidate.historyId());
+                approvedBookIds.add(bookId);
+                loansByBorrower.merge(candidate.borrowerId(),1,Integer::sum);
+                outcomes.put(bookId,LoanOutcome.succeeded(bookId,candidate.historyId()));
+            }else{
+                outcomes.put(bookId,LoanOutcome.failed(bookId,error));
+            }
+        }
+        if(!historyIds.isEmpty()){
+            //same order as the single approval: holds are promoted while the loans still own their copies
+            approvedBookIds.forEach(borrowEngine::promoteHold);
+            int approved=bookTransactionHistoryRepository.approveReturns(historyIds,user.id(),LocalDateTime.now());
+            if(approved==historyIds.size()){
+                loanCounterService.onApproved(loansByBorrower,user.id());
+            }else{
+                loanCounterService.recompute(withUser(loansByBorrower.keySet(),user.id()));
+            }
+            bookIndexer.onBooksChanged(approvedBookIds);
+        }
+        return inRequestOrder(requested,outcomes);
+    }
+
+    private Set<Integer> requested(List<Integer> bookIds){
+        if(bookIds==null || bookIds.isEmpty()){
+            throw new OperationNotPermittedException("At least one book id is required");
+        }
+        Set<Integer> requested=new LinkedHashSet<>(bookIds);
+        requested.remove(null);
+        if(requested.size()>maxBatchSize){
+            throw new OperationNotPermittedException("At most "+maxBatchSize+" books can be handled in one request");
+        }
+        return requested;
+    }
+
+    private static Set<Integer> withUser(Set<Integer> userIds, Integer userId){
+        Set<Integer> all=new HashSet<>(userIds);
+        all.add(userId);
+        return all;
+    }
+
+    private static Map<Integer,LoanCandidate> byBookId(List<LoanCandidate> candidates){
+        //several returned loans of one book cannot be pending at once, the first one wins if they ever are
+        return candidates.stream().collect(Collectors.toMap(LoanCandidate::bookId,Function.identity(),(first,second)->first.historyId()!=null?first:second));
+    }
+
+    private static List<LoanOutcome> inRequestOrder(Set<Integer> requested, Map<Integer,LoanOutcome> outcomes){
+        return requested.stream().map(outcomes::get).toList();
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.booksocialnetwork.services;
+
+//historyId is null when the book has no loan in the state the batch step needs
+public record LoanCandidate(
+        Integer bookId,
+        Integer ownerId,
+        boolean archived,
+        boolean shareable,
+        Integer historyId,
+        Integer borrowerId
+) {
+}
@@ -0,0 +1,216 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.UserLoanCounters;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.repositories.UserLoanCountersRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LoanCounterService {
+
+    private final UserLoanCountersRepository userLoanCountersRepository;
+    private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${application.loans.counters.reconcile-batch-size}")
+    private int reconcileBatchSize;
+
+    //the three loan transitions, each must join the caller's transaction so the counters commit or roll back with the loan;
+    //a user whose row does not exist yet is skipped, the row is computed from history when it is first needed
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onBorrowed(Integer borrowerId, Integer ownerId){
+        Map<Integer,CounterDelta> deltas=new TreeMap<>();
+        deltas.merge(borrowerId,new CounterDelta(1,0,1,0,0,0),CounterDelta::plus);
+        deltas.merge(ownerId,new CounterDelta(0,0,0,1,0,1),CounterDelta::plus);
+        apply(deltas);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onReturned(Integer borrowerId, Integer ownerId, int loans){
+        onReturned(borrowerId,Map.of(ownerId,loans));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onReturned(Integer borrowerId, Map<Integer,Integer> loansByOwner){
+        Map<Integer,CounterDelta> deltas=new TreeMap<>();
+        loansByOwner.forEach((ownerId,loans)->{
+            deltas.merge(borrowerId,new CounterDelta(-loans,loans,0,0,0,0),CounterDelta::plus);
+            deltas.merge(ownerId,new CounterDelta(0,0,0,0,loans,0),CounterDelta::plus);
+        });
+        apply(deltas);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onApproved(Integer borrowerId, Integer ownerId, int loans){
+        onApproved(Map.of(borrowerId,loans),ownerId);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onApproved(Map<Integer,Integer> loansByBorrower, Integer ownerId){
+        Map<Integer,CounterDelta> deltas=new TreeMap<>();
+        loansByBorrower.forEach((borrowerId,loans)->{
+            deltas.merge(borrowerId,new CounterDelta(0,-loans,0,0,0,0),CounterDelta::plus);
+            deltas.merge(ownerId,new CounterDelta(0,0,0,-loans,-loans,0),CounterDelta::plus);
+        });
+        apply(deltas);
+    }
+
+    //rows are always locked in ascending user id, two loans crossing between the same users would otherwise deadlock
+    private void apply(Map<Integer,CounterDelta> deltasByUserId){
+        deltasByUserId.forEach((userId,delta)->userLoanCountersRepository.applyDelta(
+                userId,
+                delta.borrowedActive(),
+                delta.returnedPendingApproval(),
+                delta.lifetimeBorrowed(),
+                delta.lentOut(),
+                delta.awaitingMyApproval(),
+                delta.lifetimeLent()
+        ));
+    }
+
+    //for the batch paths when a guarded update moved fewer loans than planned and the deltas can no longer be trusted
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recompute(Collection<Integer> userIds){
+        reconcileUsers(userIds);
+    }
+
+    public LoanSummaryResponse findSummary(Authentication connectedUser) {
+        AuthenticatedUser user=((AuthenticatedUser)connectedUser.getPrincipal());
+        UserLoanCounters counters=userLoanCountersRepository.findById(user.id()).orElseGet(()->materialize(user.id()));
+        return LoanSummaryResponse.of(counters);
+    }
+
+    //a loan committed between the tally and the insert is missed until the next reconcile, the window is one statement wide
+    private UserLoanCounters materialize(Integer userId){
+        try{
+            return transactionTemplate.execute(status->{
+                UserLoanCounters counters=expected(List.of(userId)).get(userId);
+                return userLoanCountersRepository.saveAndFlush(counters);
+            });
+        }catch(DataIntegrityViolationException e){
+            //another request created it first
+            return userLoanCountersRepository.findById(userId).orElseThrow();
+        }
+    }
+
+    @Scheduled(cron = "${application.loans.counters.reconcile-cron}")
+    public void reconcile(){
+        int afterId=0;
+        int corrected=0;
+        while(true){
+            List<Integer> userIds=userRepository.findIdsAfter(afterId,Limit.of(reconcileBatchSize));
+            if(userIds.isEmpty()){
+                break;
+            }
+            Integer fixed=transactionTemplate.execute(status->reconcileUsers(userIds));
+            corrected+=fixed==null?0:fixed;
+            afterId=userIds.get(userIds.size()-1);
+        }
+        if(corrected>0){
+            log.warn("Loan counter reconciliation corrected {} users",corrected);
+        }else{
+            log.info("Loan counter reconciliation found no drift");
+        }
+    }
+
+    //the rows are locked before history is read, so a loan committing meanwhile applies its delta on top of the recomputed value
+    private int reconcileUsers(Collection<Integer> userIds){
+        Map<Integer,UserLoanCounters> stored=userLoanCountersRepository.findByUserIdInOrderByUserId(userIds).stream()
+                .collect(Collectors.toMap(UserLoanCounters::getUserId,Function.identity()));
+        Map<Integer,UserLoanCounters> expected=expected(userIds);
+        int corrected=0;
+        for(UserLoanCounters actual:expected.values()){
+            UserLoanCounters current=stored.get(actual.getUserId());
+            if(current==null){
+                userLoanCountersRepository.save(actual);
+                continue;
+            }
+            if(!matches(current,actual)){
+                current.setBorrowedActive(actual.getBorrowedActive());
+                current.setReturnedPendingApproval(actual.getReturnedPendingApproval());
+                current.setLifetimeBorrowed(actual.getLifetimeBorrowed());
+                current.setLentOut(actual.getLentOut());
+                current.setAwaitingMyApproval(actual.getAwaitingMyApproval());
+                current.setLifetimeLent(actual.getLifetimeLent());
+                corrected++;
+            }
+            current.setReconciledAt(actual.getReconciledAt());
+        }
+        return corrected;
+    }
+
+    private Map<Integer,UserLoanCounters> expected(Collection<Integer> userIds){
+        Map<Integer,LoanTally> borrowers=byUserId(bookTransactionHistoryRepository.tallyBorrowers(userIds));
+        Map<Integer,LoanTally> owners=byUserId(bookTransactionHistoryRepository.tallyOwners(userIds));
+        Map<Integer,LoanTally> archivedBorrowers=byUserId(bookTransactionHistoryRepository.tallyArchivedBorrowers(userIds));
+        Map<Integer,LoanTally> archivedOwners=byUserId(bookTransactionHistoryRepository.tallyArchivedOwners(userIds));
+        LocalDateTime now=LocalDateTime.now();
+        return userIds.stream().distinct().collect(Collectors.toMap(Function.identity(),userId->{
+            LoanTally borrower=borrowers.getOrDefault(userId,LoanTally.empty(userId));
+            LoanTally owner=owners.getOrDefault(userId,LoanTally.empty(userId));
+            return UserLoanCounters.builder()
+                    .userId(userId)
+                    .borrowedActive(borrower.open())
+                    .returnedPendingApproval(borrower.returnedPendingApproval())
+                    .lifetimeBorrowed(borrower.total()+archivedBorrowers.getOrDefault(userId,LoanTally.empty(userId)).total())
+                    .lentOut(owner.open())
+                    .awaitingMyApproval(owner.returnedPendingApproval())
+                    .lifetimeLent(owner.total()+archivedOwners.getOrDefault(userId,LoanTally.empty(userId)).total())
+                    .reconciledAt(now)
+                    .build();
+        }));
+    }
+
+    private static Map<Integer,LoanTally> byUserId(List<LoanTally> tallies){
+        return tallies.stream().collect(Collectors.toMap(LoanTally::userId,Function.identity()));
+    }
+
+    private static boolean matches(UserLoanCounters current, UserLoanCounters actual){
+        return current.getBorrowedActive()==actual.getBorrowedActive()
+                && current.getReturnedPendingApproval()==actual.getReturnedPendingApproval()
+                && current.getLifetimeBorrowed()==actual.getLifetimeBorrowed()
+                && current.getLentOut()==actual.getLentOut()
+                && current.getAwaitingMyApproval()==actual.getAwaitingMyApproval()
+                && current.getLifetimeLent()==actual.getLifetimeLent();
+    }
+
+    private record CounterDelta(long borrowedActive, long returnedPendingApproval, long lifetimeBorrowed, long lentOut, long awaitingMyApproval, long lifetimeLent) {
+
+        CounterDelta plus(CounterDelta other){
+            return new CounterDelta(
+                    borrowedActive+other.borrowedActive,
+                    returnedPendingApproval+other.returnedPendingApproval,
+                    lifetimeBorrowed+other.lifetimeBorrowed,
+                    lentOut+other.lentOut,
+                    awaitingMyApproval+other.awaitingMyApproval,
+                    lifetimeLent+other.lifetimeLent
+            );
+        }
+
+    }
+
+}
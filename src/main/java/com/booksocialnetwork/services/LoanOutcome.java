@@ -0,0 +1,22 @@
+package com.booksocialnetwork.services;
+
+//one per requested book id, transactionId is set when the step went through and error when it did not
+public record LoanOutcome(
+        Integer bookId,
+        Integer transactionId,
+        String error
+) {
+
+    public static LoanOutcome succeeded(Integer bookId, Integer transactionId){
+        return new LoanOutcome(bookId,transactionId,null);
+    }
+
+    public static LoanOutcome failed(Integer bookId, String error){
+        return new LoanOutcome(bookId,null,error);
+    }
+
+    public boolean isSucceeded(){
+        return error==null;
+    }
+
+}
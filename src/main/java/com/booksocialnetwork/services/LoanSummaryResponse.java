@@ -0,0 +1,25 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.UserLoanCounters;
+
+public record LoanSummaryResponse(
+        long borrowedActive,
+        long returnedPendingApproval,
+        long lifetimeBorrowed,
+        long lentOut,
+        long awaitingMyApproval,
+        long lifetimeLent
+) {
+
+    public static LoanSummaryResponse of(UserLoanCounters counters){
+        return new LoanSummaryResponse(
+                counters.getBorrowedActive(),
+                counters.getReturnedPendingApproval(),
+                counters.getLifetimeBorrowed(),
+                counters.getLentOut(),
+                counters.getAwaitingMyApproval(),
+                counters.getLifetimeLent()
+        );
+    }
+
+}
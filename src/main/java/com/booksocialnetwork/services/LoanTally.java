@@ -0,0 +1,15 @@
+package com.booksocialnetwork.services;
+
+//loans of one user counted from history, on the borrower side or the owner side depending on the query
+public record LoanTally(
+        Integer userId,
+        long open,
+        long returnedPendingApproval,
+        long total
+) {
+
+    public static LoanTally empty(Integer userId){
+        return new LoanTally(userId,0,0,0);
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.booksocialnetwork.auth;
+
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.exception.LoginThrottledException;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.security.UserDetailsServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class LoginPipelineTest {
+
+    private final SimpleMeterRegistry meterRegistry=new SimpleMeterRegistry();
+
+    private LoginPipeline loginPipeline;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        loginPipeline.stop();
+    }
+
+    @Test
+    public void testAuthenticate_rehashesWeakerPasswordOnLogin(){
+        UserRepository userRepository=mock(UserRepository.class);
+        User user=User.builder()
+                .id(1)
+                .email("arpitrathore010@gmail.com")
+                .password(new BCryptPasswordEncoder(4).encode("secret"))
+                .enabled(true)
+                .accountLocked(false)
+                .roles(List.of())
+                .createdDate(LocalDateTime.now())
+                .build();
+        when(userRepository.findByEmail(user.getEmail())).thenReturn(Optional.of(user));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation->invocation.getArgument(0));
+
+        UserDetailsServiceImpl userDetailsService=new UserDetailsServiceImpl(userRepository);
+        DaoAuthenticationProvider provider=new DaoAuthenticationProvider();
+        provider.setPasswordEncoder(new BCryptPasswordEncoder(5));
+        provider.setUserDetailsService(userDetailsService);
+        provider.setUserDetailsPasswordService(userDetailsService);
+        loginPipeline=pipeline(new ProviderManager(provider),1,1);
+
+        Authentication auth=loginPipeline.authenticate(user.getEmail(),"secret").join();
+
+        assertTrue(auth.isAuthenticated());
+        assertTrue(user.getPassword().startsWith("$2a$05$"));
+        verify(userRepository).save(user);
+        assertEquals(1,meterRegistry.get("auth.login.verification").timer().count());
+        assertEquals(1,meterRegistry.get("auth.login.queue.wait").timer().count());
+    }
+
+    @Test
+    public void testAuthenticate_turnsAwayLoginsWhenTheQueueIsFull(){
+        CountDownLatch release=new CountDownLatch(1);
+        AuthenticationManager authenticationManager=mock(AuthenticationManager.class);
+        when(authenticationManager.authenticate(any())).thenAnswer(invocation->{
+            release.await();
+            return invocation.getArgument(0);
+        });
+        loginPipeline=pipeline(authenticationManager,1,1);
+
+        CompletableFuture<Authentication> running=loginPipeline.authenticate("a@mail.com","secret");
+        CompletableFuture<Authentication> queued=loginPipeline.authenticate("b@mail.com","secret");
+
+        assertThrows(LoginThrottledException.class,()->loginPipeline.authenticate("c@mail.com","secret"));
+        assertEquals(1,meterRegistry.get("auth.login.throttled").tag("reason","queue-full").counter().count());
+
+        release.countDown();
+        assertNotNull(running.join());
+        assertNotNull(queued.join());
+    }
+
+    @Test
+    public void testAttemptLimiter_blocksAccountAfterRepeatedFailures(){
+        loginPipeline=pipeline(mock(AuthenticationManager.class),1,1);
+        LoginAttemptLimiter limiter=new LoginAttemptLimiter(meterRegistry);
+        ReflectionTestUtils.setField(limiter,"window",Duration.ofMinutes(15));
+        ReflectionTestUtils.setField(limiter,"maxPerEmail",2);
+        ReflectionTestUtils.setField(limiter,"maxPerAddress",10);
+        ReflectionTestUtils.setField(limiter,"maxTracked",100L);
+        limiter.init();
+
+        limiter.recordFailure("Arpit@mail.com","10.0.0.1");
+        limiter.checkAllowed("arpit@mail.com","10.0.0.1");
+        limiter.recordFailure("arpit@mail.com","10.0.0.1");
+
+        assertThrows(LoginThrottledException.class,()->limiter.checkAllowed("arpit@mail.com","10.0.0.2"));
+        limiter.checkAllowed("other@mail.com","10.0.0.1");
+
+        limiter.recordSuccess("arpit@mail.com");
+        limiter.checkAllowed("arpit@mail.com","10.0.0.1");
+    }
+
+    private LoginPipeline pipeline(AuthenticationManager authenticationManager, int threads, int queueCapacity){
+        LoginPipeline pipeline=new LoginPipeline(authenticationManager,meterRegistry);
+        ReflectionTestUtils.setField(pipeline,"threads",threads);
+        ReflectionTestUtils.setField(pipeline,"queueCapacity",queueCapacity);
+        ReflectionTestUtils.setField(pipeline,"maxQueueWait",Duration.ofSeconds(5));
+        pipeline.start();
+        return pipeline;
+    }
+
+}
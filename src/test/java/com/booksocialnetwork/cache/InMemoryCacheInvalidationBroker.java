@@ -0,0 +1,27 @@
+package com.booksocialnetwork.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+//stands in for redis pub/sub, delivers synchronously to every connected node
+public class InMemoryCacheInvalidationBroker {
+
+    private final List<Consumer<CacheInvalidation>> subscribers=new CopyOnWriteArrayList<>();
+
+    public CacheInvalidationBus connect(){
+        return new CacheInvalidationBus() {
+            @Override
+            public void publish(CacheInvalidation invalidation) {
+                CacheInvalidation delivered=CacheInvalidation.decode(invalidation.encode());
+                subscribers.forEach(subscriber->subscriber.accept(delivered));
+            }
+
+            @Override
+            public void subscribe(Consumer<CacheInvalidation> listener) {
+                subscribers.add(listener);
+            }
+        };
+    }
+
+}
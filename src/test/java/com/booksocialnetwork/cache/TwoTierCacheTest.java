@@ -0,0 +1,167 @@
+package com.booksocialnetwork.cache;
+
+import com.booksocialnetwork.common.ApproximateCountService;
+import com.booksocialnetwork.configurations.CacheConfig;
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.file.CoverVariantPipeline;
+import com.booksocialnetwork.file.FileStorageService;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.booksocialnetwork.services.BookCachePolicy;
+import com.booksocialnetwork.services.BookMapper;
+import com.booksocialnetwork.services.BookResponse;
+import com.booksocialnetwork.services.BookService;
+import com.booksocialnetwork.services.BorrowEngine;
+import com.booksocialnetwork.services.DisplayableBookCatalog;
+import com.booksocialnetwork.services.LoanCounterService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.core.Authentication;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+//two application contexts share one stand-in L2 and one stand-in broker, like two nodes sharing redis
+class TwoTierCacheTest {
+
+    private static ConcurrentMapCacheManager sharedRemoteCacheManager;
+    private static InMemoryCacheInvalidationBroker sharedBroker;
+
+    @Configuration
+    @EnableCaching
+    static class NodeConfig{
+
+        @Bean
+        public CacheManager cacheManager(){
+            return new TwoTierCacheManager(sharedRemoteCacheManager,sharedBroker.connect(),Map.of(),100,Duration.ofMinutes(5));
+        }
+
+        @Bean
+        public BookRepository bookRepository(){
+            return mock(BookRepository.class);
+        }
+
+        @Bean
+        public BookService bookService(BookRepository bookRepository){
+            BookMapper bookMapper=mock(BookMapper.class);
+            when(bookMapper.toBookReponse(any(Book.class))).thenAnswer(invocation->BookResponse.builder().id(((Book) invocation.getArgument(0)).getId()).build());
+            return new BookService(
+                    bookMapper,
+                    bookRepository,
+                    mock(BookTransactionHistoryRepository.class),
+                    mock(FileStorageService.class),
+                    mock(CoverVariantPipeline.class),
+                    mock(ApproximateCountService.class),
+                    mock(BookIndexer.class),
+                    mock(BorrowEngine.class),
+                    mock(LoanCounterService.class),
+                    mock(UserRepository.class),
+                    mock(DisplayableBookCatalog.class),
+                    mock(BookCachePolicy.class)
+            );
+        }
+    }
+
+    private AnnotationConfigApplicationContext nodeA;
+    private AnnotationConfigApplicationContext nodeB;
+    private Authentication owner;
+
+    @BeforeEach
+    public void setUp(){
+        sharedRemoteCacheManager=new ConcurrentMapCacheManager(CacheConfig.BOOKS_CACHE,CacheConfig.DISPLAYABLE_BOOKS_CACHE);
+        sharedBroker=new InMemoryCacheInvalidationBroker();
+        nodeA=node();
+        nodeB=node();
+
+        User user=User.builder()
+                .id(2)
+                .email("arpitrathore010@gmail.com")
+                .createdDate(LocalDateTime.now())
+                .build();
+        Book book=Book.builder()
+                .id(1)
+                .title("my book")
+                .shareable(true)
+                .owner(user)
+                .build();
+        owner=mock(Authentication.class);
+        when(owner.getPrincipal()).thenReturn(AuthenticatedUser.of(user));
+        for(AnnotationConfigApplicationContext node:new AnnotationConfigApplicationContext[]{nodeA,nodeB}){
+            BookRepository bookRepository=node.getBean(BookRepository.class);
+            when(bookRepository.findById(1)).thenReturn(Optional.of(book));
+            when(bookRepository.save(any(Book.class))).thenReturn(book);
+        }
+    }
+
+    @AfterEach
+    public void tearDown(){
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    public void testSecondNodeIsServedFromSharedTierThenLocalTier(){
+        nodeA.getBean(BookService.class).findById(1);
+        nodeB.getBean(BookService.class).findById(1);
+        nodeB.getBean(BookService.class).findById(1);
+
+        verify(nodeA.getBean(BookRepository.class),times(1)).findById(1);
+        verify(nodeB.getBean(BookRepository.class),never()).findById(1);
+        assertNotNull(localTier(nodeB,CacheConfig.BOOKS_CACHE).getLocalCache().getIfPresent("1"));
+    }
+
+    @Test
+    public void testWriteOnOneNodeEvictsTheOtherNodesLocalTier(){
+        nodeA.getBean(BookService.class).findById(1);
+        nodeB.getBean(BookService.class).findById(1);
+
+        nodeA.getBean(BookService.class).updateShareableStatus(1,owner);
+
+        assertNull(localTier(nodeB,CacheConfig.BOOKS_CACHE).getLocalCache().getIfPresent("1"));
+        nodeB.getBean(BookService.class).findById(1);
+        verify(nodeB.getBean(BookRepository.class),times(1)).findById(1);
+    }
+
+    @Test
+    public void testClearOnOneNodeClearsTheOtherNodesLocalTier(){
+        TwoTierCache cacheOnA=localTier(nodeA,CacheConfig.DISPLAYABLE_BOOKS_CACHE);
+        TwoTierCache cacheOnB=localTier(nodeB,CacheConfig.DISPLAYABLE_BOOKS_CACHE);
+        cacheOnA.put("page",BookResponse.builder().id(1).build());
+        cacheOnB.get("page");
+
+        cacheOnA.clear();
+
+        assertEquals(0,cacheOnB.getLocalCache().estimatedSize());
+        assertNull(cacheOnB.get("page"));
+    }
+
+    private AnnotationConfigApplicationContext node(){
+        AnnotationConfigApplicationContext node=new AnnotationConfigApplicationContext();
+        TestPropertyValues.of("application.pagination.cursor.max-size=100").applyTo(node);
+        node.register(NodeConfig.class);
+        node.refresh();
+        return node;
+    }
+
+    private TwoTierCache localTier(AnnotationConfigApplicationContext node, String cacheName){
+        return (TwoTierCache) node.getBean(CacheManager.class).getCache(cacheName);
+    }
+
+}
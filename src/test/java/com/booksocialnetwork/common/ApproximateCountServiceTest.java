@@ -0,0 +1,124 @@
+package com.booksocialnetwork.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApproximateCountServiceTest {
+
+    private ApproximateCountService approximateCountService;
+
+    @BeforeEach
+    public void setUp(){
+        approximateCountService=new ApproximateCountService();
+        ReflectionTestUtils.setField(approximateCountService,"maxEntries",10);
+        ReflectionTestUtils.setField(approximateCountService,"maxAge",Duration.ZERO);
+        ReflectionTestUtils.setField(approximateCountService,"idleTimeout",Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(approximateCountService,"refreshThreads",2);
+        approximateCountService.start();
+    }
+
+    @AfterEach
+    public void tearDown(){
+        approximateCountService.stop();
+    }
+
+    @Test
+    public void testCount_onlyCountsInApproximateMode(){
+        AtomicInteger calls=new AtomicInteger();
+
+        assertNull(approximateCountService.count(TotalsMode.NONE,"books",()->(long) calls.incrementAndGet()));
+
+        assertEquals(0,calls.get());
+    }
+
+    @Test
+    public void testCount_firstReadIsCountedOnTheSpot(){
+        AtomicInteger calls=new AtomicInteger();
+
+        assertEquals(7L,approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->{ calls.incrementAndGet(); return 7L; }));
+        assertEquals(7L,approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->{ calls.incrementAndGet(); return 8L; }));
+
+        assertEquals(1,calls.get());
+    }
+
+    @Test
+    public void testCount_stillAnswersWhenFull(){
+        ReflectionTestUtils.setField(approximateCountService,"maxEntries",1);
+        approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->1L);
+        AtomicInteger calls=new AtomicInteger();
+
+        assertEquals(1L,approximateCountService.count(TotalsMode.APPROXIMATE,"feedbacks",()->(long) calls.incrementAndGet()));
+        assertEquals(2L,approximateCountService.count(TotalsMode.APPROXIMATE,"feedbacks",()->(long) calls.incrementAndGet()));
+    }
+
+    @Test
+    public void testRefresh_recountsOnItsOwnThreads() throws InterruptedException {
+        AtomicInteger value=new AtomicInteger(1);
+        AtomicReference<String> refreshThread=new AtomicReference<>();
+        CountDownLatch refreshed=new CountDownLatch(1);
+        approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->{
+            if(value.get()>1){
+                refreshThread.set(Thread.currentThread().getName());
+                refreshed.countDown();
+            }
+            return (long) value.get();
+        });
+        value.set(5);
+
+        approximateCountService.refresh();
+
+        assertTrue(refreshed.await(5,TimeUnit.SECONDS));
+        assertTrue(refreshThread.get().startsWith("approximate-count-"));
+        long deadline=System.currentTimeMillis()+5000;
+        while(approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->0L)!=5L && System.currentTimeMillis()<deadline){
+            Thread.sleep(10);
+        }
+        assertEquals(5L,approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->0L));
+    }
+
+    @Test
+    public void testRefresh_slowCountDoesNotHoldUpTheSchedulerOrRunTwice() throws InterruptedException {
+        AtomicInteger calls=new AtomicInteger();
+        CountDownLatch release=new CountDownLatch(1);
+        approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->{
+            if(calls.incrementAndGet()>1){
+                try{
+                    release.await(5,TimeUnit.SECONDS);
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return 1L;
+        });
+
+        approximateCountService.refresh();
+        Thread.sleep(50);
+        approximateCountService.refresh();
+        release.countDown();
+
+        assertEquals(2,calls.get());
+    }
+
+    @Test
+    public void testRefresh_dropsIdleCounts() throws InterruptedException {
+        ReflectionTestUtils.setField(approximateCountService,"idleTimeout",Duration.ofMillis(1));
+        ReflectionTestUtils.setField(approximateCountService,"maxAge",Duration.ofMinutes(5));
+        approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->1L);
+        Thread.sleep(10);
+
+        approximateCountService.refresh();
+
+        assertEquals(2L,approximateCountService.count(TotalsMode.APPROXIMATE,"books",()->2L));
+    }
+
+}
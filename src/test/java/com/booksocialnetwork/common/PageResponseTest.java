@@ -0,0 +1,55 @@
+package com.booksocialnetwork.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageResponseTest {
+
+    @Test
+    public void testFromSlice_withoutTotals(){
+        SliceImpl<String> slice=new SliceImpl<>(List.of("a","b"),PageRequest.of(0,2),true);
+
+        PageResponse<String> response=PageResponse.fromSlice(slice.getContent(),slice,null);
+
+        assertEquals(List.of("a","b"),response.getContent());
+        assertNull(response.getTotalElements());
+        assertNull(response.getTotalPages());
+        assertFalse(response.isApproximateTotals());
+        assertTrue(response.isFirst());
+        assertFalse(response.isLast());
+        assertTrue(response.isHasNext());
+    }
+
+    @Test
+    public void testFromSlice_roundsApproximatePagesUp(){
+        SliceImpl<String> slice=new SliceImpl<>(List.of("c"),PageRequest.of(2,2),false);
+
+        PageResponse<String> response=PageResponse.fromSlice(slice.getContent(),slice,5L);
+
+        assertEquals(2,response.getNumber());
+        assertEquals(5L,response.getTotalElements());
+        assertEquals(3,response.getTotalPages().intValue());
+        assertTrue(response.isApproximateTotals());
+        assertTrue(response.isLast());
+        assertFalse(response.isHasNext());
+    }
+
+    @Test
+    public void testFromSlice_approximateTotalsLagBehindTheSlice(){
+        //a stale count can be smaller than what the slice already shows
+        SliceImpl<String> slice=new SliceImpl<>(List.of("a","b"),PageRequest.of(3,2),true);
+
+        PageResponse<String> response=PageResponse.fromSlice(slice.getContent(),slice,0L);
+
+        assertEquals(0L,response.getTotalElements());
+        assertEquals(0,response.getTotalPages().intValue());
+        assertTrue(response.isApproximateTotals());
+        assertTrue(response.isHasNext());
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.booksocialnetwork.configurations;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.holds.HoldService;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.services.BorrowEngine;
+import com.booksocialnetwork.services.LoanCounterService;
+import com.booksocialnetwork.support.JpaTestConfig;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.EnabledOnJre;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+//the pinning check always runs on java 21; the platform vs virtual comparison is opt in:
+//mvn test -Dtest=VirtualThreadExecutionTest -Dbenchmark=true
+//h2 in memory has no network hop and no pool to wait on, so this shows scheduling overhead and tail latency under a burst,
+//not the gain mysql round trips would give
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.show-sql=false"
+})
+@Import({BorrowEngine.class,HoldService.class,LoanCounterService.class,JpaTestConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Slf4j
+class VirtualThreadExecutionTest {
+
+    //tomcat's default server.tomcat.threads.max
+    private static final int PLATFORM_THREADS=200;
+    private static final int REQUESTS=2_000;
+
+    @Autowired
+    private BorrowEngine borrowEngine;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final Object lock=new Object();
+
+    @Test
+    @EnabledOnJre(JRE.JAVA_21)
+    public void testPinningMonitor_recordsBlockingInsideSynchronized() throws Exception {
+        SimpleMeterRegistry meterRegistry=new SimpleMeterRegistry();
+        VirtualThreadPinningMonitor monitor=new VirtualThreadPinningMonitor(meterRegistry);
+        ReflectionTestUtils.setField(monitor,"threshold",Duration.ofMillis(10));
+        ReflectionTestUtils.setField(monitor,"maxReportedSites",10);
+        monitor.start();
+        try{
+            Thread.ofVirtual().start(()->{
+                synchronized(lock){
+                    try{
+                        Thread.sleep(50);
+                    }catch(InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }).join();
+
+            //jfr streams events in batches, give it a few flushes
+            long deadline=System.nanoTime()+Duration.ofSeconds(10).toNanos();
+            while(meterRegistry.find(VirtualThreadPinningMonitor.PINNED_METRIC).timer()==null && System.nanoTime()<deadline){
+                Thread.sleep(100);
+            }
+            Timer pinned=meterRegistry.find(VirtualThreadPinningMonitor.PINNED_METRIC).tag("source","other").timer();
+            assertNotNull(pinned);
+            assertEquals(1,pinned.count());
+        }finally{
+            monitor.stop();
+        }
+    }
+
+    @Test
+    public void testSource_classifiesDriverAndMailFrames(){
+        assertEquals("jdbc",VirtualThreadPinningMonitor.source(List.of("com.mysql.cj.NativeSession.execSQL","com.booksocialnetwork.services.BookService.findAllBooks")));
+        assertEquals("smtp",VirtualThreadPinningMonitor.source(List.of("org.eclipse.angus.mail.smtp.SMTPTransport.sendMessage")));
+        assertEquals("other",VirtualThreadPinningMonitor.source(List.of("com.booksocialnetwork.holds.HoldIndex.add")));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark",matches = "true")
+    public void benchmarkListingAndBorrowUnderBurst(){
+        List<User> users=new ArrayList<>();
+        List<Book> books=new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status->{
+            for(int i=0;i<REQUESTS;i++){
+                users.add(persistUser(entityManager));
+            }
+            for(int i=0;i<REQUESTS*2;i++){
+                books.add(persistBook(entityManager,users.get(i%users.size()),"book "+i));
+            }
+        });
+        Pageable pageable=PageRequest.of(0,10,Sort.by("createdDate").descending());
+        IntConsumer listing=i->bookRepository.findAllDisplayableBooks(pageable,users.get(i%users.size()).getId());
+
+        compare("listing",listing,listing);
+        //each mode borrows its own untouched copies
+        compare("borrow",
+                i->borrowEngine.borrow(books.get(i),users.get(i)),
+                i->borrowEngine.borrow(books.get(REQUESTS+i),users.get(i)));
+    }
+
+    private void compare(String endpoint, IntConsumer platformRequest, IntConsumer virtualRequest){
+        //warm up both executors and the query plans before measuring
+        burst(()->Executors.newFixedThreadPool(PLATFORM_THREADS),i->bookRepository.findAllDisplayableBooks(PageRequest.of(0,10),0));
+        burst(Executors::newVirtualThreadPerTaskExecutor,i->bookRepository.findAllDisplayableBooks(PageRequest.of(0,10),0));
+        Result platform=burst(()->Executors.newFixedThreadPool(PLATFORM_THREADS),platformRequest);
+        Result virtual=burst(Executors::newVirtualThreadPerTaskExecutor,virtualRequest);
+        log.info("{} requests/s: platform {} virtual {} | p50 ms: platform {} virtual {} | p99 ms: platform {} virtual {}",
+                endpoint,
+                Math.round(platform.throughput()),Math.round(virtual.throughput()),
+                platform.percentile(50),virtual.percentile(50),
+                platform.percentile(99),virtual.percentile(99));
+    }
+
+    //every request is submitted at once, latency is measured from submission so time spent waiting for a thread counts
+    private Result burst(Supplier<ExecutorService> executorFactory, IntConsumer request){
+        long[] latencies=new long[REQUESTS];
+        long start=System.nanoTime();
+        try(ExecutorService executor=executorFactory.get()){
+            List<Future<?>> futures=new ArrayList<>(REQUESTS);
+            for(int i=0;i<REQUESTS;i++){
+                int index=i;
+                long submittedAt=System.nanoTime();
+                futures.add(executor.submit(()->{
+                    request.accept(index);
+                    latencies[index]=System.nanoTime()-submittedAt;
+                }));
+            }
+            for(Future<?> future:futures){
+                assertDoesNotThrow(()->future.get());
+            }
+        }
+        return new Result(REQUESTS/((System.nanoTime()-start)/1_000_000_000.0),latencies);
+    }
+
+    private record Result(double throughput, long[] latencies){
+
+        double percentile(int percentile){
+            long[] sorted=latencies.clone();
+            Arrays.sort(sorted);
+            int index=Math.min(sorted.length-1,(int) Math.ceil(percentile/100.0*sorted.length)-1);
+            return Math.round(sorted[Math.max(0,index)]/100_000.0)/10.0;
+        }
+    }
+
+}
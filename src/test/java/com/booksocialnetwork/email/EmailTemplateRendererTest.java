@@ -0,0 +1,81 @@
+package com.booksocialnetwork.email;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//the equivalence checks always run; the renders/s comparison with full thymeleaf processing is opt in:
+//mvn test -Dtest=EmailTemplateRendererTest -Dbenchmark=true
+@Slf4j
+class EmailTemplateRendererTest {
+
+    private EmailTemplateRenderer renderer;
+
+    //resolves classpath:templates/ the way spring boot's thymeleaf auto configuration does
+    static SpringTemplateEngine templateEngine(){
+        ClassLoaderTemplateResolver templateResolver=new ClassLoaderTemplateResolver();
+        templateResolver.setPrefix("templates/");
+        templateResolver.setSuffix(".html");
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateResolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine templateEngine=new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        return templateEngine;
+    }
+
+    @BeforeEach
+    public void setUp(){
+        renderer=new EmailTemplateRenderer(templateEngine());
+        renderer.compileAll();
+    }
+
+    @Test
+    public void testEveryTemplate_isPrecompiled(){
+        for(EmailTemplateName template:EmailTemplateName.values()){
+            assertTrue(renderer.isPrecompiled(template),template.getName());
+        }
+    }
+
+    @Test
+    public void testRender_matchesThymeleafAndEscapesValues(){
+        EmailVariables variables=new EmailVariables("<b>arpit</b> & \"co\"","http://localhost:4200/activate-account?x=1&y=2","123456");
+
+        String html=renderer.render(EmailTemplateName.ACTIVATE_ACCOUNT,variables);
+
+        assertEquals(renderer.process(EmailTemplateName.ACTIVATE_ACCOUNT,variables),html);
+        assertTrue(html.contains("123456"));
+        assertFalse(html.contains("<b>arpit</b>"));
+        assertTrue(html.contains("&lt;b&gt;arpit&lt;/b&gt; &amp;"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark",matches = "true")
+    public void benchmarkRendersPerSecond(){
+        int renders=50_000;
+        IntFunction<EmailVariables> variables=i->new EmailVariables("reader "+i,"http://localhost:4200/activate-account",String.format("%06d",i));
+        run(renders,i->renderer.process(EmailTemplateName.ACTIVATE_ACCOUNT,variables.apply(i)));
+        run(renders,i->renderer.render(EmailTemplateName.ACTIVATE_ACCOUNT,variables.apply(i)));
+        double before=run(renders,i->renderer.process(EmailTemplateName.ACTIVATE_ACCOUNT,variables.apply(i)));
+        double after=run(renders,i->renderer.render(EmailTemplateName.ACTIVATE_ACCOUNT,variables.apply(i)));
+        log.info("activate_account renders/s: thymeleaf {} precompiled {} ({}x)",Math.round(before),Math.round(after),Math.round(after/before*10)/10.0);
+    }
+
+    private static double run(int renders, IntFunction<String> render){
+        long length=0;
+        long start=System.nanoTime();
+        for(int i=0;i<renders;i++){
+            length+=render.apply(i).length();
+        }
+        assertTrue(length>0);
+        return renders/((System.nanoTime()-start)/1_000_000_000.0);
+    }
+
+}
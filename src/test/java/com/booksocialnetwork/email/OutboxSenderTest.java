@@ -0,0 +1,144 @@
+package com.booksocialnetwork.email;
+
+import com.booksocialnetwork.entities.EmailOutboxMessage;
+import com.booksocialnetwork.entities.OutboxStatus;
+import com.booksocialnetwork.repositories.EmailOutboxRepository;
+import com.booksocialnetwork.support.JpaTestConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//the outbox is drained into an in-process smtp server, so connection reuse and per-recipient rejections are real
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.show-sql=false",
+        "application.mailing.outbox.poll-interval=PT1H",
+        "application.mailing.outbox.purge-cron=-",
+        "application.mailing.outbox.max-attempts=2",
+        "application.mailing.outbox.initial-backoff=PT1M"
+})
+@Import({EmailService.class,EmailTemplateRenderer.class,OutboxSender.class,JpaTestConfig.class,OutboxSenderTest.MailConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxSenderTest {
+
+    private static final SmtpStandIn SMTP=new SmtpStandIn();
+
+    @TestConfiguration
+    static class MailConfig{
+        @Bean
+        public JavaMailSender javaMailSender(){
+            JavaMailSenderImpl mailSender=new JavaMailSenderImpl();
+            mailSender.setHost("localhost");
+            mailSender.setPort(SMTP.getPort());
+            return mailSender;
+        }
+
+        @Bean
+        public SpringTemplateEngine templateEngine(){
+            return EmailTemplateRendererTest.templateEngine();
+        }
+
+        @Bean
+        public MeterRegistry meterRegistry(){
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private OutboxSender outboxSender;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterAll
+    public static void stopSmtp() throws IOException {
+        SMTP.close();
+    }
+
+    @BeforeEach
+    public void setUp(){
+        emailOutboxRepository.deleteAll();
+    }
+
+    private void queue(String to){
+        emailService.queueEmail(to,"reader",EmailTemplateName.ACTIVATE_ACCOUNT,"http://localhost/activate","123456","Account activation");
+    }
+
+    private Map<String,EmailOutboxMessage> outbox(){
+        return emailOutboxRepository.findAll().stream().collect(Collectors.toMap(EmailOutboxMessage::getRecipient,Function.identity()));
+    }
+
+    @Test
+    public void testDrain_deliversBatchOverOneConnection(){
+        for(int i=0;i<5;i++){
+            queue("reader"+i+"@mail.com");
+        }
+        int connections=SMTP.getConnections();
+        int deliveries=SMTP.getDeliveries().size();
+
+        outboxSender.drain();
+
+        assertEquals(connections+1,SMTP.getConnections());
+        assertEquals(deliveries+5,SMTP.getDeliveries().size());
+        assertTrue(SMTP.getDeliveries().get(deliveries).data().contains("123456"));
+        assertTrue(outbox().values().stream().allMatch(message->message.getStatus()==OutboxStatus.SENT && message.getAttempts()==1));
+        assertEquals(0,emailOutboxRepository.countByStatus(OutboxStatus.PENDING));
+    }
+
+    @Test
+    public void testDrain_retriesWithBackoffThenDeadLetters(){
+        SMTP.reject("bounce@mail.com");
+        queue("bounce@mail.com");
+        queue("fine@mail.com");
+        double dead=meterRegistry.counter("mail.outbox.dead").count();
+
+        outboxSender.drain();
+
+        EmailOutboxMessage bounced=outbox().get("bounce@mail.com");
+        assertEquals(OutboxStatus.SENT,outbox().get("fine@mail.com").getStatus());
+        assertEquals(OutboxStatus.PENDING,bounced.getStatus());
+        assertEquals(1,bounced.getAttempts());
+        assertTrue(bounced.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(30)));
+        assertNotNull(bounced.getLastError());
+
+        //not due yet, a second drain leaves it alone
+        outboxSender.drain();
+        assertEquals(1,outbox().get("bounce@mail.com").getAttempts());
+
+        bounced.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        emailOutboxRepository.save(bounced);
+        outboxSender.drain();
+
+        bounced=outbox().get("bounce@mail.com");
+        assertEquals(OutboxStatus.DEAD,bounced.getStatus());
+        assertEquals(2,bounced.getAttempts());
+        assertEquals(dead+1,meterRegistry.counter("mail.outbox.dead").count());
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.booksocialnetwork.email;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//stands in for an smtp server: plain text, no auth, just enough of rfc 5321 for javamail; counts connections so
+//tests can tell whether a batch shared one
+public class SmtpStandIn implements AutoCloseable {
+
+    public record Delivery(List<String> recipients, String data){
+    }
+
+    private final ServerSocket serverSocket;
+    private final AtomicInteger connections=new AtomicInteger();
+    private final List<Delivery> deliveries=new CopyOnWriteArrayList<>();
+    private final Set<String> rejectedRecipients=ConcurrentHashMap.newKeySet();
+
+    public SmtpStandIn(){
+        try{
+            serverSocket=new ServerSocket(0,50,InetAddress.getLoopbackAddress());
+        }catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        Thread acceptor=new Thread(this::accept,"smtp-stand-in");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort(){
+        return serverSocket.getLocalPort();
+    }
+
+    public int getConnections(){
+        return connections.get();
+    }
+
+    public List<Delivery> getDeliveries(){
+        return deliveries;
+    }
+
+    //RCPT TO for this address is answered with a permanent 550
+    public void reject(String recipient){
+        rejectedRecipients.add(recipient.toLowerCase(Locale.ROOT));
+    }
+
+    private void accept(){
+        while(!serverSocket.isClosed()){
+            try{
+                Socket socket=serverSocket.accept();
+                connections.incrementAndGet();
+                Thread session=new Thread(()->serve(socket),"smtp-stand-in-session");
+                session.setDaemon(true);
+                session.start();
+            }catch(IOException e){
+                //closed
+            }
+        }
+    }
+
+    private void serve(Socket socket){
+        try(socket;
+            BufferedReader in=new BufferedReader(new InputStreamReader(socket.getInputStream(),StandardCharsets.US_ASCII));
+            PrintWriter out=new PrintWriter(socket.getOutputStream(),true,StandardCharsets.US_ASCII)){
+            reply(out,"220 localhost stand-in ready");
+            List<String> recipients=new ArrayList<>();
+            String line;
+            while((line=in.readLine())!=null){
+                String command=line.toUpperCase(Locale.ROOT);
+                if(command.startsWith("EHLO") || command.startsWith("HELO")){
+                    reply(out,"250 localhost");
+                }else if(command.startsWith("MAIL FROM:") || command.startsWith("RSET")){
+                    recipients.clear();
+                    reply(out,"250 OK");
+                }else if(command.startsWith("RCPT TO:")){
+                    String recipient=line.substring(line.indexOf('<')+1,line.lastIndexOf('>')).toLowerCase(Locale.ROOT);
+                    if(rejectedRecipients.contains(recipient)){
+                        reply(out,"550 No such user");
+                    }else{
+                        recipients.add(recipient);
+                        reply(out,"250 OK");
+                    }
+                }else if(command.startsWith("DATA")){
+                    reply(out,"354 End data with <CR><LF>.<CR><LF>");
+                    StringBuilder data=new StringBuilder();
+                    while((line=in.readLine())!=null && !line.equals(".")){
+                        data.append(line).append("\n");
+                    }
+                    deliveries.add(new Delivery(List.copyOf(recipients),data.toString()));
+                    recipients.clear();
+                    reply(out,"250 OK queued");
+                }else if(command.startsWith("NOOP")){
+                    reply(out,"250 OK");
+                }else if(command.startsWith("QUIT")){
+                    reply(out,"221 Bye");
+                    return;
+                }else{
+                    reply(out,"502 Command not implemented");
+                }
+            }
+        }catch(IOException e){
+            //client went away
+        }
+    }
+
+    private void reply(PrintWriter out, String line){
+        out.print(line+"\r\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+}
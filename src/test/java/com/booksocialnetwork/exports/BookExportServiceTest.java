@@ -0,0 +1,174 @@
+package com.booksocialnetwork.exports;
+
+import com.booksocialnetwork.common.DataFormat;
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.entities.history.ArchivedBookTransactionHistory;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.booksocialnetwork.support.JpaTestConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "application.export.flush-interval=2"
+})
+@Import({BookExportService.class,JpaTestConfig.class,BookExportServiceTest.ExportConfig.class})
+class BookExportServiceTest {
+
+    @TestConfiguration
+    static class ExportConfig{
+
+        @Bean
+        public ObjectMapper objectMapper(){
+            return JsonMapper.builder()
+                    .findAndAddModules()
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                    .build();
+        }
+    }
+
+    @Autowired
+    private BookExportService bookExportService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Authentication owner;
+
+    private Authentication reader;
+
+    private Book archivedLoanBook;
+
+    private User readerUser;
+
+    @BeforeEach
+    public void setUp(){
+        User ownerUser=persistUser(entityManager,"owner@mail.com");
+        readerUser=persistUser(entityManager,"reader@mail.com");
+        Book first=persistBook(entityManager,ownerUser,"Dune, the novel");
+        archivedLoanBook=persistBook(entityManager,ownerUser,"Emma");
+        persistBook(entityManager,ownerUser,"He said \"yes\"");
+        Book other=persistBook(entityManager,readerUser,"Ulysses");
+        persistHistory(first,readerUser);
+        persistHistory(other,ownerUser);
+        entityManager.flush();
+        entityManager.clear();
+        owner=new UsernamePasswordAuthenticationToken(AuthenticatedUser.of(ownerUser),null,List.of());
+        reader=new UsernamePasswordAuthenticationToken(AuthenticatedUser.of(readerUser),null,List.of());
+    }
+
+    private void persistHistory(Book book, User user){
+        entityManager.persist(BookTransactionHistory.builder()
+                .book(book)
+                .user(user)
+                .returned(false)
+                .returnApproved(false)
+                .build());
+    }
+
+    private void persistArchivedHistory(Book book, User user){
+        entityManager.persist(ArchivedBookTransactionHistory.builder()
+                .id(1000)
+                .bookId(book.getId())
+                .userId(user.getId())
+                .returned(true)
+                .returnApproved(true)
+                .createdDate(LocalDateTime.now().minusYears(2))
+                .lastModifiedDate(LocalDateTime.now().minusYears(2))
+                .archivedAt(LocalDateTime.now())
+                .build());
+    }
+
+    private static List<String> lines(MockHttpServletResponse response) throws IOException {
+        return response.getContentAsString().lines().toList();
+    }
+
+    @Test
+    public void testExportOwnerBooks_csv() throws IOException {
+        MockHttpServletResponse response=new MockHttpServletResponse();
+
+        bookExportService.exportOwnerBooks(DataFormat.CSV,response,owner);
+
+        List<String> lines=lines(response);
+        assertEquals(String.join(",",BookExportRow.COLUMNS),lines.get(0));
+        assertEquals(4,lines.size());
+        assertTrue(lines.get(1).contains(",\"Dune, the novel\","));
+        assertTrue(lines.get(3).contains(",\"He said \"\"yes\"\"\","));
+        assertEquals("text/csv;charset=UTF-8",response.getContentType());
+        assertTrue(response.getHeader("Content-Disposition").contains("books.csv"));
+    }
+
+    @Test
+    public void testExportOwnerBooks_ndjson() throws IOException {
+        MockHttpServletResponse response=new MockHttpServletResponse();
+
+        bookExportService.exportOwnerBooks(DataFormat.NDJSON,response,owner);
+
+        List<String> lines=lines(response);
+        assertEquals(3,lines.size());
+        JsonNode first=objectMapper.readTree(lines.get(0));
+        assertEquals("Dune, the novel",first.get("title").asText());
+        assertEquals(0.0,first.get("rate").asDouble());
+    }
+
+    @Test
+    public void testExportTransactionHistory_coversBothSidesOfTheLoan() throws IOException {
+        MockHttpServletResponse ownerResponse=new MockHttpServletResponse();
+        MockHttpServletResponse readerResponse=new MockHttpServletResponse();
+
+        bookExportService.exportTransactionHistory(DataFormat.NDJSON,ownerResponse,owner);
+        bookExportService.exportTransactionHistory(DataFormat.NDJSON,readerResponse,reader);
+
+        assertEquals(2,lines(ownerResponse).size());
+        assertEquals(2,lines(readerResponse).size());
+    }
+
+    @Test
+    public void testExportTransactionHistory_includesArchivedLoans() throws IOException {
+        persistArchivedHistory(archivedLoanBook,readerUser);
+        entityManager.flush();
+        entityManager.clear();
+        MockHttpServletResponse ownerResponse=new MockHttpServletResponse();
+        MockHttpServletResponse readerResponse=new MockHttpServletResponse();
+
+        bookExportService.exportTransactionHistory(DataFormat.CSV,ownerResponse,owner);
+        bookExportService.exportTransactionHistory(DataFormat.NDJSON,readerResponse,reader);
+
+        List<String> ownerLines=lines(ownerResponse);
+        assertEquals(4,ownerLines.size());
+        assertEquals(String.join(",",HistoryExportRow.COLUMNS),ownerLines.get(0));
+        List<String> readerLines=lines(readerResponse);
+        assertEquals(3,readerLines.size());
+        JsonNode archived=objectMapper.readTree(readerLines.get(0));
+        assertEquals(1000,archived.get("id").asInt());
+        assertEquals("Emma",archived.get("title").asText());
+        assertEquals(readerUser.getId().intValue(),archived.get("borrowerId").asInt());
+    }
+
+}
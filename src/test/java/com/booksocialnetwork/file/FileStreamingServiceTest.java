@@ -0,0 +1,170 @@
+package com.booksocialnetwork.file;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStreamingServiceTest {
+
+    private static final String CONTENT="0123456789";
+
+    private final FileStreamingService fileStreamingService=new FileStreamingService();
+
+    @TempDir
+    private Path directory;
+
+    private Path file;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file=Files.writeString(directory.resolve("cover.jpg"),CONTENT,StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testStream_wholeFile() throws IOException {
+        MockHttpServletResponse response=stream(get());
+
+        assertEquals(200,response.getStatus());
+        assertEquals(CONTENT,response.getContentAsString());
+        assertEquals(10,response.getContentLength());
+        assertEquals("bytes",response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("image/jpeg",response.getContentType());
+        assertNotNull(response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    public void testStream_singleRange() throws IOException {
+        MockHttpServletRequest request=get();
+        request.addHeader(HttpHeaders.RANGE,"bytes=2-5");
+
+        MockHttpServletResponse response=stream(request);
+
+        assertEquals(206,response.getStatus());
+        assertEquals("bytes 2-5/10",response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4,response.getContentLength());
+        assertEquals("2345",response.getContentAsString());
+    }
+
+    @Test
+    public void testStream_suffixRange() throws IOException {
+        MockHttpServletRequest request=get();
+        request.addHeader(HttpHeaders.RANGE,"bytes=-3");
+
+        MockHttpServletResponse response=stream(request);
+
+        assertEquals(206,response.getStatus());
+        assertEquals("bytes 7-9/10",response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789",response.getContentAsString());
+    }
+
+    @Test
+    public void testStream_rangePastTheEndIsNotSatisfiable() throws IOException {
+        MockHttpServletRequest request=get();
+        request.addHeader(HttpHeaders.RANGE,"bytes=10-20");
+
+        MockHttpServletResponse response=stream(request);
+
+        assertEquals(416,response.getStatus());
+        assertEquals("bytes */10",response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("",response.getContentAsString());
+    }
+
+    @Test
+    public void testStream_severalRangesFallBackToTheWholeFile() throws IOException {
+        MockHttpServletRequest request=get();
+        request.addHeader(HttpHeaders.RANGE,"bytes=0-1,4-5");
+
+        MockHttpServletResponse response=stream(request);
+
+        assertEquals(200,response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(CONTENT,response.getContentAsString());
+    }
+
+    @Test
+    public void testStream_matchingIfNoneMatchIsNotModified() throws IOException {
+        String eTag=stream(get()).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request=get();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH,eTag);
+
+        MockHttpServletResponse response=stream(request);
+
+        assertEquals(304,response.getStatus());
+        assertEquals(0,response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testStream_staleIfNoneMatchSendsTheFile() throws IOException {
+        MockHttpServletRequest request=get();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH,"\"stale\"");
+
+        MockHttpServletResponse response=stream(request);
+
+        assertEquals(200,response.getStatus());
+        assertEquals(CONTENT,response.getContentAsString());
+    }
+
+    @Test
+    public void testStream_ifRangeOnlyHonouredWhileTheETagMatches() throws IOException {
+        String eTag=stream(get()).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest current=get();
+        current.addHeader(HttpHeaders.RANGE,"bytes=0-1");
+        current.addHeader(HttpHeaders.IF_RANGE,eTag);
+        MockHttpServletRequest stale=get();
+        stale.addHeader(HttpHeaders.RANGE,"bytes=0-1");
+        stale.addHeader(HttpHeaders.IF_RANGE,"\"stale\"");
+
+        MockHttpServletResponse partial=stream(current);
+        MockHttpServletResponse whole=stream(stale);
+
+        assertEquals(206,partial.getStatus());
+        assertEquals("01",partial.getContentAsString());
+        assertEquals(200,whole.getStatus());
+        assertEquals(CONTENT,whole.getContentAsString());
+    }
+
+    @Test
+    public void testStream_handsTheRangeToSendfileWhenTheConnectorSupportsIt() throws IOException {
+        MockHttpServletRequest request=get();
+        request.setAttribute("org.apache.tomcat.sendfile.support",true);
+        request.addHeader(HttpHeaders.RANGE,"bytes=2-5");
+
+        MockHttpServletResponse response=stream(request);
+
+        assertEquals(206,response.getStatus());
+        assertEquals(file.toAbsolutePath().toString(),request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(2L,request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(6L,request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals(0,response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void testStream_missingFile() throws IOException {
+        MockHttpServletResponse response=new MockHttpServletResponse();
+
+        fileStreamingService.stream(directory.resolve("missing.jpg"),get(),response);
+
+        assertEquals(404,response.getStatus());
+    }
+
+    private MockHttpServletRequest get(){
+        return new MockHttpServletRequest("GET","/books/1/cover");
+    }
+
+    private MockHttpServletResponse stream(MockHttpServletRequest request) throws IOException {
+        MockHttpServletResponse response=new MockHttpServletResponse();
+        fileStreamingService.stream(file,request,response);
+        return response;
+    }
+
+}
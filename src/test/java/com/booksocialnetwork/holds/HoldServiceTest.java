@@ -0,0 +1,201 @@
+package com.booksocialnetwork.holds;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.BookHold;
+import com.booksocialnetwork.entities.HoldStatus;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.repositories.BookHoldRepository;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.booksocialnetwork.services.BorrowEngine;
+import com.booksocialnetwork.services.LoanCounterService;
+import com.booksocialnetwork.support.JpaTestConfig;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "application.holds.claim-window=PT48H",
+        "application.holds.expiry-batch-size=100"
+})
+@Import({HoldService.class,BorrowEngine.class,LoanCounterService.class,JpaTestConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class HoldServiceTest {
+
+    @Autowired
+    private HoldService holdService;
+
+    @Autowired
+    private BorrowEngine borrowEngine;
+
+    @Autowired
+    private BookHoldRepository bookHoldRepository;
+
+    @Autowired
+    private BookTransactionHistoryRepository bookTransactionHistoryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Book book;
+
+    private User owner;
+
+    private User first;
+
+    private User second;
+
+    @BeforeEach
+    public void setUp(){
+        transactionTemplate.executeWithoutResult(status->{
+            owner=persistUser(entityManager);
+            first=persistUser(entityManager);
+            second=persistUser(entityManager);
+            book=persistBook(entityManager,owner,"hot book");
+        });
+    }
+
+    @Test
+    public void testHoldOnFreeBook_isReadyAtOnce(){
+        HoldResponse hold=holdService.enqueue(book.getId(),auth(first));
+
+        assertEquals(HoldStatus.READY,hold.getStatus());
+        assertNotNull(hold.getExpiresAt());
+        assertThrows(OperationNotPermittedException.class,()->borrowEngine.borrow(book,second));
+        assertNotNull(borrowEngine.borrow(book,first).getId());
+        assertEquals(HoldStatus.CLAIMED,bookHoldRepository.findById(hold.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    public void testApprovedReturn_promotesHighestPriority(){
+        BookTransactionHistory loan=borrowEngine.borrow(book,persistUserInTransaction());
+        HoldResponse firstHold=holdService.enqueue(book.getId(),auth(first));
+        HoldResponse secondHold=holdService.enqueue(book.getId(),auth(second));
+
+        assertEquals(1,firstHold.getPosition());
+        assertEquals(2,secondHold.getPosition());
+        assertThrows(OperationNotPermittedException.class,()->holdService.enqueue(book.getId(),auth(first)));
+
+        holdService.changePriority(secondHold.getId(),5,auth(owner));
+        approve(loan);
+
+        assertEquals(HoldStatus.READY,status(secondHold));
+        assertEquals(HoldStatus.WAITING,status(firstHold));
+        assertThrows(OperationNotPermittedException.class,()->borrowEngine.borrow(book,first));
+    }
+
+    @Test
+    public void testUnclaimedHold_expiresToTheNextReader(){
+        BookTransactionHistory loan=borrowEngine.borrow(book,persistUserInTransaction());
+        HoldResponse firstHold=holdService.enqueue(book.getId(),auth(first));
+        HoldResponse secondHold=holdService.enqueue(book.getId(),auth(second));
+        approve(loan);
+
+        transactionTemplate.executeWithoutResult(status->entityManager.find(BookHold.class,firstHold.getId()).setExpiresAt(LocalDateTime.now().minusMinutes(1)));
+        holdService.expire();
+
+        assertEquals(HoldStatus.EXPIRED,status(firstHold));
+        assertEquals(HoldStatus.READY,status(secondHold));
+    }
+
+    @Test
+    public void testCancelReadyHold_promotesTheNextReader(){
+        HoldResponse firstHold=holdService.enqueue(book.getId(),auth(first));
+        HoldResponse secondHold=holdService.enqueue(book.getId(),auth(second));
+
+        holdService.cancel(firstHold.getId(),auth(first));
+
+        assertEquals(HoldStatus.CANCELLED,status(firstHold));
+        assertEquals(HoldStatus.READY,status(secondHold));
+        assertTrue(holdService.findLiveHolds(auth(first)).isEmpty());
+    }
+
+    @Test
+    public void testApprovalWithReservationInPlace_commitsAndKeepsTheQueue(){
+        BookTransactionHistory loan=borrowEngine.borrow(book,persistUserInTransaction());
+        HoldResponse secondHold=holdService.enqueue(book.getId(),auth(second));
+        //a reservation that got in ahead of the approval, as a node with a stale index could promote it
+        Integer readyHoldId=transactionTemplate.execute(status->{
+            BookHold ready=BookHold.builder()
+                    .book(entityManager.getReference(Book.class,book.getId()))
+                    .user(entityManager.getReference(User.class,first.getId()))
+                    .status(HoldStatus.READY)
+                    .liveKey(BookHold.liveKey(book.getId(),first.getId()))
+                    .readyBookId(book.getId())
+                    .readyAt(LocalDateTime.now())
+                    .expiresAt(LocalDateTime.now().plusHours(1))
+                    .build();
+            entityManager.persist(ready);
+            return ready.getId();
+        });
+
+        assertDoesNotThrow(()->transactionTemplate.executeWithoutResult(status->approve(loan)));
+
+        assertTrue(bookTransactionHistoryRepository.findById(loan.getId()).orElseThrow().getReturnApproved());
+        assertEquals(HoldStatus.WAITING,status(secondHold));
+
+        holdService.cancel(readyHoldId,auth(first));
+
+        assertEquals(HoldStatus.READY,status(secondHold));
+    }
+
+    @Test
+    public void testRolledBackApproval_leavesTheHoldQueued(){
+        BookTransactionHistory loan=borrowEngine.borrow(book,persistUserInTransaction());
+        HoldResponse firstHold=holdService.enqueue(book.getId(),auth(first));
+
+        transactionTemplate.executeWithoutResult(status->{
+            approve(loan);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(HoldStatus.WAITING,status(firstHold));
+
+        approve(bookTransactionHistoryRepository.findById(loan.getId()).orElseThrow());
+
+        assertEquals(HoldStatus.READY,status(firstHold));
+    }
+
+    private void approve(BookTransactionHistory loan){
+        loan.setReturned(true);
+        loan.setReturnApproved(true);
+        borrowEngine.release(loan);
+        bookTransactionHistoryRepository.save(loan);
+    }
+
+    private HoldStatus status(HoldResponse hold){
+        return bookHoldRepository.findById(hold.getId()).orElseThrow().getStatus();
+    }
+
+    private Authentication auth(User user){
+        Authentication authentication=mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(user));
+        return authentication;
+    }
+
+    private User persistUserInTransaction(){
+        return transactionTemplate.execute(status->persistUser(entityManager));
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.booksocialnetwork.imports;
+
+import com.booksocialnetwork.common.DataFormat;
+import com.booksocialnetwork.configurations.ApplicationAuditAware;
+import com.booksocialnetwork.entities.BookImportJob;
+import com.booksocialnetwork.entities.BookImportStatus;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.repositories.BookImportJobRepository;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.booksocialnetwork.services.BookMapper;
+import com.booksocialnetwork.services.BookSpecification;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//batches must really commit for resume to mean anything, so the test runs outside the usual rollback transaction
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "application.import.batch-size=2",
+        //every running job counts as stale, so a resume can take over an upload that is still going
+        "application.import.stale-after=-PT1S"
+})
+@Import({BookImportService.class,BookMapper.class,BookImportServiceTest.ImportConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BookImportServiceTest {
+
+    @TestConfiguration
+    static class ImportConfig{
+
+        @Bean
+        public AuditorAware<Integer> auditorAware(){
+            return new ApplicationAuditAware();
+        }
+
+        @Bean
+        public LocalValidatorFactoryBean validator(){
+            return new LocalValidatorFactoryBean();
+        }
+
+        @Bean
+        public ObjectMapper objectMapper(){
+            return new ObjectMapper();
+        }
+    }
+
+    private static final String HEADER="title,authorName,isbn,synopsis,shareable\n";
+    private static final List<String> ROWS=List.of(
+            "Dune,Frank Herbert,111,\"Spice, sand and worms\",true\n",
+            "\"Multi\nline\",Some Author,222,synopsis,false\n",
+            ",Missing Title,333,synopsis,true\n",
+            "Emma,Jane Austen,444,synopsis,\n",
+            "Ulysses,James Joyce,555,\"He said \"\"yes\"\"\",true\n"
+    );
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookImportJobRepository bookImportJobRepository;
+
+    private User owner;
+
+    private Authentication authentication;
+
+    @BeforeEach
+    public void setUp(){
+        owner=userRepository.save(User.builder()
+                .firstname("first")
+                .lastname("last")
+                .email(UUID.randomUUID()+"@mail.com")
+                .enabled(true)
+                .accountLocked(false)
+                .createdDate(LocalDateTime.now())
+                .build());
+        authentication=new UsernamePasswordAuthenticationToken(AuthenticatedUser.of(owner),null,List.of());
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+    @AfterEach
+    public void tearDown(){
+        SecurityContextHolder.clearContext();
+    }
+
+    private static InputStream body(List<String> rows){
+        return new ByteArrayInputStream((HEADER+String.join("",rows)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    //the connection drops once the first rows went through
+    private static InputStream brokenBody(List<String> rows){
+        InputStream broken=new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        return new SequenceInputStream(body(rows),broken);
+    }
+
+    //a resume request takes the running job over once the first batch is committed, then the rest of the body arrives
+    private InputStream takenOverBody(List<BookImportResponse> takeovers){
+        InputStream rest=new InputStream() {
+            private InputStream remaining;
+
+            @Override
+            public int read() throws IOException {
+                if(remaining==null){
+                    Integer jobId=bookImportJobRepository.findAll().stream()
+                            .filter(job->owner.getId().equals(job.getCreatedBy()))
+                            .map(BookImportJob::getId)
+                            .findFirst()
+                            .orElseThrow();
+                    takeovers.add(bookImportService.importBooks(body(ROWS),DataFormat.CSV,jobId,authentication));
+                    remaining=new ByteArrayInputStream(String.join("",ROWS.subList(3,5)).getBytes(StandardCharsets.UTF_8));
+                }
+                return remaining.read();
+            }
+        };
+        return new SequenceInputStream(body(ROWS.subList(0,3)),rest);
+    }
+
+    private long ownedBooks(){
+        return bookRepository.count(BookSpecification.withOwnerId(owner.getId()));
+    }
+
+    @Test
+    public void testImport_insertsValidRowsAndReportsTheOthers() throws IOException {
+        BookImportResponse response=bookImportService.importBooks(body(ROWS),DataFormat.CSV,null,authentication);
+
+        assertEquals(BookImportStatus.COMPLETED,response.getStatus());
+        assertEquals(5,response.getProcessedRows());
+        assertEquals(4,response.getImportedRows());
+        assertEquals(1,response.getFailedRows());
+        assertEquals(List.of(new BookImportRowError(3,"title: 100")),response.getErrors());
+        assertEquals(4,ownedBooks());
+    }
+
+    @Test
+    public void testImport_ndjson() throws IOException {
+        String body="""
+                {"title":"Dune","authorName":"Frank Herbert","isbn":"111","synopsis":"spice","shareable":true}
+                {"title":"Emma",
+                {"title":"Ulysses","authorName":"James Joyce","isbn":"555","synopsis":"dublin"}
+                """;
+        BookImportResponse response=bookImportService.importBooks(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),DataFormat.NDJSON,null,authentication);
+
+        assertEquals(BookImportStatus.COMPLETED,response.getStatus());
+        assertEquals(2,response.getImportedRows());
+        assertEquals(2,response.getErrors().get(0).rowNumber());
+        assertEquals(2,ownedBooks());
+    }
+
+    @Test
+    public void testResume_continuesAfterTheLastCommittedBatch() throws IOException {
+        BookImportResponse failed=bookImportService.importBooks(brokenBody(ROWS.subList(0,3)),DataFormat.CSV,null,authentication);
+
+        assertEquals(BookImportStatus.FAILED,failed.getStatus());
+        assertEquals(2,failed.getProcessedRows());
+        assertEquals(2,ownedBooks());
+
+        BookImportResponse resumed=bookImportService.importBooks(body(ROWS),DataFormat.CSV,failed.getJobId(),authentication);
+
+        assertEquals(BookImportStatus.COMPLETED,resumed.getStatus());
+        assertEquals(5,resumed.getProcessedRows());
+        assertEquals(4,resumed.getImportedRows());
+        assertEquals(4,ownedBooks());
+    }
+
+    @Test
+    public void testResume_rejectsADifferentBody() throws IOException {
+        BookImportResponse failed=bookImportService.importBooks(brokenBody(ROWS.subList(0,3)),DataFormat.CSV,null,authentication);
+
+        List<String> otherRows=List.of(ROWS.get(1),ROWS.get(0),ROWS.get(2));
+        assertThrows(OperationNotPermittedException.class,()->bookImportService.importBooks(body(otherRows),DataFormat.CSV,failed.getJobId(),authentication));
+        assertEquals(2,ownedBooks());
+    }
+
+    @Test
+    public void testResume_takeoverStopsTheOriginalUpload() throws IOException {
+        List<BookImportResponse> takeovers=new ArrayList<>();
+
+        assertThrows(OperationNotPermittedException.class,()->bookImportService.importBooks(takenOverBody(takeovers),DataFormat.CSV,null,authentication));
+
+        assertEquals(1,takeovers.size());
+        assertEquals(BookImportStatus.COMPLETED,takeovers.get(0).getStatus());
+        assertEquals(5,takeovers.get(0).getProcessedRows());
+        assertEquals(4,takeovers.get(0).getImportedRows());
+        assertEquals(BookImportStatus.COMPLETED,bookImportJobRepository.findById(takeovers.get(0).getJobId()).orElseThrow().getStatus());
+        assertEquals(4,ownedBooks());
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.booksocialnetwork.repositories;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.services.BookListingView;
+import com.booksocialnetwork.services.BorrowedBookView;
+import com.booksocialnetwork.support.JpaTestConfig;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.*;
+
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+//listings must come back in one select (plus the count for a Page), no matter how many owners the page touches
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(JpaTestConfig.class)
+public class BookListingQueryTest {
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookTransactionHistoryRepository bookTransactionHistoryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private User reader;
+
+    private final Pageable pageable=PageRequest.of(0,2, Sort.by("createdDate").descending());
+
+    @BeforeEach
+    public void setUp(){
+        reader=persistUser(entityManager,"reader@mail.com");
+        for(int i=0;i<4;i++){
+            User owner=persistUser(entityManager,"owner"+i+"@mail.com");
+            Book book=persistBook(entityManager,owner,"book "+i);
+            entityManager.persist(BookTransactionHistory.builder()
+                    .book(book)
+                    .user(reader)
+                    .returned(false)
+                    .returnApproved(false)
+                    .build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics=entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testDisplayableBooksPage_issuesPageAndCountOnly(){
+        Page<BookListingView> books=bookRepository.findAllDisplayableBooks(pageable,reader.getId());
+
+        assertEquals(2,books.getContent().size());
+        assertEquals(4,books.getTotalElements());
+        assertNotNull(books.getContent().get(0).ownerFirstname());
+        assertEquals(2,statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testDisplayableBooksSlice_issuesSingleStatement(){
+        Slice<BookListingView> books=bookRepository.findDisplayableBooksSlice(pageable,reader.getId());
+
+        assertEquals(2,books.getContent().size());
+        assertTrue(books.hasNext());
+        assertEquals(1,statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testBorrowedBooksPage_issuesPageAndCountOnly(){
+        Page<BorrowedBookView> books=bookTransactionHistoryRepository.findAllBorrowedBooks(pageable,reader.getId());
+
+        assertEquals(2,books.getContent().size());
+        assertEquals(4,books.getTotalElements());
+        assertNotNull(books.getContent().get(0).title());
+        assertEquals(2,statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testBorrowedBooksSlice_issuesSingleStatement(){
+        Slice<BorrowedBookView> books=bookTransactionHistoryRepository.findBorrowedBooksSlice(pageable,reader.getId());
+
+        assertEquals(2,books.getContent().size());
+        assertTrue(books.hasNext());
+        assertEquals(1,statistics.getPrepareStatementCount());
+    }
+
+}
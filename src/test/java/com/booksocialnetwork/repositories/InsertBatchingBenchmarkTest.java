@@ -0,0 +1,144 @@
+package com.booksocialnetwork.repositories;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.Feedback;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.entities.base.IdGeneration;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.support.JpaTestConfig;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.BiFunction;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+//before = one round trip per insert (no jdbc batching), after = the configured batch size drawing ids from the pooled sequence
+//the statement counts always run; the throughput comparison is opt in: mvn test -Dtest=InsertBatchingBenchmarkTest -Dbenchmark=true
+//h2 in memory has no network hop, so the gain measured here is a lower bound of what mysql sees
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(JpaTestConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Slf4j
+class InsertBatchingBenchmarkTest {
+
+    private static final int UNBATCHED=1;
+    private static final int BATCHED=IdGeneration.ALLOCATION_SIZE;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+
+    private Integer userId;
+
+    private Integer bookId;
+
+    @BeforeEach
+    public void setUp(){
+        statistics=entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        transactionTemplate.executeWithoutResult(status->{
+            User user=persistUser(entityManager);
+            Book book=persistBook(entityManager,user,"book");
+            userId=user.getId();
+            bookId=book.getId();
+        });
+    }
+
+    private BookTransactionHistory history(User user, Book book){
+        return BookTransactionHistory.builder()
+                .user(user)
+                .book(book)
+                .returned(false)
+                .returnApproved(false)
+                .build();
+    }
+
+    private Feedback feedback(User user, Book book){
+        return Feedback.builder()
+                .book(book)
+                .note(4.0)
+                .comment("comment")
+                .build();
+    }
+
+    //returns the number of statements prepared to insert the rows
+    private long insert(int rows, int jdbcBatchSize, BiFunction<User,Book,Object> factory){
+        statistics.clear();
+        transactionTemplate.executeWithoutResult(status->{
+            entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+            User user=entityManager.getReference(User.class,userId);
+            Book book=entityManager.getReference(Book.class,bookId);
+            for(int i=0;i<rows;i++){
+                entityManager.persist(factory.apply(user,book));
+                if((i+1)%1000==0){
+                    entityManager.flush();
+                    entityManager.clear();
+                    user=entityManager.getReference(User.class,userId);
+                    book=entityManager.getReference(Book.class,bookId);
+                }
+            }
+        });
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Test
+    public void testHistoryInserts_areBatched(){
+        assertTrue(insert(500,UNBATCHED,this::history)>=500);
+        assertTrue(insert(500,BATCHED,this::history)<50);
+    }
+
+    @Test
+    public void testFeedbackInserts_areBatched(){
+        assertTrue(insert(500,UNBATCHED,this::feedback)>=500);
+        assertTrue(insert(500,BATCHED,this::feedback)<50);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark",matches = "true")
+    public void benchmarkInsertThroughput(){
+        report("BookTransactionHistory",this::history);
+        report("Feedback",this::feedback);
+    }
+
+    private void report(String entity, BiFunction<User,Book,Object> factory){
+        int rows=20_000;
+        insert(rows,UNBATCHED,factory);
+        insert(rows,BATCHED,factory);
+        double before=throughput(rows,UNBATCHED,factory);
+        double after=throughput(rows,BATCHED,factory);
+        log.info("{} inserts/s: before {} after {} ({}x)",entity,Math.round(before),Math.round(after),Math.round(after/before*10)/10.0);
+    }
+
+    private double throughput(int rows, int jdbcBatchSize, BiFunction<User,Book,Object> factory){
+        long start=System.nanoTime();
+        insert(rows,jdbcBatchSize,factory);
+        return rows/((System.nanoTime()-start)/1_000_000_000.0);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.booksocialnetwork.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AutocompleteIndexTest {
+
+    @TempDir
+    Path snapshotDir;
+
+    private AutocompleteIndex index;
+
+    @BeforeEach
+    public void setUp(){
+        index=newIndex(3);
+        index.index(book(1,"Dune","Frank Herbert",40,false,true));
+        index.index(book(2,"Dune","Frank Herbert",2,false,true));
+        index.index(book(3,"Children of Dune","Frank Herbert",10,false,true));
+        index.index(book(4,"Dubliners","James Joyce",5,false,true));
+        index.index(book(5,"Duma Key","Stephen King",1,false,true));
+        index.index(book(6,"Dust","Hidden Author",100,true,true));
+    }
+
+    private AutocompleteIndex newIndex(int topK){
+        AutocompleteIndex autocompleteIndex=new AutocompleteIndex();
+        ReflectionTestUtils.setField(autocompleteIndex,"topK",topK);
+        ReflectionTestUtils.setField(autocompleteIndex,"snapshotDir",snapshotDir);
+        autocompleteIndex.start();
+        return autocompleteIndex;
+    }
+
+    private static BookSearchSource book(int id, String title, String authorName, long ratingCount, boolean archived, boolean shareable){
+        return new BookSearchSource(id,1,title,authorName,"isbn-"+id,"",archived,shareable,ratingCount,0.0,false,LocalDateTime.now(),null);
+    }
+
+    private static List<String> texts(List<Completion> completions){
+        return completions.stream().map(Completion::text).toList();
+    }
+
+    @Test
+    public void testComplete_ranksByPopularityAcrossCopies(){
+        assertEquals(List.of("Dune","Children of Dune","Dubliners"),texts(index.complete("du",10)));
+    }
+
+    @Test
+    public void testComplete_matchesMidEdgeAndWordStarts(){
+        assertEquals(List.of("Duma Key"),texts(index.complete("dum",10)));
+        assertEquals(List.of("Stephen King"),texts(index.complete("KIN",10)));
+        assertEquals(List.of("Frank Herbert"),texts(index.complete("herb",10)));
+        assertEquals(List.of(),texts(index.complete("dux",10)));
+    }
+
+    @Test
+    public void testComplete_respectsLimit(){
+        assertEquals(List.of("Dune"),texts(index.complete("d",1)));
+    }
+
+    @Test
+    public void testArchiving_removesTheSuggestion(){
+        index.index(book(4,"Dubliners","James Joyce",5,true,true));
+
+        assertEquals(List.of(),texts(index.complete("dub",10)));
+        assertEquals(List.of("Dune","Children of Dune","Duma Key"),texts(index.complete("du",10)));
+        assertEquals(List.of(),texts(index.complete("joyce",10)));
+    }
+
+    @Test
+    public void testRetitling_movesTheSuggestion(){
+        index.index(book(5,"Desperation","Stephen King",1,false,true));
+
+        assertEquals(List.of(),texts(index.complete("duma",10)));
+        assertEquals(List.of("Desperation"),texts(index.complete("desp",10)));
+    }
+
+    @Test
+    public void testSnapshot_restoresTheSameCompletions(){
+        LocalDateTime watermark=LocalDateTime.of(2024,5,1,10,15);
+        index.snapshot(watermark);
+
+        AutocompleteIndex restored=newIndex(3);
+
+        assertEquals(watermark,restored.restore());
+        assertEquals(index.complete("du",10),restored.complete("du",10));
+        assertEquals(index.complete("frank",10),restored.complete("frank",10));
+    }
+
+}
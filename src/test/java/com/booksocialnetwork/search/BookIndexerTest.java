@@ -0,0 +1,108 @@
+package com.booksocialnetwork.search;
+
+import com.booksocialnetwork.repositories.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BookIndexerTest {
+
+    private static final LocalDateTime SAVED_AT=LocalDateTime.of(2024,5,1,12,0);
+
+    @TempDir
+    Path snapshotDir;
+
+    private BookRepository bookRepository;
+
+    @BeforeEach
+    public void setUp(){
+        bookRepository=mock(BookRepository.class);
+        when(bookRepository.findSearchSourcesAfter(anyInt(),any(Limit.class))).thenReturn(List.of());
+        when(bookRepository.findSearchSourcesAfter(eq(0),any(Limit.class))).thenReturn(List.of(
+                book(1,"Dune",SAVED_AT.minusDays(1)),
+                book(2,"Emma",SAVED_AT)
+        ));
+        when(bookRepository.fingerprintUpTo(SAVED_AT)).thenReturn(new CatalogFingerprint(2L,2));
+        BookIndexer indexer=newIndexer(newIndex());
+        indexer.initialize();
+        indexer.snapshot();
+        clearInvocations(bookRepository);
+    }
+
+    private BookIndexer newIndexer(FullTextBookIndex index){
+        BookIndexer indexer=new BookIndexer(bookRepository,List.of(index));
+        ReflectionTestUtils.setField(indexer,"rebuildBatchSize",100);
+        ReflectionTestUtils.setField(indexer,"snapshotDir",snapshotDir);
+        ReflectionTestUtils.setField(indexer,"catchUpOverlap",Duration.ofSeconds(30));
+        return indexer;
+    }
+
+    private FullTextBookIndex newIndex(){
+        FullTextBookIndex fullTextBookIndex=new FullTextBookIndex();
+        ReflectionTestUtils.setField(fullTextBookIndex,"snapshotDir",snapshotDir);
+        return fullTextBookIndex;
+    }
+
+    private static BookSearchSource book(int id, String title, LocalDateTime createdDate){
+        return new BookSearchSource(id,10,title,"author","isbn-"+id,"synopsis",false,true,0,0.0,false,createdDate,null);
+    }
+
+    @Test
+    public void testInitialize_restoresASnapshotOfTheSameDatabase(){
+        FullTextBookIndex index=newIndex();
+
+        newIndexer(index).initialize();
+
+        assertEquals(2,index.size());
+        verify(bookRepository,never()).findSearchSourcesAfter(anyInt(),any(Limit.class));
+        verify(bookRepository).findSearchSourcesChangedSince(SAVED_AT.minusSeconds(30));
+    }
+
+    //ddl-auto create-drop: the ids start over and the books saved in the snapshot are gone
+    @Test
+    public void testInitialize_rebuildsWhenTheDatabaseWasReplaced(){
+        when(bookRepository.fingerprintUpTo(SAVED_AT)).thenReturn(new CatalogFingerprint(0L,0));
+        when(bookRepository.findSearchSourcesAfter(eq(0),any(Limit.class))).thenReturn(List.of(book(1,"Ulysses",SAVED_AT.plusDays(1))));
+        FullTextBookIndex index=newIndex();
+
+        newIndexer(index).initialize();
+
+        assertEquals(1,index.size());
+        assertEquals(0,index.search("emma",99,0,10).totalHits());
+        assertEquals(List.of(1),index.search("ulysses",99,0,10).bookIds());
+    }
+
+    //ddl-auto create-drop on a fresh node: nothing to restore or rebuild, the first books arrive through another node or the bulk import
+    @Test
+    public void testRefresh_picksUpBooksInsertedAfterAnEmptyStart(){
+        when(bookRepository.fingerprintUpTo(any(LocalDateTime.class))).thenReturn(new CatalogFingerprint(0L,0));
+        when(bookRepository.findSearchSourcesAfter(eq(0),any(Limit.class))).thenReturn(List.of());
+        FullTextBookIndex index=newIndex();
+        BookIndexer indexer=newIndexer(index);
+        LocalDateTime startedAt=LocalDateTime.now();
+
+        indexer.initialize();
+        when(bookRepository.findSearchSourcesChangedSince(any(LocalDateTime.class))).thenReturn(List.of(book(1,"Ulysses",LocalDateTime.now())));
+        indexer.refresh();
+
+        assertEquals(1,index.size());
+        ArgumentCaptor<LocalDateTime> since=ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(bookRepository).findSearchSourcesChangedSince(since.capture());
+        assertFalse(since.getValue().isAfter(startedAt));
+    }
+
+}
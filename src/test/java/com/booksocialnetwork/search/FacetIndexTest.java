@@ -0,0 +1,117 @@
+package com.booksocialnetwork.search;
+
+import com.booksocialnetwork.services.BookFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FacetIndexTest {
+
+    @TempDir
+    Path snapshotDir;
+
+    private FacetIndex index;
+
+    private static final BookFilter NO_FILTER=new BookFilter(null,null,null,null,null,null);
+
+    @BeforeEach
+    public void setUp(){
+        index=newIndex();
+        index.index(book(1,1,"Frank Herbert",2,9.0,false,LocalDateTime.of(2024,1,10,0,0)));
+        index.index(book(2,1,"Frank Herbert",1,3.0,true,LocalDateTime.of(2024,2,10,0,0)));
+        index.index(book(3,2,"James Joyce",0,0.0,false,LocalDateTime.of(2024,2,20,0,0)));
+        index.index(book(4,3,"Stephen King",4,18.0,false,LocalDateTime.of(2024,3,1,0,0)));
+        index.index(new BookSearchSource(5,2,"hidden","Stephen King","isbn-5","",true,true,0,0.0,false,LocalDateTime.of(2024,3,1,0,0),null));
+    }
+
+    private FacetIndex newIndex(){
+        FacetIndex facetIndex=new FacetIndex();
+        ReflectionTestUtils.setField(facetIndex,"maxFacetValues",10);
+        ReflectionTestUtils.setField(facetIndex,"snapshotDir",snapshotDir);
+        return facetIndex;
+    }
+
+    private static BookSearchSource book(int id, int ownerId, String authorName, long ratingCount, double ratingSum, boolean borrowed, LocalDateTime createdDate){
+        return new BookSearchSource(id,ownerId,"title "+id,authorName,"isbn-"+id,"",false,true,ratingCount,ratingSum,borrowed,createdDate,null);
+    }
+
+    private static long count(Map<String,List<FacetCount>> facets, String facet, String value){
+        return facets.get(facet).stream().filter(facetCount->facetCount.value().equals(value)).mapToLong(FacetCount::count).findFirst().orElse(0);
+    }
+
+    @Test
+    public void testFacets_skipOwnAndHiddenBooks(){
+        Map<String,List<FacetCount>> facets=index.facets(NO_FILTER,3);
+
+        assertEquals(List.of(new FacetCount("Frank Herbert",2),new FacetCount("James Joyce",1)),facets.get(FacetIndex.AUTHOR_FACET));
+        assertEquals(2,count(facets,FacetIndex.AVAILABILITY_FACET,"available"));
+        assertEquals(1,count(facets,FacetIndex.AVAILABILITY_FACET,"borrowed"));
+        assertEquals(List.of(new FacetCount("2024-02",2),new FacetCount("2024-01",1)),facets.get(FacetIndex.CREATED_FACET));
+    }
+
+    @Test
+    public void testFacets_countEachDimensionWithoutItsOwnFilter(){
+        Map<String,List<FacetCount>> facets=index.facets(new BookFilter("Frank Herbert",null,null,true,null,null),99);
+
+        //the author dimension is narrowed by availability only
+        assertEquals(1,count(facets,FacetIndex.AUTHOR_FACET,"Frank Herbert"));
+        assertEquals(1,count(facets,FacetIndex.AUTHOR_FACET,"James Joyce"));
+        assertEquals(1,count(facets,FacetIndex.AUTHOR_FACET,"Stephen King"));
+        //the availability dimension is narrowed by author only
+        assertEquals(1,count(facets,FacetIndex.AVAILABILITY_FACET,"available"));
+        assertEquals(1,count(facets,FacetIndex.AVAILABILITY_FACET,"borrowed"));
+        //every other dimension sees both filters
+        assertEquals(1,count(facets,FacetIndex.RATING_FACET,"4"));
+        assertEquals(List.of(new FacetCount("2024-01",1)),facets.get(FacetIndex.CREATED_FACET));
+    }
+
+    @Test
+    public void testFacets_ratingBucketsAreCumulative(){
+        Map<String,List<FacetCount>> facets=index.facets(NO_FILTER,99);
+
+        assertEquals(0,count(facets,FacetIndex.RATING_FACET,"5"));
+        assertEquals(2,count(facets,FacetIndex.RATING_FACET,"4"));
+        assertEquals(3,count(facets,FacetIndex.RATING_FACET,"3"));
+        assertEquals(3,count(facets,FacetIndex.RATING_FACET,"1"));
+    }
+
+    @Test
+    public void testFacets_rangeAndPrefixFilters(){
+        Map<String,List<FacetCount>> facets=index.facets(new BookFilter(null,"isbn-",3.5,null,LocalDate.of(2024,1,1),LocalDate.of(2024,2,28)),99);
+
+        assertEquals(List.of(new FacetCount("Frank Herbert",1)),facets.get(FacetIndex.AUTHOR_FACET));
+        assertEquals(List.of(new FacetCount("2024-03",1),new FacetCount("2024-01",1)),facets.get(FacetIndex.CREATED_FACET));
+    }
+
+    @Test
+    public void testReindexing_movesTheBookBetweenBuckets(){
+        index.index(book(2,1,"James Joyce",1,3.0,false,LocalDateTime.of(2024,2,10,0,0)));
+
+        Map<String,List<FacetCount>> facets=index.facets(NO_FILTER,99);
+
+        assertEquals(1,count(facets,FacetIndex.AUTHOR_FACET,"Frank Herbert"));
+        assertEquals(2,count(facets,FacetIndex.AUTHOR_FACET,"James Joyce"));
+        assertEquals(0,count(facets,FacetIndex.AVAILABILITY_FACET,"borrowed"));
+    }
+
+    @Test
+    public void testSnapshot_restoresTheSameCounts(){
+        LocalDateTime watermark=LocalDateTime.of(2024,4,1,12,0);
+        index.snapshot(watermark);
+
+        FacetIndex restored=newIndex();
+
+        assertEquals(watermark,restored.restore());
+        assertEquals(index.facets(NO_FILTER,3),restored.facets(NO_FILTER,3));
+    }
+
+}
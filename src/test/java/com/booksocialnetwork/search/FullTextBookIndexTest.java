@@ -0,0 +1,87 @@
+package com.booksocialnetwork.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FullTextBookIndexTest {
+
+    @TempDir
+    Path snapshotDir;
+
+    private FullTextBookIndex index;
+
+    @BeforeEach
+    public void setUp(){
+        index=newIndex();
+        index.index(book(1,10,"The Running Man","Stephen King","A man runs for his life in a televised game show",false,true));
+        index.index(book(2,10,"Dune","Frank Herbert","Spice, sandworms and politics on the desert planet",false,true));
+        index.index(book(3,11,"Children of Dune","Frank Herbert","The twins inherit the desert empire",false,true));
+        index.index(book(4,11,"Desert Solitaire","Edward Abbey","A season in the wilderness",true,true));
+        index.index(book(5,12,"The Desert","Anonymous","Private notes",false,false));
+    }
+
+    private FullTextBookIndex newIndex(){
+        FullTextBookIndex fullTextBookIndex=new FullTextBookIndex();
+        ReflectionTestUtils.setField(fullTextBookIndex,"snapshotDir",snapshotDir);
+        return fullTextBookIndex;
+    }
+
+    private static BookSearchSource book(int id, int ownerId, String title, String authorName, String synopsis, boolean archived, boolean shareable){
+        return new BookSearchSource(id,ownerId,title,authorName,"isbn-"+id,synopsis,archived,shareable,0,0.0,false,LocalDateTime.now(),null);
+    }
+
+    @Test
+    public void testAnalyzer_stemsAndDropsStopWords(){
+        assertEquals(List.of("run","man"),TextAnalyzer.analyze("The Running Man"));
+        assertEquals(List.of("sandworm","politic"),TextAnalyzer.analyze("Sandworms and politics"));
+        assertEquals(List.of("elan"),TextAnalyzer.analyze("\u00c9lan"));
+    }
+
+    @Test
+    public void testSearch_ranksTitleMatchesFirstAndAppliesDisplayability(){
+        SearchHits hits=index.search("dune",99,0,10);
+
+        assertEquals(List.of(2,3),hits.bookIds());
+        assertEquals(2,hits.totalHits());
+    }
+
+    @Test
+    public void testSearch_hidesArchivedUnshareableAndOwnBooks(){
+        assertEquals(List.of(2,3),index.search("desert",99,0,10).bookIds());
+        assertEquals(List.of(2),index.search("desert",11,0,10).bookIds());
+    }
+
+    @Test
+    public void testSearch_matchesInflectedForms(){
+        assertEquals(List.of(1),index.search("runs",99,0,10).bookIds());
+    }
+
+    @Test
+    public void testReindex_replacesPreviousTerms(){
+        index.index(book(2,10,"Dune Messiah","Frank Herbert","Twelve years later",false,true));
+
+        assertEquals(List.of(),index.search("sandworms",99,0,10).bookIds());
+        assertEquals(List.of(2),index.search("messiah",99,0,10).bookIds());
+    }
+
+    @Test
+    public void testSnapshot_restoresTheSameResults(){
+        LocalDateTime watermark=LocalDateTime.of(2024,5,1,10,15);
+        index.snapshot(watermark);
+
+        FullTextBookIndex restored=newIndex();
+
+        assertEquals(watermark,restored.restore());
+        assertEquals(index.size(),restored.size());
+        assertEquals(index.search("desert dune",99,0,10),restored.search("desert dune",99,0,10));
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.booksocialnetwork.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+//the single parse and the cache always run; the comparison with the old three-parse path is opt in:
+//mvn test -Dtest=JwtServiceTest -Dbenchmark=true
+@Slf4j
+class JwtServiceTest {
+
+    private static final String SECRET_KEY="9a4f2c8d3b7a1e6f45c8a0b3f267d8b1d4e6f3c8a9d2b5f8e3a9c8b5f6v8a3d9";
+
+    private JwtService jwtService;
+
+    private UserDetails userDetails;
+
+    @BeforeEach
+    public void setUp(){
+        jwtService=spy(new JwtService());
+        ReflectionTestUtils.setField(jwtService,"jwtExpiration",60_000L);
+        ReflectionTestUtils.setField(jwtService,"secretKey",SECRET_KEY);
+        ReflectionTestUtils.setField(jwtService,"verifiedCacheMaxSize",100L);
+        ReflectionTestUtils.setField(jwtService,"verifiedCacheMaxTtl",Duration.ofMinutes(15));
+        jwtService.init();
+        userDetails=User.withUsername("arpitrathore010@gmail.com").password("secret").authorities("USER").build();
+    }
+
+    @Test
+    public void testVerify_parsesEachTokenOnce(){
+        String jwt=jwtService.generateToken(userDetails);
+
+        for(int i=0;i<3;i++){
+            VerifiedToken token=jwtService.verify(jwt);
+            assertEquals(userDetails.getUsername(),token.username());
+            assertTrue(jwtService.isTokenValid(token,userDetails));
+        }
+
+        verify(jwtService,times(1)).parse(jwt);
+    }
+
+    @Test
+    public void testVerify_carriesThePrincipalClaims(){
+        Map<String,Object> claims=new HashMap<>();
+        claims.put(JwtService.USER_ID_CLAIM,42);
+        claims.put(JwtService.FULL_NAME_CLAIM,"arpit rathore");
+
+        AuthenticatedUser principal=jwtService.verify(jwtService.generateToken(claims,userDetails)).toPrincipal();
+
+        assertEquals(new AuthenticatedUser(42,userDetails.getUsername(),"arpit rathore",List.of("USER")),principal);
+    }
+
+    @Test
+    public void testVerify_rejectsTamperedToken(){
+        String jwt=jwtService.generateToken(userDetails);
+        jwtService.verify(jwt);
+        String tampered=jwt.substring(0,jwt.length()-2)+(jwt.endsWith("A")?"BB":"AA");
+
+        assertThrows(JwtException.class,()->jwtService.verify(tampered));
+    }
+
+    @Test
+    public void testVerify_doesNotCacheExpiredToken(){
+        String jwt=jwtService.buildToken(new HashMap<>(),userDetails,-1_000L);
+
+        assertThrows(JwtException.class,()->jwtService.verify(jwt));
+        assertThrows(JwtException.class,()->jwtService.verify(jwt));
+        verify(jwtService,times(2)).parse(anyString());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark",matches = "true")
+    public void benchmarkRequestValidation(){
+        List<String> tokens=IntStream.range(0,50).mapToObj(i->jwtService.generateToken(userDetails)).toList();
+        int requests=200_000;
+        validateBefore(tokens,requests);
+        validateAfter(tokens,requests);
+        double before=throughput(()->validateBefore(tokens,requests),requests);
+        double after=throughput(()->validateAfter(tokens,requests),requests);
+        log.info("validated requests/s: before {} after {} ({}x)",Math.round(before),Math.round(after),Math.round(after/before*10)/10.0);
+    }
+
+    //what JwtFilter did before: extractUsername, then isTokenValid parsing twice more, each with a freshly decoded key
+    private void validateBefore(List<String> tokens, int requests){
+        for(int i=0;i<requests;i++){
+            String jwt=tokens.get(i%tokens.size());
+            String username=parseWithFreshKey(jwt,Claims::getSubject);
+            boolean valid=parseWithFreshKey(jwt,Claims::getSubject).equals(username) && !parseWithFreshKey(jwt,Claims::getExpiration).before(new Date());
+            assertTrue(valid);
+        }
+    }
+
+    private void validateAfter(List<String> tokens, int requests){
+        for(int i=0;i<requests;i++){
+            assertTrue(jwtService.isTokenValid(jwtService.verify(tokens.get(i%tokens.size())),userDetails));
+        }
+    }
+
+    private static <T> T parseWithFreshKey(String jwt, Function<Claims,T> resolver){
+        return resolver.apply(Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET_KEY)))
+                .build()
+                .parseSignedClaims(jwt)
+                .getPayload());
+    }
+
+    private static double throughput(Runnable run, int requests){
+        long start=System.nanoTime();
+        run.run();
+        return requests/((System.nanoTime()-start)/1_000_000_000.0);
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.common.ApproximateCountService;
+import com.booksocialnetwork.common.CursorPageResponse;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.file.CoverVariantPipeline;
+import com.booksocialnetwork.file.FileStorageService;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.booksocialnetwork.support.JpaTestConfig;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.show-sql=false"
+})
+@Import({BookMapper.class,JpaTestConfig.class})
+class BookCursorPaginationTest {
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookTransactionHistoryRepository bookTransactionHistoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private BookService bookService;
+
+    private User owner;
+
+    private Authentication connectedUser;
+
+    @BeforeEach
+    public void setUp(){
+        bookService=new BookService(
+                bookMapper,
+                bookRepository,
+                bookTransactionHistoryRepository,
+                mock(FileStorageService.class),
+                mock(CoverVariantPipeline.class),
+                mock(ApproximateCountService.class),
+                mock(BookIndexer.class),
+                mock(BorrowEngine.class),
+                mock(LoanCounterService.class),
+                userRepository,
+                mock(DisplayableBookCatalog.class),
+                mock(BookCachePolicy.class)
+        );
+        ReflectionTestUtils.setField(bookService,"maxCursorSize",3);
+        owner=persistUser(entityManager);
+        connectedUser=mock(Authentication.class);
+        when(connectedUser.getPrincipal()).thenReturn(AuthenticatedUser.of(owner));
+    }
+
+    //an offset would hand out the last row of page one again once newer rows push everything down
+    @Test
+    public void testOwnerCursor_staysOnTheSameRowsWhileBooksAreAdded(){
+        List<Integer> existing=new ArrayList<>();
+        for(int i=0;i<5;i++){
+            existing.add(0,persistBook(entityManager,owner,"book "+i).getId());
+        }
+        entityManager.flush();
+
+        List<Integer> walked=new ArrayList<>();
+        CursorPageResponse<BookResponse> window=bookService.findAllBooksByOwnerAndCursor(null,2,connectedUser);
+        int windows=1;
+        walked.addAll(window.getContent().stream().map(BookResponse::getId).toList());
+        while(window.isHasNext()){
+            persistBook(entityManager,owner,"added while paging "+windows);
+            entityManager.flush();
+            window=bookService.findAllBooksByOwnerAndCursor(window.getNextCursor(),2,connectedUser);
+            windows++;
+            walked.addAll(window.getContent().stream().map(BookResponse::getId).toList());
+        }
+
+        assertEquals(3,windows);
+        assertEquals(existing,walked);
+        assertEquals(walked.size(),new HashSet<>(walked).size());
+    }
+
+    @Test
+    public void testCursor_rejectsSizesOutsideTheLimit(){
+        for(int size:new int[]{-1,0,4}){
+            assertThrows(OperationNotPermittedException.class,()->bookService.findAllBooksByCursor(null,size,connectedUser));
+            assertThrows(OperationNotPermittedException.class,()->bookService.findAllBooksByOwnerAndCursor(null,size,connectedUser));
+            assertThrows(OperationNotPermittedException.class,()->bookService.findAllBorrowedBooksByCursor(null,size,connectedUser));
+            assertThrows(OperationNotPermittedException.class,()->bookService.findAllReturnedBooksByCursor(null,size,connectedUser));
+        }
+        assertEquals(0,bookService.findAllBooksByOwnerAndCursor(null,3,connectedUser).getSize());
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.Feedback;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.repositories.FeedbackRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import com.booksocialnetwork.support.JpaTestConfig;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+//the aggregate on book is only ever bumped in place, so it has to survive concurrent writers and agree with the feedback rows
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.show-sql=false",
+        "application.rating.reconcile-batch-size=2"
+})
+@Import({BookRatingService.class,JpaTestConfig.class,BookRatingServiceTest.IndexerConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BookRatingServiceTest {
+
+    @TestConfiguration
+    static class IndexerConfig{
+        @Bean
+        public BookIndexer bookIndexer(){
+            return mock(BookIndexer.class);
+        }
+    }
+
+    private static final int WRITERS=8;
+    private static final int FEEDBACKS_PER_WRITER=25;
+
+    @Autowired
+    private BookRatingService bookRatingService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private FeedbackRepository feedbackRepository;
+
+    @Autowired
+    private BookIndexer bookIndexer;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void setUp(){
+        clearInvocations(bookIndexer);
+    }
+
+    @Test
+    public void testRecordFeedback_concurrentIncrementsAreAllCounted() throws Exception {
+        Integer bookId=persistRatedBook();
+        CountDownLatch start=new CountDownLatch(1);
+        List<Future<?>> writers=new ArrayList<>();
+        try(ExecutorService executor=Executors.newFixedThreadPool(WRITERS)){
+            for(int i=0;i<WRITERS;i++){
+                double note=i%5+1;
+                writers.add(executor.submit(()->{
+                    start.await();
+                    for(int j=0;j<FEEDBACKS_PER_WRITER;j++){
+                        giveFeedback(bookId,note);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for(Future<?> writer:writers){
+                writer.get();
+            }
+        }
+
+        BookRatingSnapshot stored=stored(bookId);
+        assertEquals(WRITERS*FEEDBACKS_PER_WRITER,stored.ratingCount().intValue());
+        assertEquals(FEEDBACKS_PER_WRITER*(1+2+3+4+5+1+2+3),stored.ratingSum(),0.0001);
+        assertEquals(2*FEEDBACKS_PER_WRITER,stored.oneStarCount().intValue());
+        assertEquals(FEEDBACKS_PER_WRITER,stored.fiveStarCount().intValue());
+        assertTrue(stored.matches(expected(bookId)));
+    }
+
+    @Test
+    public void testRecordFeedback_putsEachNoteInTheSameBucketAsTheAggregateQuery(){
+        Integer bookId=persistRatedBook();
+
+        for(double note:new double[]{0.5,1.0,1.49,1.5,2.5,3.4,4.5,5.0}){
+            giveFeedback(bookId,note);
+        }
+
+        //half notes round up: 0.5, 1.0 and 1.49 are one star, 1.5 is two, 2.5 and 3.4 are three, 4.5 and 5.0 are five
+        BookRatingSnapshot stored=stored(bookId);
+        assertTrue(stored.matches(new BookRatingSnapshot(bookId,8L,19.89,3L,1L,2L,0L,2L)));
+        assertTrue(stored.matches(expected(bookId)));
+        verify(bookIndexer,times(8)).onBookChanged(bookId);
+    }
+
+    @Test
+    public void testRecordFeedback_ignoresFeedbackWithoutANote(){
+        Integer bookId=persistRatedBook();
+
+        giveFeedback(bookId,null);
+
+        assertTrue(stored(bookId).matches(BookRatingSnapshot.empty(bookId)));
+        verifyNoInteractions(bookIndexer);
+    }
+
+    @Test
+    public void testReconcile_rewritesDriftedRowsOnly(){
+        Integer drifted=persistRatedBook();
+        Integer untouched=persistRatedBook();
+        Integer phantom=persistRatedBook();
+        giveFeedback(drifted,4.0);
+        giveFeedback(drifted,2.0);
+        giveFeedback(untouched,5.0);
+        //a lost increment on one book, ratings on another that has no feedback at all
+        transactionTemplate.executeWithoutResult(status->{
+            bookRepository.overwriteRating(drifted,1,4.0,0,0,0,1,0,LocalDateTime.now());
+            bookRepository.overwriteRating(phantom,3,9.0,0,0,3,0,0,LocalDateTime.now());
+        });
+        clearInvocations(bookIndexer);
+
+        bookRatingService.reconcile();
+
+        assertTrue(stored(drifted).matches(new BookRatingSnapshot(drifted,2L,6.0,0L,1L,0L,1L,0L)));
+        assertTrue(stored(untouched).matches(expected(untouched)));
+        assertTrue(stored(phantom).matches(BookRatingSnapshot.empty(phantom)));
+        verify(bookIndexer).onBookChanged(drifted);
+        verify(bookIndexer).onBookChanged(phantom);
+        verify(bookIndexer,never()).onBookChanged(untouched);
+    }
+
+    private Integer persistRatedBook(){
+        return transactionTemplate.execute(status->persistBook(entityManager,persistUser(entityManager),"rated").getId());
+    }
+
+    private void giveFeedback(Integer bookId, Double note){
+        transactionTemplate.executeWithoutResult(status->{
+            feedbackRepository.save(Feedback.builder()
+                    .note(note)
+                    .comment("comment")
+                    .book(bookRepository.getReferenceById(bookId))
+                    .build());
+            bookRatingService.recordFeedback(bookId,note);
+        });
+    }
+
+    private BookRatingSnapshot stored(Integer bookId){
+        return bookRepository.findRatingsAfter(bookId-1,Limit.of(1)).get(0);
+    }
+
+    private BookRatingSnapshot expected(Integer bookId){
+        return feedbackRepository.aggregateRatingsByBookIds(List.of(bookId)).stream()
+                .findFirst()
+                .orElse(BookRatingSnapshot.empty(bookId));
+    }
+
+}
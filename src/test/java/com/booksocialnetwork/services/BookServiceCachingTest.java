@@ -0,0 +1,244 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.cache.CacheInvalidation;
+import com.booksocialnetwork.cache.CacheInvalidationBus;
+import com.booksocialnetwork.cache.TwoTierCache;
+import com.booksocialnetwork.cache.TwoTierCacheManager;
+import com.booksocialnetwork.common.ApproximateCountService;
+import com.booksocialnetwork.common.PageResponse;
+import com.booksocialnetwork.common.TotalsMode;
+import com.booksocialnetwork.configurations.CacheConfig;
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.file.CoverVariantPipeline;
+import com.booksocialnetwork.file.FileStorageService;
+import com.booksocialnetwork.repositories.BookRepository;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+//runs the real caching annotations through the two-tier cache, the shared tier stores by value like redis does
+@SpringJUnitConfig(BookServiceCachingTest.CachingConfig.class)
+@TestPropertySource(properties = {
+        "application.cache.displayable-books.max-page=2",
+        "application.cache.displayable-books.max-page-size=20",
+        "application.cache.displayable-books.head-size=40",
+        "application.pagination.cursor.max-size=100"
+})
+class BookServiceCachingTest {
+
+    @Configuration
+    @EnableCaching
+    static class CachingConfig{
+
+        @Bean
+        public CacheInvalidationBus cacheInvalidationBus(){
+            return mock(CacheInvalidationBus.class);
+        }
+
+        @Bean
+        public CacheManager cacheManager(CacheInvalidationBus cacheInvalidationBus){
+            ConcurrentMapCacheManager remoteCacheManager=new ConcurrentMapCacheManager(CacheConfig.BOOKS_CACHE,CacheConfig.DISPLAYABLE_BOOKS_CACHE);
+            remoteCacheManager.setBeanClassLoader(getClass().getClassLoader());
+            remoteCacheManager.setStoreByValue(true);
+            return new TwoTierCacheManager(remoteCacheManager,cacheInvalidationBus,Map.of(),1000,Duration.ofMinutes(5));
+        }
+
+        @Bean
+        public BookCachePolicy bookCachePolicy(){
+            return new BookCachePolicy();
+        }
+
+        @Bean
+        public BookRepository bookRepository(){
+            return mock(BookRepository.class);
+        }
+
+        @Bean
+        public BookMapper bookMapper(){
+            return mock(BookMapper.class);
+        }
+
+        @Bean
+        public DisplayableBookCatalog displayableBookCatalog(BookRepository bookRepository, BookMapper bookMapper, BookCachePolicy bookCachePolicy){
+            return new DisplayableBookCatalog(bookRepository,bookMapper,bookCachePolicy);
+        }
+
+        @Bean
+        public BookService bookService(BookMapper bookMapper, BookRepository bookRepository, DisplayableBookCatalog displayableBookCatalog, BookCachePolicy bookCachePolicy){
+            return new BookService(
+                    bookMapper,
+                    bookRepository,
+                    mock(BookTransactionHistoryRepository.class),
+                    mock(FileStorageService.class),
+                    mock(CoverVariantPipeline.class),
+                    mock(ApproximateCountService.class),
+                    mock(BookIndexer.class),
+                    mock(BorrowEngine.class),
+                    mock(LoanCounterService.class),
+                    mock(UserRepository.class),
+                    displayableBookCatalog,
+                    bookCachePolicy
+            );
+        }
+    }
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookMapper bookMapper;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    private Book book;
+
+    private Authentication authentication;
+
+    private Authentication otherReader;
+
+    @BeforeEach
+    public void setUp(){
+        cacheManager.getCacheNames().forEach(name->cacheManager.getCache(name).clear());
+        reset(bookRepository,bookMapper,cacheInvalidationBus);
+
+        User owner=User.builder()
+                .id(2)
+                .email("arpitrathore010@gmail.com")
+                .createdDate(LocalDateTime.now())
+                .firstname("arpit")
+                .accountLocked(false)
+                .build();
+        User other=User.builder()
+                .id(3)
+                .email("other@mail.com")
+                .createdDate(LocalDateTime.now())
+                .build();
+
+        book=Book.builder()
+                .id(1)
+                .isbn("123")
+                .title("my book")
+                .shareable(true)
+                .archived(false)
+                .authorName("arpit rathore")
+                .owner(owner)
+                .build();
+
+        authentication=reader(owner);
+        otherReader=reader(other);
+
+        when(bookRepository.findById(1)).thenReturn(Optional.of(book));
+        when(bookRepository.save(any(Book.class))).thenReturn(book);
+        when(bookRepository.findDisplayableHead(any(Limit.class))).thenReturn(listing(4));
+        when(bookRepository.findAllDisplayableBooks(any(Pageable.class),anyInt())).thenAnswer(invocation->new PageImpl<BookListingView>(List.of(),invocation.getArgument(0),0));
+        when(bookMapper.toBookReponse(any(Book.class))).thenReturn(BookResponse.builder().id(1).title("my book").build());
+        when(bookMapper.toBookReponse(any(BookListingView.class))).thenAnswer(invocation->BookResponse.builder().id(((BookListingView) invocation.getArgument(0)).id()).build());
+    }
+
+    private static Authentication reader(User user){
+        Authentication reader=mock(Authentication.class);
+        when(reader.getPrincipal()).thenReturn(AuthenticatedUser.of(user));
+        when(reader.getName()).thenReturn(user.getEmail());
+        return reader;
+    }
+
+    //newest first, owned alternately by users 2 and 3
+    private static List<BookListingView> listing(int books){
+        List<BookListingView> rows=new ArrayList<>();
+        for(int id=books;id>0;id--){
+            rows.add(new BookListingView(id,"book "+id,"author","isbn-"+id,"synopsis",null,false,true,2+id%2,"first","last",0,0.0));
+        }
+        return rows;
+    }
+
+    private static List<Integer> ids(PageResponse<BookResponse> page){
+        return page.getContent().stream().map(BookResponse::getId).toList();
+    }
+
+    @Test
+    public void testFindById_servedFromCacheUntilEvicted(){
+        bookService.findById(1);
+        bookService.findById(1);
+
+        verify(bookRepository,times(1)).findById(1);
+
+        bookService.updateShareableStatus(1,authentication);
+        bookService.findById(1);
+
+        verify(bookRepository,times(3)).findById(1);
+    }
+
+    @Test
+    public void testFindAllBooks_oneSharedHeadServesEveryReader(){
+        PageResponse<BookResponse> mine=bookService.findAllBooks(0,10,TotalsMode.EXACT,authentication);
+        PageResponse<BookResponse> theirs=bookService.findAllBooks(0,10,TotalsMode.EXACT,otherReader);
+        bookService.findAllBooks(1,10,TotalsMode.NONE,authentication);
+
+        assertEquals(List.of(3,1),ids(mine));
+        assertEquals(2L,mine.getTotalElements());
+        assertEquals(List.of(4,2),ids(theirs));
+        assertFalse(theirs.isHasNext());
+        verify(bookRepository,times(1)).findDisplayableHead(any(Limit.class));
+        verify(bookRepository,never()).findAllDisplayableBooks(any(Pageable.class),anyInt());
+        assertEquals(1,((TwoTierCache) cacheManager.getCache(CacheConfig.DISPLAYABLE_BOOKS_CACHE)).getLocalCache().estimatedSize());
+    }
+
+    @Test
+    public void testFindAllBooks_pagesPastTheHeadGoToTheDatabase(){
+        when(bookRepository.findDisplayableHead(any(Limit.class))).thenReturn(listing(41));
+
+        bookService.findAllBooks(0,10,TotalsMode.EXACT,authentication);
+        bookService.findAllBooks(1,20,TotalsMode.EXACT,authentication);
+        bookService.findAllBooks(5,10,TotalsMode.EXACT,authentication);
+
+        verify(bookRepository,times(1)).findDisplayableHead(any(Limit.class));
+        verify(bookRepository,times(2)).findAllDisplayableBooks(any(Pageable.class),eq(2));
+    }
+
+    @Test
+    public void testArchivingEvictsTheHeadKeyOnly(){
+        bookService.findAllBooks(0,10,TotalsMode.EXACT,authentication);
+        bookService.updateArchivedStatus(1,authentication);
+        bookService.findAllBooks(0,10,TotalsMode.EXACT,authentication);
+
+        verify(bookRepository,times(2)).findDisplayableHead(any(Limit.class));
+        verify(cacheInvalidationBus).publish(argThat((CacheInvalidation invalidation)->
+                CacheConfig.DISPLAYABLE_BOOKS_CACHE.equals(invalidation.cacheName()) && DisplayableBookCatalog.HEAD_KEY.equals(invalidation.key())));
+        verify(cacheInvalidationBus,never()).publish(argThat((CacheInvalidation invalidation)->invalidation.key()==null));
+        assertNull(cacheManager.getCache(CacheConfig.BOOKS_CACHE).get(1));
+    }
+
+}
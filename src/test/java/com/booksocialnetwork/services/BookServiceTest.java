@@ -1,16 +1,23 @@
 package com.booksocialnetwork.services;
 
 import com.booksocialnetwork.common.PageResponse;
+import com.booksocialnetwork.common.TotalsMode;
 import com.booksocialnetwork.entities.Book;
 import com.booksocialnetwork.entities.User;
 import com.booksocialnetwork.entities.history.BookTransactionHistory;
 import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.file.CoverVariant;
+import com.booksocialnetwork.file.CoverVariantPipeline;
 import com.booksocialnetwork.file.FileUtils;
 import com.booksocialnetwork.repositories.BookRepository;
 import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import com.booksocialnetwork.security.AuthenticatedUser;
 import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -22,6 +29,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.*;
 import org.springframework.security.core.Authentication;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -49,11 +59,43 @@ class BookServiceTest {
     @Mock
     private BookTransactionHistory bookTransactionHistory;
 
+    @Mock
+    private BookIndexer bookIndexer;
+
+    @Mock
+    private BorrowEngine borrowEngine;
+
+    @Mock
+    private LoanCounterService loanCounterService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CoverVariantPipeline coverVariantPipeline;
+
+    @TempDir
+    private Path coverDir;
+
     @BeforeEach
     public void setUp(){
         MockitoAnnotations.openMocks(this);
     }
 
+    @Test
+    public void testFindBookCoverPath_fallsBackAndRequeuesMissingVariant() throws IOException {
+        Path original=Files.createFile(coverDir.resolve("1718000000000.png"));
+        Book book=Book.builder().id(1).bookCover(original.toString()).build();
+        when(bookRepository.findById(1)).thenReturn(Optional.of(book));
+
+        assertEquals(original,bookService.findBookCoverPath(1,CoverVariant.THUMBNAIL));
+        verify(coverVariantPipeline).requeue(original.toString());
+
+        Path thumbnail=Files.createFile(CoverVariant.THUMBNAIL.resolve(original.toString()));
+        assertEquals(thumbnail,bookService.findBookCoverPath(1,CoverVariant.THUMBNAIL));
+        verifyNoMoreInteractions(coverVariantPipeline);
+    }
+
     @ParameterizedTest
     @ValueSource(ints={
             1,2,3,4
@@ -89,7 +131,7 @@ class BookServiceTest {
                 .archived(fetchedBook.isArchived())
                 .shareable(fetchedBook.isShareable())
                 .owner(fetchedBook.getOwner().getId().toString())
-                .cover(fetchedBook.getBookCover().getBytes())
+                .coverUrl("/books/"+fetchedBook.getId()+"/cover?variant=THUMBNAIL")
                 .build();
 
         when(bookRepository.findById(bookId)).thenReturn(Optional.of(fetchedBook));
@@ -147,9 +189,10 @@ class BookServiceTest {
                 .build();
 
         when(bookRepository.findById(bookId)).thenReturn(Optional.of(fetchedBook));
-        when(authentication.getPrincipal()).thenReturn(connectedUser);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(connectedUser));
         when(bookTransactionHistoryRepository.isAlreadyBorrowedByUser(bookId,connectedUser.getId())).thenReturn(false);
-        when(bookTransactionHistoryRepository.save(any(BookTransactionHistory.class))).thenReturn(createdBookTransactionHistory);
+        when(userRepository.getReferenceById(connectedUser.getId())).thenReturn(connectedUser);
+        when(borrowEngine.borrow(fetchedBook,connectedUser)).thenReturn(createdBookTransactionHistory);
 
 
         //main test method
@@ -234,7 +277,7 @@ class BookServiceTest {
                 .build();
 
         when(bookRepository.findById(1)).thenReturn(Optional.of(fetchedBook));
-        when(authentication.getPrincipal()).thenReturn(connectedUser);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(connectedUser));
 //        when(fetchedBook.getOwner().getId()).thenReturn(2);
 //        when(connectedUser.getId()).thenReturn(2);
 
@@ -276,7 +319,7 @@ class BookServiceTest {
                 .build();
 
         when(bookRepository.findById(1)).thenReturn(Optional.of(fetchedBook));
-        when(authentication.getPrincipal()).thenReturn(connectedUser);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(connectedUser));
         when(bookTransactionHistoryRepository.isAlreadyBorrowedByUser(1, connectedUser.getId())).thenReturn(true);
 
         Exception exception=assertThrows(OperationNotPermittedException.class,()->bookService.borrowBook(1,authentication));
@@ -325,7 +368,7 @@ class BookServiceTest {
                 .build();
 
         when(bookRepository.findById(1)).thenReturn(Optional.of(fetchedBook));
-        when(authentication.getPrincipal()).thenReturn(connectedUser);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(connectedUser));
         when(bookTransactionHistoryRepository.findByBookIdAndUserId(1, connectedUser.getId())).thenReturn(Optional.of(fetchedBookTransactionHistory));
         when(bookTransactionHistoryRepository.save(fetchedBookTransactionHistory)).thenReturn(fetchedBookTransactionHistory);
 
@@ -414,7 +457,7 @@ class BookServiceTest {
                 .build();
 
         when(bookRepository.findById(1)).thenReturn(Optional.of(fetchedBook));
-        when(authentication.getPrincipal()).thenReturn(connectedUser);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(connectedUser));
 
         Exception exception=assertThrows(OperationNotPermittedException.class,()->bookService.returnBorrowedBook(1,authentication));
 
@@ -462,7 +505,7 @@ class BookServiceTest {
                 .build();
 
         when(bookRepository.findById(1)).thenReturn(Optional.of(fetchedBook));
-        when(authentication.getPrincipal()).thenReturn(connectedUser);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(connectedUser));
         when(bookTransactionHistoryRepository.findByBookIdAndUserId(1, connectedUser.getId())).thenReturn(Optional.empty());
 
         Exception exception=assertThrows(OperationNotPermittedException.class,()->bookService.returnBorrowedBook(1,authentication));
@@ -521,18 +564,30 @@ class BookServiceTest {
                 .title(fetchedBookTransactionHistory.getBook().getTitle())
                 .build();
 
-        List<BookTransactionHistory> fetchedBookTransactionHistoryList=List.of(fetchedBookTransactionHistory);
+        BorrowedBookView fetchedBorrowedBookView=new BorrowedBookView(
+                fetchedBook.getId(),
+                fetchedBook.getTitle(),
+                fetchedBook.getAuthorName(),
+                fetchedBook.getIsbn(),
+                0,
+                0.0,
+                fetchedBookTransactionHistory.getReturned(),
+                fetchedBookTransactionHistory.getReturnApproved(),
+                fetchedBookTransactionHistory.getCreatedDate()
+        );
+
+        List<BorrowedBookView> fetchedBorrowedBookViewList=List.of(fetchedBorrowedBookView);
 
-        Page<BookTransactionHistory> fetchedBookTransactionHistoryPages=new PageImpl<>(fetchedBookTransactionHistoryList,pageable,fetchedBookTransactionHistoryList.size());
+        Page<BorrowedBookView> fetchedBorrowedBookViewPages=new PageImpl<>(fetchedBorrowedBookViewList,pageable,fetchedBorrowedBookViewList.size());
 
-        when(authentication.getPrincipal()).thenReturn(connectedUser);
-        when(bookTransactionHistoryRepository.findAllReturnedBooks(pageable,connectedUser.getId())).thenReturn(fetchedBookTransactionHistoryPages);
-        when(bookMapper.toBorrowedBookResponse(any(BookTransactionHistory.class))).thenReturn(borrowedBookResponse);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(connectedUser));
+        when(bookTransactionHistoryRepository.findAllReturnedBooks(pageable,connectedUser.getId())).thenReturn(fetchedBorrowedBookViewPages);
+        when(bookMapper.toBorrowedBookResponse(any(BorrowedBookView.class))).thenReturn(borrowedBookResponse);
 
-        PageResponse finalPageResult=bookService.findAllReturnedBooks(0,1,authentication);
+        PageResponse finalPageResult=bookService.findAllReturnedBooks(0,1,TotalsMode.EXACT,authentication);
 
         verify(bookTransactionHistoryRepository).findAllReturnedBooks(pageable, connectedUser.getId());
-        verify(bookMapper,times(1)).toBorrowedBookResponse(any(BookTransactionHistory.class));
+        verify(bookMapper,times(1)).toBorrowedBookResponse(any(BorrowedBookView.class));
 
         assertNotNull(finalPageResult);
         assertEquals(borrowedBookResponse,finalPageResult.getContent().get(0));
@@ -0,0 +1,140 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.exception.OperationNotPermittedException;
+import com.booksocialnetwork.holds.HoldService;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.support.JpaTestConfig;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+//hundreds of virtual threads released at once against one copy: exactly one loan, everybody else a clean refusal, nobody stuck
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.show-sql=false"
+})
+@Import({BorrowEngine.class,HoldService.class,LoanCounterService.class,JpaTestConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BorrowEngineStressTest {
+
+    private static final int BORROWERS=300;
+
+    @Autowired
+    private BorrowEngine borrowEngine;
+
+    @Autowired
+    private BookTransactionHistoryRepository bookTransactionHistoryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Book book;
+
+    private List<User> borrowers;
+
+    @BeforeEach
+    public void setUp(){
+        transactionTemplate.executeWithoutResult(status->{
+            User owner=persistUser(entityManager);
+            book=persistBook(entityManager,owner,"hot book");
+            borrowers=new ArrayList<>(BORROWERS);
+            for(int i=0;i<BORROWERS;i++){
+                borrowers.add(persistUser(entityManager));
+            }
+        });
+    }
+
+    private long openLoans(){
+        return bookTransactionHistoryRepository.count((root,query,builder)->builder.equal(root.get("activeBookId"),book.getId()));
+    }
+
+    private int hammer(List<User> users, Queue<Throwable> unexpected){
+        AtomicInteger won=new AtomicInteger();
+        CountDownLatch start=new CountDownLatch(1);
+        try(ExecutorService executor=Executors.newVirtualThreadPerTaskExecutor()){
+            for(User user:users){
+                executor.submit(()->{
+                    start.await();
+                    try{
+                        borrowEngine.borrow(book,user);
+                        won.incrementAndGet();
+                    }catch(OperationNotPermittedException e){
+                        //the expected outcome for every loser
+                    }catch(Throwable e){
+                        unexpected.add(e);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        }
+        return won.get();
+    }
+
+    @Test
+    public void testHotBook_exactlyOneBorrowerWins(){
+        Queue<Throwable> unexpected=new ConcurrentLinkedQueue<>();
+
+        int won=assertTimeoutPreemptively(Duration.ofMinutes(1),()->hammer(borrowers,unexpected));
+
+        assertTrue(unexpected.isEmpty(),()->"unexpected failures: "+unexpected);
+        assertEquals(1,won);
+        assertEquals(1,openLoans());
+    }
+
+    @Test
+    public void testSameBorrower_cannotOpenTwoLoans(){
+        Queue<Throwable> unexpected=new ConcurrentLinkedQueue<>();
+        List<User> sameUser=new ArrayList<>();
+        for(int i=0;i<BORROWERS;i++){
+            sameUser.add(borrowers.get(0));
+        }
+
+        int won=assertTimeoutPreemptively(Duration.ofMinutes(1),()->hammer(sameUser,unexpected));
+
+        assertTrue(unexpected.isEmpty(),()->"unexpected failures: "+unexpected);
+        assertEquals(1,won);
+        assertEquals(1,openLoans());
+    }
+
+    @Test
+    public void testApprovedReturn_freesTheCopy(){
+        BookTransactionHistory loan=borrowEngine.borrow(book,borrowers.get(0));
+        assertThrows(OperationNotPermittedException.class,()->borrowEngine.borrow(book,borrowers.get(1)));
+
+        loan.setReturned(true);
+        loan.setReturnApproved(true);
+        borrowEngine.release(loan);
+        bookTransactionHistoryRepository.save(loan);
+
+        assertNotNull(borrowEngine.borrow(book,borrowers.get(1)).getId());
+        assertEquals(1,openLoans());
+    }
+
+}
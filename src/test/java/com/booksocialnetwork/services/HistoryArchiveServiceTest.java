@@ -0,0 +1,116 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.support.JpaTestConfig;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "application.history.archive.closed-for=P30D",
+        "application.history.archive.batch-size=2"
+})
+@Import({HistoryArchiveService.class,JpaTestConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class HistoryArchiveServiceTest {
+
+    @Autowired
+    private HistoryArchiveService historyArchiveService;
+
+    @Autowired
+    private BookTransactionHistoryRepository bookTransactionHistoryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final Pageable pageable=PageRequest.of(0,10,Sort.by("createdDate").descending());
+
+    private User owner;
+
+    private User reader;
+
+    @BeforeEach
+    public void setUp(){
+        transactionTemplate.executeWithoutResult(status->{
+            owner=persistUser(entityManager);
+            reader=persistUser(entityManager);
+            persistLoan("open for ages",false,LocalDateTime.now().minusDays(400));
+            persistLoan("closed long ago",true,LocalDateTime.now().minusDays(300));
+            persistLoan("closed a while ago",true,LocalDateTime.now().minusDays(200));
+            persistLoan("closed last week",true,LocalDateTime.now().minusDays(7));
+        });
+    }
+
+    @Test
+    public void testArchive_movesOnlyOldClosedLoans(){
+        historyArchiveService.archive();
+
+        assertEquals(2,bookTransactionHistoryRepository.count());
+        assertEquals(2,archivedCount());
+        assertEquals(2,bookTransactionHistoryRepository.findAllBorrowedBooks(pageable,reader.getId()).getTotalElements());
+
+        historyArchiveService.archive();
+
+        assertEquals(2,archivedCount());
+    }
+
+    @Test
+    public void testIncludeArchive_mergesBothStoresNewestFirst(){
+        historyArchiveService.archive();
+
+        Page<BorrowedBookView> borrowed=bookTransactionHistoryRepository.findAllBorrowedBooks(pageable,reader.getId(),true);
+        Page<BorrowedBookView> returned=bookTransactionHistoryRepository.findAllReturnedBooks(PageRequest.of(1,2,pageable.getSort()),owner.getId(),true);
+
+        assertEquals(4,borrowed.getTotalElements());
+        assertEquals(List.of("closed last week","closed a while ago","closed long ago","open for ages"),borrowed.stream().map(BorrowedBookView::title).toList());
+        assertEquals(4,returned.getTotalElements());
+        assertEquals(List.of("closed long ago","open for ages"),returned.stream().map(BorrowedBookView::title).toList());
+    }
+
+    private long archivedCount(){
+        return entityManager.createQuery("SELECT COUNT(history) FROM ArchivedBookTransactionHistory history",Long.class).getSingleResult();
+    }
+
+    //created and last modified are pushed into the past the way an old loan would have left them
+    private void persistLoan(String title, boolean closed, LocalDateTime at){
+        Book book=persistBook(entityManager,owner,title);
+        BookTransactionHistory loan=BookTransactionHistory.builder()
+                .book(book)
+                .user(reader)
+                .returned(closed)
+                .returnApproved(closed)
+                .activeBookId(closed?null:book.getId())
+                .build();
+        entityManager.persist(loan);
+        entityManager.flush();
+        entityManager.createQuery("UPDATE BookTransactionHistory history SET history.createdDate = :at, history.lastModifiedDate = :at WHERE history.id = :id")
+                .setParameter("at",at)
+                .setParameter("id",loan.getId())
+                .executeUpdate();
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import com.booksocialnetwork.entities.history.BookTransactionHistory;
+import com.booksocialnetwork.holds.HoldService;
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.search.BookIndexer;
+import com.booksocialnetwork.security.AuthenticatedUser;
+import com.booksocialnetwork.support.JpaTestConfig;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.Authentication;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.booksocialnetwork.support.TestFixtures.persistBook;
+import static com.booksocialnetwork.support.TestFixtures.persistUser;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//a batch costs the same handful of statements whether it carries two books or twenty
+@DataJpaTest(properties = {
+        "spring.jpa.database=h2",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "application.loans.max-batch-size=50",
+        "application.holds.claim-window=PT48H",
+        "application.holds.expiry-batch-size=100"
+})
+@Import({LoanBatchService.class,BorrowEngine.class,HoldService.class,LoanCounterService.class,JpaTestConfig.class,LoanBatchServiceTest.IndexerConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LoanBatchServiceTest {
+
+    @TestConfiguration
+    static class IndexerConfig{
+        @Bean
+        public BookIndexer bookIndexer(){
+            return mock(BookIndexer.class);
+        }
+    }
+
+    private static final int BOOKS=20;
+
+    @Autowired
+    private LoanBatchService loanBatchService;
+
+    @Autowired
+    private LoanCounterService loanCounterService;
+
+    @Autowired
+    private BookTransactionHistoryRepository bookTransactionHistoryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User owner;
+
+    private User reader;
+
+    private List<Integer> bookIds;
+
+    private Integer unborrowedBookId;
+
+    @BeforeEach
+    public void setUp(){
+        transactionTemplate.executeWithoutResult(status->{
+            owner=persistUser(entityManager);
+            reader=persistUser(entityManager);
+            bookIds=new ArrayList<>();
+            for(int i=0;i<BOOKS;i++){
+                Book book=persistBook(entityManager,owner,"book "+i);
+                entityManager.persist(BookTransactionHistory.builder()
+                        .book(book)
+                        .user(reader)
+                        .returned(false)
+                        .returnApproved(false)
+                        .activeBookId(book.getId())
+                        .build());
+                bookIds.add(book.getId());
+            }
+            unborrowedBookId=persistBook(entityManager,owner,"book "+BOOKS).getId();
+        });
+    }
+
+    @Test
+    public void testReturnThenApprove_reportsEveryBookAndFreesTheCopies(){
+        List<Integer> requested=new ArrayList<>(bookIds);
+        requested.add(unborrowedBookId);
+        requested.add(-1);
+
+        Statistics statistics=entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<LoanOutcome> returned=loanBatchService.returnBorrowedBooks(requested,auth(reader));
+
+        assertEquals(2,statistics.getPrepareStatementCount());
+        assertEquals(BOOKS+2,returned.size());
+        assertEquals(bookIds,returned.subList(0,BOOKS).stream().filter(LoanOutcome::isSucceeded).map(LoanOutcome::bookId).toList());
+        assertEquals("You didn't borrow this book",returned.get(BOOKS).error());
+        assertEquals("No book found with Id: -1",returned.get(BOOKS+1).error());
+
+        List<LoanOutcome> approved=loanBatchService.approveReturnBorrowedBooks(bookIds,auth(owner));
+
+        assertTrue(approved.stream().allMatch(LoanOutcome::isSucceeded));
+        assertEquals(0,bookTransactionHistoryRepository.count((root,query,builder)->builder.isNotNull(root.get("activeBookId"))));
+        assertEquals(BOOKS,bookTransactionHistoryRepository.count((root,query,builder)->builder.isTrue(root.get("returnApproved"))));
+    }
+
+    @Test
+    public void testApprove_onlyByTheOwnerAndOnlyOnceReturned(){
+        List<LoanOutcome> notReturned=loanBatchService.approveReturnBorrowedBooks(bookIds.subList(0,2),auth(owner));
+        loanBatchService.returnBorrowedBooks(bookIds.subList(0,2),auth(reader));
+        List<LoanOutcome> notOwner=loanBatchService.approveReturnBorrowedBooks(bookIds.subList(0,2),auth(reader));
+
+        assertTrue(notReturned.stream().noneMatch(LoanOutcome::isSucceeded));
+        assertTrue(notOwner.stream().noneMatch(LoanOutcome::isSucceeded));
+        assertEquals("You cannot approve the return of a book you do not own",notOwner.get(0).error());
+    }
+
+    @Test
+    public void testCounters_followTheBatchesAndMatchHistory(){
+        loanCounterService.findSummary(auth(reader));
+        loanCounterService.findSummary(auth(owner));
+        assertEquals(new LoanSummaryResponse(BOOKS,0,BOOKS,0,0,0),loanCounterService.findSummary(auth(reader)));
+
+        loanBatchService.returnBorrowedBooks(bookIds.subList(0,5),auth(reader));
+        loanBatchService.approveReturnBorrowedBooks(bookIds.subList(0,3),auth(owner));
+
+        LoanSummaryResponse readerSummary=loanCounterService.findSummary(auth(reader));
+        LoanSummaryResponse ownerSummary=loanCounterService.findSummary(auth(owner));
+        assertEquals(new LoanSummaryResponse(BOOKS-5,2,BOOKS,0,0,0),readerSummary);
+        assertEquals(new LoanSummaryResponse(0,0,0,BOOKS-3,2,BOOKS),ownerSummary);
+
+        loanCounterService.reconcile();
+
+        assertEquals(readerSummary,loanCounterService.findSummary(auth(reader)));
+        assertEquals(ownerSummary,loanCounterService.findSummary(auth(owner)));
+    }
+
+    private Authentication auth(User user){
+        Authentication authentication=mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(AuthenticatedUser.of(user));
+        return authentication;
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.booksocialnetwork.services;
+
+import com.booksocialnetwork.repositories.BookTransactionHistoryRepository;
+import com.booksocialnetwork.repositories.UserLoanCountersRepository;
+import com.booksocialnetwork.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+//two loans crossing between the same users must lock the counter rows in the same order, whoever borrows from whom
+class LoanCounterServiceTest {
+
+    @InjectMocks
+    private LoanCounterService loanCounterService;
+
+    @Mock
+    private UserLoanCountersRepository userLoanCountersRepository;
+
+    @Mock
+    private BookTransactionHistoryRepository bookTransactionHistoryRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void setUp(){
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testOnBorrowed_locksTheLowerUserIdFirst(){
+        InOrder inOrder=inOrder(userLoanCountersRepository);
+
+        loanCounterService.onBorrowed(7,3);
+        loanCounterService.onBorrowed(3,7);
+
+        inOrder.verify(userLoanCountersRepository).applyDelta(3,0,0,0,1,0,1);
+        inOrder.verify(userLoanCountersRepository).applyDelta(7,1,0,1,0,0,0);
+        inOrder.verify(userLoanCountersRepository).applyDelta(3,1,0,1,0,0,0);
+        inOrder.verify(userLoanCountersRepository).applyDelta(7,0,0,0,1,0,1);
+    }
+
+    @Test
+    public void testOnApproved_batchTouchesEachRowOnceInAscendingOrder(){
+        InOrder inOrder=inOrder(userLoanCountersRepository);
+
+        loanCounterService.onApproved(Map.of(9,2,2,1),5);
+
+        inOrder.verify(userLoanCountersRepository).applyDelta(2,0,-1,0,0,0,0);
+        inOrder.verify(userLoanCountersRepository).applyDelta(5,0,0,0,-3,-3,0);
+        inOrder.verify(userLoanCountersRepository).applyDelta(9,0,-2,0,0,0,0);
+        verifyNoMoreInteractions(userLoanCountersRepository);
+    }
+
+}
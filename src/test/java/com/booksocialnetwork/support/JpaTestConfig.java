@@ -0,0 +1,27 @@
+package com.booksocialnetwork.support;
+
+import com.booksocialnetwork.cache.CacheInvalidationBus;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.AuditorAware;
+
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+
+//what a @DataJpaTest slice needs on top of the repositories: an auditor for the created/modified by columns and a
+//stand-in for the redis backed cache invalidation bus
+@TestConfiguration
+public class JpaTestConfig {
+
+    @Bean
+    public AuditorAware<Integer> auditorAware(){
+        return ()->Optional.of(1);
+    }
+
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(){
+        return mock(CacheInvalidationBus.class);
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.booksocialnetwork.support;
+
+import com.booksocialnetwork.entities.Book;
+import com.booksocialnetwork.entities.User;
+import jakarta.persistence.EntityManager;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+//persists the minimum a user or book needs; callers run these inside whatever transaction they manage
+public final class TestFixtures {
+
+    private TestFixtures(){
+    }
+
+    public static User persistUser(EntityManager entityManager){
+        return persistUser(entityManager,UUID.randomUUID()+"@mail.com");
+    }
+
+    public static User persistUser(EntityManager entityManager, String email){
+        User user=User.builder()
+                .firstname("first")
+                .lastname("last")
+                .email(email)
+                .enabled(true)
+                .accountLocked(false)
+                .createdDate(LocalDateTime.now())
+                .build();
+        entityManager.persist(user);
+        return user;
+    }
+
+    //shareable and not archived, so it shows up in the displayable listings
+    public static Book persistBook(EntityManager entityManager, User owner, String title){
+        Book book=Book.builder()
+                .title(title)
+                .authorName("author")
+                .isbn("isbn")
+                .synopsis("synopsis")
+                .shareable(true)
+                .owner(owner)
+                .build();
+        entityManager.persist(book);
+        return book;
+    }
+
+}